@@ -0,0 +1,42 @@
+#!/bin/sh
+# Measure the mailextract start and sample extraction duration, without and
+# with the application class data sharing archive.
+# usage: measure-startup.sh <shaded jar> <archive> <sample mbox> <work dir> [runs]
+
+JAR="$1"
+JSA="$2"
+SAMPLE="$3"
+WORKDIR="$4"
+RUNS="${5:-5}"
+
+extract() {
+	rm -rf "$WORKDIR/measure"
+	java "$@" -jar "$JAR" --type mbox --container "$SAMPLE" --user measure --rootdir "$WORKDIR" \
+		-x --extractfiletextfile --extractmessagetextfile --verbatim OFF > /dev/null 2>&1
+}
+
+# the sample messages, attachments and attached message have to be
+# extracted, else the measure is on an extraction doing nothing
+extract -Xshare:auto
+units=$(find "$WORKDIR/measure" -name "__ArchiveUnitMetadata.xml" -o -name "ArchiveUnitContent.xml" 2>/dev/null | wc -l)
+if [ "$units" -lt 4 ]; then
+	echo "mailextract sample extraction gives only $units units, nothing measured"
+	exit 1
+fi
+
+run() {
+	total=0
+	i=0
+	while [ $i -lt $RUNS ]; do
+		start=$(date +%s%N)
+		extract "$@"
+		end=$(date +%s%N)
+		total=$((total + (end - start) / 1000000))
+		i=$((i + 1))
+	done
+	echo $((total / RUNS))
+}
+
+without=$(run -Xshare:auto)
+with=$(run -XX:SharedArchiveFile="$JSA")
+echo "mailextract sample extraction, mean of $RUNS runs: ${without} ms without archive, ${with} ms with archive"
@@ -33,6 +33,8 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
@@ -86,8 +88,8 @@ import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogge
  * </tr>
  * <tr>
  * <td>--type x/td>
- * <td>type of local container to extract (thunderbird|outlook|eml|mbox) or
- * protocol for server access (imap|imaps|pop3...)</td>
+ * <td>type of local container to extract (thunderbird|outlook|eml|mbox|msgdir|maildir|emldir) or
+ * protocol for server access (imap|imaps|gimap|pop3...)</td>
  * </tr>
  * <tr>
  * <td>--user x</td>
@@ -159,6 +161,44 @@ import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogge
  * <td>model of extraction on disk 1 or 2 (default 2)</td>
  * </tr>
  * <tr>
+ * <td>--metrics [x]</td>
+ * <td>export extraction metrics (prometheus and json files) in destination
+ * directory every x seconds (default 60)</td>
+ * </tr>
+ * <tr>
+ * <td>--deepstats</td>
+ * <td>with -z, fully analyze messages (slower, but also counts attached
+ * messages)</td>
+ * </tr>
+ * <tr>
+ * <td>--topitems x</td>
+ * <td>write a report of the x slowest and largest messages and attachments
+ * in destination directory</td>
+ * </tr>
+ * <tr>
+ * <td>--takeout</td>
+ * <td>for a Google Takeout mbox, extract one folder by Gmail label, each
+ * message being extracted once and referenced in its other labels</td>
+ * </tr>
+ * <tr>
+ * <td>--include x</td>
+ * <td>extract only folders matching the pattern x, '/' separated with *, **
+ * and ? wildcards (can be repeated)</td>
+ * </tr>
+ * <tr>
+ * <td>--exclude x</td>
+ * <td>skip folders, and their sub folders, matching the pattern x (can be
+ * repeated)</td>
+ * </tr>
+ * <tr>
+ * <td>--startdate x</td>
+ * <td>extract only messages sent from date x (yyyy-MM-dd)</td>
+ * </tr>
+ * <tr>
+ * <td>--enddate x</td>
+ * <td>extract only messages sent before date x (yyyy-MM-dd)</td>
+ * </tr>
+ * <tr>
  * <td>--verbatim x</td>
  * <td>event level to log</td>
  * </tr>
@@ -176,6 +216,41 @@ import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogge
  * <td>access account and list folders (no drop options)</td>
  * </tr>
  * <tr>
+ * <td>--estimate [x]</td>
+ * <td>estimate extraction size, files count, attachments volume and duration
+ * by sampling a fraction x of messages in each folder (default 0.01)</td>
+ * </tr>
+ * <tr>
+ * <td>--estimatethreads x</td>
+ * <td>with --estimate, threads count for the duration estimation (default
+ * 1)</td>
+ * </tr>
+ * <tr>
+ * <td>--htmltextmax x</td>
+ * <td>maximum size in characters of the text content derived from an html
+ * body, the rest being dropped (default 0, no limit)</td>
+ * </tr>
+ * <tr>
+ * <td>--pstthreads x</td>
+ * <td>threads count extracting in parallel the messages of each pst folder,
+ * each thread with its own access to the pst file (default 1)</td>
+ * </tr>
+ * <tr>
+ * <td>--msgthreads x</td>
+ * <td>threads count extracting in parallel the message files of a msgdir
+ * container (default 0, all available processors)</td>
+ * </tr>
+ * <tr>
+ * <td>--indexcache dir</td>
+ * <td>cache the messages positions of scanned mbox and thunderbird files in
+ * this directory, to reuse them at next access if files are unchanged</td>
+ * </tr>
+ * <tr>
+ * <td>--skiprtf</td>
+ * <td>don't read the rtf body of Microsoft messages (pst, msg) when there's a
+ * text or html body, which is faster but may lose a richer rtf form</td>
+ * </tr>
+ * <tr>
  * <td>-z</td>
  * <td>access account and list folders and there statistics (no drop
  * options)</td>
@@ -185,9 +260,10 @@ import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogge
  * --help)
  *
  * <p>
- * <b>Warning:</b> Listing with detailed information is a potentially expensive
- * operation, especially when accessing distant account, as all messages are
- * inspected (in the case of a distant account that mean also downloaded...).
+ * <b>Warning:</b> Listing with detailed information inspects all messages
+ * headers, and with --deepstats all messages are fully analyzed, which is a
+ * potentially expensive operation, especially when accessing distant account
+ * (in the case of a distant account that mean also downloaded...).
  * 
  * <p>
  * Note: For now it can't extract S/MIME (ciphered and/or signed) messages.
@@ -205,7 +281,7 @@ public class MailExtractApp {
 		parser = new OptionParser();
 		parser.accepts("help").forHelp();
 		parser.accepts("type",
-				"type of local container to extract (thunderbird|pst|eml|mbox) or protocol for server access (imap|imaps|pop3...)")
+				"type of local container to extract (thunderbird|pst|eml|mbox|msgdir|maildir|emldir) or protocol for server access (imap|imaps|gimap|pop3...)")
 				.withRequiredArg();
 		parser.accepts("user", "user account name (also used for destination extraction naming)").withRequiredArg();
 		parser.accepts("password", "password").withRequiredArg();
@@ -226,6 +302,41 @@ public class MailExtractApp {
 		parser.accepts("extractfiletextfile", "extract a text file version of attachment files");
 		parser.accepts("extractfiletextmetadata", "put file text in metadata");
 		parser.accepts("model", "model of extraction on disk 1 or 2 (default 2)").withRequiredArg();
+		parser.accepts("metrics",
+				"export extraction metrics (prometheus and json files) in destination directory every x seconds (default 60)")
+				.withOptionalArg();
+		parser.accepts("deepstats", "with -z, fully analyze messages (slower, but also counts attached messages)");
+		parser.accepts("topitems",
+				"write a report of the x slowest and largest messages and attachments in destination directory")
+				.withRequiredArg();
+		parser.accepts("include",
+				"extract only folders matching the pattern x, '/' separated with *, ** and ? wildcards (can be repeated)")
+				.withRequiredArg();
+		parser.accepts("exclude", "skip folders, and their sub folders, matching the pattern x (can be repeated)")
+				.withRequiredArg();
+		parser.accepts("startdate", "extract only messages sent from date x (yyyy-MM-dd)").withRequiredArg();
+		parser.accepts("enddate", "extract only messages sent before date x (yyyy-MM-dd)").withRequiredArg();
+		parser.accepts("estimate",
+				"estimate extraction size, files count, attachments volume and duration by sampling a fraction x of messages in each folder (default 0.01)")
+				.withOptionalArg();
+		parser.accepts("estimatethreads", "with --estimate, threads count for the duration estimation (default 1)")
+				.withRequiredArg();
+		parser.accepts("htmltextmax",
+				"maximum size in characters of the text content derived from an html body (default 0, no limit)")
+				.withRequiredArg();
+		parser.accepts("pstthreads",
+				"threads count extracting in parallel the messages of each pst folder (default 1)")
+				.withRequiredArg();
+		parser.accepts("msgthreads",
+				"threads count extracting in parallel the message files of a msgdir container (default 0, all available processors)")
+				.withRequiredArg();
+		parser.accepts("indexcache",
+				"cache the messages positions of scanned mbox and thunderbird files in this directory, to reuse them at next access if files are unchanged")
+				.withRequiredArg();
+		parser.accepts("skiprtf",
+				"don't read the rtf body of Microsoft messages (pst, msg) when there's a text or html body, which is faster but may lose a richer rtf form");
+		parser.accepts("takeout",
+				"for a Google Takeout mbox, extract one folder by Gmail label, each message being extracted once and referenced in its other labels");
 		;
 		parser.accepts("warning",
 				"generate warning when there's a problem on a message (otherwise log at FINEST level)");
@@ -288,7 +399,8 @@ public class MailExtractApp {
 		// non protocol specific option parsing
 		if (options.has("verbatim"))
 			logLevel = (String) options.valueOf("verbatim");
-		else if (options.has("l") || options.has("z") || (!options.has("l") && !options.has("z") && !options.has("x")))
+		else if (options.has("l") || options.has("z") || options.has("estimate")
+				|| (!options.has("l") && !options.has("z") && !options.has("x")))
 			logLevel = "OFF";
 		else
 			logLevel = "GLOBAL";
@@ -338,6 +450,78 @@ public class MailExtractApp {
 				options.has("warning"), namesLength, defaultCharset, options.has("extractlists"), options.has("extractmessagetextfile"),
 				options.has("extractmessagetextmetadata"), options.has("extractfiletextfile"),
 				options.has("extractfiletextmetadata"),model);
+		if (options.has("metrics")) {
+			storeExtractorOptions.exportMetrics = true;
+			if (options.hasArgument("metrics")) {
+				try {
+					storeExtractorOptions.metricsExportPeriod = Integer.parseInt((String) options.valueOf("metrics"));
+				} catch (NumberFormatException e) {
+					System.err.println("the metrics period argument must be numeric");
+					System.exit(1);
+				}
+			}
+		}
+		storeExtractorOptions.deepStatistics = options.has("deepstats");
+		storeExtractorOptions.takeoutLabels = options.has("takeout");
+		storeExtractorOptions.skipRedundantRTF = options.has("skiprtf");
+		if (options.has("indexcache"))
+			storeExtractorOptions.mboxIndexCacheDirectory = (String) options.valueOf("indexcache");
+		try {
+			if (options.hasArgument("estimate"))
+				storeExtractorOptions.estimateSampleRate = Double.parseDouble((String) options.valueOf("estimate"));
+			if (options.has("estimatethreads"))
+				storeExtractorOptions.estimateThreads = Integer.parseInt((String) options.valueOf("estimatethreads"));
+		} catch (NumberFormatException e) {
+			System.err.println("the estimate arguments must be numeric");
+			System.exit(1);
+		}
+		if (options.has("htmltextmax")) {
+			try {
+				storeExtractorOptions.htmlTextMaxSize = Integer.parseInt((String) options.valueOf("htmltextmax"));
+			} catch (NumberFormatException e) {
+				System.err.println("the htmltextmax argument must be numeric");
+				System.exit(1);
+			}
+		}
+		if (options.has("pstthreads")) {
+			try {
+				storeExtractorOptions.pstThreads = Integer.parseInt((String) options.valueOf("pstthreads"));
+			} catch (NumberFormatException e) {
+				System.err.println("the pstthreads argument must be numeric");
+				System.exit(1);
+			}
+		}
+		if (options.has("msgthreads")) {
+			try {
+				storeExtractorOptions.msgThreads = Integer.parseInt((String) options.valueOf("msgthreads"));
+			} catch (NumberFormatException e) {
+				System.err.println("the msgthreads argument must be numeric");
+				System.exit(1);
+			}
+		}
+		for (Object pattern : options.valuesOf("include"))
+			storeExtractorOptions.includeFolders.add((String) pattern);
+		for (Object pattern : options.valuesOf("exclude"))
+			storeExtractorOptions.excludeFolders.add((String) pattern);
+		try {
+			SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+			sdf.setLenient(false);
+			if (options.has("startdate"))
+				storeExtractorOptions.startDate = sdf.parse((String) options.valueOf("startdate"));
+			if (options.has("enddate"))
+				storeExtractorOptions.endDate = sdf.parse((String) options.valueOf("enddate"));
+		} catch (ParseException e) {
+			System.err.println("the date arguments must be formatted as yyyy-MM-dd");
+			System.exit(1);
+		}
+		if (options.has("topitems")) {
+			try {
+				storeExtractorOptions.topItemsReportSize = Integer.parseInt((String) options.valueOf("topitems"));
+			} catch (NumberFormatException e) {
+				System.err.println("the top items argument must be numeric");
+				System.exit(1);
+			}
+		}
 
 		// specific option parsing for local type extraction
 		switch (protocol) {
@@ -346,6 +530,9 @@ public class MailExtractApp {
 		case "eml":
 		case "mbox":
 		case "msg":
+		case "msgdir":
+		case "maildir":
+		case "emldir":
 			if (!options.has("container")) {
 				System.out.println("local " + protocol + " extraction need a container path");
 				System.exit(1);
@@ -408,7 +595,7 @@ public class MailExtractApp {
 		StoreExtractor.initDefaultExtractors();
 
 		// if no do option graphic version
-		if (!options.has("l") && !options.has("z") && !options.has("x")) {
+		if (!options.has("l") && !options.has("z") && !options.has("x") && !options.has("estimate")) {
 			new MailExtractGraphicApp(protocol, host, port, user, password, container, folder, destRootPath, destName,
 					storeExtractorOptions, logLevel, local);
 		} else {
@@ -435,6 +622,8 @@ public class MailExtractApp {
 						Paths.get(destRootPath, destName).toString(), storeExtractorOptions, logger);
 				if (options.has("l") || options.has("z")) {
 					storeExtractor.listAllFolders(options.has("z"));
+				} else if (options.has("estimate")) {
+					storeExtractor.estimateAllFolders();
 				} else {
 					storeExtractor.extractAllFolders();
 				}
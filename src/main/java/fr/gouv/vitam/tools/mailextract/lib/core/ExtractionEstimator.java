@@ -0,0 +1,272 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.core;
+
+import fr.gouv.vitam.tools.mailextract.lib.formattools.TikaExtractor;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Class for extraction size and duration estimation by sampling.
+ * <p>
+ * In each folder a random sample of messages, of the defined rate, is
+ * analyzed and extracted without writing through the real
+ * {@link StoreMessage#extractMessage extractMessage} path. For each sampled
+ * message the output size, the output files count, the attachments volume and
+ * the processing duration are measured, and the totals are extrapolated by
+ * stratified estimation, each folder being a stratum, with a 95% confidence
+ * interval.
+ * <p>
+ * As attachments files are not extracted without writing, their text
+ * extraction, when asked for in options, is done by the estimator on sampled
+ * messages so that its duration is accounted. Disk writing duration is not
+ * measured, and the duration at a threads count is extrapolated linearly.
+ */
+public class ExtractionEstimator {
+
+    // estimated values
+    private static final int OUTPUT_BYTES = 0;
+    private static final int OUTPUT_FILES = 1;
+    private static final int ATTACHMENTS_BYTES = 2;
+    private static final int DURATION_NANOS = 3;
+    private static final int VALUES = 4;
+
+    // normal quantile for 95% confidence interval
+    private static final double Z_95 = 1.96;
+
+    // approximate size of an attachment unit metadata file
+    private static final int ATTACHMENT_METADATA_SIZE = 512;
+
+    private StoreExtractorOptions options;
+    private double sampleRate;
+    private int threads;
+    private Random random;
+
+    // stratified estimation, current folder accumulators
+    private int folderCount;
+    private int folderSampleCount;
+    private double[] folderSum = new double[VALUES];
+    private double[] folderSumSq = new double[VALUES];
+
+    // whole estimation accumulators
+    private double[] total = new double[VALUES];
+    private double[] variance = new double[VALUES];
+    private List<Integer> singleSampleFolders = new ArrayList<Integer>();
+    private long sampleCount;
+    private double[] sampleSum = new double[VALUES];
+    private double[] sampleSumSq = new double[VALUES];
+    private long messagesCount;
+    private int foldersCount;
+
+    /**
+     * Instantiates a new extraction estimator.
+     *
+     * @param options the extraction options, with sample rate and threads count
+     * @param seed    the random seed, for reproducible samples
+     */
+    public ExtractionEstimator(StoreExtractorOptions options, long seed) {
+        this.options = options;
+        this.sampleRate = Math.min(1.0, Math.max(0.0, options.estimateSampleRate));
+        this.threads = Math.max(1, options.estimateThreads);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Begin the estimation of a folder and get the messages to sample.
+     *
+     * @param count the folder messages count
+     * @return the sorted 0-based indexes of the messages to sample
+     */
+    public int[] beginFolder(int count) {
+        int k;
+
+        folderCount = Math.max(0, count);
+        folderSampleCount = 0;
+        Arrays.fill(folderSum, 0);
+        Arrays.fill(folderSumSq, 0);
+        if (folderCount == 0)
+            return new int[0];
+        k = (int) Math.max(1, Math.round(sampleRate * folderCount));
+        k = Math.min(k, folderCount);
+
+        // Floyd's algorithm for k distinct indexes without building the
+        // whole range
+        Set<Integer> chosen = new HashSet<Integer>();
+        for (int j = folderCount - k; j < folderCount; j++) {
+            int t = random.nextInt(j + 1);
+            chosen.add(chosen.contains(t) ? j : t);
+        }
+        int[] result = new int[k];
+        int i = 0;
+        for (Integer index : chosen)
+            result[i++] = index;
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void addValues(double[] values) {
+        folderSampleCount++;
+        sampleCount++;
+        for (int v = 0; v < VALUES; v++) {
+            folderSum[v] += values[v];
+            folderSumSq[v] += values[v] * values[v];
+            sampleSum[v] += values[v];
+            sampleSumSq[v] += values[v] * values[v];
+        }
+    }
+
+    /**
+     * Add a sampled message which is not extracted (deleted, not selected...).
+     */
+    public void addEmptySample() {
+        addValues(new double[VALUES]);
+    }
+
+    /**
+     * Add a sampled message, analyzed and extracted without writing.
+     *
+     * @param message the message
+     * @param nanos   the message processing duration
+     * @throws InterruptedException the interrupted exception
+     */
+    public void addSample(StoreMessage message, long nanos) throws InterruptedException {
+        double[] values = new double[VALUES];
+
+        if (message.messageNode != null) {
+            // the mime fake is generated when sized
+            long start = System.nanoTime();
+            values[OUTPUT_BYTES] = message.messageNode.getContentSize();
+            nanos += System.nanoTime() - start;
+            values[OUTPUT_FILES] = message.messageNode.getFilesCount();
+        }
+        if (message.attachments != null) {
+            for (StoreMessageAttachment a : message.attachments) {
+                long size = a.getRawAttachmentSize();
+                if (size < 0)
+                    continue;
+                values[ATTACHMENTS_BYTES] += size;
+                values[OUTPUT_BYTES] += size;
+                if (a.attachmentType == StoreMessageAttachment.STORE_ATTACHMENT)
+                    continue;
+                // file attachment unit, as in StoreMessage extraction
+                values[OUTPUT_BYTES] += ATTACHMENT_METADATA_SIZE;
+                values[OUTPUT_FILES] += 2;
+                if (options.extractFileTextFile || options.extractFileTextMetadata) {
+                    long start = System.nanoTime();
+                    try (InputStream is = a.getRawAttachmentInputStream()) {
+                        String text = TikaExtractor.getInstance().extractTextFromStream(is, size);
+                        if ((text != null) && !text.trim().isEmpty()) {
+                            values[OUTPUT_BYTES] += text.length() * (options.extractFileTextFile
+                                    && options.extractFileTextMetadata ? 2 : 1);
+                            if (options.extractFileTextFile)
+                                values[OUTPUT_FILES]++;
+                        }
+                    } catch (ExtractionException | IOException e) {
+                        // no text
+                    }
+                    nanos += System.nanoTime() - start;
+                }
+            }
+        }
+        values[DURATION_NANOS] = nanos;
+        addValues(values);
+    }
+
+    /**
+     * End the estimation of the current folder.
+     */
+    public void endFolder() {
+        foldersCount++;
+        messagesCount += folderCount;
+        if (folderSampleCount == 0)
+            return;
+        for (int v = 0; v < VALUES; v++) {
+            double mean = folderSum[v] / folderSampleCount;
+            total[v] += folderCount * mean;
+            if (folderSampleCount >= 2) {
+                double s2 = (folderSumSq[v] - folderSampleCount * mean * mean) / (folderSampleCount - 1);
+                variance[v] += ((double) folderCount) * folderCount
+                        * (1.0 - ((double) folderSampleCount) / folderCount) * Math.max(0, s2) / folderSampleCount;
+            }
+        }
+        // one sample folders variance is computed at the end with the pooled
+        // variance of all samples
+        if ((folderSampleCount == 1) && (folderCount > 1))
+            singleSampleFolders.add(folderCount);
+    }
+
+    // half width of the 95% confidence interval
+    private double getHalfWidth(int v) {
+        double var = variance[v];
+
+        if (!singleSampleFolders.isEmpty() && (sampleCount >= 2)) {
+            double mean = sampleSum[v] / sampleCount;
+            double s2 = Math.max(0, (sampleSumSq[v] - sampleCount * mean * mean) / (sampleCount - 1));
+            for (int n : singleSampleFolders)
+                var += ((double) n) * n * (1.0 - 1.0 / n) * s2;
+        }
+        return Z_95 * Math.sqrt(var);
+    }
+
+    private static String duration(double nanos) {
+        long seconds = Math.round(nanos / 1e9);
+        return String.format(Locale.ROOT, "%dh%02dm%02ds", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    /**
+     * Gets the estimation report.
+     *
+     * @return the report, one estimated value by line
+     */
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        String nl = System.lineSeparator();
+
+        sb.append(String.format(Locale.ROOT, "Estimation on %d sampled messages out of %d in %d folders (rate %.2f%%)",
+                sampleCount, messagesCount, foldersCount, sampleRate * 100.0)).append(nl);
+        sb.append(String.format(Locale.ROOT, "Output size         : %.2f MBytes +/- %.2f", total[OUTPUT_BYTES] / 1048576.0,
+                getHalfWidth(OUTPUT_BYTES) / 1048576.0)).append(nl);
+        sb.append(String.format(Locale.ROOT, "Output files        : %.0f +/- %.0f", total[OUTPUT_FILES],
+                getHalfWidth(OUTPUT_FILES))).append(nl);
+        sb.append(String.format(Locale.ROOT, "Attachments volume  : %.2f MBytes +/- %.2f",
+                total[ATTACHMENTS_BYTES] / 1048576.0, getHalfWidth(ATTACHMENTS_BYTES) / 1048576.0)).append(nl);
+        sb.append(String.format(Locale.ROOT, "Duration (%d thread%s): %s +/- %s", threads, (threads > 1 ? "s" : ""),
+                duration(total[DURATION_NANOS] / threads), duration(getHalfWidth(DURATION_NANOS) / threads)));
+        sb.append(nl).append("(95% confidence intervals, disk writing time not included)");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Attachment content which is not in memory, but read from the store each
+ * time it's consumed.
+ * <p>
+ * It can be given as content of a file or inline
+ * {@link StoreMessageAttachment}, so that the attachment is read only when it's
+ * written, when its text is extracted or when the mime fake is written, and
+ * never for listing or statistics.
+ */
+public interface LazyAttachmentContent {
+
+    /**
+     * Open a new stream on the attachment content, to be closed by the caller.
+     *
+     * @return the input stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    InputStream getInputStream() throws IOException;
+
+    /**
+     * Gets the attachment content size.
+     *
+     * @return the size in bytes, or -1 if unknown
+     */
+    long getSize();
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.core;
+
+/**
+ * Prefix tree of the magic numbers of all subscribed store extractors.
+ * <p>
+ * The content first bytes are walked once in the tree, whatever the number of
+ * subscribed magic numbers, and the scheme of the longest matching magic
+ * number is kept.
+ */
+class MagicNumberTrie {
+
+    private static class Node {
+        Node[] children;
+        String scheme;
+    }
+
+    private Node root = new Node();
+    private int maxLength;
+
+    /**
+     * Add a magic number.
+     *
+     * @param magicNumber the magic number, at the beginning of content
+     * @param scheme      the scheme
+     */
+    synchronized void add(byte[] magicNumber, String scheme) {
+        Node node = root;
+
+        for (byte b : magicNumber) {
+            if (node.children == null)
+                node.children = new Node[256];
+            Node child = node.children[b & 0xFF];
+            if (child == null) {
+                child = new Node();
+                node.children[b & 0xFF] = child;
+            }
+            node = child;
+        }
+        node.scheme = scheme;
+        maxLength = Math.max(maxLength, magicNumber.length);
+    }
+
+    /**
+     * Gets the max length of the magic numbers.
+     *
+     * @return the max length
+     */
+    int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Gets the scheme of the longest magic number beginning the content.
+     *
+     * @param content the content
+     * @return the scheme, or null if no magic number matches
+     */
+    String match(byte[] content) {
+        Node node = root;
+        String result = null;
+
+        for (int i = 0; (i < content.length) && (node.children != null); i++) {
+            node = node.children[content[i] & 0xFF];
+            if (node == null)
+                break;
+            if (node.scheme != null)
+                result = node.scheme;
+        }
+        return result;
+    }
+}
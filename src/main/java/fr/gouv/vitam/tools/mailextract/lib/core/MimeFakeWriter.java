@@ -0,0 +1,636 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.ContentDisposition;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.MailDateFormat;
+import javax.mail.internet.MimeUtility;
+import javax.mail.internet.ParameterList;
+
+import com.sun.mail.util.LineOutputStream;
+
+import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+
+import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.HTML_BODY;
+import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.OUT_OF_BODY;
+import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.RTF_BODY;
+import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.TEXT_BODY;
+
+/**
+ * Class for the mime fake of a message which is not natively Mime, streamed
+ * directly to the output.
+ * <p>
+ * The mime structure, headers and transfer encodings are all determined at
+ * construction, with the same rules as a JavaMail MimeMessage built with the
+ * message bodies and attachments, so that the output is the same as the
+ * MimeMessage one, except for the generated boundaries and for texts of other
+ * types than plain, html and xml, written in their declared charset or else
+ * in the extraction default one instead of the platform one. Then the content is
+ * written part by part through the JavaMail encoder streams, without building
+ * the whole message in memory, and it can be written more than once with
+ * the same result.
+ * <p>
+ * Binary attachments whose content is not in memory are read from the store
+ * only when written, their transfer encoding being determined by a check of
+ * their beginning at the first write. Their read problems are thrown as
+ * {@link ArchiveUnit.ContentReadException}.
+ * <p>
+ * The generation duration, preparation and write, is recorded as the message
+ * mime fake stage at each write.
+ */
+class MimeFakeWriter implements ArchiveUnit.ContentWriter {
+
+    // JavaMail boundaries count
+    private static final AtomicInteger boundariesCount = new AtomicInteger();
+
+    // Length of the beginning of an attachment read from the store which is
+    // checked to choose its transfer encoding
+    private static final int ASCII_CHECK_LENGTH = 64 * 1024;
+
+    // JavaMail ascii check results
+    private static final int ALL_ASCII = 1;
+    private static final int MOSTLY_ASCII = 2;
+    private static final int MOSTLY_NONASCII = 3;
+
+    // One part of the mime fake, either a leaf with its content, or its
+    // attachment read when written, or a multipart with its sub parts
+    private static class Part {
+        InternetHeaders headers = new InternetHeaders();
+        String encoding;
+        byte[] content;
+        StoreMessageAttachment attachment;
+        String pendingType;
+        String boundary;
+        String multipartType;
+        List<Part> subParts;
+    }
+
+    private StoreMessage message;
+    private List<StoreMessageAttachment> attachments;
+    private Part root;
+    private long prepareNanos;
+
+    /**
+     * Instantiates a new mime fake writer, preparing the whole mime structure.
+     *
+     * @param message the message
+     * @throws ExtractionException Any unrecoverable extraction exception (access trouble, major
+     *                             format problems...)
+     */
+    MimeFakeWriter(StoreMessage message) throws ExtractionException {
+        long start = System.nanoTime();
+
+        this.message = message;
+        if (message.attachments == null)
+            attachments = new ArrayList<StoreMessageAttachment>();
+        else
+            attachments = message.attachments;
+        root = newMultipart("mixed");
+        buildMimeHeader();
+        buildMimePart();
+        try {
+            // as MimeMessage content setting and saving
+            root.headers.removeHeader("Content-Type");
+            root.headers.removeHeader("Content-Transfer-Encoding");
+            updateHeaders(root, root.multipartType);
+            root.headers.setHeader("MIME-Version", "1.0");
+        } catch (MessagingException | IOException e) {
+            throw new ExtractionException("Unable to generate mime fake of message " + message.subject);
+        }
+        prepareNanos = System.nanoTime() - start;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit.ContentWriter#writeTo(java.io.OutputStream)
+     */
+    @Override
+    public void writeTo(OutputStream os) throws IOException {
+        long start = System.nanoTime();
+
+        try {
+            write(os);
+        } finally {
+            // the preparation is accounted with the first write
+            message.recordMimeFakeDuration(prepareNanos + System.nanoTime() - start);
+            prepareNanos = 0;
+        }
+    }
+
+    /**
+     * Write the mime fake, without recording the generation duration.
+     *
+     * @param os the output stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void write(OutputStream os) throws IOException {
+        writePart(root, os);
+    }
+
+    private static void writePart(Part part, OutputStream os) throws IOException {
+        LineOutputStream los = new LineOutputStream(os);
+
+        // headers depending on an attachment content not yet read
+        if (part.pendingType != null) {
+            try {
+                updateHeaders(part, part.pendingType);
+            } catch (MessagingException e) {
+                throw new ArchiveUnit.ContentReadException("mailextract: can't generate attachment headers", e);
+            }
+            part.pendingType = null;
+        }
+
+        Enumeration<String> lines = part.headers.getAllHeaderLines();
+        while (lines.hasMoreElements())
+            los.writeln(lines.nextElement());
+        los.writeln();
+
+        if (part.subParts != null) {
+            String boundary = "--" + part.boundary;
+            for (Part subPart : part.subParts) {
+                los.writeln(boundary);
+                writePart(subPart, os);
+                los.writeln();
+            }
+            los.writeln(boundary + "--");
+        } else {
+            OutputStream eos;
+            try {
+                eos = MimeUtility.encode(os, part.encoding);
+            } catch (MessagingException e) {
+                throw new IOException("mailextract: unknown transfer encoding " + part.encoding, e);
+            }
+            if (part.attachment == null)
+                eos.write(part.content);
+            else
+                part.attachment.copyRawAttachmentContent(eos);
+            if (eos != os)
+                eos.flush();
+        }
+    }
+
+    // JavaMail unique boundary value
+    private static String getUniqueBoundaryValue() {
+        StringBuilder s = new StringBuilder();
+        long hash = s.hashCode();
+
+        s.append("----=_Part_").append(boundariesCount.getAndIncrement()).append("_").append(hash).append('.')
+                .append(System.currentTimeMillis());
+        return s.toString();
+    }
+
+    private static Part newMultipart(String subtype) {
+        Part part = new Part();
+        part.boundary = getUniqueBoundaryValue();
+        part.subParts = new ArrayList<Part>();
+        ContentType cType = new ContentType("multipart", subtype, null);
+        cType.setParameter("boundary", part.boundary);
+        part.multipartType = cType.toString();
+        return part;
+    }
+
+    private static Part newChild(Part parent, String subtype) throws MessagingException, IOException {
+        Part child = newMultipart(subtype);
+        updateHeaders(child, child.multipartType);
+        parent.subParts.add(child);
+        return child;
+    }
+
+    // JavaMail ascii check of a leaf part content. For an attachment read from
+    // the store only the beginning is checked, and if it's ascii a longer
+    // content is considered as mostly ascii, so that it's read only once in
+    // full when encoded
+    private static int checkAscii(Part part, boolean breakOnNonAscii) throws IOException {
+        byte[] prefix;
+        int check;
+
+        if (part.attachment == null)
+            return checkAscii(new ByteArrayInputStream(part.content), breakOnNonAscii);
+        try {
+            prefix = part.attachment.getRawAttachmentPrefix(ASCII_CHECK_LENGTH);
+        } catch (ExtractionException e) {
+            throw new ArchiveUnit.ContentReadException(e.getMessage(), e);
+        }
+        check = checkAscii(new ByteArrayInputStream(prefix), breakOnNonAscii);
+        if ((check == ALL_ASCII) && (prefix.length == ASCII_CHECK_LENGTH)
+                && (part.attachment.getRawAttachmentSize() != prefix.length))
+            check = MOSTLY_ASCII;
+        return check;
+    }
+
+    // JavaMail ascii check of a content
+    private static int checkAscii(InputStream content, boolean breakOnNonAscii) throws IOException {
+        byte[] buffer = new byte[8192];
+        long ascii = 0, nonAscii = 0;
+        int lineLength = 0, n;
+        boolean longLine = false;
+
+        while ((n = content.read(buffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                int b = buffer[i] & 0xff;
+                if ((b == '\r') || (b == '\n'))
+                    lineLength = 0;
+                else if (++lineLength > 998)
+                    longLine = true;
+                if ((b >= 0177) || ((b < 040) && (b != '\r') && (b != '\n') && (b != '\t'))) {
+                    if (breakOnNonAscii)
+                        return MOSTLY_NONASCII;
+                    nonAscii++;
+                } else
+                    ascii++;
+            }
+        }
+        if (nonAscii == 0)
+            return (longLine ? MOSTLY_ASCII : ALL_ASCII);
+        return (ascii > nonAscii ? MOSTLY_ASCII : MOSTLY_NONASCII);
+    }
+
+    // JavaMail transfer encoding choice, for a content given as object or,
+    // for message types, as named data source
+    private static String getEncoding(ContentType cType, Part part) throws IOException {
+        boolean isText = cType.match("text/*");
+        int check;
+
+        check = checkAscii(part, !isText);
+        if (cType.match("message/*")) {
+            switch (check) {
+                case ALL_ASCII:
+                    return "7bit";
+                case MOSTLY_ASCII:
+                    return "quoted-printable";
+                default:
+                    return "base64";
+            }
+        }
+        switch (check) {
+            case ALL_ASCII:
+                return "7bit";
+            case MOSTLY_ASCII:
+                return (isText ? "quoted-printable" : "base64");
+            default:
+                return "base64";
+        }
+    }
+
+    // JavaMail content handlers of plain, html and xml texts
+    private static boolean isHandledText(ContentType cType) {
+        return cType.match("text/plain") || cType.match("text/html") || cType.match("text/xml");
+    }
+
+    // text type with the charset used to write it, JavaMail content handlers
+    // writing plain, html and xml texts in us-ascii if not declared, and the
+    // other texts being written in the extraction default charset
+    private String getWriteType(String type) throws MessagingException {
+        ContentType cType = new ContentType(type);
+
+        if (isHandledText(cType) || (cType.getParameter("charset") != null))
+            return type;
+        cType.setParameter("charset", message.getStoreExtractor().getOptions().defaultCharsetName);
+        return cType.toString();
+    }
+
+    // charset used to write a text of this type
+    private Charset getWriteCharset(String type) throws MessagingException {
+        ContentType cType = new ContentType(type);
+        String charset = cType.getParameter("charset");
+
+        try {
+            return Charset.forName(MimeUtility.javaCharset(charset == null ? "us-ascii" : charset));
+        } catch (IllegalArgumentException e) {
+            if (isHandledText(cType))
+                return StandardCharsets.US_ASCII;
+            return Charset.forName(message.getStoreExtractor().getOptions().defaultCharsetName);
+        }
+    }
+
+    // set Content-Transfer-Encoding and Content-Type headers as JavaMail
+    // MimeBodyPart does when saving
+    private static void updateHeaders(Part part, String type) throws MessagingException, IOException {
+        ContentType cType = new ContentType(type);
+
+        if (!cType.match("multipart/*") && !cType.match("message/rfc822")) {
+            part.encoding = getEncoding(cType, part);
+            part.headers.setHeader("Content-Transfer-Encoding", part.encoding);
+            if (cType.match("text/*") && (cType.getParameter("charset") == null)) {
+                cType.setParameter("charset",
+                        "7bit".equalsIgnoreCase(part.encoding) ? "us-ascii" : MimeUtility.getDefaultMIMECharset());
+                type = cType.toString();
+            }
+        }
+
+        // name parameter from the Content-Disposition filename
+        String disposition = part.headers.getHeader("Content-Disposition", null);
+        if (disposition != null) {
+            String filename = new ContentDisposition(disposition).getParameter("filename");
+            if (filename != null) {
+                ParameterList p = cType.getParameterList();
+                if (p == null) {
+                    p = new ParameterList();
+                    cType.setParameterList(p);
+                }
+                p.set("name", filename);
+                type = cType.toString();
+            }
+        }
+        part.headers.setHeader("Content-Type", type);
+    }
+
+    private Part newTextPart(String text, String type) throws MessagingException, IOException {
+        Part part = new Part();
+        type = getWriteType(type);
+        part.content = text.getBytes(getWriteCharset(type));
+        updateHeaders(part, type);
+        return part;
+    }
+
+    private static void setAddressList(InternetHeaders headers, String tag, List<String> addressList)
+            throws UnsupportedEncodingException {
+        if ((addressList != null) && (!addressList.isEmpty())) {
+            String value = "";
+            int countline = 0;
+            for (String tmp : addressList) {
+                // 80 characters lines
+                tmp = MimeUtility.encodeText(tmp, "UTF-8", "Q");
+                if (countline + tmp.length() > 80) {
+                    value += "\n\t";
+                    countline = 1;
+                } else
+                    countline += tmp.length();
+                value += MimeUtility.encodeText(tmp, "UTF-8", "Q") + ",";
+            }
+            value = value.substring(0, value.length() - 1);
+            headers.setHeader(tag, value);
+        }
+    }
+
+    private void buildMimeHeader() throws ExtractionException {
+        InternetHeaders headers = root.headers;
+
+        try {
+            // put all know headers, they will be change by the specific ones
+            if ((message.mailHeader != null) && (message.mailHeader.size() > 0)) {
+                String tag, value;
+                for (String tmp : message.mailHeader) {
+                    if (tmp.indexOf(':') < 0)
+                        continue;
+                    tag = tmp.substring(0, tmp.indexOf(':'));
+                    value = tmp.substring(tmp.indexOf(':') + 1);
+                    headers.setHeader(tag, value);
+                }
+            }
+
+            // Return-Path
+            if (message.returnPath != null)
+                headers.setHeader("Return-Path", MimeUtility.encodeText(message.returnPath, "UTF-8", "Q"));
+            // From
+            if (message.from != null)
+                headers.setHeader("From", MimeUtility.encodeText(message.from, "UTF-8", "Q"));
+            // To
+            if (message.recipientTo != null)
+                setAddressList(headers, "To", message.recipientTo);
+            // cc
+            if (message.recipientCc != null)
+                setAddressList(headers, "cc", message.recipientCc);
+            // bcc
+            if (message.recipientBcc != null)
+                setAddressList(headers, "bcc", message.recipientBcc);
+            // Reply-To
+            if (message.replyTo != null)
+                setAddressList(headers, "Reply-To", message.replyTo);
+            // Date, if null Date is deleted
+            if (message.sentDate == null)
+                headers.removeHeader("Date");
+            else
+                headers.setHeader("Date", new MailDateFormat().format(message.sentDate));
+            // Subject
+            if (message.subject != null)
+                headers.setHeader("Subject", MimeUtility.fold(9,
+                        MimeUtility.encodeText(MimeUtility.encodeText(message.subject, "UTF-8", "Q"), null, null)));
+            // Message-ID
+            if (message.messageID != null)
+                headers.setHeader("Message-ID", MimeUtility.encodeText(message.messageID, "UTF-8", "Q"));
+            // In-Reply-To
+            if ((message.inReplyToUID != null) && (!message.inReplyToUID.isEmpty()))
+                headers.setHeader("In-Reply-To", MimeUtility.encodeText(message.inReplyToUID, "UTF-8", "Q"));
+
+        } catch (UnsupportedEncodingException e) {
+            throw new ExtractionException("Unable to generate mime header of message " + message.subject);
+        }
+    }
+
+    private void addAttachmentPart(Part root, boolean isInline) throws ExtractionException {
+        try {
+            // build attach part
+            for (StoreMessageAttachment a : attachments) {
+                boolean thisIsInline = (a.attachmentType == StoreMessageAttachment.INLINE_ATTACHMENT);
+
+                if ((thisIsInline && isInline) || ((!thisIsInline) && (!isInline))) {
+                    Part attachPart = new Part();
+                    String type;
+
+                    // set Content-ID
+                    String cidName = null;
+                    if ((a.contentID != null) && !a.contentID.trim().isEmpty()) {
+                        attachPart.headers.setHeader("Content-ID", "<" + a.contentID.trim() + ">");
+                        if (a.contentID.indexOf('@') < 0)
+                            cidName = a.contentID;
+                        else
+                            cidName = a.contentID.substring(0, a.contentID.indexOf('@'));
+                    } else
+                        cidName = "unknown";
+
+                    // set object and Content-Type
+                    String attachmentFilename = encodedFilename(a.name, a.mimeType, cidName);
+                    boolean isText = false, isMessage = false;
+                    if (!a.hasBinaryContent())
+                        throw new ExtractionException("mailextract: this attachment has no binary form");
+                    if ((a.mimeType == null) || (a.mimeType.isEmpty()))
+                        type = "application/octet-stream; name=\"" + attachmentFilename + "\"";
+                    else {
+                        if (a.mimeType.startsWith("text")) {
+                            type = getWriteType(a.mimeType + "; name=\"" + attachmentFilename + "\"");
+                            isText = true;
+                        } else if (a.mimeType.startsWith("message")) {
+                            // the rfc822 form is provided
+                            type = a.mimeType;
+                            isMessage = true;
+                        } else if (a.mimeType.startsWith("multipart")) {
+                            // wrong attachment type corrected to neutral application/octet-stream
+                            type = "application/octet-stream; name=\"" + attachmentFilename + "\"";
+                        } else {
+                            type = a.mimeType + "; name=\"" + attachmentFilename + "\"";
+                        }
+                    }
+                    if (isText || isMessage || (a.attachmentContent instanceof byte[])) {
+                        byte[] raw = a.getRawAttachmentContent();
+                        if (isText)
+                            raw = new String(raw, "UTF-8").getBytes(getWriteCharset(type));
+                        attachPart.content = raw;
+                    } else
+                        // binary content only read from the store when written
+                        attachPart.attachment = a;
+
+                    // set Content-Disposition
+                    if (a.attachmentType == StoreMessageAttachment.INLINE_ATTACHMENT)
+                        attachPart.headers.setHeader("Content-Disposition",
+                                "inline; filename=\"" + attachmentFilename + "\"");
+                    else
+                        attachPart.headers.setHeader("Content-Disposition",
+                                "attachment; filename=\"" + attachmentFilename + "\"");
+                    if (attachPart.attachment == null)
+                        updateHeaders(attachPart, type);
+                    else {
+                        // headers checked now but set at first write
+                        new ContentType(type);
+                        new ContentDisposition(attachPart.headers.getHeader("Content-Disposition", null));
+                        attachPart.pendingType = type;
+                    }
+                    root.subParts.add(attachPart);
+                }
+            }
+        } catch (MessagingException | IOException e) {
+            throw new ExtractionException(
+                    "Unable to generate " + (isInline ? "inlines" : "attachments") + " of message "
+                            + message.subject);
+        }
+    }
+
+    private static boolean isEmpty(String body) {
+        return (body == null) || body.isEmpty();
+    }
+
+    // some extraction has no body only headers
+    private boolean isEmptyBodies() {
+        return isEmpty(message.bodyContent[TEXT_BODY]) && isEmpty(message.bodyContent[HTML_BODY])
+                && isEmpty(message.bodyContent[RTF_BODY]);
+    }
+
+    private void buildMimePart() throws ExtractionException {
+        String[] bodyContent = message.bodyContent;
+        boolean hasInline = false;
+        int relatedPart = OUT_OF_BODY;
+
+        try {
+            // search if there are inlines
+            for (StoreMessageAttachment a : attachments) {
+                if (a.attachmentType == StoreMessageAttachment.INLINE_ATTACHMENT) {
+                    hasInline = true;
+                    break;
+                }
+            }
+
+            // determine in which part to add related
+            if (!isEmpty(bodyContent[HTML_BODY]))
+                relatedPart = HTML_BODY;
+            else if (!isEmpty(bodyContent[RTF_BODY]))
+                relatedPart = RTF_BODY;
+
+            // build message part
+            Part msgMp = newChild(root, "alternative");
+            if (!isEmpty(bodyContent[TEXT_BODY]))
+                msgMp.subParts.add(newTextPart(bodyContent[TEXT_BODY], "text/plain; charset=utf-8"));
+            // if empty message, construct a fake empty text part
+            if (isEmptyBodies())
+                msgMp.subParts.add(newTextPart(" ", "text/plain; charset=utf-8"));
+
+            if (!isEmpty(bodyContent[HTML_BODY])) {
+                Part upperpart;
+                if (hasInline && (relatedPart == HTML_BODY))
+                    upperpart = newChild(msgMp, "related");
+                else
+                    upperpart = msgMp;
+
+                upperpart.subParts.add(newTextPart(bodyContent[HTML_BODY], "text/html; charset=utf-8"));
+
+                if (hasInline && (relatedPart == HTML_BODY))
+                    addAttachmentPart(upperpart, true);
+            }
+            if (!isEmpty(bodyContent[RTF_BODY])) {
+                Part upperpart;
+                if (hasInline && (relatedPart == RTF_BODY))
+                    upperpart = newChild(msgMp, "related");
+                else
+                    upperpart = msgMp;
+
+                upperpart.subParts.add(newTextPart(bodyContent[RTF_BODY], "text/rtf; charset=US-ASCII"));
+
+                if (hasInline && (relatedPart == RTF_BODY))
+                    addAttachmentPart(upperpart, true);
+            }
+        } catch (MessagingException | IOException e) {
+            throw new ExtractionException("Unable to generate mime body part of message " + message.subject);
+        }
+
+        // add inline part of attachments if not added to HTML body
+        if (relatedPart == OUT_OF_BODY)
+            addAttachmentPart(root, true);
+        addAttachmentPart(root, false);
+    }
+
+    private static boolean isPureAscii(String v) {
+        return StandardCharsets.US_ASCII.newEncoder().canEncode(v);
+    }
+
+    private static String encodedFilename(String filename, String mimetype, String ifnone) {
+        String tmp;
+        if ((filename != null) && !filename.trim().isEmpty())
+            tmp = filename;
+        else
+            tmp = ifnone;
+        if ("message/rfc822".equals(mimetype) && (!tmp.endsWith(".eml")))
+            tmp += ".eml";
+
+        // prevent a bug when quotes are in ascii filename (encodeWord is then not encoding)
+        if (isPureAscii(tmp) && tmp.contains("\""))
+            tmp = tmp.replaceAll("\"", "'");
+
+        try {
+            return MimeUtility.encodeWord(tmp, "UTF-8", "Q");
+        } catch (UnsupportedEncodingException e) {
+            // forget it
+        }
+        return "Unknown";
+    }
+}
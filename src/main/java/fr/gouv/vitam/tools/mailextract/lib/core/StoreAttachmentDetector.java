@@ -0,0 +1,140 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.core;
+
+import fr.gouv.vitam.tools.mailextract.lib.formattools.TikaExtractor;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+
+/**
+ * Tiered detection of the store extractor scheme of an attachment content.
+ * <ul>
+ * <li>the subscribed store magic numbers are first checked, and a specific
+ * one gives directly the scheme,</li>
+ * <li>content beginning with the magic number of a common format which can't
+ * be a store (pdf, images, archives...) is then dropped,</li>
+ * <li>only the remaining ambiguous content is detected by Tika, on a bounded
+ * prefix, except for generic containers (OLE2 compound files) whose
+ * directory can be anywhere in the content.</li>
+ * </ul>
+ */
+class StoreAttachmentDetector {
+
+    /**
+     * The content prefix length given to Tika, which is the Tika mime types
+     * magic detection window.
+     */
+    static final int DETECTION_PREFIX_LENGTH = 64 * 1024;
+
+    // magic numbers of common attachment formats which are not stores
+    private static final MagicNumberTrie OTHER_FORMATS = new MagicNumberTrie();
+
+    static {
+        OTHER_FORMATS.add(new byte[]{'%', 'P', 'D', 'F'}, "pdf");
+        OTHER_FORMATS.add(new byte[]{'%', '!', 'P', 'S'}, "postscript");
+        OTHER_FORMATS.add(new byte[]{(byte) 0x89, 'P', 'N', 'G'}, "png");
+        OTHER_FORMATS.add(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}, "jpeg");
+        OTHER_FORMATS.add(new byte[]{'G', 'I', 'F', '8'}, "gif");
+        OTHER_FORMATS.add(new byte[]{'I', 'I', '*', 0x00}, "tiff");
+        OTHER_FORMATS.add(new byte[]{'M', 'M', 0x00, '*'}, "tiff");
+        OTHER_FORMATS.add(new byte[]{'P', 'K', 0x03, 0x04}, "zip");
+        OTHER_FORMATS.add(new byte[]{0x1F, (byte) 0x8B}, "gzip");
+        OTHER_FORMATS.add(new byte[]{'R', 'a', 'r', '!'}, "rar");
+        OTHER_FORMATS.add(new byte[]{'7', 'z', (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C}, "7z");
+        OTHER_FORMATS.add(new byte[]{'R', 'I', 'F', 'F'}, "riff");
+        OTHER_FORMATS.add(new byte[]{'I', 'D', '3'}, "mp3");
+        OTHER_FORMATS.add(new byte[]{'O', 'g', 'g', 'S'}, "ogg");
+    }
+
+    private StoreAttachmentDetector() {
+    }
+
+    /**
+     * Gets the store extractor scheme of the attachment content, or null if
+     * it's not a known store.
+     * <p>
+     * Content not in memory is only read from the store up to the detection
+     * prefix, except for generic containers.
+     *
+     * @param attachment the attachment
+     * @return the scheme
+     * @throws ExtractionException if content reading or Tika detection was
+     *                             not possible
+     */
+    static String getStoreScheme(StoreMessageAttachment attachment) throws ExtractionException {
+        byte[] prefix;
+        String scheme;
+
+        if (attachment.getStoreContent() instanceof byte[])
+            return getStoreScheme((byte[]) attachment.getStoreContent());
+        prefix = attachment.getRawAttachmentPrefix(DETECTION_PREFIX_LENGTH);
+        if (prefix.length == DETECTION_PREFIX_LENGTH) {
+            scheme = StoreExtractor.magicNumberTrie.match(prefix);
+            if ((scheme != null) && StoreExtractor.genericMagicNumberSchemes.contains(scheme)) {
+                byte[] content = attachment.getRawAttachmentContent();
+                scheme = getStoreScheme(content);
+                // a store is extracted from its content in memory, keep it
+                // instead of reading it again
+                if (scheme != null)
+                    attachment.setStoreContent(content);
+                return scheme;
+            }
+        }
+        return getStoreScheme(prefix);
+    }
+
+    /**
+     * Gets the store extractor scheme of the content, or null if it's not a
+     * known store.
+     *
+     * @param content the content
+     * @return the scheme
+     * @throws ExtractionException if Tika detection was not possible
+     */
+    static String getStoreScheme(byte[] content) throws ExtractionException {
+        String scheme;
+        String mimeType;
+        int length;
+
+        if (content.length == 0)
+            return null;
+        scheme = StoreExtractor.magicNumberTrie.match(content);
+        if (scheme != null) {
+            if (!StoreExtractor.genericMagicNumberSchemes.contains(scheme))
+                return scheme;
+            length = content.length;
+        } else {
+            if (OTHER_FORMATS.match(content) != null)
+                return null;
+            length = Math.min(content.length, DETECTION_PREFIX_LENGTH);
+        }
+        mimeType = TikaExtractor.getInstance().getMimeType(content, length);
+        if (mimeType == null)
+            return null;
+        return StoreExtractor.mimeTypeSchemeMap.get(mimeType);
+    }
+}
@@ -28,15 +28,15 @@
 package fr.gouv.vitam.tools.mailextract.lib.core;
 
 import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
-import fr.gouv.vitam.tools.mailextract.lib.store.javamail.JMStoreExtractor;
-import fr.gouv.vitam.tools.mailextract.lib.store.microsoft.msg.MsgStoreExtractor;
-import fr.gouv.vitam.tools.mailextract.lib.store.microsoft.pst.PstStoreExtractor;
-import fr.gouv.vitam.tools.mailextract.lib.store.microsoft.pst.embeddedmsg.PstEmbeddedStoreExtractor;
 import fr.gouv.vitam.tools.mailextract.lib.utils.DateRange;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionFilter;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractMetrics;
 import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
+import fr.gouv.vitam.tools.mailextract.lib.utils.TopItemsReport;
 
 import java.io.*;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
@@ -45,9 +45,12 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.ServiceLoader;
 import javax.mail.URLName;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.EXTRACTED_MAILS_LIST;
 import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.printMailCSVHeader;
@@ -79,6 +82,7 @@ import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogge
  * Notice: you have to call {@link #initDefaultExtractors initDefaultExtractors}
  * method before any usage to benefit from these existing extractors, and you
  * can add new ones with {@link #addExtractionRelation addExtractionRelation},
+ * directly or in a {@link StoreExtractorProvider} discovered in the classpath,
  * and they will be automatically used when needed.
  *
  * <p>
@@ -167,10 +171,9 @@ public abstract class StoreExtractor {
     static HashMap<String, String> mimeTypeSchemeMap = new HashMap<String, String>();
 
     /**
-     * The map of scheme/extractor class known relations.
+     * The map of scheme/extractor factory known relations.
      */
-    @SuppressWarnings("rawtypes")
-    static HashMap<String, Class> schemeStoreExtractorClassMap = new HashMap<String, Class>();
+    static HashMap<String, StoreExtractorFactory> schemeStoreExtractorFactoryMap = new HashMap<String, StoreExtractorFactory>();
 
     /**
      * The map of scheme/container extraction (vs single file extraction) known
@@ -179,13 +182,25 @@ public abstract class StoreExtractor {
     static HashMap<String, Boolean> schemeContainerMap = new HashMap<String, Boolean>();
 
     /**
-     * Subscribes all defaults store extractor.
+     * The magic numbers of all known schemes.
+     */
+    static MagicNumberTrie magicNumberTrie = new MagicNumberTrie();
+
+    /**
+     * The schemes whose magic number is shared with other formats.
+     */
+    static HashSet<String> genericMagicNumberSchemes = new HashSet<String>();
+
+    /**
+     * Subscribes all store extractors providers found in the classpath, the
+     * default ones being declared in this library
+     * META-INF/services/fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider
+     * file.
      */
     public static void initDefaultExtractors() {
-        JMStoreExtractor.subscribeStoreExtractor();
-        MsgStoreExtractor.subscribeStoreExtractor();
-        PstStoreExtractor.subscribeStoreExtractor();
-        PstEmbeddedStoreExtractor.subscribeStoreExtractor();
+        for (StoreExtractorProvider provider : ServiceLoader.load(StoreExtractorProvider.class,
+                StoreExtractor.class.getClassLoader()))
+            provider.subscribeStoreExtractors();
     }
 
     // StoreExtractor definition parameters
@@ -265,6 +280,20 @@ public abstract class StoreExtractor {
     // private logger
     private MailExtractProgressLogger logger;
 
+    // private metrics registry, null if not root
+    private MailExtractMetrics metrics;
+
+    // private slowest and largest items report, null if not root
+    private TopItemsReport topItemsReport;
+
+    // private folders and messages selection, only for the root store extractor
+    private ExtractionFilter filter;
+
+    // private map of already extracted messages units paths by de-duplication
+    // key, for stores where a message is in several folders, null if not root,
+    // concurrent as messages may be extracted by several threads
+    private Map<String, String> extractedMessagesMap;
+
     // private map of printstreams for global lists extraction
     // (mails list, contacts, appointments...)
     protected Map<String, PrintStream> globalListsPSMap;
@@ -291,13 +320,121 @@ public abstract class StoreExtractor {
      */
     @SuppressWarnings("rawtypes")
     public static void addExtractionRelation(String mimeType, String scheme, boolean isContainer, Class extractor) {
+        addExtractionRelation(mimeType, scheme, isContainer, new ReflectiveStoreExtractorFactory(extractor));
+    }
+
+    /**
+     * Add mimetypes, scheme, isContainer, store extractor factory known
+     * relation.
+     * <p>
+     * This is used by store extractor providers to subscribe. When the
+     * relation is known it can be used for processing automatically the
+     * mimetype files with appropriate store extractors, in code.
+     * <p>
+     * Warning: the mime type has to be the code returned by tika!
+     *
+     * @param mimeType    the mime type
+     * @param scheme      the scheme
+     * @param isContainer the is container
+     * @param factory     the store extractor factory
+     */
+    public static void addExtractionRelation(String mimeType, String scheme, boolean isContainer,
+                                             StoreExtractorFactory factory) {
         // if there is a file mimetype for this scheme
         if (mimeType != null)
             mimeTypeSchemeMap.put(mimeType, scheme);
-        schemeStoreExtractorClassMap.put(scheme, extractor);
+        schemeStoreExtractorFactoryMap.put(scheme, factory);
         schemeContainerMap.put(scheme, isContainer);
     }
 
+    /**
+     * Add a magic number identifying the content of a scheme.
+     * <p>
+     * The magic numbers of all schemes are used by
+     * {@link #getVerifiedScheme getVerifiedScheme}.
+     *
+     * @param magicNumber the magic number, at the beginning of content
+     * @param scheme      the scheme
+     */
+    public static void addMagicNumber(byte[] magicNumber, String scheme) {
+        addMagicNumber(magicNumber, scheme, false);
+    }
+
+    /**
+     * Add a magic number identifying the content of a scheme, maybe shared
+     * with other formats.
+     * <p>
+     * When generic, as the OLE2 compound file header for msg, the content is
+     * confirmed by a full mime type detection before extraction.
+     *
+     * @param magicNumber the magic number, at the beginning of content
+     * @param scheme      the scheme
+     * @param generic     true if the magic number is shared with other formats
+     */
+    public static void addMagicNumber(byte[] magicNumber, String scheme, boolean generic) {
+        magicNumberTrie.add(magicNumber, scheme);
+        if (generic)
+            genericMagicNumberSchemes.add(scheme);
+    }
+
+    /**
+     * Store extractor factory for the classes subscribed with
+     * {@link #addExtractionRelation(String, String, boolean, Class)}, the
+     * constructors being looked up only once.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static class ReflectiveStoreExtractorFactory implements StoreExtractorFactory {
+
+        private Constructor urlConstructor;
+        private Constructor attachmentConstructor;
+
+        ReflectiveStoreExtractorFactory(Class extractor) {
+            try {
+                urlConstructor = extractor.getConstructor(String.class, String.class, String.class,
+                        StoreExtractorOptions.class, StoreExtractor.class, MailExtractProgressLogger.class);
+            } catch (NoSuchMethodException | SecurityException e) {
+                urlConstructor = null;
+            }
+            try {
+                attachmentConstructor = extractor.getConstructor(StoreMessageAttachment.class, ArchiveUnit.class,
+                        StoreExtractorOptions.class, StoreExtractor.class, MailExtractProgressLogger.class);
+            } catch (NoSuchMethodException | SecurityException e) {
+                attachmentConstructor = null;
+            }
+        }
+
+        private StoreExtractor newInstance(Constructor constructor, Object... args) throws ExtractionException {
+            if (constructor == null)
+                return null;
+            try {
+                return (StoreExtractor) constructor.newInstance(args);
+            } catch (InstantiationException | IllegalAccessException | IllegalArgumentException e) {
+                return null;
+            } catch (InvocationTargetException e) {
+                Throwable te = e.getCause();
+                if (te instanceof ExtractionException)
+                    throw (ExtractionException) te;
+                return null;
+            }
+        }
+
+        @Override
+        public StoreExtractor createStoreExtractor(String urlString, String folder, String destPathString,
+                                                   StoreExtractorOptions options, StoreExtractor rootStoreExtractor,
+                                                   MailExtractProgressLogger logger) throws ExtractionException {
+            return newInstance(urlConstructor, urlString, folder, destPathString, options, rootStoreExtractor,
+                    logger);
+        }
+
+        @Override
+        public StoreExtractor createEmbeddedStoreExtractor(StoreMessageAttachment attachment, ArchiveUnit rootNode,
+                                                           StoreExtractorOptions options,
+                                                           StoreExtractor rootStoreExtractor,
+                                                           MailExtractProgressLogger logger) throws ExtractionException {
+            return newInstance(attachmentConstructor, attachment, rootNode, options, rootStoreExtractor, logger);
+        }
+    }
+
     /**
      * Compose an URL String.
      *
@@ -335,7 +472,7 @@ public abstract class StoreExtractor {
     /**
      * Init the PrintStream for mails list, if not already done
      */
-    protected void initMailsListIfNeeded() {
+    protected synchronized void initMailsListIfNeeded() {
         if (mailsListInitialisedFlag)
             return;
         mailsListInitialisedFlag = true;
@@ -345,7 +482,7 @@ public abstract class StoreExtractor {
             Files.createDirectories(Paths.get(dirname));
             PrintStream ps = new PrintStream(dirname + EXTRACTED_MAILS_LIST + ".csv");
             globalListsPSMap.put(EXTRACTED_MAILS_LIST, ps);
-            printMailCSVHeader(ps);
+            printMailCSVHeader(ps, isDeduplicatingMessages());
         } catch (IOException e) {
             logger.progressLogWithoutInterruption(GLOBAL, "mailextract: can't create mails list csv file");
             logger.logException(e);
@@ -410,6 +547,14 @@ public abstract class StoreExtractor {
 
         this.rootStoreExtractor = rootStoreExtractor;
         this.logger = logger;
+        if (rootStoreExtractor == null) {
+            this.metrics = (this.options.exportMetrics ? new MailExtractMetrics() : MailExtractMetrics.NONE);
+            this.topItemsReport = new TopItemsReport(this.options.topItemsReportSize);
+            this.extractedMessagesMap = new ConcurrentHashMap<String, String>();
+            this.filter = new ExtractionFilter(this.options.includeFolders, this.options.excludeFolders,
+                    this.options.startDate, this.options.endDate);
+        } else
+            this.filter = ExtractionFilter.NONE;
 
         this.description = ":p:" + scheme + ":u:" + user;
 
@@ -485,6 +630,136 @@ public abstract class StoreExtractor {
         return logger;
     }
 
+    /**
+     * Gets the metrics registry in store extractor context.
+     * <p>
+     * The registry is the root store extractor one, so that nested extractions
+     * are accounted in the whole extraction process.
+     *
+     * @return the metrics registry
+     */
+    public MailExtractMetrics getMetrics() {
+        if (rootStoreExtractor == null)
+            return metrics;
+        return rootStoreExtractor.getMetrics();
+    }
+
+    /**
+     * Export the metrics files in the extraction directory, if asked for in
+     * options and if the export period is elapsed.
+     */
+    public void exportMetricsIfDue() {
+        if (options.exportMetrics) {
+            try {
+                getMetrics().exportIfDue(getRootDestPath(), options.metricsExportPeriod);
+            } catch (IOException e) {
+                logger.logException(e);
+            }
+        }
+    }
+
+    // export the metrics files whatever the period, if asked for in options
+    private void exportMetrics() throws InterruptedException {
+        if (options.exportMetrics) {
+            try {
+                getMetrics().export(getRootDestPath());
+            } catch (IOException e) {
+                getProgressLogger().progressLog(GLOBAL, "mailextract: can't write metrics files");
+                logger.logException(e);
+            }
+        }
+    }
+
+    /**
+     * Gets the slowest and largest items report in store extractor context.
+     * <p>
+     * The report is the root store extractor one, so that nested extractions
+     * are accounted in the whole extraction process.
+     *
+     * @return the top items report
+     */
+    public TopItemsReport getTopItemsReport() {
+        if (rootStoreExtractor == null)
+            return topItemsReport;
+        return rootStoreExtractor.getTopItemsReport();
+    }
+
+    // write the top items report, if asked for in options
+    private void writeTopItemsReport() throws InterruptedException {
+        if (getTopItemsReport().isActive()) {
+            try {
+                getTopItemsReport().write(getRootDestPath());
+            } catch (IOException e) {
+                getProgressLogger().progressLog(GLOBAL, "mailextract: can't write top items report file");
+                logger.logException(e);
+            }
+        }
+    }
+
+    // the root extraction directory, where global files are written
+    private String getRootDestPath() {
+        if (rootStoreExtractor == null)
+            return destRootPath + File.separator + destName;
+        return rootStoreExtractor.getRootDestPath();
+    }
+
+    /**
+     * Gets the folders and messages selection filter.
+     * <p>
+     * The selection defined in options applies only to the root store, nested
+     * stores (attached messages, containers...) are always fully extracted.
+     *
+     * @return the extraction filter
+     */
+    public ExtractionFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Gets the Archive Unit directory of an already extracted message in
+     * store extractor context.
+     * <p>
+     * This is used for stores where the same message is exposed in several
+     * folders (Gmail labels...), so that the message is extracted only once
+     * and referenced in other folders.
+     *
+     * @param key the message de-duplication key (Gmail X-GM-MSGID...)
+     * @return the message Archive Unit directory, or null if not yet extracted
+     */
+    public String getExtractedMessageUnitPath(String key) {
+        if (rootStoreExtractor == null)
+            return extractedMessagesMap.get(key);
+        return rootStoreExtractor.getExtractedMessageUnitPath(key);
+    }
+
+    /**
+     * Register an extracted message Archive Unit directory in store extractor
+     * context.
+     *
+     * @param key      the message de-duplication key (Gmail X-GM-MSGID...)
+     * @param unitPath the message Archive Unit directory
+     */
+    public void putExtractedMessageUnitPath(String key, String unitPath) {
+        if (rootStoreExtractor == null)
+            extractedMessagesMap.put(key, unitPath);
+        else
+            rootStoreExtractor.putExtractedMessageUnitPath(key, unitPath);
+    }
+
+    /**
+     * Checks if messages are de-duplicated in this extraction, that is if the
+     * same message may be in several folders and is then extracted only once
+     * and referenced in the others.
+     * <p>
+     * The mails list has then a ReferencedMessage column. Default is false,
+     * subclasses override it for such stores.
+     *
+     * @return true, if messages are de-duplicated
+     */
+    public boolean isDeduplicatingMessages() {
+        return false;
+    }
+
     private int uniqID = 1;
 
     /**
@@ -508,7 +783,9 @@ public abstract class StoreExtractor {
     public int getUniqID() {
         int id;
         if (rootStoreExtractor == null)
-            id = uniqID++;
+            synchronized (this) {
+                id = uniqID++;
+            }
         else
             id = rootStoreExtractor.getUniqID();
         return id;
@@ -517,14 +794,14 @@ public abstract class StoreExtractor {
     /**
      * Increment the count of messages directly in the store (not attached...).
      */
-    public void incMessageCount() {
+    public synchronized void incMessageCount() {
         messageCount++;
     }
 
     /**
      * Get the count of messages directly in the store (not attached...).
      */
-    public int getMessageCount() {
+    public synchronized int getMessageCount() {
         return messageCount;
     }
 
@@ -533,7 +810,7 @@ public abstract class StoreExtractor {
      *
      * @param inc the increment
      */
-    public void addTotalElementsCount(int inc) {
+    public synchronized void addTotalElementsCount(int inc) {
         totalElementsCount += inc;
     }
 
@@ -542,7 +819,7 @@ public abstract class StoreExtractor {
      *
      * @return the elements count
      */
-    public int getTotalElementsCount() {
+    public synchronized int getTotalElementsCount() {
         return totalElementsCount;
     }
 
@@ -551,7 +828,7 @@ public abstract class StoreExtractor {
      *
      * @param inc the inc
      */
-    public void addTotalAttachedMessagesCount(int inc) {
+    public synchronized void addTotalAttachedMessagesCount(int inc) {
         totalAttachedMessagesCount += inc;
     }
 
@@ -560,14 +837,14 @@ public abstract class StoreExtractor {
      *
      * @return the message count
      */
-    public int getTotalAttachedMessagesCount() {
+    public synchronized int getTotalAttachedMessagesCount() {
         return totalAttachedMessagesCount;
     }
 
     /**
      * Increment the folders total count.
      */
-    public void incTotalFoldersCount() {
+    public synchronized void incTotalFoldersCount() {
         totalFoldersCount++;
     }
 
@@ -585,7 +862,7 @@ public abstract class StoreExtractor {
      *
      * @param elementSize the element size
      */
-    public void addTotalRawSize(long elementSize) {
+    public synchronized void addTotalRawSize(long elementSize) {
         totalRawSize += elementSize;
     }
 
@@ -597,7 +874,7 @@ public abstract class StoreExtractor {
      *
      * @return the total raw size
      */
-    public long getTotalRawSize() {
+    public synchronized long getTotalRawSize() {
         return totalRawSize;
     }
 
@@ -684,7 +961,6 @@ public abstract class StoreExtractor {
     /**
      * Create an internal depth store extractor as a factory creator.
      */
-    @SuppressWarnings({"unchecked", "rawtypes"})
     private static StoreExtractor createInternalStoreExtractor(String urlString, String storeFolder,
                                                                String destPathString, StoreExtractorOptions options, StoreExtractor
                                                                        rootStoreExtractor, MailExtractProgressLogger logger
@@ -699,24 +975,20 @@ public abstract class StoreExtractor {
         if ((storeFolder != null) && (!storeFolder.isEmpty()) && (storeFolder.substring(0, 1) == File.separator))
             storeFolder = storeFolder.substring(1);
 
-        // find the store extractor constructor for scheme in URL
-        Class storeExtractorClass = StoreExtractor.schemeStoreExtractorClassMap.get(url.getProtocol());
-        if (storeExtractorClass == null) {
+        // find the store extractor factory for scheme in URL
+        StoreExtractorFactory factory = StoreExtractor.schemeStoreExtractorFactoryMap.get(url.getProtocol());
+        if (factory == null) {
             throw new ExtractionException("mailextract: Unknown store type=" + url.getProtocol());
         } else {
             try {
-                store = (StoreExtractor) storeExtractorClass.getConstructor(String.class, String.class, String.class,
-                        StoreExtractorOptions.class, StoreExtractor.class, MailExtractProgressLogger.class)
-                        .newInstance(urlString, storeFolder, destPathString, options, rootStoreExtractor, logger);
-            } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | NoSuchMethodException
-                    | SecurityException e) {
-                throw new ExtractionException("mailextract: Dysfonctional store type=" + url.getProtocol());
-            } catch (InvocationTargetException e) {
-                Throwable te = e.getCause();
-                if (te instanceof ExtractionException)
-                    throw (ExtractionException) te;
+                store = factory.createStoreExtractor(urlString, storeFolder, destPathString, options,
+                        rootStoreExtractor, logger);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 throw new ExtractionException("mailextract: Dysfonctional store type=" + url.getProtocol());
             }
+            if (store == null)
+                throw new ExtractionException("mailextract: Dysfonctional store type=" + url.getProtocol());
         }
         return store;
 
@@ -764,6 +1036,8 @@ public abstract class StoreExtractor {
             rootNode.addMetadata("EndDate", DateRange.getISODateString(rootAnalysisMBFolder.dateRange.getEnd()), true);
         }
         rootNode.write();
+        exportMetrics();
+        writeTopItemsReport();
 
         Instant end = Instant.now();
         String size = Double.toString(Math.round(((double) getTotalRawSize()) * 100.0 / (1024.0 * 1024.0)) / 100.0);
@@ -789,10 +1063,11 @@ public abstract class StoreExtractor {
      * List all folders from the defined root folder (no drop options).
      *
      * <p>
-     * Warning: listing with detailed information is a potentially expensive
-     * operation, especially when accessing distant account, as all elements are
-     * inspected (in the case of a distant account that mean also
-     * downloaded...).
+     * Warning: listing with detailed information inspects all elements
+     * headers, and with deep statistics option all elements are fully
+     * analyzed, which is a potentially expensive operation, especially when
+     * accessing distant account (in the case of a distant account that mean
+     * also downloaded...).
      *
      * @param stats true if detailed information (number and raw size of elements
      *              in each folder) is asked for
@@ -809,6 +1084,8 @@ public abstract class StoreExtractor {
         getProgressLogger().progressLog(GLOBAL, "Listing processed");
 
         rootAnalysisMBFolder.listFolder(stats);
+        exportMetrics();
+        writeTopItemsReport();
 
         Instant end = Instant.now();
         System.out.println("--------------------------------------------------------------------------------");
@@ -817,15 +1094,53 @@ public abstract class StoreExtractor {
         time = String.format("%dm%02ds", d.toMinutes(), d.minusMinutes(d.toMinutes()).getSeconds());
         tmp = String.format("Terminated in %s listing %d folders", time, getFolderTotalCount());
         if (stats) {
-            tmp += String.format(" with %d messages, for %.2f MBytes, and %d attached messages",
-                    getTotalElementsCount(), ((double) getTotalRawSize()) / (1024.0 * 1024.0),
-                    getTotalAttachedMessagesCount());
+            tmp += String.format(" with %d messages, for %.2f MBytes", getTotalElementsCount(),
+                    ((double) getTotalRawSize()) / (1024.0 * 1024.0));
+            if (options.deepStatistics)
+                tmp += String.format(", and %d attached messages", getTotalAttachedMessagesCount());
         }
 
         getProgressLogger().progressLog(GLOBAL, tmp);
         System.out.println(tmp);
     }
 
+    /**
+     * Estimate the extraction output size, files count, attachments volume
+     * and duration by sampling messages in all folders from the defined root
+     * folder.
+     * <p>
+     * The sample rate and the threads count are defined in options. Sampled
+     * messages are analyzed and extracted without writing, so the estimation
+     * costs about the sample rate of an extraction.
+     *
+     * @throws ExtractionException Any unrecoverable extraction exception (access trouble, major
+     *                             format problems...)
+     */
+    public void estimateAllFolders() throws ExtractionException, InterruptedException {
+        String time, tmp;
+        Duration d;
+
+        Instant start = Instant.now();
+
+        writeTargetLog();
+        getProgressLogger().progressLog(GLOBAL, "Estimation processed");
+
+        ExtractionEstimator estimator = new ExtractionEstimator(options, System.nanoTime());
+        rootAnalysisMBFolder.estimateFolder(estimator);
+        exportMetrics();
+
+        Instant end = Instant.now();
+        System.out.println("--------------------------------------------------------------------------------");
+
+        d = Duration.between(start, end);
+        time = String.format("%dm%02ds", d.toMinutes(), d.minusMinutes(d.toMinutes()).getSeconds());
+        tmp = estimator.getReport() + System.lineSeparator()
+                + String.format("Terminated in %s sampling %d folders", time, getFolderTotalCount());
+
+        getProgressLogger().progressLog(GLOBAL, tmp);
+        System.out.println(tmp);
+    }
+
     /**
      * Do all end tasks for the StoreExtractor, like deleting temporary files.
      *
@@ -884,14 +1199,18 @@ public abstract class StoreExtractor {
     abstract public boolean canExtractObjectsLists();
 
     /**
-     * Gets the scheme if this content can be managed by this StoreExtractor, or
-     * null
+     * Gets the scheme if this content can be managed by a subscribed
+     * StoreExtractor, or null.
+     * <p>
+     * This is the scheme of the longest subscribed magic number beginning the
+     * content. Generic formats, as OLE2 compound files for msg, may have to be
+     * confirmed by further analysis.
      *
      * @param content the content
      * @return the scheme
      */
     public static String getVerifiedScheme(byte[] content) {
-        return null;
+        return magicNumberTrie.match(content);
     }
 
     /**
@@ -900,7 +1219,7 @@ public abstract class StoreExtractor {
      *
      * @return the print stream
      */
-    public PrintStream getGlobalListPS(String listName) {
+    public synchronized PrintStream getGlobalListPS(String listName) {
         return globalListsPSMap.get(listName);
     }
 }
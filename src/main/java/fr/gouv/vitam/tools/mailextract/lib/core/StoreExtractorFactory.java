@@ -0,0 +1,81 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.core;
+
+import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
+
+/**
+ * Factory creating the store extractors of a scheme.
+ * <p>
+ * A factory is subscribed with a scheme by
+ * {@link StoreExtractor#addExtractionRelation(String, String, boolean, StoreExtractorFactory)
+ * StoreExtractor.addExtractionRelation} and directly calls the store extractor
+ * constructors, so that no reflection is needed when a store or an embedded
+ * store is extracted. A store extractor returns null for the kinds of
+ * creation it doesn't support, and the store is then reported as
+ * dysfonctional.
+ */
+public interface StoreExtractorFactory {
+
+    /**
+     * Create a store extractor from an URL.
+     *
+     * @param urlString          the url string
+     * @param folder             the path of the extracted folder in the store
+     * @param destPathString     the path for the extraction directory
+     * @param options            the options
+     * @param rootStoreExtractor the root store extractor, or null for a root one
+     * @param logger             logger used
+     * @return the store extractor, or null if this store type can't be extracted from an url
+     * @throws ExtractionException  Any unrecoverable extraction exception (access trouble, major format problems...)
+     * @throws InterruptedException the interrupted exception
+     */
+    StoreExtractor createStoreExtractor(String urlString, String folder, String destPathString,
+                                        StoreExtractorOptions options, StoreExtractor rootStoreExtractor,
+                                        MailExtractProgressLogger logger)
+            throws ExtractionException, InterruptedException;
+
+    /**
+     * Create a store extractor for a store embedded in a message attachment.
+     *
+     * @param attachment         the attachment
+     * @param rootNode           the ArchiveUnit node representing this container
+     * @param options            the options
+     * @param rootStoreExtractor the father store extractor
+     * @param logger             logger used
+     * @return the store extractor, or null if this store type can't be extracted from an attachment
+     * @throws ExtractionException  Any unrecoverable extraction exception (access trouble, major format problems...)
+     * @throws InterruptedException the interrupted exception
+     */
+    StoreExtractor createEmbeddedStoreExtractor(StoreMessageAttachment attachment, ArchiveUnit rootNode,
+                                                StoreExtractorOptions options, StoreExtractor rootStoreExtractor,
+                                                MailExtractProgressLogger logger)
+            throws ExtractionException, InterruptedException;
+}
@@ -27,6 +27,10 @@
 
 package fr.gouv.vitam.tools.mailextract.lib.core;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
 /**
  * StoreExtractorOptions class for all extraction options.
  */
@@ -68,6 +72,69 @@ public class StoreExtractorOptions {
 	/** The model of extraction on disk. */
 	public int model;
 
+	/** The export metrics files (prometheus and json) flag. */
+	public boolean exportMetrics;
+
+	/** The metrics export period in seconds. */
+	public int metricsExportPeriod;
+
+	/** The number of items in each top items report list, 0 if no report. */
+	public int topItemsReportSize;
+
+	/** The deep statistics flag, full analysis of messages when listing with statistics. */
+	public boolean deepStatistics;
+
+	/** The Google Takeout mbox flag, folders are built from X-Gmail-Labels headers. */
+	public boolean takeoutLabels;
+
+	/** The folders include patterns, all folders if empty (see ExtractionFilter). */
+	public List<String> includeFolders;
+
+	/** The folders exclude patterns (see ExtractionFilter). */
+	public List<String> excludeFolders;
+
+	/** The sent date range start, inclusive, or null if none. */
+	public Date startDate;
+
+	/** The sent date range end, exclusive, or null if none. */
+	public Date endDate;
+
+	/** The fraction of messages sampled in each folder for estimation. */
+	public double estimateSampleRate;
+
+	/** The threads count for which the extraction duration is estimated. */
+	public int estimateThreads;
+
+	/**
+	 * The maximum size in characters of the text content derived from an html
+	 * body, or 0 for no limit.
+	 */
+	public int htmlTextMaxSize;
+
+	/**
+	 * The skip redundant RTF flag, the RTF body of Microsoft messages is then
+	 * not read when there's a text or html body.
+	 */
+	public boolean skipRedundantRTF;
+
+	/**
+	 * The threads count extracting in parallel the messages of each pst
+	 * folder, 1 for a sequential extraction.
+	 */
+	public int pstThreads;
+
+	/**
+	 * The threads count extracting in parallel the message files of a msg
+	 * directory, 0 for all the available processors.
+	 */
+	public int msgThreads;
+
+	/**
+	 * The directory where the messages offsets of scanned mbox and Thunderbird
+	 * files are cached, null for no cache.
+	 */
+	public String mboxIndexCacheDirectory;
+
 	/**
 	 * Instantiates a new store extractor options.
 	 */
@@ -83,6 +150,22 @@ public class StoreExtractorOptions {
 		extractFileTextMetadata = false;
 		defaultCharsetName="windows-1252";
 		model = 2;
+		exportMetrics = false;
+		metricsExportPeriod = 60;
+		topItemsReportSize = 0;
+		deepStatistics = false;
+		takeoutLabels = false;
+		includeFolders = new ArrayList<String>();
+		excludeFolders = new ArrayList<String>();
+		startDate = null;
+		endDate = null;
+		estimateSampleRate = 0.01;
+		estimateThreads = 1;
+		htmlTextMaxSize = 0;
+		skipRedundantRTF = false;
+		pstThreads = 1;
+		msgThreads = 0;
+		mboxIndexCacheDirectory = null;
 	}
 
 	/**
@@ -104,6 +187,7 @@ public class StoreExtractorOptions {
 			int namesLength, String defaultCharsetName, boolean extractObjectsLists, boolean extractMessageTextFile,
                                  boolean extractMessageTextMetadata,
 			boolean extractFileTextFile, boolean extractFileTextMetadata, int model) {
+		this();
 		this.keepOnlyDeepEmptyFolders = keepOnlyDeepEmptyFolders;
 		this.dropEmptyFolders = dropEmptyFolders;
 		this.warningMsgProblem = warningMsgProblem;
@@ -30,6 +30,7 @@ package fr.gouv.vitam.tools.mailextract.lib.core;
 import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
 import fr.gouv.vitam.tools.mailextract.lib.utils.DateRange;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractEvents;
 import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
 
 import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger.FOLDER;
@@ -181,7 +182,7 @@ public abstract class StoreFolder {
 	/**
 	 * Increment folder elements count.
 	 */
-	public void incFolderElementsCount() {
+	public synchronized void incFolderElementsCount() {
 		folderElementsCount++;
 	}
 
@@ -190,14 +191,14 @@ public abstract class StoreFolder {
 	 *
 	 * @return the folder elements count
 	 */
-	public int getFolderElementsCount() {
+	public synchronized int getFolderElementsCount() {
 		return folderElementsCount;
 	}
 
 	/**
 	 * Increment the folder subfolders count.
 	 */
-	public void incFolderSubFoldersCount() {
+	public synchronized void incFolderSubFoldersCount() {
 		folderSubFoldersCount++;
 	}
 
@@ -206,7 +207,7 @@ public abstract class StoreFolder {
 	 *
 	 * @return the folder sub folders count
 	 */
-	public int getFolderSubFoldersCount() {
+	public synchronized int getFolderSubFoldersCount() {
 		return folderSubFoldersCount;
 	}
 
@@ -216,7 +217,7 @@ public abstract class StoreFolder {
 	 * @param rawSize
 	 *            the elements raw size
 	 */
-	public void addFolderElementsRawSize(long rawSize) {
+	public synchronized void addFolderElementsRawSize(long rawSize) {
 		folderElementsRawSize += rawSize;
 	}
 
@@ -228,7 +229,7 @@ public abstract class StoreFolder {
 	 *
 	 * @return the folder elements raw size
 	 */
-	public long getFolderElementsRawSize() {
+	public synchronized long getFolderElementsRawSize() {
 		return folderElementsRawSize;
 	}
 
@@ -265,6 +266,8 @@ public abstract class StoreFolder {
 	 *             format problems...)
 	 */
 	public void extractFolderAsRoot(boolean writeFlag) throws ExtractionException, InterruptedException {
+		Object event = MailExtractEvents.beginFolder();
+
 		// log process on folder
 		logFolder("mailextract: Extract folder /");
 		// extract all elements in the folder to the unit directory
@@ -275,6 +278,8 @@ public abstract class StoreFolder {
 		storeExtractor.incTotalFoldersCount();
 		storeExtractor.addTotalElementsCount(getFolderElementsCount());
 		storeExtractor.addTotalRawSize(getFolderElementsRawSize());
+		if (MailExtractEvents.end(event))
+			MailExtractEvents.commitFolder(event, "/", folderElementsCount, folderElementsRawSize);
 	}
 
 	/**
@@ -297,6 +302,13 @@ public abstract class StoreFolder {
 	 */
 	public boolean extractFolder(int level, boolean writeFlag) throws ExtractionException, InterruptedException {
 		boolean result = false;
+		Object event = MailExtractEvents.beginFolder();
+
+		// skip not selected folders before opening them
+		if (!storeExtractor.getFilter().acceptFolderTree(getFullName())) {
+			logFolder("mailextract: Not selected folder " + getFullName() + " is skipped");
+			return false;
+		}
 
 		// log process on folder
 		logFolder("mailextract: Extract folder /" + getFullName());
@@ -325,6 +337,8 @@ public abstract class StoreFolder {
 		storeExtractor.incTotalFoldersCount();
 		storeExtractor.addTotalElementsCount(getFolderElementsCount());
 		storeExtractor.addTotalRawSize(getFolderElementsRawSize());
+		if (MailExtractEvents.end(event))
+			MailExtractEvents.commitFolder(event, "/" + getFullName(), folderElementsCount, folderElementsRawSize);
 
 		return result;
 	}
@@ -333,7 +347,7 @@ public abstract class StoreFolder {
 	private void extractFolderElements(boolean writeFlag) throws ExtractionException, InterruptedException {
 		folderElementsCount = 0;
 		folderElementsRawSize = 0;
-		if (hasElements())
+		if (hasElements() && storeExtractor.getFilter().acceptFolderElements(getFullName()))
 			doExtractFolderElements(writeFlag);
 	}
 
@@ -373,6 +387,64 @@ public abstract class StoreFolder {
 	 */
 	protected abstract void doExtractSubFolders(int level, boolean writeFlag) throws ExtractionException, InterruptedException;
 
+	/**
+	 * Estimate the extraction of all elements and subfolders, by sampling.
+	 * <p>
+	 * The folders and elements selection is the extraction one, and sampled
+	 * elements are given to the estimator.
+	 *
+	 * @param estimator
+	 *            the extraction estimator
+	 * @throws ExtractionException
+	 *             Any unrecoverable extraction exception (access trouble, major
+	 *             format problems...)
+	 */
+	public void estimateFolder(ExtractionEstimator estimator) throws ExtractionException, InterruptedException {
+		if (!storeExtractor.getFilter().acceptFolderTree(getFullName()))
+			return;
+		logFolder("mailextract: Estimate folder /" + getFullName());
+		if (hasElements() && storeExtractor.getFilter().acceptFolderElements(getFullName()))
+			doEstimateFolderElements(estimator);
+		if (hasSubfolders())
+			doEstimateSubFolders(estimator);
+		storeExtractor.incTotalFoldersCount();
+	}
+
+	/**
+	 * Estimate folder elements extraction (extractor specific).
+	 * <p>
+	 * It gets from {@link ExtractionEstimator#beginFolder beginFolder} the
+	 * elements to sample, analyzes and extracts them without writing, and gives
+	 * them to the estimator. Default implementation does nothing, for stores
+	 * which can't sample elements.
+	 *
+	 * @param estimator
+	 *            the extraction estimator
+	 * @throws ExtractionException
+	 *             Any unrecoverable extraction exception (access trouble, major
+	 *             format problems...)
+	 */
+	protected void doEstimateFolderElements(ExtractionEstimator estimator)
+			throws ExtractionException, InterruptedException {
+		logFolder("mailextract: No sampling available in folder " + getFullName());
+	}
+
+	/**
+	 * Estimate subfolders extraction (extractor specific).
+	 * <p>
+	 * It recursively call {@link #estimateFolder estimateFolder}. Default
+	 * implementation does nothing.
+	 *
+	 * @param estimator
+	 *            the extraction estimator
+	 * @throws ExtractionException
+	 *             Any unrecoverable extraction exception (access trouble, major
+	 *             format problems...)
+	 */
+	protected void doEstimateSubFolders(ExtractionEstimator estimator)
+			throws ExtractionException, InterruptedException {
+	}
+
 	/**
 	 * List all folders with or without statistics.
 	 * <p>
@@ -394,6 +466,8 @@ public abstract class StoreFolder {
 		fullName = getFullName();
 		if (fullName == null || fullName.isEmpty())
 			fullName = "";
+		if (!storeExtractor.getFilter().acceptFolderTree(fullName))
+			return;
 		// log process on folder
 		logFolder("mailextract: List folder /" + fullName);
 		if (stats) {
@@ -422,7 +496,7 @@ public abstract class StoreFolder {
 	private void listFolderElements(boolean stats) throws ExtractionException, InterruptedException {
 		folderElementsCount = 0;
 		folderElementsRawSize = 0;
-		if (hasElements())
+		if (hasElements() && storeExtractor.getFilter().acceptFolderElements(getFullName()))
 			doListFolderElements(stats);
 	}
 
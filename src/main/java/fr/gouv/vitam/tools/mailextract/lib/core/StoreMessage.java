@@ -28,23 +28,17 @@
 package fr.gouv.vitam.tools.mailextract.lib.core;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
-import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Properties;
-
-import javax.activation.DataHandler;
-import javax.mail.MessagingException;
-import javax.mail.Session;
-import javax.mail.internet.MimeBodyPart;
-import javax.mail.internet.MimeMessage;
-import javax.mail.internet.MimeMultipart;
-import javax.mail.internet.MimeUtility;
+import java.util.Map;
 
 import fr.gouv.vitam.tools.mailextract.lib.formattools.TikaExtractor;
 import fr.gouv.vitam.tools.mailextract.lib.formattools.rtf.HTMLFromRTFExtractor;
@@ -53,8 +47,11 @@ import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
 import fr.gouv.vitam.tools.mailextract.lib.nodes.MetadataPerson;
 import fr.gouv.vitam.tools.mailextract.lib.utils.DateRange;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionFilter;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractEvents;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractMetrics;
 import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
-import fr.gouv.vitam.tools.mailextract.lib.utils.RawDataSource;
+import fr.gouv.vitam.tools.mailextract.lib.utils.TopItemsReport;
 
 import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger.*;
 
@@ -66,7 +63,8 @@ import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogge
  * information. Each subclass has to be able to extract these informations from
  * a message.
  * <p>
- * It is able to generate a mime fake of the message, if not natively Mime.
+ * It is able to generate a mime fake of the message, if not natively Mime,
+ * which is streamed to the BinaryMaster object file (see {@link MimeFakeWriter}).
  * <ul>
  * <p>
  * Metadata information to collect in Vitam guidelines for mail extraction
@@ -122,9 +120,9 @@ public abstract class StoreMessage extends StoreElement {
     protected byte[] mimeContent;
 
     /**
-     * Mime fake if any, or null for mime source.
+     * Mime fake writer if any, or null for mime source.
      */
-    protected MimeMessage mimeFake;
+    private MimeFakeWriter mimeFakeWriter;
 
     /**
      * Different versions of the message body.
@@ -233,11 +231,28 @@ public abstract class StoreMessage extends StoreElement {
      */
     protected List<String> sender;
 
+    /**
+     * List of folder labels of the message, in stores where the same message
+     * is in several folders (Gmail labels...), null if none.
+     */
+    protected List<String> labels;
+
+    /**
+     * Archive Unit directory of the already extracted message referenced by
+     * this one, null if the message itself is extracted.
+     */
+    protected String referencedUnitPath;
+
     /**
      * Message ArchiveUnit.
      */
     public ArchiveUnit messageNode;
 
+    // processing start time and per stage durations, for top items report,
+    // stages durations being kept only if the report is active
+    private long creationNanos;
+    private Map<String, Long> stagesNanos;
+
     /**
      * Instantiates a new mail box message.
      *
@@ -245,6 +260,18 @@ public abstract class StoreMessage extends StoreElement {
      */
     protected StoreMessage(StoreFolder storeFolder) {
         this.storeFolder = storeFolder;
+        this.creationNanos = System.nanoTime();
+    }
+
+    /**
+     * Sets the folder labels of the message.
+     * <p>
+     * They are extracted as "Tag" metadata.
+     *
+     * @param labels the labels list
+     */
+    public void setLabels(List<String> labels) {
+        this.labels = labels;
     }
 
     /**
@@ -291,6 +318,15 @@ public abstract class StoreMessage extends StoreElement {
      * @return the mime content
      */
     public byte[] getMimeContent() {
+        if ((mimeContent == null) && (mimeFakeWriter != null)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try {
+                mimeFakeWriter.writeTo(baos);
+                mimeContent = baos.toByteArray();
+            } catch (IOException e) {
+                // no raw content
+            }
+        }
         return mimeContent;
     }
 
@@ -407,6 +443,28 @@ public abstract class StoreMessage extends StoreElement {
      */
     protected abstract void analyzeAttachments() throws InterruptedException;
 
+    // accumulate a stage duration in this message stages durations
+    private void addStageDuration(String stage, long durationNanos) {
+        if (!getStoreExtractor().getTopItemsReport().isActive())
+            return;
+        if (stagesNanos == null)
+            stagesNanos = new LinkedHashMap<String, Long>();
+        Long previous = stagesNanos.get(stage);
+        stagesNanos.put(stage, (previous == null ? durationNanos : previous + durationNanos));
+    }
+
+    // record a stage duration in metrics and in this message stages durations
+    private void recordStage(String stage, long startNanos) {
+        addStageDuration(stage, getStoreExtractor().getMetrics().observeSince(stage, startNanos) - startNanos);
+    }
+
+    // record the mime fake generation duration, the mime fake being generated
+    // when the message unit is written or sized
+    void recordMimeFakeDuration(long durationNanos) {
+        getStoreExtractor().getMetrics().observe(MailExtractMetrics.MIME_FAKE, durationNanos);
+        addStageDuration(MailExtractMetrics.MIME_FAKE, durationNanos);
+    }
+
     // change attachement type to store with the good scheme
     private void setStoreAttachment(StoreMessageAttachment a, String scheme) {
         a.attachmentStoreScheme = scheme;
@@ -416,33 +474,27 @@ public abstract class StoreMessage extends StoreElement {
     /**
      * Detect embedded store attachments not identified during parsing.
      * <p>
-     * It use for this, the list of mimetypes that can be treated by known store
-     * extractors. This list is constructed using
+     * It use for this, the magic numbers and the list of mimetypes that can be
+     * treated by known store extractors, Tika being called only when magic
+     * numbers are not conclusive (see {@link StoreAttachmentDetector}). This
+     * list is constructed using
      * {@link fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor#addExtractionRelation
      * StoreExtractor.addExtractionRelation}, and a default one is set calling
      * {@link fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor#initDefaultExtractors
      * StoreExtractor.initDefaultExtractors}
      */
     protected void detectStoreAttachments() {
-        String mimeType;
+        String scheme;
 
         if (attachments != null && !attachments.isEmpty()) {
             for (StoreMessageAttachment a : attachments) {
-                if ((a.attachmentType != StoreMessageAttachment.STORE_ATTACHMENT) && (a.attachmentContent != null)
-                        && (a.attachmentContent instanceof byte[])) {
+                if ((a.attachmentType != StoreMessageAttachment.STORE_ATTACHMENT) && a.hasBinaryContent()) {
                     try {
-                        mimeType = TikaExtractor.getInstance().getMimeType(a.getRawAttachmentContent());
-                        if (mimeType == null)
-                            continue;
-                        // if (mimeType.equals("application/vnd.ms-tnef"))
-                        // System.out.println("---------------------TNEF
-                        // detected");
-                        for (String mt : StoreExtractor.mimeTypeSchemeMap.keySet()) {
-                            if (mimeType.equals(mt)) {
-                                setStoreAttachment(a, StoreExtractor.mimeTypeSchemeMap.get(mt));
-                                break;
-                            }
-                        }
+                        long start = System.nanoTime();
+                        scheme = StoreAttachmentDetector.getStoreScheme(a);
+                        recordStage(MailExtractMetrics.TIKA_DETECT, start);
+                        if (scheme != null)
+                            setStoreAttachment(a, scheme);
                     } catch (ExtractionException e) {
                         // forget it
                     }
@@ -483,6 +535,9 @@ public abstract class StoreMessage extends StoreElement {
      *                             format problems...)
      */
     public void analyzeMessage() throws ExtractionException, InterruptedException {
+        Object event = MailExtractEvents.beginMessage();
+        long start = System.nanoTime();
+
         // header metadata extraction
         // * special global
         analyzeSubject();
@@ -512,7 +567,9 @@ public abstract class StoreMessage extends StoreElement {
 
         // content extraction
         analyzeBodies();
+        long optimizeStart = System.nanoTime();
         optimizeBodies();
+        recordStage(MailExtractMetrics.OPTIMIZE_BODIES, optimizeStart);
         analyzeAttachments();
 
         // try to get appointment information if any
@@ -523,6 +580,10 @@ public abstract class StoreMessage extends StoreElement {
 
         // no raw content, will be constructed at StoreMessage level
         mimeContent = getNativeMimeContent();
+
+        recordStage(MailExtractMetrics.ANALYZE_MESSAGE, start);
+        if (MailExtractEvents.end(event))
+            MailExtractEvents.commitMessage(event, "analyze", storeFolder.getFullName(), messageID, getMessageSize());
     }
 
     // get rid of useless beginning and ending spaces, carriage returns and
@@ -538,8 +599,9 @@ public abstract class StoreMessage extends StoreElement {
 
         try {
             // de-encapsulate TEXT and HTML from RTF if defined as encapsulated
-            if (((bodyContent[RTF_BODY] != null) && !bodyContent[RTF_BODY].isEmpty())) {
-                HTMLFromRTFExtractor htmlExtractor = new HTMLFromRTFExtractor(bodyContent[RTF_BODY]);
+            if (((bodyContent[RTF_BODY] != null) && !bodyContent[RTF_BODY].isEmpty())
+                    && HTMLFromRTFExtractor.isEncapsulatedRTF(bodyContent[RTF_BODY])) {
+                HTMLFromRTFExtractor htmlExtractor = HTMLFromRTFExtractor.getThreadExtractor(bodyContent[RTF_BODY]);
                 if (htmlExtractor.isEncapsulatedTEXTinRTF()) {
                     String result;
                     result = htmlExtractor.getDeEncapsulateHTMLFromRTF();
@@ -562,7 +624,8 @@ public abstract class StoreMessage extends StoreElement {
                         bodyContent[RTF_BODY] = null;
                     }
                 }
-
+                // don't retain the rtf body in the thread extractor
+                htmlExtractor.releaseInput();
             }
         } catch (ExtractionException e) {
             // forget bodies optimisation
@@ -596,6 +659,7 @@ public abstract class StoreMessage extends StoreElement {
     public final void extractMessage(boolean writeFlag) throws ExtractionException, InterruptedException {
         // String description = "[Vide]";
         String textContent = null;
+        Object event = MailExtractEvents.beginMessage();
 
         // create message unit
         if ((subject == null) || subject.trim().isEmpty())
@@ -613,6 +677,7 @@ public abstract class StoreMessage extends StoreElement {
         if (appointment != null) {
             messageNode.addMetadata("Description", "Rendez-vous", true);
         }
+        messageNode.addSameMetadataList("Tag", labels, false);
         messageNode.addPersonMetadata("Writer", from, false);
         messageNode.addPersonMetadataList("Addressee", recipientTo, false);
         messageNode.addPersonMetadataList("Recipient", recipientCc, false);
@@ -652,7 +717,8 @@ public abstract class StoreMessage extends StoreElement {
 
         // get text content from html if no textContent
         if ((textContent == null) && (bodyContent[HTML_BODY] != null))
-            textContent = HTMLTextExtractor.getInstance().act(bodyContent[HTML_BODY]);
+            textContent = HTMLTextExtractor.getInstance().act(bodyContent[HTML_BODY],
+                    getStoreExtractor().options.htmlTextMaxSize);
 
         // purify textContent and put in metadata
         if ((textContent != null) && (!textContent.trim().isEmpty())) {
@@ -671,31 +737,38 @@ public abstract class StoreMessage extends StoreElement {
         // if needed
         if (attachments != null && !attachments.isEmpty()) {
             // create all attachments subunits/object groups
+            long attachmentsStart = System.nanoTime();
             extractMessageAttachments(messageNode, writeFlag);
+            addStageDuration("extract_attachments", System.nanoTime() - attachmentsStart);
         }
 
-        // generate mime fake if needed and associated mimeContent
+        // prepare mime fake if needed, streamed to the object file at write
+        // where its generation is timed
         if (mimeContent == null) {
-            mimeFake = getMimeFake();
             try {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                mimeFake.writeTo(baos);
-                mimeContent = baos.toByteArray();
-            } catch (Exception e) {
+                mimeFakeWriter = new MimeFakeWriter(this);
+            } catch (ExtractionException e) {
+                logMessageWarning("mailextract: " + e.getMessage());
                 logMessageWarning("mailextract: Can't extract raw content");
+                mimeContent = "".getBytes();
             }
         }
-        if (mimeContent == null)
-            mimeContent = "".getBytes();
 
-        // add object binary master except if empty one
+        // add object binary master
         if (mimeContent != null)
             messageNode.addObject(mimeContent, messageID + ".eml", "BinaryMaster", 1);
+        else
+            messageNode.addObject(mimeFakeWriter, messageID + ".eml", "BinaryMaster", 1);
 
-        if (writeFlag)
+        if (writeFlag) {
+            long writeStart = System.nanoTime();
             messageNode.write();
+            addStageDuration(MailExtractMetrics.ARCHIVE_UNIT_WRITE, System.nanoTime() - writeStart);
+        }
 
         getStoreExtractor().incMessageCount();
+        getStoreExtractor().getMetrics().incCounter(MailExtractMetrics.MESSAGES);
+        getStoreExtractor().exportMetricsIfDue();
         if (getStoreExtractor().isRoot()) {
             getProgressLogger().progressLogIfStep(MESSAGE_GROUP, getStoreExtractor().getMessageCount(), "mailextract: " + getStoreExtractor().getMessageCount() + " extracted messages");
             getProgressLogger().progressLog(MESSAGE, "mailextract: Extracted message " + (subject == null ? "no subject" : subject));
@@ -705,6 +778,56 @@ public abstract class StoreMessage extends StoreElement {
 
         // write in csv list if asked for
         writeToMailsList(writeFlag);
+
+        if (MailExtractEvents.end(event))
+            MailExtractEvents.commitMessage(event, "extract", storeFolder.getFullName(), messageID, getMessageSize());
+    }
+
+    /**
+     * Create the Archive Unit structure referencing an already extracted
+     * message, and then write it on disk if writeFlag is true.
+     * <p>
+     * This is used for stores where the same message is in several folders
+     * (Gmail labels...), so that the message is extracted only once. Only the
+     * header information needed for the unit metadata (subject, message ID and
+     * dates) is analyzed, and bodies and attachments are neither fetched nor
+     * written again. The reference is also noted in the mails list.
+     *
+     * @param referencedUnitPath the already extracted message Archive Unit
+     *                           directory
+     * @param writeFlag          write or not flag (no write used for stats)
+     * @throws ExtractionException Any unrecoverable extraction exception (access trouble, major
+     *                             format problems...)
+     */
+    public final void extractMessageReference(String referencedUnitPath, boolean writeFlag)
+            throws ExtractionException, InterruptedException {
+        this.referencedUnitPath = referencedUnitPath;
+
+        analyzeSubject();
+        if ((subject == null) || subject.trim().isEmpty())
+            subject = "[Vide]";
+        analyzeMessageID();
+        if ((messageID == null) || messageID.isEmpty())
+            messageID = "[MessageIDVide]";
+        analyzeDates();
+
+        messageNode = new ArchiveUnit(storeFolder.storeExtractor, storeFolder.folderArchiveUnit, "Message", subject);
+        messageNode.addMetadata("DescriptionLevel", "Item", true);
+        messageNode.addMetadata("Title", subject, true);
+        messageNode.addMetadata("OriginatingSystemId", messageID, false);
+        messageNode.addMetadata("Description", "Référence à un message extrait dans un autre dossier", true);
+        messageNode.addSameMetadataList("Tag", labels, false);
+        messageNode.addReferenceMetadata(referencedUnitPath);
+        messageNode.addMetadata("SentDate", DateRange.getISODateString(sentDate), false);
+        messageNode.addMetadata("ReceivedDate", DateRange.getISODateString(receivedDate), false);
+
+        if (writeFlag)
+            messageNode.write();
+
+        getStoreExtractor().getMetrics().incCounter(MailExtractMetrics.MESSAGE_REFERENCES);
+        getProgressLogger().progressLog(MESSAGE_DETAILS, "mailextract: Referenced already extracted message " + subject);
+
+        writeToMailsList(writeFlag);
     }
 
     // the global mails list identifier
@@ -713,13 +836,16 @@ public abstract class StoreMessage extends StoreElement {
     /**
      * Print the header for mails list csv file
      *
-     * @param ps the dedicated print stream
+     * @param ps                    the dedicated print stream
+     * @param withReferencedMessage true if messages are de-duplicated, adding
+     *                              the ReferencedMessage column
      */
-    static protected void printMailCSVHeader(PrintStream ps) {
+    static protected void printMailCSVHeader(PrintStream ps, boolean withReferencedMessage) {
         ps.println("SentDate|ReceivedDate|FromName|FromAddress|" +
                 "ToList|Subject|MessageID|" +
                 "AttachmentList|ReplyTo|Folder|Size|Attached|" +
-                "AppointmentLocation|AppointmentBeginDate|AppointmentEndDate");
+                "AppointmentLocation|AppointmentBeginDate|AppointmentEndDate" +
+                (withReferencedMessage ? "|ReferencedMessage" : ""));
     }
 
     private void writeToMailsList(boolean writeFlag) throws InterruptedException {
@@ -727,52 +853,61 @@ public abstract class StoreMessage extends StoreElement {
             SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
             getStoreExtractor().initMailsListIfNeeded();
             PrintStream ps = storeFolder.getStoreExtractor().getGlobalListPS(EXTRACTED_MAILS_LIST);
-            try {
-                ps.format("\"%s\"|",
-                        (sentDate == null ? "" : sdf.format(sentDate)));
-                ps.format("\"%s\"|",
-                        (receivedDate == null ? "" : sdf.format(receivedDate)));
-                if ((from != null) && !from.isEmpty()) {
-                    MetadataPerson p = new MetadataPerson(from);
-                    ps.format("\"%s\"|\"%s\"|", filterHyphen(p.fullName),
-                            filterHyphen(p.identifier));
-                } else
-                    ps.print("\"\"|\"\"|");
-                ps.format("\"%s\"|",
-                        filterHyphen(personStringListToIndentifierString(recipientTo)));
-                ps.format("\"%s\"|", filterHyphen(subject));
-                ps.format("\"%s\"|", filterHyphen(messageID));
-                ps.format("\"%s\"|", filterHyphen(attachmentsNamesList()));
-                if ((replyTo == null) || replyTo.isEmpty())
-                    ps.format("\"\"|");
-                else {
-                    MetadataPerson p = new MetadataPerson(replyTo.get(0));
-                    ps.format("\"%s\"|", filterHyphen(p.identifier));
-                }
-                ps.format("\"%s\"|", filterHyphen(storeFolder.getFullName()));
-                ps.format("\"%d\"|", this.getMessageSize());
-                if (!storeFolder.getStoreExtractor().isRoot())
-                    ps.format("\"Attached\"");
-                if (appointment != null) {
-                    String bdString, edString;
-                    if (appointment.beginDate != null)
-                        bdString = DateTimeFormatter.ISO_DATE_TIME.format(appointment.beginDate);
-                    else
-                        bdString = "[Date/HeureInconnues]";
-                    if (appointment.endDate != null)
-                        edString = DateTimeFormatter.ISO_DATE_TIME.format(appointment.endDate);
-                    else
-                        edString = "[Date/HeureInconnues]";
-                    ps.format("|\"%s\"|\"%s\"|\"%s\"",
-                            filterHyphen(appointment.location), bdString, edString);
-                } else {
-                    ps.format("|||", this.getMessageSize());
+            // records written by concurrent extraction threads must not interleave
+            synchronized (ps) {
+                try {
+                    ps.format("\"%s\"|",
+                            (sentDate == null ? "" : sdf.format(sentDate)));
+                    ps.format("\"%s\"|",
+                            (receivedDate == null ? "" : sdf.format(receivedDate)));
+                    if ((from != null) && !from.isEmpty()) {
+                        MetadataPerson p = new MetadataPerson(from);
+                        ps.format("\"%s\"|\"%s\"|", filterHyphen(p.fullName),
+                                filterHyphen(p.identifier));
+                    } else
+                        ps.print("\"\"|\"\"|");
+                    ps.format("\"%s\"|",
+                            filterHyphen(personStringListToIndentifierString(recipientTo)));
+                    ps.format("\"%s\"|", filterHyphen(subject));
+                    ps.format("\"%s\"|", filterHyphen(messageID));
+                    ps.format("\"%s\"|", filterHyphen(attachmentsNamesList()));
+                    if ((replyTo == null) || replyTo.isEmpty())
+                        ps.format("\"\"|");
+                    else {
+                        MetadataPerson p = new MetadataPerson(replyTo.get(0));
+                        ps.format("\"%s\"|", filterHyphen(p.identifier));
+                    }
+                    ps.format("\"%s\"|", filterHyphen(storeFolder.getFullName()));
+                    ps.format("\"%d\"|", this.getMessageSize());
+                    if (!storeFolder.getStoreExtractor().isRoot())
+                        ps.format("\"Attached\"");
+                    if (appointment != null) {
+                        String bdString, edString;
+                        if (appointment.beginDate != null)
+                            bdString = DateTimeFormatter.ISO_DATE_TIME.format(appointment.beginDate);
+                        else
+                            bdString = "[Date/HeureInconnues]";
+                        if (appointment.endDate != null)
+                            edString = DateTimeFormatter.ISO_DATE_TIME.format(appointment.endDate);
+                        else
+                            edString = "[Date/HeureInconnues]";
+                        ps.format("|\"%s\"|\"%s\"|\"%s\"",
+                                filterHyphen(appointment.location), bdString, edString);
+                    } else {
+                        ps.format("|||", this.getMessageSize());
+                    }
+                    if (getStoreExtractor().isDeduplicatingMessages()) {
+                        if (referencedUnitPath == null)
+                            ps.print("|");
+                        else
+                            ps.format("|\"%s\"", filterHyphen(referencedUnitPath));
+                    }
+                    ps.println("");
+                    ps.flush();
+                } catch (Exception e) {
+                    getProgressLogger().logException(e);
+                    logMessageWarning("mailextract: Can't write in mails csv list");
                 }
-                ps.println("");
-                ps.flush();
-            } catch (Exception e) {
-                getProgressLogger().logException(e);
-                logMessageWarning("mailextract: Can't write in mails csv list");
             }
         }
     }
@@ -818,9 +953,12 @@ public abstract class StoreMessage extends StoreElement {
     /**
      * Extract a file or inline message attachment.
      */
-    private final void extractFileOrInlineAttachment(ArchiveUnit messageNode, StoreMessageAttachment attachment,
+    private final void extractFileOrInlineAttachment(ArchiveUnit messageNode, final StoreMessageAttachment attachment,
                                                      boolean writeFlag) throws ExtractionException, InterruptedException {
         ArchiveUnit attachmentNode;
+        long attachmentStart = System.nanoTime();
+        TopItemsReport report = getStoreExtractor().getTopItemsReport();
+        Map<String, Long> attachmentStagesNanos = (report.isActive() ? new LinkedHashMap<String, Long>() : null);
 
         if ((attachment.name == null) || attachment.name.isEmpty())
             attachment.name = "[Vide]";
@@ -844,14 +982,31 @@ public abstract class StoreMessage extends StoreElement {
         if (date != null)
             attachmentNode.addMetadata("CreatedDate", DateRange.getISODateString(attachment.creationDate), true);
 
-        // Raw object extraction
-        attachmentNode.addObject(attachment.getRawAttachmentContent(), attachment.name, "BinaryMaster", 1);
+        // Raw object extraction, streamed from the store at write if not in memory
+        if (attachment.attachmentContent instanceof LazyAttachmentContent)
+            attachmentNode.addObject(new ArchiveUnit.ContentWriter() {
+                @Override
+                public void writeTo(OutputStream os) throws IOException {
+                    attachment.copyRawAttachmentContent(os);
+                }
+            }, attachment.name, "BinaryMaster", 1);
+        else
+            attachmentNode.addObject(attachment.getRawAttachmentContent(), attachment.name, "BinaryMaster", 1);
 
         // Text object extraction
         String textExtract = null;
         if (getStoreExtractor().options.extractFileTextFile || getStoreExtractor().options.extractFileTextMetadata)
             try {
-                textExtract = TikaExtractor.getInstance().extractTextFromBinary(attachment.getRawAttachmentContent());
+                long start = System.nanoTime();
+                try (InputStream is = attachment.getRawAttachmentInputStream()) {
+                    textExtract = TikaExtractor.getInstance().extractTextFromStream(is,
+                            attachment.getRawAttachmentSize());
+                } catch (IOException e) {
+                    // closing problem, text already extracted
+                }
+                long end = getStoreExtractor().getMetrics().observeSince(MailExtractMetrics.TIKA_EXTRACT, start);
+                if (attachmentStagesNanos != null)
+                    attachmentStagesNanos.put(MailExtractMetrics.TIKA_EXTRACT, end - start);
             } catch (ExtractionException ee) {
                 this.getProgressLogger().progressLog(MESSAGE_DETAILS, "mailextract: Can't extract text content from attachment " + attachment.name);
                 this.getProgressLogger().logException(ee);
@@ -866,21 +1021,30 @@ public abstract class StoreMessage extends StoreElement {
             attachmentNode.addMetadata("TextContent", purifyMetadataText(textExtract), true);
         }
 
-        if (writeFlag)
+        if (writeFlag) {
+            long writeStart = System.nanoTime();
             attachmentNode.write();
+            if (attachmentStagesNanos != null)
+                attachmentStagesNanos.put(MailExtractMetrics.ARCHIVE_UNIT_WRITE, System.nanoTime() - writeStart);
+        }
+        getStoreExtractor().getMetrics().incCounter(MailExtractMetrics.ATTACHMENTS);
+
+        if (report.isActive())
+            report.addAttachment(new TopItemsReport.Item(storeFolder.getFullName(), messageID, attachment.name,
+                    attachment.getRawAttachmentSize(), System.nanoTime() - attachmentStart,
+                    attachmentStagesNanos));
     }
 
     /**
      * Extract a store attachment
      */
-    @SuppressWarnings({"unchecked", "rawtypes"})
     private final void extractStoreAttachment(ArchiveUnit rootNode, DateRange attachedMessagedateRange,
                                               StoreMessageAttachment a, boolean writeFlag) throws ExtractionException, InterruptedException {
         StoreExtractor extractor;
         Boolean isContainerScheme = false;
 
-        Class storeExtractorClass = StoreExtractor.schemeStoreExtractorClassMap.get(a.attachmentStoreScheme);
-        if (storeExtractorClass == null) {
+        StoreExtractorFactory factory = StoreExtractor.schemeStoreExtractorFactoryMap.get(a.attachmentStoreScheme);
+        if (factory == null) {
             logMessageWarning("mailextract: Unknown embedded store type=" + a.attachmentStoreScheme
                     + " , extracting unit in path " + rootNode.getFullName());
             extractor = null;
@@ -896,26 +1060,18 @@ public abstract class StoreMessage extends StoreElement {
                         "Extraction d'un conteneur " + a.attachmentStoreScheme + (a.name == null ? "" : " " + a.name),
                         true);
             }
-            try {
-                extractor = (StoreExtractor) storeExtractorClass
-                        .getConstructor(StoreMessageAttachment.class, ArchiveUnit.class, StoreExtractorOptions.class,
-                                StoreExtractor.class, MailExtractProgressLogger.class)
-                        .newInstance(a, rootNode, getStoreExtractor().options, getStoreExtractor(), getProgressLogger());
-            } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | NoSuchMethodException
-                    | SecurityException e) {
+            // store extractors work on the content in memory
+            if (a.attachmentContent instanceof LazyAttachmentContent)
+                a.attachmentContent = a.getRawAttachmentContent();
+            extractor = factory.createEmbeddedStoreExtractor(a, rootNode, getStoreExtractor().options,
+                    getStoreExtractor(), getProgressLogger());
+            if (extractor == null)
                 logMessageWarning("mailextract: Dysfonctional embedded store type=" + a.attachmentStoreScheme
                         + " , extracting unit in path " + rootNode.getFullName());
-                extractor = null;
-            } catch (InvocationTargetException e) {
-                Throwable te = e.getCause();
-                if (te instanceof ExtractionException)
-                    throw (ExtractionException) te;
-                logMessageWarning("mailextract: Dysfonctional embedded store type=" + a.attachmentStoreScheme
-                        + " , extracting unit in path " + rootNode.getFullName());
-                extractor = null;
-            }
         }
         if (extractor != null) {
+            Object event = MailExtractEvents.beginNestedStore();
+            getStoreExtractor().getMetrics().incCounter(MailExtractMetrics.NESTED_STORES);
             extractor.writeTargetLog();
             extractor.getRootFolder().extractFolderAsRoot(writeFlag);
             getStoreExtractor().addTotalAttachedMessagesCount(
@@ -930,6 +1086,9 @@ public abstract class StoreMessage extends StoreElement {
             }
             if (writeFlag)
                 rootNode.write();
+            if (MailExtractEvents.end(event))
+                MailExtractEvents.commitNestedStore(event, a.attachmentStoreScheme, a.name, storeFolder.getFullName(),
+                        (a.attachmentContent instanceof byte[] ? ((byte[]) a.attachmentContent).length : -1));
         }
     }
 
@@ -978,314 +1137,59 @@ public abstract class StoreMessage extends StoreElement {
      */
     public void countMessage() throws ExtractionException, InterruptedException {
         // accumulate in folder statistics
+        long size = getMessageSize();
         storeFolder.incFolderElementsCount();
-        storeFolder.addFolderElementsRawSize(getMessageSize());
+        storeFolder.addFolderElementsRawSize(size);
+        getStoreExtractor().getMetrics().addCounter(MailExtractMetrics.BYTES_READ, size);
+
+        TopItemsReport report = getStoreExtractor().getTopItemsReport();
+        if (report.isActive())
+            report.addMessage(new TopItemsReport.Item(storeFolder.getFullName(), messageID, subject, size,
+                    System.nanoTime() - creationNanos,
+                    (stagesNanos == null ? Collections.<String, Long>emptyMap() : stagesNanos)));
     }
 
     /**
-     * Gets the mime fake.
+     * Analyze only the message information needed for listing statistics,
+     * without bodies, attachments or mime content decoding.
+     * <p>
+     * The message size is then given by {@link #getMessageSize getMessageSize}
+     * from the store structure. Default implementation only analyzes dates,
+     * subclasses can override it with a cheaper headers access.
      *
-     * @return the mime fake
+     * @throws ExtractionException Any unrecoverable extraction exception (access trouble, major
+     *                             format problems...)
      */
-    public MimeMessage getMimeFake() throws InterruptedException {
-        MimeMessage mime = new NoUpdateMimeMessage(Session.getDefaultInstance(new Properties()));
-        try {
-            buildMimeHeader(mime);
-            buildMimePart(mime);
-            mime.saveChanges();
-        } catch (MessagingException e) {
-            logMessageWarning("mailextract: Unable to generate mime fake ");
-            mime = null;
-        } catch (ExtractionException e) {
-            logMessageWarning("mailextract: " + e.getMessage());
-            mime = null;
-        }
-        return mime;
-    }
-
-    private static void setAddressList(MimeMessage mime, String tag, List<String> addressList)
-            throws MessagingException, UnsupportedEncodingException {
-        if ((addressList != null) && (!addressList.isEmpty())) {
-            String value = "";
-            int countline = 0;
-            for (String tmp : addressList) {
-                // 80 characters lines
-                tmp = MimeUtility.encodeText(tmp, "UTF-8", "Q");
-                if (countline + tmp.length() > 80) {
-                    value += "\n\t";
-                    countline = 1;
-                } else
-                    countline += tmp.length();
-                value += MimeUtility.encodeText(tmp, "UTF-8", "Q") + ",";
-            }
-            value = value.substring(0, value.length() - 1);
-            mime.setHeader(tag, value);
-        }
-    }
-
-    private void buildMimeHeader(MimeMessage mime) throws ExtractionException {
-        try {
-            // put all know headers, they will be change by the specific ones
-            if ((mailHeader != null) && (mailHeader.size() > 0)) {
-                String tag, value;
-                for (String tmp : mailHeader) {
-                    if (tmp.indexOf(':') < 0)
-                        continue;
-                    tag = tmp.substring(0, tmp.indexOf(':'));
-                    value = tmp.substring(tmp.indexOf(':') + 1);
-                    mime.setHeader(tag, value);
-                }
-            }
-
-            // Return-Path
-            if (returnPath != null)
-                mime.setHeader("Return-Path", MimeUtility.encodeText(returnPath, "UTF-8", "Q"));
-            // From
-            if (from != null)
-                mime.setHeader("From", MimeUtility.encodeText(from, "UTF-8", "Q"));
-            // To
-            if (recipientTo != null)
-                setAddressList(mime, "To", recipientTo);
-            // cc
-            if (recipientCc != null)
-                setAddressList(mime, "cc", recipientCc);
-            // bcc
-            if (recipientBcc != null)
-                setAddressList(mime, "bcc", recipientBcc);
-            // Reply-To
-            if (replyTo != null)
-                setAddressList(mime, "Reply-To", replyTo);
-            // Date, if null Date is deleted
-            mime.setSentDate(sentDate);
-            // Subject
-            if (subject != null)
-                mime.setSubject(MimeUtility.encodeText(subject, "UTF-8", "Q"));
-            // Message-ID
-            if (messageID != null)
-                mime.setHeader("Message-ID", MimeUtility.encodeText(messageID, "UTF-8", "Q"));
-            // In-Reply-To
-            if ((inReplyToUID != null) && (!inReplyToUID.isEmpty()))
-                mime.setHeader("In-Reply-To", MimeUtility.encodeText(inReplyToUID, "UTF-8", "Q"));
-
-        } catch (MessagingException | UnsupportedEncodingException e) {
-            throw new ExtractionException("Unable to generate mime header of message " + subject);
-        }
-    }
-
-    private void addAttachmentPart(MimeMultipart root, boolean isInline) throws ExtractionException {
-        try {
-            // build attach part
-            for (StoreMessageAttachment a : attachments) {
-                boolean thisIsInline = (a.attachmentType == StoreMessageAttachment.INLINE_ATTACHMENT);
-
-                if ((thisIsInline && isInline) || ((!thisIsInline) && (!isInline))) {
-                    MimeBodyPart attachPart = new MimeBodyPart();
-
-                    // set Content-ID
-                    String cidName = null;
-                    if ((a.contentID != null) && !a.contentID.trim().isEmpty()) {
-                        attachPart.setContentID("<" + a.contentID.trim() + ">");
-                        if (a.contentID.indexOf('@') < 0)
-                            cidName = a.contentID;
-                        else
-                            cidName = a.contentID.substring(0, a.contentID.indexOf('@'));
-                    } else
-                        cidName = "unknown";
-
-                    // set object and Content-Type
-                    String attachmentFilename = encodedFilename(a.name, a.mimeType, cidName);
-                    if ((a.mimeType == null) || (a.mimeType.isEmpty()))
-                        attachPart.setContent(a.getRawAttachmentContent(),
-                                "application/octet-stream; name=\"" + attachmentFilename + "\"");
-                    else {
-                        if (a.mimeType.startsWith("text")) {
-                            String s;
-                            s = new String(a.getRawAttachmentContent(), "UTF-8");
-                            attachPart.setContent(s, a.mimeType + "; name=\"" + attachmentFilename + "\"");
-                        } else if (a.mimeType.startsWith("message")) {
-                            // bypass datahandler as the rfc822 form is provided
-                            RawDataSource rds = new RawDataSource(a.getRawAttachmentContent(), a.mimeType,
-                                    attachmentFilename);
-                            DataHandler dh = new DataHandler(rds);
-                            attachPart.setDataHandler(dh);
-                        } else if (a.mimeType.startsWith("multipart")) {
-                            // wrong attachment type corrected to neutral application/octet-stream
-                            attachPart.setContent(a.getRawAttachmentContent(),
-                                    "application/octet-stream; name=\"" + attachmentFilename + "\"");
-                        } else {
-                            attachPart.setContent(a.getRawAttachmentContent(),
-                                    a.mimeType + "; name=\"" + attachmentFilename + "\"");
-                        }
-                    }
-                    // set Content-Disposition
-                    if (a.attachmentType == StoreMessageAttachment.INLINE_ATTACHMENT)
-                        attachPart.setDisposition("inline; filename=\"" + attachmentFilename + "\"");
-                    else
-                        attachPart.setDisposition("attachment; filename=\"" + attachmentFilename + "\"");
-                    root.addBodyPart(attachPart);
-                }
-            }
-        } catch (MessagingException | UnsupportedEncodingException e) {
-            throw new ExtractionException(
-                    "Unable to generate " + (isInline ? "inlines" : "attachments") + " of message " + subject);
-        }
-
-    }
-
-    private MimeMultipart newChild(MimeMultipart parent, String type) throws MessagingException {
-        MimeMultipart child = new MimeMultipart(type);
-        final MimeBodyPart mbp = new MimeBodyPart();
-        parent.addBodyPart(mbp);
-        mbp.setContent(child);
-        return child;
-    }
-
-    // some extraction has no body only headers
-    private boolean isEmptyBodies() {
-        if ((bodyContent[TEXT_BODY] != null) && !bodyContent[TEXT_BODY].isEmpty())
-            return false;
-        if ((bodyContent[HTML_BODY] != null) && !bodyContent[HTML_BODY].isEmpty())
-            return false;
-        if ((bodyContent[RTF_BODY] != null) && !bodyContent[RTF_BODY].isEmpty())
-            return false;
-        // if (attachments.size() > 0)
-        // return false;
-        return true;
-    }
-
-    private void buildMimePart(MimeMessage mime) throws ExtractionException {
-        boolean hasInline = false;
-        int relatedPart = OUT_OF_BODY;
-
-        MimeMultipart rootMp = new MimeMultipart("mixed");
-        {
-            try {
-                // search if there are inlines
-                for (StoreMessageAttachment a : attachments) {
-                    if (a.attachmentType == StoreMessageAttachment.INLINE_ATTACHMENT) {
-                        hasInline = true;
-                        break;
-                    }
-                }
-
-                // determine in which part to add related
-                if ((bodyContent[HTML_BODY] != null) && !bodyContent[HTML_BODY].isEmpty())
-                    relatedPart = HTML_BODY;
-                else if ((bodyContent[RTF_BODY] != null) && !bodyContent[RTF_BODY].isEmpty())
-                    relatedPart = RTF_BODY;
-
-                // build message part
-                MimeMultipart msgMp = newChild(rootMp, "alternative");
-                {
-                    if ((bodyContent[TEXT_BODY] != null) && !bodyContent[TEXT_BODY].isEmpty()) {
-                        MimeBodyPart part = new MimeBodyPart();
-                        part.setContent(bodyContent[TEXT_BODY], "text/plain; charset=utf-8");
-                        msgMp.addBodyPart(part);
-                    }
-                    // if empty message, construct a fake empty text part
-                    if (isEmptyBodies()) {
-                        MimeBodyPart part = new MimeBodyPart();
-                        part.setContent(" ", "text/plain; charset=utf-8");
-                        msgMp.addBodyPart(part);
-                    }
-
-                    if ((bodyContent[HTML_BODY] != null) && !bodyContent[HTML_BODY].isEmpty()) {
-                        MimeMultipart upperpart;
-                        if (hasInline && (relatedPart == HTML_BODY)) {
-                            upperpart = newChild(msgMp, "related");
-                        } else
-                            upperpart = msgMp;
-
-                        MimeBodyPart part = new MimeBodyPart();
-                        part.setContent(bodyContent[HTML_BODY], "text/html; charset=utf-8");
-                        upperpart.addBodyPart(part);
-
-                        if (hasInline && (relatedPart == HTML_BODY))
-                            addAttachmentPart(upperpart, true);
-                    }
-                    if ((bodyContent[RTF_BODY] != null) && !bodyContent[RTF_BODY].isEmpty()) {
-                        MimeMultipart upperpart;
-                        if (hasInline && (relatedPart == RTF_BODY)) {
-                            upperpart = newChild(msgMp, "related");
-                        } else
-                            upperpart = msgMp;
-
-                        MimeBodyPart part = new MimeBodyPart();
-                        part.setContent(bodyContent[RTF_BODY], "text/rtf; charset=US-ASCII");// ;
-                        // charset=utf-8");
-                        upperpart.addBodyPart(part);
-
-                        if (hasInline && (relatedPart == RTF_BODY))
-                            addAttachmentPart(upperpart, true);
-
-                    }
-                }
-            } catch (MessagingException e) {
-                throw new ExtractionException("Unable to generate mime body part of message " + subject);
-            }
-
-            // add inline part of attachments if not added to HTML body
-            if (relatedPart == OUT_OF_BODY)
-                addAttachmentPart(rootMp, true);
-            addAttachmentPart(rootMp, false);
-
-            try {
-                mime.setContent(rootMp);
-            } catch (MessagingException e) {
-                throw new ExtractionException("Unable to generate mime fake of message " + subject);
-            }
-        }
-    }
-
-    private static boolean isPureAscii(String v) {
-        return StandardCharsets.US_ASCII.newEncoder().canEncode(v);
-    }
-
-
-    private String encodedFilename(String filename, String mimetype, String ifnone) {
-        String tmp;
-        if ((filename != null) && !filename.trim().isEmpty())
-            tmp = filename;
-        else
-            tmp = ifnone;
-        if ("message/rfc822".equals(mimetype) && (!tmp.endsWith(".eml")))
-            tmp += ".eml";
-
-        // prevent a bug when quotes are in ascii filename (encodeWord is then not encoding)
-        if (isPureAscii(tmp) && tmp.contains("\""))
-            tmp = tmp.replaceAll("\"", "'");
-
-        try {
-            return MimeUtility.encodeWord(tmp, "UTF-8", "Q");
-        } catch (UnsupportedEncodingException e) {
-            // forget it
-        }
-        return "Unknown";
+    public void analyzeMessageForListing() throws ExtractionException, InterruptedException {
+        analyzeDates();
     }
 
     /**
-     * Prevent update of Message-ID and of Date header with now date
+     * Add this message in the folder statistics for listing.
+     * <p>
+     * By default only size, sent date and count are collected, through
+     * {@link #analyzeMessageForListing analyzeMessageForListing}. If deep
+     * statistics are asked for in options, the message is fully analyzed and
+     * extracted without writing, which also counts attached messages.
+     * <p>
+     * As in extraction, a message out of the selected sent date range is not
+     * counted.
+     *
+     * @throws ExtractionException Any unrecoverable extraction exception (access trouble, major
+     *                             format problems...)
      */
-    private class NoUpdateMimeMessage extends MimeMessage {
-
-        public NoUpdateMimeMessage(Session session) {
-            super(session);
-        }
+    public void listMessage() throws ExtractionException, InterruptedException {
+        ExtractionFilter filter = getStoreExtractor().getFilter();
 
-        @Override
-        protected void updateMessageID() throws MessagingException {
-            String[] ids = getHeader("Message-ID");
-            if (ids == null || ids.length == 0 || ids[0] == null || ids[0].isEmpty()) {
-                super.updateMessageID();
-            }
-        }
-
-        @Override
-        protected synchronized void updateHeaders() throws MessagingException {
-            String[] date = getHeader("Date");
-            super.updateHeaders();
-            if (date == null)
-                removeHeader("Date");
-        }
+        if (getStoreExtractor().options.deepStatistics)
+            analyzeMessage();
+        else
+            analyzeMessageForListing();
+        if (filter.hasDateRange() && !filter.acceptDate(getSentDate()))
+            return;
+        storeFolder.dateRange.extendRange(getSentDate());
+        if (getStoreExtractor().options.deepStatistics)
+            extractMessage(false);
+        countMessage();
     }
 }
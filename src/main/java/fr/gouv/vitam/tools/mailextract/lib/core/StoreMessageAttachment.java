@@ -27,11 +27,17 @@
 
 package fr.gouv.vitam.tools.mailextract.lib.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Date;
 
 import javax.activation.MimeType;
 import javax.activation.MimeTypeParseException;
 
+import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
 
 /**
@@ -79,8 +85,8 @@ public class StoreMessageAttachment {
 	 * </p>
 	 *
 	 * @param storeContent
-	 *            Object to be used by the store extractor or byte[] if simple
-	 *            binary
+	 *            Object to be used by the store extractor or byte[] or
+	 *            {@link LazyAttachmentContent} if simple binary
 	 * @param attachmentStoreScheme
 	 *            Store scheme defining store extractor or "file" if simple
 	 *            binary
@@ -112,6 +118,9 @@ public class StoreMessageAttachment {
 
 	/**
 	 * Gets the raw attachment content.
+	 * <p>
+	 * A content not in memory is read from the store at each call, so callers
+	 * needing it more than once keep it.
 	 *
 	 * @return the raw attachment content
 	 * @throws ExtractionException
@@ -120,10 +129,145 @@ public class StoreMessageAttachment {
 	public byte[] getRawAttachmentContent() throws ExtractionException {
 		if (attachmentContent instanceof byte[])
 			return (byte[]) attachmentContent;
-		else
+		else if (attachmentContent instanceof LazyAttachmentContent) {
+			// read from the store each time, not kept in memory
+			long size = ((LazyAttachmentContent) attachmentContent).getSize();
+			try (InputStream is = getRawAttachmentInputStream()) {
+				return readContent(is, Integer.MAX_VALUE, size);
+			} catch (IOException e) {
+				throw new ExtractionException("mailextract: can't read attachment content");
+			}
+		} else
+			throw new ExtractionException("mailextract: this attachment has no binary form");
+	}
+
+	/**
+	 * Gets the raw attachment content beginning, or the whole content if
+	 * shorter.
+	 *
+	 * @param length
+	 *            the maximum length
+	 * @return the raw attachment content beginning
+	 * @throws ExtractionException
+	 *             the extraction exception
+	 */
+	public byte[] getRawAttachmentPrefix(int length) throws ExtractionException {
+		if (attachmentContent instanceof byte[]) {
+			byte[] content = (byte[]) attachmentContent;
+			if (content.length <= length)
+				return content;
+			byte[] result = new byte[length];
+			System.arraycopy(content, 0, result, 0, length);
+			return result;
+		}
+		try (InputStream is = getRawAttachmentInputStream()) {
+			return readContent(is, length, getRawAttachmentSize());
+		} catch (IOException e) {
+			throw new ExtractionException("mailextract: can't read attachment content");
+		}
+	}
+
+	/**
+	 * Gets a new stream on the raw attachment content, to be closed by the
+	 * caller.
+	 *
+	 * @return the raw attachment content input stream
+	 * @throws ExtractionException
+	 *             the extraction exception
+	 */
+	public InputStream getRawAttachmentInputStream() throws ExtractionException {
+		if (attachmentContent instanceof byte[])
+			return new ByteArrayInputStream((byte[]) attachmentContent);
+		else if (attachmentContent instanceof LazyAttachmentContent) {
+			try {
+				return ((LazyAttachmentContent) attachmentContent).getInputStream();
+			} catch (IOException e) {
+				throw new ExtractionException("mailextract: can't read attachment content");
+			}
+		} else
 			throw new ExtractionException("mailextract: this attachment has no binary form");
 	}
 
+	/**
+	 * Copy the raw attachment content to a stream, for a content writer.
+	 * <p>
+	 * The attachment read problems are thrown as
+	 * {@link ArchiveUnit.ContentReadException}, to be told apart from the
+	 * written stream ones.
+	 *
+	 * @param os
+	 *            the written stream
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	void copyRawAttachmentContent(OutputStream os) throws IOException {
+		InputStream is;
+		byte[] buffer = new byte[8192];
+		int n;
+
+		try {
+			is = getRawAttachmentInputStream();
+		} catch (ExtractionException e) {
+			throw new ArchiveUnit.ContentReadException(e.getMessage(), e);
+		}
+		try {
+			while (true) {
+				try {
+					n = is.read(buffer);
+				} catch (IOException e) {
+					throw new ArchiveUnit.ContentReadException("mailextract: can't read attachment content", e);
+				}
+				if (n == -1)
+					break;
+				os.write(buffer, 0, n);
+			}
+		} finally {
+			try {
+				is.close();
+			} catch (IOException e) {
+				// forget it, content already read
+			}
+		}
+	}
+
+	/**
+	 * Gets the raw attachment content size, without reading it.
+	 *
+	 * @return the raw attachment content size, or -1 if unknown or not binary
+	 */
+	public long getRawAttachmentSize() {
+		if (attachmentContent instanceof byte[])
+			return ((byte[]) attachmentContent).length;
+		else if (attachmentContent instanceof LazyAttachmentContent)
+			return ((LazyAttachmentContent) attachmentContent).getSize();
+		else
+			return -1;
+	}
+
+	/**
+	 * Checks if the attachment has a binary form, in memory or in the store.
+	 *
+	 * @return true, if it has
+	 */
+	public boolean hasBinaryContent() {
+		return (attachmentContent instanceof byte[]) || (attachmentContent instanceof LazyAttachmentContent);
+	}
+
+	// read at most length bytes of the stream, sized with the content size if known
+	private static byte[] readContent(InputStream is, int length, long size) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(
+				(int) Math.max(32, Math.min(length, size < 0 ? 8192 : size)));
+		byte[] buffer = new byte[(int) Math.min(length, 8192)];
+		int remaining = length;
+		int n;
+
+		while ((remaining > 0) && ((n = is.read(buffer, 0, Math.min(remaining, buffer.length))) != -1)) {
+			baos.write(buffer, 0, n);
+			remaining -= n;
+		}
+		return baos.toByteArray();
+	}
+
 	 /**
 	 * Gets the scheme.
 	 *
@@ -27,14 +27,18 @@
 
 package fr.gouv.vitam.tools.mailextract.lib.formattools;
 
-import org.jsoup.Jsoup;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
 import org.jsoup.helper.StringUtil;
-import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Node;
-import org.jsoup.nodes.TextNode;
+import org.jsoup.nodes.Entities;
 import org.jsoup.parser.Parser;
-import org.jsoup.select.NodeTraversor;
-import org.jsoup.select.NodeVisitor;
 
 /**
  * (Strongly) Inspired by:
@@ -48,6 +52,11 @@ import org.jsoup.select.NodeVisitor;
  * want to embrace and extend.
  * </p>
  * ...
+ * <p>
+ * The html is no more parsed in a DOM but tokenized in one pass, only a stack
+ * of open elements names being kept to apply the same formatting rules when
+ * elements are closed, explicitly or implicitly. The text output can be
+ * bounded, and then the tokenizing stops as soon as the bound is reached.
  * 
  * @author Jonathan Hedley, jonathan@hedley.net
  */
@@ -76,22 +85,26 @@ public class HTMLTextExtractor {
 	 * @return formatted text, or empty string if none
 	 */
 	public String act(String html) {
-		String result;
-		Element element;
-		
-		if (html==null)
+		return act(html, 0);
+	}
+
+	/**
+	 * Format an HTML String to plain-text, with a maximum output size.
+	 *
+	 * @param html
+	 *            the html content string
+	 * @param maxOutputSize
+	 *            the maximum formatted text size in characters, or 0 for no
+	 *            limit
+	 * @return formatted text, or empty string if none
+	 */
+	public String act(String html, int maxOutputSize) {
+		if (html == null)
 			return "";
-		
-		element=Jsoup.parse(html);
-		
-		FormattingVisitor formatter = new FormattingVisitor();
-		NodeTraversor traversor = new NodeTraversor(formatter);
-		traversor.traverse(element); // walk the DOM, and call .head() and
-										// .tail() for each node
-		// strip html tags
-		result = formatter.toString();
-		
-		return result;
+
+		HTMLTextTokenizer tokenizer = new HTMLTextTokenizer(html,
+				new TextFormatter(maxOutputSize > 0 ? maxOutputSize : Integer.MAX_VALUE));
+		return tokenizer.tokenize();
 	}
 	
 	/**
@@ -103,39 +116,399 @@ public class HTMLTextExtractor {
 	 * @return decoded text, or empty string if none
 	 */
 	public String htmlStringtoString(String in) {
-		String result;
+		String result, decoded;
 
 		if (in == null)
-			result = "";
-		else {
-			// unescape all HTML entities, multiple times if needed
-			result = in;
-			do {
-				in = result;
-				result = Parser.unescapeEntities(in, true);
-			} while (!result.equals(in));
+			return "";
 
+		// unescape all HTML entities, multiple times if needed. A new pass is
+		// done only if the previous one has decoded some entity and left an
+		// '&', so the result is the same as when looping until no change
+		result = in;
+		while (result.indexOf('&') >= 0) {
+			decoded = unescapeEntities(result);
+			if (decoded == result)
+				break;
+			result = decoded;
 		}
 		return result;
 	}
 
+	/**
+	 * Decode once all the entities of an html string, as jsoup 1.11.3
+	 * Parser.unescapeEntities does in attribute mode, without the tokeniser
+	 * creation for each call.
+	 *
+	 * @param in
+	 *            the input html string
+	 * @return the decoded string, or the input string itself if there is no
+	 *         entity to decode
+	 */
+	private static String unescapeEntities(String in) {
+		StringBuilder sb = null;
+		int[] codepoints = new int[2];
+		int pos, end, last = 0;
+
+		pos = in.indexOf('&');
+		while (pos >= 0) {
+			end = decodeEntity(in, pos + 1, codepoints);
+			if (end < 0) {
+				pos = in.indexOf('&', pos + 1);
+				continue;
+			}
+			if (sb == null)
+				sb = new StringBuilder(in.length());
+			sb.append(in, last, pos);
+			sb.appendCodePoint(codepoints[0]);
+			if (codepoints[1] >= 0)
+				sb.appendCodePoint(codepoints[1]);
+			last = end;
+			pos = in.indexOf('&', end);
+		}
+		if (sb == null)
+			return in;
+		sb.append(in, last, in.length());
+		return sb.toString();
+	}
+
+	private static boolean isEntityLetter(char c) {
+		return ((c >= 'A') && (c <= 'Z')) || ((c >= 'a') && (c <= 'z')) || Character.isLetter(c);
+	}
+
+	private static boolean isEntityDigit(char c, boolean hex) {
+		return ((c >= '0') && (c <= '9'))
+				|| (hex && (((c >= 'A') && (c <= 'F')) || ((c >= 'a') && (c <= 'f'))));
+	}
+
+	/**
+	 * Decode the entity following an '&', with the jsoup 1.11.3 rules for
+	 * attribute values.
+	 *
+	 * @param in
+	 *            the input html string
+	 * @param pos
+	 *            the position after the '&'
+	 * @param codepoints
+	 *            the decoded codepoints, the second one being -1 if there is
+	 *            only one
+	 * @return the position after the entity, or -1 if there is no entity
+	 */
+	private static int decodeEntity(String in, int pos, int[] codepoints) {
+		int length = in.length(), start, value;
+		char c;
+
+		if (pos >= length)
+			return -1;
+		c = in.charAt(pos);
+		if ((c == '\t') || (c == '\n') || (c == '\r') || (c == '\f') || (c == ' ') || (c == '<') || (c == '&'))
+			return -1;
+		codepoints[1] = -1;
+		if (c == '#') {
+			boolean hex;
+
+			pos++;
+			hex = (pos < length) && ((in.charAt(pos) == 'x') || (in.charAt(pos) == 'X'));
+			if (hex)
+				pos++;
+			start = pos;
+			while ((pos < length) && isEntityDigit(in.charAt(pos), hex))
+				pos++;
+			if (pos == start)
+				return -1;
+			try {
+				value = Integer.parseInt(in.substring(start, pos), hex ? 16 : 10);
+			} catch (NumberFormatException e) {
+				value = -1;
+			}
+			// no Windows-1252 mapping of the C1 controls range in jsoup 1.11.3
+			if ((value < 0) || ((value >= 0xD800) && (value <= 0xDFFF)) || (value > 0x10FFFF))
+				value = 0xFFFD;
+			codepoints[0] = value;
+		} else {
+			String name;
+			boolean semicolon;
+
+			start = pos;
+			while ((pos < length) && isEntityLetter(in.charAt(pos)))
+				pos++;
+			while ((pos < length) && isEntityDigit(in.charAt(pos), false))
+				pos++;
+			name = in.substring(start, pos);
+			semicolon = (pos < length) && (in.charAt(pos) == ';');
+			if (!(Entities.isBaseNamedEntity(name) || (semicolon && Entities.isNamedEntity(name))))
+				return -1;
+			if (!semicolon && (pos < length)) {
+				c = in.charAt(pos);
+				if (isEntityLetter(c) || isEntityDigit(c, false) || (c == '=') || (c == '-') || (c == '_'))
+					return -1;
+			}
+			if (Entities.codepointsForName(name, codepoints) == 1)
+				codepoints[1] = -1;
+		}
+		if ((pos < length) && (in.charAt(pos) == ';'))
+			pos++;
+		return pos;
+	}
+
+}
+
+// the one pass html tokenizer, keeping the open elements stack
+final class HTMLTextTokenizer {
+	// elements with no content and no end tag
+	private static final Set<String> VOID_ELEMENTS = new HashSet<String>(Arrays.asList("area", "base", "br", "col",
+			"embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr"));
+	// elements which content is not html and not text
+	private static final Set<String> DATA_ELEMENTS = new HashSet<String>(Arrays.asList("script", "style"));
+	// elements which content is text, not html
+	private static final Set<String> RCDATA_ELEMENTS = new HashSet<String>(Arrays.asList("title", "textarea"));
+	// elements closing an open p element
+	private static final Set<String> P_CLOSING_ELEMENTS = new HashSet<String>(Arrays.asList("address", "article",
+			"aside", "blockquote", "center", "details", "dialog", "dir", "div", "dl", "fieldset", "figcaption",
+			"figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hgroup", "hr", "li", "dd",
+			"dt", "listing", "main", "menu", "nav", "ol", "p", "pre", "section", "summary", "table", "ul"));
+	// elements limiting the scope in which an element is implicitly closed
+	private static final Set<String> SCOPE_ELEMENTS = new HashSet<String>(Arrays.asList("applet", "caption",
+			"html", "table", "td", "th", "marquee", "object", "template", "button", "ol", "ul"));
+	private static final Set<String> HEADINGS = new HashSet<String>(
+			Arrays.asList("h1", "h2", "h3", "h4", "h5", "h6"));
+
+	private String html;
+	private int pos;
+	private TextFormatter formatter;
+
+	// open elements names and, for a elements, href attributes
+	private List<String> openNames = new ArrayList<String>();
+	private List<String> openHrefs = new ArrayList<String>();
+
+	HTMLTextTokenizer(String html, TextFormatter formatter) {
+		this.html = html;
+		this.formatter = formatter;
+	}
+
+	String tokenize() {
+		int len = html.length();
+
+		pos = 0;
+		while ((pos < len) && !formatter.isFull()) {
+			int lt = html.indexOf('<', pos);
+			if (lt < 0)
+				lt = len;
+			if (lt > pos)
+				text(html.substring(pos, lt));
+			pos = lt;
+			if (pos < len)
+				markup();
+		}
+		closeElements(0);
+		return formatter.toString();
+	}
+
+	// text between tags, entities decoded and whitespaces normalised
+	private void text(String raw) {
+		if (raw.indexOf('&') >= 0)
+			raw = Parser.unescapeEntities(raw, false);
+		formatter.text(StringUtil.normaliseWhitespace(raw));
+	}
+
+	// markup beginning at '<'
+	private void markup() {
+		int len = html.length();
+		int next = pos + 1;
+
+		if (next >= len) {
+			text("<");
+			pos = len;
+		} else if (html.startsWith("!--", next)) {
+			int end = html.indexOf("-->", next + 3);
+			pos = (end < 0 ? len : end + 3);
+		} else if ((html.charAt(next) == '!') || (html.charAt(next) == '?')) {
+			int end = html.indexOf('>', next);
+			pos = (end < 0 ? len : end + 1);
+		} else if ((html.charAt(next) == '/') && (next + 1 < len) && isLetter(html.charAt(next + 1))) {
+			tag(next + 1, true);
+		} else if (isLetter(html.charAt(next))) {
+			tag(next, false);
+		} else {
+			text("<");
+			pos = next;
+		}
+	}
+
+	private static boolean isLetter(char c) {
+		return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+	}
+
+	private static boolean isTagSpace(char c) {
+		return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r') || (c == '\f');
+	}
+
+	// tag name and attributes, beginning at the name
+	private void tag(int nameStart, boolean endTag) {
+		int len = html.length();
+		int i = nameStart;
+		String href = null;
+
+		while ((i < len) && !isTagSpace(html.charAt(i)) && (html.charAt(i) != '/') && (html.charAt(i) != '>'))
+			i++;
+		String name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+
+		// attributes, only href is kept
+		while ((i < len) && (html.charAt(i) != '>')) {
+			char c = html.charAt(i);
+			if (isTagSpace(c) || (c == '/')) {
+				i++;
+				continue;
+			}
+			int attrStart = i;
+			while ((i < len) && !isTagSpace(html.charAt(i)) && (html.charAt(i) != '=') && (html.charAt(i) != '>')
+					&& (html.charAt(i) != '/'))
+				i++;
+			String attrName = html.substring(attrStart, i);
+			while ((i < len) && isTagSpace(html.charAt(i)))
+				i++;
+			if ((i < len) && (html.charAt(i) == '=')) {
+				i++;
+				while ((i < len) && isTagSpace(html.charAt(i)))
+					i++;
+				int valueStart, valueEnd;
+				if ((i < len) && ((html.charAt(i) == '"') || (html.charAt(i) == '\''))) {
+					char quote = html.charAt(i);
+					valueStart = i + 1;
+					valueEnd = html.indexOf(quote, valueStart);
+					if (valueEnd < 0)
+						valueEnd = len;
+					i = Math.min(len, valueEnd + 1);
+				} else {
+					valueStart = i;
+					while ((i < len) && !isTagSpace(html.charAt(i)) && (html.charAt(i) != '>'))
+						i++;
+					valueEnd = i;
+				}
+				if (attrName.equalsIgnoreCase("href") && (href == null))
+					href = Parser.unescapeEntities(html.substring(valueStart, valueEnd), true);
+			}
+		}
+		pos = Math.min(len, i + 1);
+
+		if (endTag)
+			endTag(name);
+		else
+			startTag(name, href);
+	}
+
+	private void startTag(String name, String href) {
+		if (P_CLOSING_ELEMENTS.contains(name))
+			closeInScope("p");
+		if (HEADINGS.contains(name) && !openNames.isEmpty()
+				&& HEADINGS.contains(openNames.get(openNames.size() - 1)))
+			closeElements(openNames.size() - 1);
+		else if (name.equals("li"))
+			closeInScope("li");
+		else if (name.equals("dd") || name.equals("dt")) {
+			closeInScope("dd");
+			closeInScope("dt");
+		} else if (name.equals("a"))
+			closeInScope("a");
+
+		formatter.head(name);
+		if (VOID_ELEMENTS.contains(name)) {
+			formatter.tail(name, null);
+		} else if (DATA_ELEMENTS.contains(name) || RCDATA_ELEMENTS.contains(name)) {
+			int end = indexOfEndTag(name);
+			if (RCDATA_ELEMENTS.contains(name))
+				text(html.substring(pos, end));
+			pos = html.indexOf('>', end);
+			pos = (pos < 0 ? html.length() : pos + 1);
+			formatter.tail(name, null);
+		} else {
+			openNames.add(name);
+			openHrefs.add(href);
+			// a newline just after these start tags is ignored
+			if (name.equals("pre") || name.equals("listing")) {
+				if (html.startsWith("\r\n", pos))
+					pos += 2;
+				else if (html.startsWith("\n", pos))
+					pos++;
+			}
+		}
+	}
+
+	private void endTag(String name) {
+		int index = openNames.lastIndexOf(name);
+
+		if (index >= 0)
+			closeElements(index);
+		else if (name.equals("br")) {
+			formatter.head("br");
+			formatter.tail("br", null);
+		} else if (name.equals("p")) {
+			// an empty p element is created
+			formatter.head("p");
+			formatter.tail("p", null);
+		}
+	}
+
+	// case insensitive search of the end tag, or the html end
+	private int indexOfEndTag(String name) {
+		int len = html.length();
+		int i = pos;
+
+		while ((i = html.indexOf("</", i)) >= 0) {
+			if (html.regionMatches(true, i + 2, name, 0, name.length())) {
+				int after = i + 2 + name.length();
+				if ((after >= len) || isTagSpace(html.charAt(after)) || (html.charAt(after) == '>')
+						|| (html.charAt(after) == '/'))
+					return i;
+			}
+			i += 2;
+		}
+		return len;
+	}
+
+	// close the element, if open in scope
+	private void closeInScope(String name) {
+		for (int i = openNames.size() - 1; i >= 0; i--) {
+			String open = openNames.get(i);
+			if (open.equals(name)) {
+				closeElements(i);
+				return;
+			}
+			if (SCOPE_ELEMENTS.contains(open))
+				return;
+		}
+	}
+
+	// close all elements from the index to the top of stack
+	private void closeElements(int index) {
+		for (int i = openNames.size() - 1; i >= index; i--) {
+			formatter.tail(openNames.get(i), openHrefs.get(i));
+			openNames.remove(i);
+			openHrefs.remove(i);
+		}
+	}
 }
 
-// the formatting rules, implemented in a breadth-first DOM traverse
-final class FormattingVisitor implements NodeVisitor {
+// the formatting rules, applied on elements beginning and end
+final class TextFormatter {
 	private static final int maxWidth = 80;
 	private int width = 0;
+	private int maxOutputSize;
 	private StringBuilder accum = new StringBuilder(); // holds the
 														// accumulated text
 
-	// hit when the node is first seen
-	public void head(Node node, int depth) {
-		String name = node.nodeName();
-		if (node instanceof TextNode)
-			append(((TextNode) node).text()); // TextNodes carry all
-												// user-readable text in the
-												// DOM.
-		else if (name.equals("li"))
+	TextFormatter(int maxOutputSize) {
+		this.maxOutputSize = maxOutputSize;
+	}
+
+	// hit for each text between elements
+	void text(String text) {
+		if (!text.isEmpty())
+			append(text); // Text carries all user-readable text
+	}
+
+	// hit when the element is first seen
+	void head(String name) {
+		if (name.equals("li"))
 			append("\n * ");
 		else if (name.equals("dt"))
 			append("  ");
@@ -143,17 +516,33 @@ final class FormattingVisitor implements NodeVisitor {
 			append("\n");
 	}
 
-	// hit when all of the node's children (if any) have been visited
-	public void tail(Node node, int depth) {
-		String name = node.nodeName();
+	// hit when all of the element's children (if any) have been seen
+	void tail(String name, String href) {
 		if (StringUtil.in(name, "br", "dd", "dt", "p", "h1", "h2", "h3", "h4", "h5"))
 			append("\n");
 		else if (name.equals("a"))
-			append(String.format("<%s>", node.absUrl("href")));
+			append(String.format("<%s>", absUrl(href)));
+	}
+
+	// absolute url as in jsoup with no base uri, or empty string
+	private static String absUrl(String href) {
+		if (href == null)
+			return "";
+		try {
+			return new URL(href).toExternalForm();
+		} catch (MalformedURLException e) {
+			return "";
+		}
+	}
+
+	boolean isFull() {
+		return accum.length() >= maxOutputSize;
 	}
 
 	// appends text to the string builder with a simple word wrap method
 	private void append(String text) {
+		if (isFull())
+			return;
 		if (text.startsWith("\n"))
 			width = 0; // reset counter if starts with a newline. only from
 						// formats above, not in natural text
@@ -184,6 +573,8 @@ final class FormattingVisitor implements NodeVisitor {
 
 	@Override
 	public String toString() {
+		if (accum.length() > maxOutputSize)
+			return accum.substring(0, maxOutputSize);
 		return accum.toString();
 	}
 }
@@ -28,35 +28,76 @@ package fr.gouv.vitam.tools.mailextract.lib.formattools;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.tika.Tika;
-import org.apache.tika.exception.TikaException;
+import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractEvents;
 
 /**
  * Class for the text extraction tool. It uses Tika library.
+ * <p>
+ * Tika initialisation loads all the parsers, so it is done only when the
+ * first text extraction is needed. Mime type detection only needs the
+ * detectors which are also loaded on first use.
  */
 public class TikaExtractor {
 
 	/** Singleton instance **/
 	private static TikaExtractor INSTANCE = new TikaExtractor();
 
-	/** Tika object **/
-	private Tika tika;
+	/** Tika object, for text extraction **/
+	private volatile Tika tika;
+
+	/** Tika detector, for mime type detection **/
+	private volatile Detector detector;
 
 	/** Private constructor */
 	private TikaExtractor() {
-		Level memLevel;
-		Logger logger;
+	}
 
-		logger = Logger.getGlobal();
-		memLevel = logger.getLevel();
-		if (memLevel != Level.FINEST)
-			logger.setLevel(Level.OFF);
-		tika = new Tika();
-		logger.setLevel(memLevel);
+	// Tika parsers initialisation on first use
+	private Tika getTika() {
+		if (tika == null) {
+			synchronized (this) {
+				if (tika == null) {
+					Level memLevel;
+					Logger logger;
+
+					logger = Logger.getGlobal();
+					memLevel = logger.getLevel();
+					if (memLevel != Level.FINEST)
+						logger.setLevel(Level.OFF);
+					try {
+						tika = new Tika();
+					} finally {
+						logger.setLevel(memLevel);
+					}
+				}
+			}
+		}
+		return tika;
+	}
+
+	// Tika detectors initialisation on first use
+	private Detector getDetector() {
+		if (detector == null) {
+			synchronized (this) {
+				if (detector == null) {
+					if (tika != null)
+						detector = tika.getDetector();
+					else
+						detector = new DefaultDetector();
+				}
+			}
+		}
+		return detector;
 	}
 
 	/**
@@ -78,21 +119,40 @@ public class TikaExtractor {
 	 *             if text extract was not possible
 	 */
 	public String extractTextFromBinary(byte[] rawContent) throws ExtractionException {
+		return extractTextFromStream(new ByteArrayInputStream(rawContent), rawContent.length);
+	}
+
+	/**
+	 * Gets the text form of the file raw content read from a stream, which is
+	 * closed at the end of the parsing.
+	 *
+	 * @param rawStream
+	 *            the raw content stream
+	 * @param length
+	 *            the raw content length, or -1 if unknown
+	 * @return the text String
+	 * @throws ExtractionException
+	 *             if text extract was not possible
+	 */
+	public String extractTextFromStream(InputStream rawStream, long length) throws ExtractionException {
 		String s = null;
 		Level memLevel;
 		Logger logger;
+		Object event = MailExtractEvents.beginTika();
 
 		logger = Logger.getGlobal();
 		memLevel = logger.getLevel();
 		if (memLevel != Level.FINEST)
 			logger.setLevel(Level.OFF);
 		try {
-			if (rawContent.length > 0)
-				s = tika.parseToString(new ByteArrayInputStream(rawContent));
+			if (length != 0)
+				s = getTika().parseToString(rawStream);
 		} catch (Throwable e) {
 			throw new ExtractionException("mailextract.formattools: Can't extract text content\n->"+e.getMessage());
 		} finally {
 			logger.setLevel(memLevel);
+			if (MailExtractEvents.end(event))
+				MailExtractEvents.commitTika(event, "extract", null, length);
 		}
 
 		return s;
@@ -108,22 +168,43 @@ public class TikaExtractor {
 	 *             if text extract was not possible
 	 */
 	public String getMimeType(byte[] rawContent) throws ExtractionException {
+		return getMimeType(rawContent, rawContent.length);
+	}
+
+	/**
+	 * Gets the mime type of the file raw content beginning.
+	 *
+	 * @param rawContent
+	 *            the raw content
+	 * @param length
+	 *            the length of the raw content beginning used for detection
+	 * @return the mime type
+	 * @throws ExtractionException
+	 *             if text extract was not possible
+	 */
+	public String getMimeType(byte[] rawContent, int length) throws ExtractionException {
 		String result = null;
 		Level memLevel;
 		Logger logger;
+		Object event = MailExtractEvents.beginTika();
 
-		if (rawContent.length > 0) {
+		length = Math.min(length, rawContent.length);
+		if (length > 0) {
 			logger = Logger.getGlobal();
 			memLevel = logger.getLevel();
 			if (memLevel != Level.FINEST)
 				logger.setLevel(Level.OFF);
 			try {
-				result = tika.detect(rawContent);
+				result = getDetector()
+						.detect(TikaInputStream.get(new ByteArrayInputStream(rawContent, 0, length)), new Metadata())
+						.toString();
 			} catch (Exception e) {
 				// if any problem in identification tools, default mimetype
 				result="application/octet-stream";
 			}
 			logger.setLevel(memLevel);
+			if (MailExtractEvents.end(event))
+				MailExtractEvents.commitTika(event, "detect", result, length);
 		}
 		return result;
 	}
@@ -28,10 +28,8 @@
 
 package fr.gouv.vitam.tools.mailextract.lib.formattools.rtf;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
@@ -40,6 +38,7 @@ import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,15 +52,49 @@ import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
  * 
  * Conform with MSDN directives to de-encapsulate HTML from RTF
  * https://msdn.microsoft.com/en-us/library/ee159984(v=exchg.80).aspx
+ * <p>
+ * The rtf source is tokenized directly from the String characters, from
+ * bytes when it is not pure ASCII, or from a buffer refilled while reading
+ * a stream. When many rtf sources are processed, use
+ * first {@link #isEncapsulatedRTF isEncapsulatedRTF} to drop those with no
+ * encapsulated content, and then the extractor of the current thread got by
+ * {@link #getThreadExtractor getThreadExtractor}, which reuses its buffers and
+ * charset decoders from one rtf source to the other.
  */
 
 public class HTMLFromRTFExtractor {
 
-	// Input management
-	private PushbackInputStream pbis;
+	// Number of first rtf characters in which \fromhtml or \fromtext is
+	// looked for
+	private static final int ENCAPSULATION_CHECK_LENGTH = 100;
+
+	private static final Pattern HEAD_PATTERN = Pattern.compile("<(h|H)(e|E)(a|A)(d|D).*>");
+
+	// Extractor reused by each thread
+	private static final ThreadLocal<HTMLFromRTFExtractor> THREAD_EXTRACTOR = new ThreadLocal<HTMLFromRTFExtractor>() {
+		@Override
+		protected HTMLFromRTFExtractor initialValue() {
+			return new HTMLFromRTFExtractor();
+		}
+	};
+
+	// Input management, the source being either a pure ASCII String, bytes or
+	// a stream read on extraction in the bytes buffer
+	private String inputString;
+	private byte[] inputBytes;
+	private InputStream inputStream;
+	private IOException inputException;
+	private int inputPos;
+	private int inputEnd;
+
+	// Size of the stream buffer, and number of last bytes kept on refill as
+	// the parser unreads at most two bytes
+	private static final int STREAM_BUFFER_LENGTH = 8192;
+	private static final int UNREAD_LENGTH = 2;
 
 	// Charset fields
 	private CharsetDecoder decoder;
+	private final Map<Charset, CharsetDecoder> decoders = new HashMap<Charset, CharsetDecoder>();
 	private Charset globalCharset;
 	private Charset globalLastCharset;
 	private int globalDefaultFont;
@@ -83,11 +116,13 @@ public class HTMLFromRTFExtractor {
 	private int pendingByteCount;
 	private ByteBuffer pendingByteBuffer;
 	// Used when we decode bytes -> chars using CharsetDecoder:
-	private char[] outputArray;
-	private CharBuffer outputBuffer;
+	private char[] outputArray = new char[128];
+	private CharBuffer outputBuffer = CharBuffer.wrap(outputArray);
 	// Holds pending chars for text output
 	private char[] pendingChars = new char[10];
 	private int pendingCharCount;
+	// Reused control word buffer
+	private final StringBuilder controlWord = new StringBuilder();
 
 	// type boolean
 	private boolean isText;
@@ -102,8 +137,14 @@ public class HTMLFromRTFExtractor {
 	 *            the is
 	 */
 	public HTMLFromRTFExtractor(InputStream is) {
-		pbis = new PushbackInputStream(is, 100);
+		inputStream = is;
+		inputBytes = new byte[STREAM_BUFFER_LENGTH];
+		inputEnd = 0;
+		inputPos = 0;
 		initHTMLFromRTFExtractor();
+		while ((inputEnd < ENCAPSULATION_CHECK_LENGTH) && fillInput())
+			;
+		detectEncapsulatedHTMLorTEXTinRTF();
 	}
 
 	/**
@@ -113,10 +154,46 @@ public class HTMLFromRTFExtractor {
 	 *            the rtf text
 	 */
 	public HTMLFromRTFExtractor(String rtfText) {
-		ByteArrayInputStream bais;
+		setRTFText(rtfText);
+	}
+
+	// Reusable extractor, used by threads
+	private HTMLFromRTFExtractor() {
+		pendingByteBuffer = ByteBuffer.wrap(pendingBytes);
+	}
+
+	/**
+	 * Gets the extractor of the current thread, set for the rtf text.
+	 * <p>
+	 * The extractor and its result are only valid till the next call in the
+	 * same thread.
+	 *
+	 * @param rtfText
+	 *            the rtf text
+	 * @return the extractor
+	 */
+	public static HTMLFromRTFExtractor getThreadExtractor(String rtfText) {
+		HTMLFromRTFExtractor extractor = THREAD_EXTRACTOR.get();
+		extractor.setRTFText(rtfText);
+		return extractor;
+	}
 
-		bais = new ByteArrayInputStream(rtfText.getBytes());
-		pbis = new PushbackInputStream(bais, 100);
+	private void setRTFText(String rtfText) {
+		releaseInput();
+		// the bytes, encoded as before the String creation, are needed only
+		// if there are non ASCII characters
+		for (int i = 0; i < rtfText.length(); i++) {
+			if (rtfText.charAt(i) > 0x7F) {
+				inputBytes = rtfText.getBytes();
+				break;
+			}
+		}
+		if (inputBytes == null) {
+			inputString = rtfText;
+			inputEnd = rtfText.length();
+		} else
+			inputEnd = inputBytes.length;
+		inputPos = 0;
 		initHTMLFromRTFExtractor();
 		detectEncapsulatedHTMLorTEXTinRTF();
 	}
@@ -128,6 +205,7 @@ public class HTMLFromRTFExtractor {
 		globalLastCharset = null;
 		globalDefaultFont = -1;
 		globalCurFontID = 0;
+		fontToCharset.clear();
 
 		// Parsing state fields
 		globalInHeader = true;
@@ -136,203 +214,201 @@ public class HTMLFromRTFExtractor {
 
 		// Output management
 		resultBuilder = null;
-		pendingBytes = new byte[16];
+		resultString = null;
+		if (pendingByteBuffer == null)
+			pendingByteBuffer = ByteBuffer.wrap(pendingBytes);
+		pendingByteBuffer.clear();
 		pendingByteCount = 0;
-		pendingByteBuffer = ByteBuffer.wrap(pendingBytes);
-		outputArray = new char[128];
-		outputBuffer = CharBuffer.wrap(outputArray);
-		pendingChars = new char[10];
+		outputBuffer.clear();
 		pendingCharCount = 0;
+
+		// type
+		isText = false;
+		isHTML = false;
+	}
+
+	// Input reading, at the end -1 is returned and can be unread
+	private int read() {
+		if ((inputPos == inputEnd) && (inputStream != null))
+			fillInput();
+		int pos = inputPos++;
+		if (pos >= inputEnd)
+			return -1;
+		if (inputString != null)
+			return inputString.charAt(pos);
+		return inputBytes[pos] & 0xFF;
 	}
 
-	// Charset management according rtf rules
+	private void unread() {
+		inputPos--;
+	}
 
-	private static Charset getCharset(String name) {
+	// Read the next stream bytes in the buffer, keeping the last ones which
+	// may be unread. A stream exception ends the input and is thrown at the
+	// end of extraction.
+	private boolean fillInput() {
+		if (inputEnd == inputBytes.length) {
+			int keep = Math.min(inputEnd, UNREAD_LENGTH);
+			System.arraycopy(inputBytes, inputEnd - keep, inputBytes, 0, keep);
+			inputPos -= inputEnd - keep;
+			inputEnd = keep;
+		}
 		try {
-			return CharsetUtils.forName(name);
-		} catch (Exception e) {
-			return ASCII;
+			int len = inputStream.read(inputBytes, inputEnd, inputBytes.length - inputEnd);
+			if (len == -1)
+				return false;
+			inputEnd += len;
+			return true;
+		} catch (IOException e) {
+			inputException = e;
+			inputStream = null;
+			return false;
 		}
 	}
 
+	/**
+	 * Release the rtf source, so that it is not retained by the extractor of
+	 * the thread after use.
+	 */
+	public void releaseInput() {
+		inputString = null;
+		inputBytes = null;
+		inputStream = null;
+		inputException = null;
+		inputEnd = 0;
+		inputPos = 0;
+	}
+
+	// Charset management according rtf rules, charsets are resolved only when
+	// first used by a document and then cached for all extractions
+
 	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private static final Map<String, Charset> RESOLVED_CHARSETS = new ConcurrentHashMap<String, Charset>();
+
+	private static Charset getCharset(String name) {
+		Charset charset = RESOLVED_CHARSETS.get(name);
+		if (charset == null) {
+			try {
+				charset = CharsetUtils.forName(name);
+			} catch (Exception e) {
+				charset = ASCII;
+			}
+			RESOLVED_CHARSETS.put(name, charset);
+		}
+		return charset;
+	}
+
 	private static final Charset WINDOWS_1252 = getCharset("WINDOWS-1252");
-	private static final Charset MAC_ROMAN = getCharset("MacRoman");
-	private static final Charset SHIFT_JIS = getCharset("Shift_JIS");
-	private static final Charset WINDOWS_57011 = getCharset("windows-57011");
-	private static final Charset WINDOWS_57010 = getCharset("windows-57010");
-	private static final Charset WINDOWS_57009 = getCharset("windows-57009");
-	private static final Charset WINDOWS_57008 = getCharset("windows-57008");
-	private static final Charset WINDOWS_57007 = getCharset("windows-57007");
-	private static final Charset WINDOWS_57006 = getCharset("windows-57006");
-	private static final Charset WINDOWS_57005 = getCharset("windows-57005");
-	private static final Charset WINDOWS_57004 = getCharset("windows-57004");
-	private static final Charset WINDOWS_57003 = getCharset("windows-57003");
-	private static final Charset X_ISCII91 = getCharset("x-ISCII91");
-	private static final Charset X_MAC_CENTRAL_EUROPE = getCharset("x-MacCentralEurope");
-	private static final Charset MAC_CYRILLIC = getCharset("MacCyrillic");
-	private static final Charset X_JOHAB = getCharset("x-Johab");
-	private static final Charset CP12582 = getCharset("CP1258");
-	private static final Charset CP12572 = getCharset("CP1257");
-	private static final Charset CP12562 = getCharset("CP1256");
-	private static final Charset CP12552 = getCharset("CP1255");
-	private static final Charset CP12542 = getCharset("CP1254");
-	private static final Charset CP12532 = getCharset("CP1253");
-	private static final Charset CP1252 = getCharset("CP1252");
-	private static final Charset CP12512 = getCharset("CP1251");
-	private static final Charset CP12502 = getCharset("CP1250");
-	private static final Charset CP950 = getCharset("CP950");
-	private static final Charset CP949 = getCharset("CP949");
-	private static final Charset MS9362 = getCharset("MS936");
-	private static final Charset MS8742 = getCharset("MS874");
-	private static final Charset CP866 = getCharset("CP866");
-	private static final Charset CP865 = getCharset("CP865");
-	private static final Charset CP864 = getCharset("CP864");
-	private static final Charset CP863 = getCharset("CP863");
-	private static final Charset CP862 = getCharset("CP862");
-	private static final Charset CP860 = getCharset("CP860");
-	private static final Charset CP852 = getCharset("CP852");
-	private static final Charset CP8502 = getCharset("CP850");
-	private static final Charset CP819 = getCharset("CP819");
-	private static final Charset WINDOWS_720 = getCharset("windows-720");
-	private static final Charset WINDOWS_711 = getCharset("windows-711");
-	private static final Charset WINDOWS_710 = getCharset("windows-710");
-	private static final Charset WINDOWS_709 = getCharset("windows-709");
-	private static final Charset ISO_8859_6 = getCharset("ISO-8859-6");
-	private static final Charset CP4372 = getCharset("CP437");
-	private static final Charset CP850 = getCharset("cp850");
-	private static final Charset CP437 = getCharset("cp437");
-	private static final Charset MS874 = getCharset("ms874");
-	private static final Charset CP1257 = getCharset("cp1257");
-	private static final Charset CP1256 = getCharset("cp1256");
-	private static final Charset CP1255 = getCharset("cp1255");
-	private static final Charset CP1258 = getCharset("cp1258");
-	private static final Charset CP1254 = getCharset("cp1254");
-	private static final Charset CP1253 = getCharset("cp1253");
-	private static final Charset MS950 = getCharset("ms950");
-	private static final Charset MS936 = getCharset("ms936");
-	private static final Charset MS1361 = getCharset("ms1361");
-	private static final Charset MS932 = getCharset("MS932");
-	private static final Charset CP1251 = getCharset("cp1251");
-	private static final Charset CP1250 = getCharset("cp1250");
-	private static final Charset MAC_THAI = getCharset("MacThai");
-	private static final Charset MAC_TURKISH = getCharset("MacTurkish");
-	private static final Charset MAC_GREEK = getCharset("MacGreek");
-	private static final Charset MAC_ARABIC = getCharset("MacArabic");
-	private static final Charset MAC_HEBREW = getCharset("MacHebrew");
-	private static final Charset JOHAB = getCharset("johab");
-	private static final Charset BIG5 = getCharset("Big5");
-	private static final Charset GB2312 = getCharset("GB2312");
-	private static final Charset MS949 = getCharset("ms949");
 
 	// The RTF doc has a "font table" that assigns ords
 	// (f0, f1, f2, etc.) to fonts and charsets, using the
 	// \fcharsetN control word. This mapping maps from the
-	// N to corresponding Java charset:
-	private static final Map<Integer, Charset> FCHARSET_MAP = new HashMap<Integer, Charset>();
+	// N to corresponding Java charset name:
+	private static final Map<Integer, String> FCHARSET_MAP = new HashMap<Integer, String>();
 	// The RTF may specify the \ansicpgN charset in the
 	// header; this maps the N to the corresponding Java
-	// character set:
-	private static final Map<Integer, Charset> ANSICPG_MAP = new HashMap<Integer, Charset>();
+	// character set name:
+	private static final Map<Integer, String> ANSICPG_MAP = new HashMap<Integer, String>();
 
 	static {
-		FCHARSET_MAP.put(0, WINDOWS_1252); // ANSI
+		FCHARSET_MAP.put(0, "WINDOWS-1252"); // ANSI
 		// charset 1 is Default
 		// charset 2 is Symbol
 
-		FCHARSET_MAP.put(77, MAC_ROMAN); // Mac Roman
-		FCHARSET_MAP.put(78, SHIFT_JIS); // Mac Shift Jis
-		FCHARSET_MAP.put(79, MS949); // Mac Hangul
-		FCHARSET_MAP.put(80, GB2312); // Mac GB2312
-		FCHARSET_MAP.put(81, BIG5); // Mac Big5
-		FCHARSET_MAP.put(82, JOHAB); // Mac Johab (old)
-		FCHARSET_MAP.put(83, MAC_HEBREW); // Mac Hebrew
-		FCHARSET_MAP.put(84, MAC_ARABIC); // Mac Arabic
-		FCHARSET_MAP.put(85, MAC_GREEK); // Mac Greek
-		FCHARSET_MAP.put(86, MAC_TURKISH); // Mac Turkish
-		FCHARSET_MAP.put(87, MAC_THAI); // Mac Thai
-		FCHARSET_MAP.put(88, CP1250); // Mac East Europe
-		FCHARSET_MAP.put(89, CP1251); // Mac Russian
-
-		FCHARSET_MAP.put(128, MS932); // Shift JIS
-		FCHARSET_MAP.put(129, MS949); // Hangul
-		FCHARSET_MAP.put(130, MS1361); // Johab
-		FCHARSET_MAP.put(134, MS936); // GB2312
-		FCHARSET_MAP.put(136, MS950); // Big5
-		FCHARSET_MAP.put(161, CP1253); // Greek
-		FCHARSET_MAP.put(162, CP1254); // Turkish
-		FCHARSET_MAP.put(163, CP1258); // Vietnamese
-		FCHARSET_MAP.put(177, CP1255); // Hebrew
-		FCHARSET_MAP.put(178, CP1256); // Arabic
+		FCHARSET_MAP.put(77, "MacRoman"); // Mac Roman
+		FCHARSET_MAP.put(78, "Shift_JIS"); // Mac Shift Jis
+		FCHARSET_MAP.put(79, "ms949"); // Mac Hangul
+		FCHARSET_MAP.put(80, "GB2312"); // Mac GB2312
+		FCHARSET_MAP.put(81, "Big5"); // Mac Big5
+		FCHARSET_MAP.put(82, "johab"); // Mac Johab (old)
+		FCHARSET_MAP.put(83, "MacHebrew"); // Mac Hebrew
+		FCHARSET_MAP.put(84, "MacArabic"); // Mac Arabic
+		FCHARSET_MAP.put(85, "MacGreek"); // Mac Greek
+		FCHARSET_MAP.put(86, "MacTurkish"); // Mac Turkish
+		FCHARSET_MAP.put(87, "MacThai"); // Mac Thai
+		FCHARSET_MAP.put(88, "cp1250"); // Mac East Europe
+		FCHARSET_MAP.put(89, "cp1251"); // Mac Russian
+
+		FCHARSET_MAP.put(128, "MS932"); // Shift JIS
+		FCHARSET_MAP.put(129, "ms949"); // Hangul
+		FCHARSET_MAP.put(130, "ms1361"); // Johab
+		FCHARSET_MAP.put(134, "ms936"); // GB2312
+		FCHARSET_MAP.put(136, "ms950"); // Big5
+		FCHARSET_MAP.put(161, "cp1253"); // Greek
+		FCHARSET_MAP.put(162, "cp1254"); // Turkish
+		FCHARSET_MAP.put(163, "cp1258"); // Vietnamese
+		FCHARSET_MAP.put(177, "cp1255"); // Hebrew
+		FCHARSET_MAP.put(178, "cp1256"); // Arabic
 		// FCHARSET_MAP.put( 179, "" ); // Arabic Traditional
 		// FCHARSET_MAP.put( 180, "" ); // Arabic user
 		// FCHARSET_MAP.put( 181, "" ); // Hebrew user
-		FCHARSET_MAP.put(186, CP1257); // Baltic
+		FCHARSET_MAP.put(186, "cp1257"); // Baltic
 
-		FCHARSET_MAP.put(204, CP1251); // Russian
-		FCHARSET_MAP.put(222, MS874); // Thai
-		FCHARSET_MAP.put(238, CP1250); // Eastern European
-		FCHARSET_MAP.put(254, CP437); // PC 437
-		FCHARSET_MAP.put(255, CP850); // OEM
+		FCHARSET_MAP.put(204, "cp1251"); // Russian
+		FCHARSET_MAP.put(222, "ms874"); // Thai
+		FCHARSET_MAP.put(238, "cp1250"); // Eastern European
+		FCHARSET_MAP.put(254, "cp437"); // PC 437
+		FCHARSET_MAP.put(255, "cp850"); // OEM
 	}
 
 	static {
-		ANSICPG_MAP.put(437, CP4372); // US IBM
-		ANSICPG_MAP.put(708, ISO_8859_6); // Arabic (ASMO 708)
-
-		ANSICPG_MAP.put(709, WINDOWS_709); // Arabic (ASMO 449+, BCON V4)
-		ANSICPG_MAP.put(710, WINDOWS_710); // Arabic (transparent Arabic)
-		ANSICPG_MAP.put(710, WINDOWS_711); // Arabic (Nafitha Enhanced)
-		ANSICPG_MAP.put(710, WINDOWS_720); // Arabic (transparent ASMO)
-		ANSICPG_MAP.put(819, CP819); // Windows 3.1 (US & Western Europe)
-		ANSICPG_MAP.put(819, CP819); // Windows 3.1 (US & Western Europe)
-
-		ANSICPG_MAP.put(819, CP819); // Windows 3.1 (US & Western Europe)
-		ANSICPG_MAP.put(850, CP8502); // IBM Multilingual
-		ANSICPG_MAP.put(852, CP852); // Eastern European
-		ANSICPG_MAP.put(860, CP860); // Portuguese
-		ANSICPG_MAP.put(862, CP862); // Hebrew
-		ANSICPG_MAP.put(863, CP863); // French Canadian
-		ANSICPG_MAP.put(864, CP864); // Arabic
-		ANSICPG_MAP.put(865, CP865); // Norwegian
-		ANSICPG_MAP.put(866, CP866); // Soviet Union
-		ANSICPG_MAP.put(874, MS8742); // Thai
-		ANSICPG_MAP.put(932, MS932); // Japanese
-		ANSICPG_MAP.put(936, MS9362); // Simplified Chinese
-		ANSICPG_MAP.put(949, CP949); // Korean
-		ANSICPG_MAP.put(950, CP950); // Traditional Chinese
-		ANSICPG_MAP.put(1250, CP12502); // Eastern European
-		ANSICPG_MAP.put(1251, CP12512); // Cyrillic
-		ANSICPG_MAP.put(1252, CP1252); // Western European
-		ANSICPG_MAP.put(1253, CP12532); // Greek
-		ANSICPG_MAP.put(1254, CP12542); // Turkish
-		ANSICPG_MAP.put(1255, CP12552); // Hebrew
-		ANSICPG_MAP.put(1256, CP12562); // Arabic
-		ANSICPG_MAP.put(1257, CP12572); // Baltic
-		ANSICPG_MAP.put(1258, CP12582); // Vietnamese
-		ANSICPG_MAP.put(1361, X_JOHAB); // Johab
-		ANSICPG_MAP.put(10000, MAC_ROMAN); // Mac Roman
-		ANSICPG_MAP.put(10001, SHIFT_JIS); // Mac Japan
-		ANSICPG_MAP.put(10004, MAC_ARABIC); // Mac Arabic
-		ANSICPG_MAP.put(10005, MAC_HEBREW); // Mac Hebrew
-		ANSICPG_MAP.put(10006, MAC_GREEK); // Mac Hebrew
-		ANSICPG_MAP.put(10007, MAC_CYRILLIC); // Mac Cyrillic
-		ANSICPG_MAP.put(10029, X_MAC_CENTRAL_EUROPE); // MAC Latin2
-		ANSICPG_MAP.put(10081, MAC_TURKISH); // Mac Turkish
-		ANSICPG_MAP.put(57002, X_ISCII91); // Devanagari
+		ANSICPG_MAP.put(437, "CP437"); // US IBM
+		ANSICPG_MAP.put(708, "ISO-8859-6"); // Arabic (ASMO 708)
+
+		ANSICPG_MAP.put(709, "windows-709"); // Arabic (ASMO 449+, BCON V4)
+		ANSICPG_MAP.put(710, "windows-710"); // Arabic (transparent Arabic)
+		ANSICPG_MAP.put(710, "windows-711"); // Arabic (Nafitha Enhanced)
+		ANSICPG_MAP.put(710, "windows-720"); // Arabic (transparent ASMO)
+		ANSICPG_MAP.put(819, "CP819"); // Windows 3.1 (US & Western Europe)
+		ANSICPG_MAP.put(819, "CP819"); // Windows 3.1 (US & Western Europe)
+
+		ANSICPG_MAP.put(819, "CP819"); // Windows 3.1 (US & Western Europe)
+		ANSICPG_MAP.put(850, "CP850"); // IBM Multilingual
+		ANSICPG_MAP.put(852, "CP852"); // Eastern European
+		ANSICPG_MAP.put(860, "CP860"); // Portuguese
+		ANSICPG_MAP.put(862, "CP862"); // Hebrew
+		ANSICPG_MAP.put(863, "CP863"); // French Canadian
+		ANSICPG_MAP.put(864, "CP864"); // Arabic
+		ANSICPG_MAP.put(865, "CP865"); // Norwegian
+		ANSICPG_MAP.put(866, "CP866"); // Soviet Union
+		ANSICPG_MAP.put(874, "MS874"); // Thai
+		ANSICPG_MAP.put(932, "MS932"); // Japanese
+		ANSICPG_MAP.put(936, "MS936"); // Simplified Chinese
+		ANSICPG_MAP.put(949, "CP949"); // Korean
+		ANSICPG_MAP.put(950, "CP950"); // Traditional Chinese
+		ANSICPG_MAP.put(1250, "CP1250"); // Eastern European
+		ANSICPG_MAP.put(1251, "CP1251"); // Cyrillic
+		ANSICPG_MAP.put(1252, "CP1252"); // Western European
+		ANSICPG_MAP.put(1253, "CP1253"); // Greek
+		ANSICPG_MAP.put(1254, "CP1254"); // Turkish
+		ANSICPG_MAP.put(1255, "CP1255"); // Hebrew
+		ANSICPG_MAP.put(1256, "CP1256"); // Arabic
+		ANSICPG_MAP.put(1257, "CP1257"); // Baltic
+		ANSICPG_MAP.put(1258, "CP1258"); // Vietnamese
+		ANSICPG_MAP.put(1361, "x-Johab"); // Johab
+		ANSICPG_MAP.put(10000, "MacRoman"); // Mac Roman
+		ANSICPG_MAP.put(10001, "Shift_JIS"); // Mac Japan
+		ANSICPG_MAP.put(10004, "MacArabic"); // Mac Arabic
+		ANSICPG_MAP.put(10005, "MacHebrew"); // Mac Hebrew
+		ANSICPG_MAP.put(10006, "MacGreek"); // Mac Hebrew
+		ANSICPG_MAP.put(10007, "MacCyrillic"); // Mac Cyrillic
+		ANSICPG_MAP.put(10029, "x-MacCentralEurope"); // MAC Latin2
+		ANSICPG_MAP.put(10081, "MacTurkish"); // Mac Turkish
+		ANSICPG_MAP.put(57002, "x-ISCII91"); // Devanagari
 
 		// in theory these other charsets are simple
 		// shifts off of Devanagari, so we could impl that
 		// here:
-		ANSICPG_MAP.put(57003, WINDOWS_57003); // Bengali
-		ANSICPG_MAP.put(57004, WINDOWS_57004); // Tamil
-		ANSICPG_MAP.put(57005, WINDOWS_57005); // Telugu
-		ANSICPG_MAP.put(57006, WINDOWS_57006); // Assamese
-		ANSICPG_MAP.put(57007, WINDOWS_57007); // Oriya
-		ANSICPG_MAP.put(57008, WINDOWS_57008); // Kannada
-		ANSICPG_MAP.put(57009, WINDOWS_57009); // Malayalam
-		ANSICPG_MAP.put(57010, WINDOWS_57010); // Gujariti
-		ANSICPG_MAP.put(57011, WINDOWS_57011); // Punjabi
+		ANSICPG_MAP.put(57003, "windows-57003"); // Bengali
+		ANSICPG_MAP.put(57004, "windows-57004"); // Tamil
+		ANSICPG_MAP.put(57005, "windows-57005"); // Telugu
+		ANSICPG_MAP.put(57006, "windows-57006"); // Assamese
+		ANSICPG_MAP.put(57007, "windows-57007"); // Oriya
+		ANSICPG_MAP.put(57008, "windows-57008"); // Kannada
+		ANSICPG_MAP.put(57009, "windows-57009"); // Malayalam
+		ANSICPG_MAP.put(57010, "windows-57010"); // Gujariti
+		ANSICPG_MAP.put(57011, "windows-57011"); // Punjabi
 	}
 
 	// Holds the font table from this RTF doc, mapping
@@ -343,9 +419,9 @@ public class HTMLFromRTFExtractor {
 	// Parsing functions
 
 	// Main parsing function
-	private void doExtract() throws IOException {
+	private void doExtract() {
 		while (true) {
-			final int b = pbis.read();
+			final int b = read();
 			if (b == -1) {
 				pushText();
 				break;
@@ -373,7 +449,7 @@ public class HTMLFromRTFExtractor {
 	}
 
 	// Push new GroupState
-	private void processGroupStart() throws IOException {
+	private void processGroupStart() {
 		globalAnsiSkip = 0;
 
 		// Make new GroupState
@@ -382,15 +458,15 @@ public class HTMLFromRTFExtractor {
 		// Check for ignorable groups. Note that
 		// sometimes we un-ignore within this group, eg
 		// when handling upr escape.
-		int b2 = pbis.read();
+		int b2 = read();
 		if (b2 == '\\') {
-			int b3 = pbis.read();
+			int b3 = read();
 			if (b3 == '*') {
 				globalGroupState.setInIgnorable(true);
 			}
-			pbis.unread(b3);
+			unread();
 		}
-		pbis.unread(b2);
+		unread();
 	}
 
 	// Pop current GroupState
@@ -406,8 +482,8 @@ public class HTMLFromRTFExtractor {
 	}
 
 	// Parse a rtf control token (\...)
-	private void parseControlToken() throws IOException {
-		int b = pbis.read();
+	private void parseControlToken() {
+		int b = read();
 		if (b == '\'') {
 			// escaped hex char
 			parseHexChar();
@@ -424,19 +500,19 @@ public class HTMLFromRTFExtractor {
 	}
 
 	// Parse a rtf hex escaped character (\'XX)
-	private void parseHexChar() throws IOException {
-		int hex1 = pbis.read();
+	private void parseHexChar() {
+		int hex1 = read();
 		if (!isHexChar(hex1)) {
 			// DOC ERROR (malformed hex escape): ignore
-			pbis.unread(hex1);
+			unread();
 			return;
 		}
 
-		int hex2 = pbis.read();
+		int hex2 = read();
 		if (!isHexChar(hex2)) {
 			// DOC ERROR (malformed hex escape):
 			// ignore
-			pbis.unread(hex2);
+			unread();
 			return;
 		}
 
@@ -453,15 +529,13 @@ public class HTMLFromRTFExtractor {
 	}
 
 	// Parse a rtf control word (\... not escaped character)
-	private void parseControlWord(int firstChar) throws IOException {
-		StringBuilder controlWord = new StringBuilder();
-		;
-
+	private void parseControlWord(int firstChar) {
+		controlWord.setLength(0);
 		controlWord.append((char) firstChar);
-		int b = pbis.read();
+		int b = read();
 		while (isAlpha(b)) {
 			controlWord.append((char) b);
-			b = pbis.read();
+			b = read();
 		}
 
 		boolean hasParam = false;
@@ -469,7 +543,7 @@ public class HTMLFromRTFExtractor {
 		if (b == '-') {
 			negParam = true;
 			hasParam = true;
-			b = pbis.read();
+			b = read();
 		}
 
 		int param = 0;
@@ -477,13 +551,13 @@ public class HTMLFromRTFExtractor {
 			param *= 10;
 			param += (b - '0');
 			hasParam = true;
-			b = pbis.read();
+			b = read();
 		}
 
 		// space is consumed as part of the
 		// control word, but is not added to the control word
 		if (b != ' ') {
-			pbis.unread(b);
+			unread();
 		}
 
 		if (hasParam) {
@@ -504,13 +578,13 @@ public class HTMLFromRTFExtractor {
 				globalCharset = WINDOWS_1252;
 				break;
 			case "pca":
-				globalCharset = CP850;
+				globalCharset = getCharset("cp850");
 				break;
 			case "pc":
-				globalCharset = CP437;
+				globalCharset = getCharset("cp437");
 				break;
 			case "mac":
-				globalCharset = MAC_ROMAN;
+				globalCharset = getCharset("MacRoman");
 				break;
 			case "par":
 			case "pard":
@@ -555,15 +629,15 @@ public class HTMLFromRTFExtractor {
 
 	// Handle control word that takes a parameter
 	private void processControlWord(String controlWord, int param) {
-		Charset cs;
+		String csName;
 		// TODO: afN? (associated font number)
 
 		if (globalInHeader) {
 			switch (controlWord) {
 			case "ansicpg":
-				cs = ANSICPG_MAP.get(param);
-				if (cs != null) {
-					globalCharset = cs;
+				csName = ANSICPG_MAP.get(param);
+				if (csName != null) {
+					globalCharset = getCharset(csName);
 				}
 				break;
 			case "f":
@@ -573,9 +647,9 @@ public class HTMLFromRTFExtractor {
 				globalDefaultFont = param;
 				break;
 			case "fcharset":
-				cs = FCHARSET_MAP.get(param);
-				if (cs != null) {
-					fontToCharset.put(globalCurFontID, cs);
+				csName = FCHARSET_MAP.get(param);
+				if (csName != null) {
+					fontToCharset.put(globalCurFontID, getCharset(csName));
 				}
 				break;
 			}
@@ -784,9 +858,13 @@ public class HTMLFromRTFExtractor {
 		// Common case: charset is same as last time, so
 		// just reuse it:
 		if (globalLastCharset == null || !charset.equals(globalLastCharset)) {
-			decoder = charset.newDecoder();
-			decoder.onMalformedInput(CodingErrorAction.REPLACE);
-			decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			decoder = decoders.get(charset);
+			if (decoder == null) {
+				decoder = charset.newDecoder();
+				decoder.onMalformedInput(CodingErrorAction.REPLACE);
+				decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+				decoders.put(charset, decoder);
+			}
 			globalLastCharset = charset;
 		}
 
@@ -828,29 +906,35 @@ public class HTMLFromRTFExtractor {
 		}
 	}
 
-	private boolean detectEncapsulatedHTMLorTEXTinRTF() {
-		byte[] buf = new byte[100];
-		String test;
-		int len = 0, inc = 0;
-
-		try {
-			while (len < 100) {
-				inc = pbis.read(buf, len, 100 - len);
-				if (inc == -1)
-					return false;
-				len += inc;
+	// Test if the control word is in the rtf beginning
+	private static boolean hasHeaderControlWord(CharSequence rtf, String controlWord) {
+		int max = Math.min(rtf.length(), ENCAPSULATION_CHECK_LENGTH) - controlWord.length();
+
+		for (int i = 0; i <= max; i++) {
+			if (rtf.charAt(i) == '\\') {
+				int j = 1;
+				while ((j < controlWord.length()) && (rtf.charAt(i + j) == controlWord.charAt(j)))
+					j++;
+				if (j == controlWord.length())
+					return true;
 			}
-			test = new String(buf);
-			pbis.unread(buf, 0, len);
-		} catch (IOException e) {
-			return false;
 		}
+		return false;
+	}
 
-		if (test.indexOf("\\fromhtml") >= 0) {
+	private boolean detectEncapsulatedHTMLorTEXTinRTF() {
+		CharSequence test;
+
+		if (inputString != null)
+			test = inputString;
+		else
+			test = new String(inputBytes, 0, Math.min(inputEnd, ENCAPSULATION_CHECK_LENGTH));
+
+		if (hasHeaderControlWord(test, "\\fromhtml")) {
 			isHTML = true;
 			return true;
 		}
-		if (test.indexOf("\\fromtext") >= 0) {
+		if (hasHeaderControlWord(test, "\\fromtext")) {
 			isText = true;
 			return true;
 		} else
@@ -859,6 +943,18 @@ public class HTMLFromRTFExtractor {
 
 	// public functions
 
+	/**
+	 * Checks quickly if the rtf text has encapsulated HTML or TEXT, without
+	 * building an extractor.
+	 *
+	 * @param rtfText
+	 *            the rtf text
+	 * @return true, if there is \fromhtml or \fromtext in the rtf header
+	 */
+	public static boolean isEncapsulatedRTF(String rtfText) {
+		return hasHeaderControlWord(rtfText, "\\fromhtml") || hasHeaderControlWord(rtfText, "\\fromtext");
+	}
+
 	/**
 	 * Checks if is encapsulated HTML in RTF.
 	 *
@@ -885,17 +981,18 @@ public class HTMLFromRTFExtractor {
 	 */
 	public String getDeEncapsulateHTMLFromRTF() throws ExtractionException {
 		if (resultString == null) {
-			resultBuilder = new StringBuilder();
-			try {
-				doExtract();
-			} catch (IOException e) {
-				e.printStackTrace();
+			resultBuilder = new StringBuilder(inputStream == null ? Math.min(inputEnd, 65536) : 65536);
+			doExtract();
+			IOException e = inputException;
+			releaseInput();
+			if (e != null) {
+				resultBuilder = null;
 				throw new ExtractionException("Can't extract html from rtf");
 			}
 			resultString = resultBuilder.toString();
 
 			if (isHTML) {
-				Matcher m = Pattern.compile("<(h|H)(e|E)(a|A)(d|D).*>").matcher(resultString);
+				Matcher m = HEAD_PATTERN.matcher(resultString);
 				if (m.find()) {
 					// add a meta tag to say it's UTF-8 just after <head> tag
 					resultString = resultBuilder
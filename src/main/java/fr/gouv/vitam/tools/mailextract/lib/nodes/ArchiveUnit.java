@@ -30,18 +30,22 @@ package fr.gouv.vitam.tools.mailextract.lib.nodes;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorOptions;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractMetrics;
 import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
 
 import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger.MESSAGE_DETAILS;
+import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger.WARNING;
 
 /**
  * Class for SEDA Archive Unit managing metadata, objects, if any, and on disk
@@ -62,12 +66,62 @@ public class ArchiveUnit {
     private MetadataXMLList contentmetadatalist = new MetadataXMLList();
     private List<ArchiveObject> objects = new ArrayList<ArchiveObject>();
 
+    // output stream discarding all, to size content writers output
+    private static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    /**
+     * Interface for an object content which is not kept in memory but written
+     * directly in the object file when the Archive Unit is written.
+     */
+    public interface ContentWriter {
+
+        /**
+         * Write the object content.
+         *
+         * @param os the output stream
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void writeTo(OutputStream os) throws IOException;
+    }
+
+    /**
+     * Exception thrown by a content writer when its content source can't be
+     * read, as opposed to an exception of the written object file. The object
+     * file is then written empty and the extraction goes on.
+     */
+    public static class ContentReadException extends IOException {
+
+        /**
+         * The Constant serialVersionUID.
+         */
+        static final long serialVersionUID = 6248912237785519302L;
+
+        /**
+         * Instantiates a new content read exception.
+         *
+         * @param message the message
+         * @param cause   the cause
+         */
+        public ContentReadException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
     // Utility class containing one Object of the ObjectGroup
     private class ArchiveObject {
         String filename;
         String usage;
         int version;
         byte[] rawContent;
+        ContentWriter contentWriter;
 
         ArchiveObject(byte[] rawContent, String filename, String usage, int version) {
             this.rawContent = rawContent;
@@ -75,6 +129,34 @@ public class ArchiveUnit {
             this.usage = usage;
             this.version = version;
         }
+
+        ArchiveObject(ContentWriter contentWriter, String filename, String usage, int version) {
+            this.contentWriter = contentWriter;
+            this.filename = filename;
+            this.usage = usage;
+            this.version = version;
+        }
+    }
+
+    // Utility output stream counting written bytes
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
     }
 
     /**
@@ -352,6 +434,30 @@ public class ArchiveUnit {
                     + rootPath + "'");
     }
 
+    /**
+     * Adds a reference to another Archive Unit of the extraction.
+     * <p>
+     * The reference is a RelatedObjectReference/References metadata, with the
+     * referenced Archive Unit directory path relative to this one.
+     *
+     * @param referencedUnitPath the referenced Archive Unit directory path
+     */
+    public void addReferenceMetadata(String referencedUnitPath) {
+        MetadataXMLList mlMetaData, referencesMetaData;
+        String relativePath;
+
+        try {
+            relativePath = Paths.get(getFullName()).relativize(Paths.get(referencedUnitPath)).toString();
+        } catch (IllegalArgumentException e) {
+            relativePath = referencedUnitPath;
+        }
+        referencesMetaData = new MetadataXMLList();
+        referencesMetaData.addMetadataXMLNode(new MetadataXMLNode("RepositoryArchiveUnitPID", relativePath));
+        mlMetaData = new MetadataXMLList();
+        mlMetaData.addMetadataXMLNode(new MetadataXMLNode("References", referencesMetaData));
+        contentmetadatalist.addMetadataXMLNode(new MetadataXMLNode("RelatedObjectReference", mlMetaData));
+    }
+
     /**
      * Adds an object with content from a String.
      * <p>
@@ -380,19 +486,61 @@ public class ArchiveUnit {
         objects.add(new ArchiveObject(byteContent, normalizeFilename(filename), usage, version));
     }
 
+    /**
+     * Adds an object with content written only when the Archive Unit is written.
+     * <p>
+     * This object content is streamed to disk, so it's never wholly in memory.
+     *
+     * @param contentWriter Object content writer
+     * @param filename      File name
+     * @param usage         Usage type (BinaryMaster| TextContent...)
+     * @param version       Object version (usually 1)
+     */
+    public void addObject(ContentWriter contentWriter, String filename, String usage, int version) {
+        objects.add(new ArchiveObject(contentWriter, normalizeFilename(filename), usage, version));
+    }
+
     // create all the directories hierarchy
     private void createDirectory(String dirname) throws ExtractionException {
         File dir = new File(dirname);
-        if (!dir.isDirectory() && !dir.mkdirs()) {
+        // the directory may be concurrently created by another extraction thread
+        if (!dir.mkdirs() && !dir.isDirectory()) {
             throw new ExtractionException("mailextract: Illegal destination directory, writing unit \"" + name + "\"");
         }
     }
 
-    // create a file from byte array
-    private void writeFile(String dirPath, String filename, byte[] byteContent) throws ExtractionException {
+    // create a file from byte array or from content writer
+    private void writeFile(String dirPath, String filename, byte[] byteContent, ContentWriter contentWriter)
+            throws ExtractionException {
         try (FileOutputStream fos=new FileOutputStream(dirPath + File.separator + filename)){
-            if (byteContent != null)
+            if (byteContent != null) {
                 fos.write(byteContent);
+                storeExtractor.getMetrics().addCounter(MailExtractMetrics.BYTES_WRITTEN, byteContent.length);
+            } else if (contentWriter != null) {
+                MailExtractMetrics metrics = storeExtractor.getMetrics();
+                if (metrics.isEnabled()) {
+                    CountingOutputStream cos = new CountingOutputStream(new BufferedOutputStream(fos));
+                    contentWriter.writeTo(cos);
+                    cos.flush();
+                    metrics.addCounter(MailExtractMetrics.BYTES_WRITTEN, cos.count);
+                } else {
+                    BufferedOutputStream bos = new BufferedOutputStream(fos);
+                    contentWriter.writeTo(bos);
+                    bos.flush();
+                }
+            }
+        } catch (ContentReadException ex) {
+            getProgressLogger().progressLogWithoutInterruption(WARNING,
+                    "mailextract: Can't read content of object " + filename + " (" + ex.getMessage()
+                            + "), empty file written in unit \"" + name + "\"");
+            // the content written before the problem is dropped
+            try {
+                new FileOutputStream(dirPath + File.separator + filename).close();
+            } catch (IOException e) {
+                getProgressLogger().logException(e);
+                throw new ExtractionException("mailextract: Illegal destination file, writing unit \"" + name + "\""
+                        + " dir=" + dirPath + " filename=" + filename);
+            }
         } catch (IOException ex) {
             if (dirPath.length() + filename.length() > 250) {
                 getProgressLogger().logException(ex);
@@ -416,6 +564,7 @@ public class ArchiveUnit {
     public void write() throws ExtractionException {
         String dirPath;
         String filename;
+        long start = System.nanoTime();
 
         // different name if groupe unit or unit with objects
         dirPath = getFullName();
@@ -428,9 +577,11 @@ public class ArchiveUnit {
 
         // write unit metadata file
         if (storeExtractor.getOptions().model == StoreExtractorOptions.MODEL_V1)
-            writeFile(dirPath, "ArchiveUnitContent.xml", contentmetadata.writeXML().getBytes(StandardCharsets.UTF_8));
+            writeFile(dirPath, "ArchiveUnitContent.xml", contentmetadata.writeXML().getBytes(StandardCharsets.UTF_8),
+                    null);
         else
-            writeFile(dirPath, "__ArchiveUnitMetadata.xml", contentmetadata.writeXML().getBytes(StandardCharsets.UTF_8));
+            writeFile(dirPath, "__ArchiveUnitMetadata.xml", contentmetadata.writeXML().getBytes(StandardCharsets.UTF_8),
+                    null);
 
 
         // write objects files
@@ -441,11 +592,49 @@ public class ArchiveUnit {
                 else
                     filename = o.filename;
                 if (storeExtractor.getOptions().model == StoreExtractorOptions.MODEL_V1)
-                    writeFile(dirPath, "__" + o.usage + "_" + Integer.toString(o.version) + "_" + filename, o.rawContent);
+                    writeFile(dirPath, "__" + o.usage + "_" + Integer.toString(o.version) + "_" + filename, o.rawContent,
+                            o.contentWriter);
                 else
-                    writeFile(dirPath, "__" + o.usage + "_" + Integer.toString(o.version) + "__" + filename, o.rawContent);
+                    writeFile(dirPath, "__" + o.usage + "_" + Integer.toString(o.version) + "__" + filename, o.rawContent,
+                            o.contentWriter);
             }
         }
+        storeExtractor.getMetrics().observeSince(MailExtractMetrics.ARCHIVE_UNIT_WRITE, start);
+    }
+
+    /**
+     * Gets the size on disk of the Archive Unit representation, metadata file
+     * and objects files, without writing it.
+     *
+     * @return the size in bytes
+     */
+    public long getContentSize() {
+        long result = new MetadataXMLNode("Content", contentmetadatalist).writeXML()
+                .getBytes(StandardCharsets.UTF_8).length;
+        for (ArchiveObject o : objects) {
+            if (o.rawContent != null)
+                result += o.rawContent.length;
+            else if (o.contentWriter != null) {
+                CountingOutputStream cos = new CountingOutputStream(NULL_OUTPUT_STREAM);
+                try {
+                    o.contentWriter.writeTo(cos);
+                } catch (IOException e) {
+                    // size of what could be written
+                }
+                result += cos.count;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of files of the Archive Unit representation, metadata
+     * file and objects files.
+     *
+     * @return the files count
+     */
+    public int getFilesCount() {
+        return 1 + objects.size();
     }
 
     // reduce if needed a filename conserving the extension
@@ -29,6 +29,7 @@ package fr.gouv.vitam.tools.mailextract.lib.store.javamail;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 import javax.mail.Folder;
 import javax.mail.MessagingException;
@@ -46,6 +47,15 @@ import javax.mail.internet.MimeMessage;
  */
 public class JMMimeMessage extends MimeMessage {
 
+	/** The raw smtp content size, or -1 if unknown. */
+	private long rawSize;
+
+	/** The folder labels, for stores with messages in several folders, or null. */
+	private List<String> labels;
+
+	/** The key identifying the same message in several folders, or null. */
+	private String deduplicationKey;
+
 	/**
 	 * Instantiates a new mime message in Javamail context.
 	 *
@@ -62,5 +72,78 @@ public class JMMimeMessage extends MimeMessage {
 	 */
 	public JMMimeMessage(Folder folder, InputStream is, int msgno) throws MessagingException {
 		super(folder, is, msgno);
+		this.rawSize = -1;
+	}
+
+	/**
+	 * Instantiates a new mime message in Javamail context, with known raw
+	 * content size.
+	 *
+	 * @param folder
+	 *            JavaMail folder
+	 * @param is
+	 *            InputStream containing the message raw smtp content
+	 * @param msgno
+	 *            Message number in folder message list
+	 * @param rawSize
+	 *            the raw smtp content size
+	 * @throws MessagingException
+	 *             Messaging exception from inner JavaMail calls
+	 */
+	public JMMimeMessage(Folder folder, InputStream is, int msgno, long rawSize) throws MessagingException {
+		super(folder, is, msgno);
+		this.rawSize = rawSize;
+	}
+
+	/**
+	 * Gets the raw smtp content size, known from the container structure
+	 * (for example mbox offsets) without reading the message content.
+	 *
+	 * @return the raw size, or -1 if unknown
+	 */
+	public long getRawSize() {
+		return rawSize;
+	}
+
+	/**
+	 * Gets the folder labels of the message, in stores where the same message
+	 * is in several folders (Google Takeout mbox...).
+	 *
+	 * @return the labels list, or null if none
+	 */
+	public List<String> getLabels() {
+		return labels;
+	}
+
+	/**
+	 * Sets the folder labels of the message.
+	 *
+	 * @param labels
+	 *            the labels list
+	 */
+	public void setLabels(List<String> labels) {
+		this.labels = labels;
+	}
+
+	/**
+	 * Gets the key identifying the same message in all the folders where it
+	 * is, so that it's extracted only once.
+	 *
+	 * @return the de-duplication key, or null if the message is only in one
+	 *         folder
+	 */
+	public String getDeduplicationKey() {
+		return deduplicationKey;
+	}
+
+	/**
+	 * Sets the key identifying the same message in all the folders where it
+	 * is.
+	 *
+	 * @param deduplicationKey
+	 *            the de-duplication key
+	 */
+	public void setDeduplicationKey(String deduplicationKey) {
+		this.deduplicationKey = deduplicationKey;
 	}
 }
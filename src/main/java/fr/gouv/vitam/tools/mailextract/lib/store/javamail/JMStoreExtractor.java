@@ -30,10 +30,14 @@ package fr.gouv.vitam.tools.mailextract.lib.store.javamail;
 import javax.mail.*;
 
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorFactory;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorOptions;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreMessageAttachment;
 import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
 import fr.gouv.vitam.tools.mailextract.lib.store.javamail.JMStoreFolder;
+import fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox.MboxIndexCache;
+import fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox.MboxStore;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
 import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
 
@@ -46,11 +50,45 @@ import java.util.Properties;
  * StoreExtractor sub-class for mail boxes extracted through JavaMail library.
  * <p>
  * For now, IMAP and Thunderbird mbox, eml structure through MailExtract application,
- * could also be used for POP3 and Gmail, via StoreExtractor (not tested).
+ * could also be used for POP3, via StoreExtractor (not tested).
+ * <p>
+ * For Gmail (gimap scheme), each message is extracted only once whatever the
+ * number of its labels folders, and referenced in the other ones.
  */
 public class JMStoreExtractor extends StoreExtractor {
 	private Store store;
 	
+	/** The Constant MBOX_MN, mbox "From " separator line beginning. */
+	static final byte[] MBOX_MN = new byte[] { 'F', 'r', 'o', 'm', ' ' };
+
+	/** The store extractor factory, calling directly the constructors. */
+	static final StoreExtractorFactory FACTORY = new StoreExtractorFactory() {
+		@Override
+		public StoreExtractor createStoreExtractor(String urlString, String folder, String destPathString,
+				StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger)
+				throws ExtractionException, InterruptedException {
+			return new JMStoreExtractor(urlString, folder, destPathString, options, rootStoreExtractor, logger);
+		}
+
+		@Override
+		public StoreExtractor createEmbeddedStoreExtractor(StoreMessageAttachment attachment, ArchiveUnit rootNode,
+				StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger)
+				throws ExtractionException, InterruptedException {
+			return new JMStoreExtractor(attachment, rootNode, options, rootStoreExtractor, logger);
+		}
+	};
+
+	/**
+	 * Provider of this store extractor, declared for the ServiceLoader in this library
+	 * META-INF/services/fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider file.
+	 */
+	public static class Provider implements StoreExtractorProvider {
+		@Override
+		public void subscribeStoreExtractors() {
+			subscribeStoreExtractor();
+		}
+	}
+
 	/**
 	 * Subscribes at StoreExtractor level all schemes treated by this specific store extractor.
 	 * <p>
@@ -58,13 +96,17 @@ public class JMStoreExtractor extends StoreExtractor {
 	 */
 	static public void subscribeStoreExtractor()
 	{
-		addExtractionRelation("message/rfc822","eml",false, JMStoreExtractor.class);
-		addExtractionRelation("application/mbox","mbox", true,JMStoreExtractor.class);
-		addExtractionRelation(null,"thunderbird", true,JMStoreExtractor.class);
-		addExtractionRelation(null,"imap", true,JMStoreExtractor.class);
-		addExtractionRelation(null,"imaps", true,JMStoreExtractor.class);
-		addExtractionRelation(null,"gimap", true,JMStoreExtractor.class);
-		addExtractionRelation(null,"pop3", true,JMStoreExtractor.class);
+		addExtractionRelation("message/rfc822","eml",false, FACTORY);
+		addExtractionRelation("application/mbox","mbox", true,FACTORY);
+		addExtractionRelation(null,"thunderbird", true,FACTORY);
+		addExtractionRelation(null,"maildir", true,FACTORY);
+		addExtractionRelation(null,"emldir", true,FACTORY);
+		addExtractionRelation(null,"imap", true,FACTORY);
+		addExtractionRelation(null,"imaps", true,FACTORY);
+		addExtractionRelation(null,"gimap", true,FACTORY);
+		addExtractionRelation(null,"pop3", true,FACTORY);
+		// a text attachment can begin with "From ", Tika confirms it's a mbox
+		addMagicNumber(MBOX_MN, "mbox", true);
 	}
 
 	// Attachment to complete with decoded form
@@ -109,6 +151,11 @@ public class JMStoreExtractor extends StoreExtractor {
 			props.setProperty("mail.imaps.ssl.trust", "*");
 			props.setProperty("mail.imap.ssl.trust", "*");
 			setSessionProperties(props);
+			props.setProperty(MboxStore.TAKEOUT_PROPERTY, Boolean.toString(options != null && options.takeoutLabels));
+			if ((options != null) && (options.mboxIndexCacheDirectory != null))
+				props.setProperty(MboxIndexCache.CACHE_DIRECTORY_PROPERTY, options.mboxIndexCacheDirectory);
+			else
+				props.remove(MboxIndexCache.CACHE_DIRECTORY_PROPERTY);
 			Session session = Session.getDefaultInstance(props, null);
 
 			// add thunderbird provider
@@ -123,6 +170,13 @@ public class JMStoreExtractor extends StoreExtractor {
 			session.addProvider(new Provider(Provider.Type.STORE, "mbox",
 					fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox.MboxStore.class.getName(), "fr.gouv.vitam",
 					getClass().getPackage().getImplementationVersion()));
+			// add maildir and eml files directory provider
+			session.addProvider(new Provider(Provider.Type.STORE, "maildir",
+					fr.gouv.vitam.tools.mailextract.lib.store.javamail.maildir.MaildirStore.class.getName(),
+					"fr.gouv.vitam", getClass().getPackage().getImplementationVersion()));
+			session.addProvider(new Provider(Provider.Type.STORE, "emldir",
+					fr.gouv.vitam.tools.mailextract.lib.store.javamail.maildir.MaildirStore.class.getName(),
+					"fr.gouv.vitam", getClass().getPackage().getImplementationVersion()));
 
 			URLName urlName = new URLName(url);
 			store = session.getStore(urlName);
@@ -253,6 +307,14 @@ public class JMStoreExtractor extends StoreExtractor {
 	}
 
 
+	/* (non-Javadoc)
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor#isDeduplicatingMessages()
+	 */
+	@Override
+	public boolean isDeduplicatingMessages() {
+		return scheme.equals("gimap") || (scheme.equals("mbox") && getOptions().takeoutLabels);
+	}
+
 	/* (non-Javadoc)
 	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor#canExtractObjectsLists()
 	 */
@@ -27,18 +27,31 @@
 
 package fr.gouv.vitam.tools.mailextract.lib.store.javamail;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 
+import com.sun.mail.gimap.GmailFolder;
+import com.sun.mail.gimap.GmailMessage;
+import com.sun.mail.imap.IMAPFolder;
+
+import fr.gouv.vitam.tools.mailextract.lib.core.ExtractionEstimator;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
 import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
 import fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox.MboxFolder;
 import fr.gouv.vitam.tools.mailextract.lib.store.javamail.thunderbird.ThunderbirdFolder;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionFilter;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractMetrics;
+import fr.gouv.vitam.tools.mailextract.lib.utils.TopItemsReport;
 
 /**
  * StoreFolder sub-class for mail boxes extracted through JavaMail library.
@@ -98,13 +111,31 @@ public class JMStoreFolder extends StoreFolder {
 		int msgtotal;
 		Message message;
 
+		if (folder instanceof GmailFolder) {
+			extractGmailFolderElements(writeFlag);
+			return;
+		}
+
+		ExtractionFilter filter = storeExtractor.getFilter();
+
 		try {
 			folder.open(Folder.READ_ONLY);
 			msgtotal = folder.getMessageCount();
 			for (int i = 1; i <= msgtotal; i++) {
+				if (filter.hasDateRange() && !filter.acceptRawDate(getRawHeaderValue(i, "Date")))
+					continue;
 				message = folder.getMessage(i);
 				if (!((MimeMessage) message).isSet(Flags.Flag.DELETED)) {
+					if (filter.hasDateRange() && !filter.acceptDate(message.getSentDate()))
+						continue;
 					JMStoreMessage jMStoreMessage = new JMStoreMessage(this, (MimeMessage) message);
+					if ((message instanceof JMMimeMessage)
+							&& (((JMMimeMessage) message).getDeduplicationKey() != null)) {
+						jMStoreMessage.setLabels(((JMMimeMessage) message).getLabels());
+						extractMessageOnce(jMStoreMessage, ((JMMimeMessage) message).getDeduplicationKey(),
+								writeFlag);
+						continue;
+					}
 					jMStoreMessage.analyzeMessage();
 					dateRange.extendRange(jMStoreMessage.getSentDate());
 					jMStoreMessage.extractMessage(writeFlag);
@@ -120,6 +151,70 @@ public class JMStoreFolder extends StoreFolder {
 		// already the extraction source
 	}
 
+	// raw header value for mbox and thunderbird folders, read in file
+	// without building the message, or null for other folders
+	private String getRawHeaderValue(int msgno, String headerName) {
+		if (folder instanceof MboxFolder)
+			return ((MboxFolder) folder).getMessageHeaderValue(msgno, headerName);
+		else if (folder instanceof ThunderbirdFolder)
+			return ((ThunderbirdFolder) folder).getMessageHeaderValue(msgno, headerName);
+		return null;
+	}
+
+	// gmail exposes the same message in each of its labels folders and in
+	// "All Mail". X-GM-MSGID and X-GM-LABELS are fetched in bulk with the
+	// envelope, each message is downloaded and extracted only in the first
+	// folder where it's found, and is only referenced in the others
+	private void extractGmailFolderElements(boolean writeFlag) throws ExtractionException, InterruptedException {
+		GmailMessage gmailMessage;
+		ExtractionFilter filter = storeExtractor.getFilter();
+
+		try {
+			folder.open(Folder.READ_ONLY);
+			Message[] messages = folder.getMessages();
+			FetchProfile fp = new FetchProfile();
+			fp.add(FetchProfile.Item.ENVELOPE);
+			fp.add(FetchProfile.Item.FLAGS);
+			fp.add(FetchProfile.Item.SIZE);
+			fp.add(GmailFolder.FetchProfileItem.MSGID);
+			fp.add(GmailFolder.FetchProfileItem.LABELS);
+			folder.fetch(messages, fp);
+			for (Message message : messages) {
+				if (message.isSet(Flags.Flag.DELETED)
+						|| (filter.hasDateRange() && !filter.acceptDate(message.getSentDate())))
+					continue;
+				gmailMessage = (GmailMessage) message;
+				JMStoreMessage jMStoreMessage = new JMStoreMessage(this, gmailMessage);
+				String[] labels = gmailMessage.getLabels();
+				if ((labels != null) && (labels.length > 0))
+					jMStoreMessage.setLabels(Arrays.asList(labels));
+				extractMessageOnce(jMStoreMessage, "gmail:" + Long.toString(gmailMessage.getMsgId()), writeFlag);
+			}
+			folder.close(false);
+		} catch (MessagingException e) {
+			throw new ExtractionException("MailExtract: Can't get messages from folder " + getFullName());
+		}
+	}
+
+	// extract the message if not already done with the same key in another
+	// folder, or only reference the already extracted one
+	private void extractMessageOnce(JMStoreMessage jMStoreMessage, String key, boolean writeFlag)
+			throws ExtractionException, InterruptedException {
+		String unitPath = storeExtractor.getExtractedMessageUnitPath(key);
+
+		if (unitPath == null) {
+			jMStoreMessage.analyzeMessage();
+			dateRange.extendRange(jMStoreMessage.getSentDate());
+			jMStoreMessage.extractMessage(writeFlag);
+			jMStoreMessage.countMessage();
+			storeExtractor.putExtractedMessageUnitPath(key, jMStoreMessage.messageNode.getFullName());
+		} else {
+			jMStoreMessage.extractMessageReference(unitPath, writeFlag);
+			dateRange.extendRange(jMStoreMessage.getSentDate());
+			incFolderElementsCount();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -206,6 +301,14 @@ public class JMStoreFolder extends StoreFolder {
 		int msgtotal;
 		Message message;
 
+		if ((folder instanceof IMAPFolder) && !storeExtractor.getOptions().deepStatistics) {
+			listIMAPFolderElements();
+			return;
+		}
+		if ((folder instanceof ThunderbirdFolder) && !storeExtractor.getOptions().deepStatistics
+				&& listThunderbirdIndexedFolderElements())
+			return;
+
 		try {
 			folder.open(Folder.READ_ONLY);
 			msgtotal = folder.getMessageCount();
@@ -213,10 +316,7 @@ public class JMStoreFolder extends StoreFolder {
 				message = folder.getMessage(i);
 				if (!((MimeMessage) message).isSet(Flags.Flag.DELETED)) {
 					JMStoreMessage jMStoreMessage = new JMStoreMessage(this, (MimeMessage) message);
-					jMStoreMessage.analyzeMessage();
-					if (stats)
-						jMStoreMessage.extractMessage(false);
-					jMStoreMessage.countMessage();
+					jMStoreMessage.listMessage();
 
 				}
 			}
@@ -227,6 +327,96 @@ public class JMStoreFolder extends StoreFolder {
 
 	}
 
+	// server side statistics for imap folders, without any message body
+	// transfer: STATUS for the messages count, and one bulk FETCH of FLAGS,
+	// RFC822.SIZE and ENVELOPE for the sizes and the sent dates, which are the
+	// dates of a full listing and of the date selection
+	private void listIMAPFolderElements() throws ExtractionException {
+		ExtractionFilter filter = storeExtractor.getFilter();
+
+		try {
+			// closed folder count is obtained by STATUS (MESSAGES)
+			if (folder.getMessageCount() == 0)
+				return;
+
+			folder.open(Folder.READ_ONLY);
+			try {
+				Message[] messages = folder.getMessages();
+				FetchProfile fp = new FetchProfile();
+				fp.add(FetchProfile.Item.FLAGS);
+				fp.add(FetchProfile.Item.SIZE);
+				fp.add(FetchProfile.Item.ENVELOPE);
+				folder.fetch(messages, fp);
+				for (Message message : messages) {
+					if (message.isSet(Flags.Flag.DELETED)
+							|| (filter.hasDateRange() && !filter.acceptDate(message.getSentDate())))
+						continue;
+					countListedMessage(((MimeMessage) message).getMessageID(), message.getSubject(),
+							Math.max(0, message.getSize()), message.getSentDate());
+				}
+			} finally {
+				closeListedFolder();
+			}
+		} catch (MessagingException e) {
+			throw new ExtractionException("MailExtract: Can't get messages statistics from folder " + getFullName());
+		}
+	}
+
+	// account a message listed without building it, in folder statistics,
+	// metrics and top items report as StoreMessage.countMessage does
+	private void countListedMessage(String messageID, String subject, long size, Date date) {
+		incFolderElementsCount();
+		addFolderElementsRawSize(size);
+		dateRange.extendRange(date);
+		storeExtractor.getMetrics().addCounter(MailExtractMetrics.BYTES_READ, size);
+
+		TopItemsReport report = storeExtractor.getTopItemsReport();
+		if (report.isActive())
+			report.addMessage(new TopItemsReport.Item(getFullName(), messageID, subject, size, 0,
+					Collections.<String, Long>emptyMap()));
+	}
+
+	// close a folder opened for listing, a closing failure being ignored so
+	// that it doesn't hide a listing one
+	private void closeListedFolder() {
+		try {
+			if (folder.isOpen())
+				folder.close(false);
+		} catch (MessagingException e) {
+			// forget it
+		}
+	}
+
+	// statistics from the thunderbird .msf index, without any message
+	// parsing, or false if there's no usable index and messages have to be
+	// listed one by one
+	private boolean listThunderbirdIndexedFolderElements() throws ExtractionException {
+		ThunderbirdFolder thunderbirdFolder = (ThunderbirdFolder) folder;
+		ExtractionFilter filter = storeExtractor.getFilter();
+
+		try {
+			thunderbirdFolder.open(Folder.READ_ONLY);
+			try {
+				if (!thunderbirdFolder.isIndexed())
+					return false;
+				int msgtotal = thunderbirdFolder.getMessageCount();
+				for (int i = 1; i <= msgtotal; i++) {
+					Date date = thunderbirdFolder.getIndexedMessageDate(i);
+					if (filter.hasDateRange() && !filter.acceptDate(date))
+						continue;
+					countListedMessage(thunderbirdFolder.getIndexedMessageID(i),
+							thunderbirdFolder.getIndexedMessageSubject(i),
+							Math.max(0, thunderbirdFolder.getMessageRawSize(i)), date);
+				}
+			} finally {
+				closeListedFolder();
+			}
+		} catch (MessagingException e) {
+			throw new ExtractionException("MailExtract: Can't get messages statistics from folder " + getFullName());
+		}
+		return true;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -250,4 +440,57 @@ public class JMStoreFolder extends StoreFolder {
 			throw new ExtractionException("MailExtract: Can't get sub folders from folder " + getFullName());
 		}
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#
+	 * doEstimateFolderElements(ExtractionEstimator)
+	 */
+	@Override
+	protected void doEstimateFolderElements(ExtractionEstimator estimator)
+			throws ExtractionException, InterruptedException {
+		ExtractionFilter filter = storeExtractor.getFilter();
+		Message message;
+
+		try {
+			folder.open(Folder.READ_ONLY);
+			// sampled messages are directly accessed by number, that is by
+			// offset for mbox and thunderbird folders
+			for (int index : estimator.beginFolder(folder.getMessageCount())) {
+				long start = System.nanoTime();
+				message = folder.getMessage(index + 1);
+				if (message.isSet(Flags.Flag.DELETED)
+						|| (filter.hasDateRange() && !filter.acceptDate(message.getSentDate()))) {
+					estimator.addEmptySample();
+					continue;
+				}
+				JMStoreMessage jMStoreMessage = new JMStoreMessage(this, (MimeMessage) message);
+				jMStoreMessage.analyzeMessage();
+				jMStoreMessage.extractMessage(false);
+				estimator.addSample(jMStoreMessage, System.nanoTime() - start);
+			}
+			estimator.endFolder();
+			folder.close(false);
+		} catch (MessagingException e) {
+			throw new ExtractionException("MailExtract: Can't get messages from folder " + getFullName());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#
+	 * doEstimateSubFolders(ExtractionEstimator)
+	 */
+	@Override
+	protected void doEstimateSubFolders(ExtractionEstimator estimator)
+			throws ExtractionException, InterruptedException {
+		try {
+			for (final Folder subfolder : folder.list())
+				new JMStoreFolder(storeExtractor, subfolder, this).estimateFolder(estimator);
+		} catch (MessagingException e) {
+			throw new ExtractionException("MailExtract: Can't get sub folders from folder " + getFullName());
+		}
+	}
 }
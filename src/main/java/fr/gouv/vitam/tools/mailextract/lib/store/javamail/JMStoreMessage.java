@@ -85,15 +85,39 @@ public class JMStoreMessage extends StoreMessage {
 
 		if (mimeContent != null)
 			result = mimeContent.length;
+		else if ((message instanceof JMMimeMessage) && (((JMMimeMessage) message).getRawSize() >= 0))
+			result = ((JMMimeMessage) message).getRawSize();
 		else {
-			mimeContent = getNativeMimeContent();
-			result = mimeContent.length;
-			logMessageWarning("mailextract.javamail: Can't get the size");
-			result = 0;
+			// server given size (RFC822.SIZE for imap) without content download
+			try {
+				result = message.getSize();
+			} catch (MessagingException e) {
+				result = -1;
+			}
+			if (result < 0) {
+				logMessageWarning("mailextract.javamail: Can't get the size");
+				result = 0;
+			}
 		}
 		return result;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage#
+	 * analyzeMessageForListing()
+	 */
+	@Override
+	public void analyzeMessageForListing() throws InterruptedException {
+		// only the Date header, received headers are not parsed
+		try {
+			sentDate = message.getSentDate();
+		} catch (MessagingException e) {
+			logMessageWarning("mailextract.javamail: Can't extract sent date");
+		}
+	}
+
 	// utilities
 
 	// simple InternetAddress to metadata String
@@ -55,6 +55,7 @@ public class EmlFolder extends Folder {
 	private volatile boolean opened = false;
 	private EmlStore emlstore;
 	private InputStream emlInputStream;
+	private long emlSize;
 
 	/**
 	 * Instantiates a new Eml simulated folder.
@@ -241,11 +242,13 @@ public class EmlFolder extends Folder {
 		// create input stream from embedded content
 		if (emlstore.getObjectContent() != null) {
 			emlInputStream = new SharedByteArrayInputStream((byte[]) emlstore.getObjectContent());
+			emlSize = ((byte[]) emlstore.getObjectContent()).length;
 		} else {
 			// create input stream from file
 			try {
 
 				emlInputStream = new SharedFileInputStream(new File(emlstore.getContainer()));
+				emlSize = new File(emlstore.getContainer()).length();
 			} catch (IOException e) {
 				throw new MessagingException("eml: open failure, can't read: " + emlstore.getContainer());
 			}
@@ -291,7 +294,7 @@ public class EmlFolder extends Folder {
 			throw new IndexOutOfBoundsException("Eml: only message 1, no message number " + msgno);
 		Message m;
 
-		m = new JMMimeMessage(this, emlInputStream, msgno);
+		m = new JMMimeMessage(this, emlInputStream, msgno, emlSize);
 
 		return m;
 	}
@@ -0,0 +1,539 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail.maildir;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.MethodNotSupportedException;
+import javax.mail.URLName;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import com.sun.mail.imap.protocol.BASE64MailboxDecoder;
+
+import fr.gouv.vitam.tools.mailextract.lib.store.javamail.JMMimeMessage;
+
+/**
+ * JavaMail Folder for Maildir and eml files directory structures.
+ * <p>
+ * This is the main class for folder analysis and message reading.
+ * <p>
+ * <b>Warning:</b>Only for reading and without file locking or new messages
+ * management.
+ */
+public class MaildirFolder extends Folder {
+
+	/** Message files read ahead, by reader. */
+	private static final int READ_AHEAD_BY_READER = 2;
+
+	private MaildirStore mstore;
+	private MaildirFolder father; // is root if null
+	private File directory;
+	private File maildirRoot; // root of the Maildir++ hierarchy, or null
+	private String maildirPrefix; // Maildir++ directory name, empty for root
+	private String folderFullName;
+	private String folderName;
+
+	private volatile boolean opened = false;
+	private List<File> messageFiles;
+	private int total; // total number of messages in folder
+	private Map<Integer, Future<byte[]>> readAhead;
+	private int readAheadEnd;
+	private int lastMsgno;
+
+	// any folder with its directory and Maildir++ context
+	private MaildirFolder(MaildirStore store, MaildirFolder father, File directory, File maildirRoot,
+			String maildirPrefix, String folderName) {
+		super(store);
+		this.mstore = store;
+		this.father = father;
+		this.directory = directory;
+		this.maildirRoot = maildirRoot;
+		this.maildirPrefix = maildirPrefix;
+		this.folderName = folderName;
+		if ((father == null) || father.getFullName().isEmpty())
+			this.folderFullName = folderName;
+		else
+			this.folderFullName = father.getFullName() + File.separator + folderName;
+	}
+
+	/**
+	 * Creates the root folder of a store.
+	 *
+	 * @param store
+	 *            the store
+	 * @param directory
+	 *            the root directory
+	 * @return the maildir folder
+	 */
+	static MaildirFolder createRootFolder(MaildirStore store, File directory) {
+		return new MaildirFolder(store, null, directory, isMaildir(directory) ? directory : null, "", "");
+	}
+
+	// a Maildir is recognized by its cur or new sub directories
+	private static boolean isMaildir(File directory) {
+		return new File(directory, "cur").isDirectory() || new File(directory, "new").isDirectory();
+	}
+
+	private static boolean isMaildirSubDirectory(String name) {
+		return name.equals("cur") || name.equals("new") || name.equals("tmp");
+	}
+
+	// list the directory files accepted by the filter, in name order
+	private static List<File> listFiles(File directory, FileFilter fileFilter) {
+		File[] files = directory.listFiles(fileFilter);
+		if (files == null)
+			return new ArrayList<File>();
+		Arrays.sort(files);
+		return new ArrayList<File>(Arrays.asList(files));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getName()
+	 */
+	@Override
+	public String getName() {
+		return folderName;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getFullName()
+	 */
+	@Override
+	public String getFullName() {
+		return folderFullName;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getSeparator()
+	 */
+	@Override
+	public char getSeparator() {
+		return File.separatorChar;
+	}
+
+	/*
+	 * Not implemented, cause of no use in mail extract
+	 */
+	@Override
+	public Folder[] list(String pattern) throws MessagingException {
+		throw new MethodNotSupportedException("maildir: list with pattern not supported");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#list()
+	 */
+	@Override
+	public Folder[] list() throws MessagingException {
+		List<MaildirFolder> result = new ArrayList<MaildirFolder>();
+		FileFilter directoryFilter = new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isDirectory();
+			}
+		};
+
+		// Maildir++ sub folders are ".father.name" directories in the root
+		// Maildir, with modified UTF-7 encoded names
+		if (maildirRoot != null) {
+			String childPrefix = maildirPrefix + ".";
+			for (File file : listFiles(maildirRoot, directoryFilter)) {
+				String fileName = file.getName();
+				if (fileName.startsWith(childPrefix) && (fileName.length() > childPrefix.length())
+						&& (fileName.indexOf('.', childPrefix.length()) < 0))
+					result.add(new MaildirFolder(mstore, this, file, maildirRoot, fileName,
+							BASE64MailboxDecoder.decode(fileName.substring(childPrefix.length()))));
+			}
+		}
+
+		// nested directories, being Maildirs or eml files directories
+		boolean maildir = isMaildir(directory);
+		for (File file : listFiles(directory, directoryFilter)) {
+			String fileName = file.getName();
+			if (!fileName.startsWith(".") && !(maildir && isMaildirSubDirectory(fileName)))
+				result.add(new MaildirFolder(mstore, this, file, isMaildir(file) ? file : null, "", fileName));
+		}
+
+		return result.toArray(new Folder[result.size()]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getParent()
+	 */
+	@Override
+	public Folder getParent() throws MessagingException {
+		if (father == null)
+			return this;
+		return father;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#exists()
+	 */
+	@Override
+	public boolean exists() {
+		return directory.isDirectory();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getType()
+	 */
+	@Override
+	public int getType() {
+		return HOLDS_MESSAGES | HOLDS_FOLDERS;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getPermanentFlags()
+	 */
+	@Override
+	public Flags getPermanentFlags() {
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#hasNewMessages()
+	 */
+	@Override
+	public boolean hasNewMessages() {
+		// only read static directory hierarchy
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getFolder(java.lang.String)
+	 */
+	@Override
+	public Folder getFolder(String name) throws MessagingException {
+		if ((name == null) || name.isEmpty())
+			return this;
+
+		int separatorIndex = name.indexOf(File.separatorChar);
+		String childName = (separatorIndex < 0 ? name : name.substring(0, separatorIndex));
+		String rest = (separatorIndex < 0 ? "" : name.substring(separatorIndex + 1));
+		for (Folder child : list()) {
+			if (child.getName().equals(childName))
+				return child.getFolder(rest);
+		}
+		// not existing folder
+		return new MaildirFolder(mstore, this, new File(directory, name), null, "", name);
+	}
+
+	/*
+	 * Not implemented, cause of no use in mail extract
+	 */
+	@Override
+	public boolean create(int type) throws MessagingException {
+		throw new MethodNotSupportedException("maildir: no writing supported");
+	}
+
+	/*
+	 * Not implemented, cause of no use in mail extract
+	 */
+	@Override
+	public boolean delete(boolean recurse) throws MessagingException {
+		throw new MethodNotSupportedException("maildir: no writing supported");
+	}
+
+	/*
+	 * Not implemented, cause of no use in mail extract
+	 */
+	@Override
+	public boolean renameTo(Folder f) throws MessagingException {
+		throw new MethodNotSupportedException("maildir: no writing supported");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#isOpen()
+	 */
+	@Override
+	public boolean isOpen() {
+		return opened;
+	}
+
+	// message files of a Maildir are in cur and new, in tmp being only
+	// messages in delivery, and else are the eml files of the directory
+	private List<File> listMessageFiles() throws MessagingException {
+		if (!isMaildir(directory))
+			return listFiles(directory, new FileFilter() {
+				@Override
+				public boolean accept(File file) {
+					return file.isFile() && file.getName().toLowerCase().endsWith(".eml");
+				}
+			});
+
+		final FileFilter maildirFilter = new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && !file.getName().startsWith(".");
+			}
+		};
+		Future<List<File>> newFiles = mstore.getReaders().submit(new Callable<List<File>>() {
+			@Override
+			public List<File> call() {
+				return listFiles(new File(directory, "new"), maildirFilter);
+			}
+		});
+		List<File> result = listFiles(new File(directory, "cur"), maildirFilter);
+		try {
+			result.addAll(newFiles.get());
+		} catch (ExecutionException e) {
+			throw new MessagingException("maildir: open failure, can't list: " + directory.getPath());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("maildir: open interrupted, listing: " + directory.getPath());
+		}
+		// unique names begin with the delivery time, name order is near delivery order
+		Collections.sort(result, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return f1.getName().compareTo(f2.getName());
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#open(int)
+	 */
+	@Override
+	public void open(int mode) throws MessagingException {
+		if (opened)
+			throw new IllegalStateException("maildir: Folder " + folderFullName + " is already open");
+		if (!directory.isDirectory())
+			throw new MessagingException("maildir: Folder " + folderFullName + " doesn't exist");
+
+		this.mode = mode;
+		switch (mode) {
+		case READ_WRITE:
+			throw new MethodNotSupportedException("maildir: no writing supported");
+		case READ_ONLY:
+		default:
+			break;
+		}
+
+		messageFiles = listMessageFiles();
+		total = messageFiles.size();
+		readAhead = new HashMap<Integer, Future<byte[]>>();
+		readAheadEnd = 0;
+		lastMsgno = 0;
+		opened = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#close(boolean)
+	 */
+	@Override
+	public void close(boolean expunge) throws MessagingException {
+		if (!opened)
+			throw new IllegalStateException("maildir: Folder " + folderFullName + " is not Open");
+		for (Future<byte[]> read : readAhead.values())
+			read.cancel(true);
+		readAhead = null;
+		messageFiles = null;
+		opened = false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getMessageCount()
+	 */
+	@Override
+	public int getMessageCount() throws MessagingException {
+		if (!opened)
+			return -1;
+
+		return total;
+	}
+
+	// submit the read of a message file content to the store readers
+	private Future<byte[]> submitRead(final File file) {
+		return mstore.getReaders().submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return Files.readAllBytes(file.toPath());
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getMessage(int)
+	 */
+	@Override
+	public Message getMessage(int msgno) throws MessagingException {
+		if (msgno < 1) // message-numbers start at 1
+			throw new IndexOutOfBoundsException("message number " + msgno + " < 1");
+		else if (msgno > total) // Still out of range ? Throw up ...
+			throw new IndexOutOfBoundsException("message number " + msgno + " > " + total);
+
+		// sequential access reads ahead the next message files, so that
+		// reading overlaps the extraction of the current message
+		if (msgno == lastMsgno + 1) {
+			int end = Math.min(total, msgno + mstore.getReadersCount() * READ_AHEAD_BY_READER);
+			for (int i = Math.max(msgno, readAheadEnd + 1); i <= end; i++)
+				readAhead.put(i, submitRead(messageFiles.get(i - 1)));
+			readAheadEnd = Math.max(readAheadEnd, end);
+		}
+		lastMsgno = msgno;
+
+		File file = messageFiles.get(msgno - 1);
+		Future<byte[]> read = readAhead.remove(msgno);
+		byte[] content;
+		try {
+			if (read == null)
+				content = Files.readAllBytes(file.toPath());
+			else
+				content = read.get();
+		} catch (IOException | ExecutionException e) {
+			throw new MessagingException("maildir: can't read message file " + file.getPath());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("maildir: interrupted reading message file " + file.getPath());
+		}
+
+		// each get regenerate a message with no strong link so that it can be
+		// GC, optimal for the extraction usage with only one get by message
+		Message m = new JMMimeMessage(this, new SharedByteArrayInputStream(content), msgno, content.length);
+		Flags flags = getMaildirFlags(file);
+		if (flags != null)
+			m.setFlags(flags, true);
+		return m;
+	}
+
+	// flags of a Maildir message file, recent if in new and else defined by
+	// the info part of its name ("unique:2,FRS"), or null if not in a Maildir
+	private static Flags getMaildirFlags(File file) {
+		String directoryName = file.getParentFile().getName();
+		if (directoryName.equals("new"))
+			return new Flags(Flags.Flag.RECENT);
+		if (!directoryName.equals("cur"))
+			return null;
+
+		Flags result = new Flags();
+		String fileName = file.getName();
+		int infoIndex = Math.max(fileName.lastIndexOf(":2,"), Math.max(fileName.lastIndexOf(";2,"),
+				fileName.lastIndexOf("!2,")));
+		if (infoIndex >= 0) {
+			for (char c : fileName.substring(infoIndex + 3).toCharArray()) {
+				switch (c) {
+				case 'D':
+					result.add(Flags.Flag.DRAFT);
+					break;
+				case 'F':
+					result.add(Flags.Flag.FLAGGED);
+					break;
+				case 'R':
+					result.add(Flags.Flag.ANSWERED);
+					break;
+				case 'S':
+					result.add(Flags.Flag.SEEN);
+					break;
+				case 'T':
+					result.add(Flags.Flag.DELETED);
+					break;
+				default:
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Not implemented, cause of no use in mail extract
+	 */
+	@Override
+	public void appendMessages(Message[] msgs) throws MessagingException {
+		throw new MethodNotSupportedException("maildir: no writing supported");
+	}
+
+	/*
+	 * Not implemented, cause of no use in mail extract
+	 */
+	@Override
+	public Message[] expunge() throws MessagingException {
+		throw new MethodNotSupportedException("maildir: no writing supported");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Folder#getURLName()
+	 */
+	@Override
+	public URLName getURLName() {
+		URLName storeURL = getStore().getURLName();
+
+		return new URLName(storeURL.getProtocol(), storeURL.getHost(), storeURL.getPort(), directory.getPath(),
+				storeURL.getUsername(), null /* no password */);
+	}
+}
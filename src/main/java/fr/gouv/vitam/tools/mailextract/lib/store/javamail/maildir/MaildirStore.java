@@ -0,0 +1,216 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail.maildir;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.URLName;
+
+/**
+ * JavaMail Store for Maildir and eml files directory structures.
+ * <p>
+ * A directory with cur or new sub directories is a Maildir, its messages
+ * being the files in cur and new, and its Maildir++ sub folders being the
+ * ".name" directories beside them. Any other directory holds as messages its
+ * .eml files. In both cases, other sub directories are sub folders.
+ * <p>
+ * Message files are read ahead by a pool of workers, shared by all the folders
+ * of the store.
+ * <p>
+ * <b>Warning:</b>Only for reading and without file locking or new messages
+ * management.
+ */
+public class MaildirStore extends Store {
+
+	/** Path to the target directory **/
+	private String container;
+
+	/** The workers reading message files, created on first use. */
+	private ExecutorService readers;
+
+	/**
+	 * Gets the container.
+	 *
+	 * @return the container
+	 */
+	public String getContainer() {
+		return container;
+	}
+
+	/**
+	 * Constructor, used by the JavaMail library.
+	 *
+	 * @param session
+	 *            the session
+	 * @param url
+	 *            the url formed as protocol://user@host/container
+	 *            <ul>
+	 *            <li>user is the user (declarative only, not mandatory and not
+	 *            used in processing)</li>
+	 *            <li>host for now only localhost
+	 *            <li>container is the Maildir or eml files root directory</li>
+	 *            </ul>
+	 */
+	public MaildirStore(Session session, URLName url) {
+		super(session, url);
+
+		try {
+			container = URLDecoder.decode(url.getFile(), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// not possible
+		}
+	}
+
+	/**
+	 * Override this service method to implement specific check, including url
+	 * and defined directory availability (not in params)
+	 * 
+	 * <p>
+	 * Here control the params coherence and that the container directory
+	 * exists
+	 * 
+	 * @param host
+	 *            for now only localhost
+	 * @param port
+	 *            not used
+	 * @param user
+	 *            the user declarative only, not used in processing
+	 * @param passwd
+	 *            not used
+	 * @return true, if successful
+	 * @throws MessagingException
+	 *             the messaging exception
+	 */
+	@Override
+	protected boolean protocolConnect(String host, int port, String user, String passwd) throws MessagingException {
+		if (!((passwd == null) || (passwd.isEmpty())))
+			throw new MessagingException("maildir: does not allow passwords");
+		if (port != -1)
+			throw new MessagingException("maildir: does not allow port selection");
+
+		File test = new File(container);
+		if (!test.isDirectory()) {
+			throw new MessagingException("maildir: " + container + " is not an existing directory");
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the workers reading message files.
+	 *
+	 * @return the executor service
+	 */
+	synchronized ExecutorService getReaders() {
+		if (readers == null)
+			readers = Executors.newFixedThreadPool(getReadersCount(), new ThreadFactory() {
+				private int rank;
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "mailextract-maildir-" + (++rank));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		return readers;
+	}
+
+	/**
+	 * Gets the workers count.
+	 *
+	 * @return the workers count
+	 */
+	int getReadersCount() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Service#close()
+	 */
+	@Override
+	public synchronized void close() throws MessagingException {
+		if (readers != null) {
+			readers.shutdownNow();
+			readers = null;
+		}
+		super.close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Store#getDefaultFolder()
+	 */
+	@Override
+	public Folder getDefaultFolder() throws MessagingException {
+		return MaildirFolder.createRootFolder(this, new File(container));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Store#getFolder(java.lang.String)
+	 */
+	@Override
+	public Folder getFolder(String name) throws MessagingException {
+		if (name.equals(container))
+			name = "";
+		else if (name.startsWith(container))
+			name = name.substring(container.length() + 1);
+		return getDefaultFolder().getFolder(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.mail.Store#getFolder(javax.mail.URLName)
+	 */
+	@Override
+	public Folder getFolder(URLName url) throws MessagingException {
+		// verify that the root directory in store is respected
+		String filename = "";
+		try {
+			filename = URLDecoder.decode(url.getFile(), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// not possible
+		}
+		if (!filename.startsWith(container))
+			throw new MessagingException("maildir: folder must be in directory declared for the store");
+		return getFolder(filename);
+	}
+}
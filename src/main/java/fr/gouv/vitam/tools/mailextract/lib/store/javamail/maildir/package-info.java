@@ -0,0 +1,7 @@
+/**
+ * Provides all classes to implement a Maildir and eml files directory provider
+ * for JavaMail library.
+ * <p><b>Warning:</b>Only for reading and without file locking or new
+ * messages management.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail.maildir;
\ No newline at end of file
@@ -29,7 +29,6 @@ package fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 import javax.mail.Flags;
@@ -42,11 +41,18 @@ import javax.mail.URLName;
 import fr.gouv.vitam.tools.mailextract.lib.store.javamail.JMMimeMessage;
 import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
 
+import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger.WARNING;
+
 /**
  * JavaMail Folder for mbox file structure.
  * <p>
  * This is the main class for folder analysis and message slicing.
  * <p>
+ * For a Google Takeout mbox, the root folder holds messages without label and
+ * one sub folder by label, each holding the messages with this label. Messages
+ * are then identified by their position in file, so that each one is extracted
+ * only once whatever the number of its labels.
+ * <p>
  * <b>Warning:</b>Only for reading and without file locking or new messages
  * management.
  */
@@ -56,17 +62,11 @@ public class MboxFolder extends Folder {
 	private MboxStore mboxstore;
 	private MboxReader mboxfilereader;
 	private MailExtractProgressLogger logger ;
-	private List<MessageFork> messages;
+	private MboxOffsetIndex messages;
+	private MboxTakeoutIndex takeoutIndex; // labels index, for takeout only
+	private int[] takeoutMessages; // takeout index of each message
 	private int total; // total number of messages in mailbox
-
-	private class MessageFork {
-		long beg, end;
-
-		MessageFork(long beg, long end) {
-			this.beg = beg;
-			this.end = end;
-		}
-	}
+	private String label; // Google Takeout label, null for root folder
 
 	/**
 	 * Sets the logger
@@ -95,6 +95,22 @@ public class MboxFolder extends Folder {
 		this.mboxstore = store;
 	}
 
+	/**
+	 * Instantiates a new Google Takeout label simulated folder.
+	 *
+	 * @param store
+	 *            Store
+	 * @param label
+	 *            Gmail label
+	 * @throws MessagingException
+	 *             Messaging exception from inner JavaMail calls
+	 */
+	public MboxFolder(MboxStore store, String label) throws MessagingException {
+		super(store);
+		this.mboxstore = store;
+		this.label = label;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -102,7 +118,7 @@ public class MboxFolder extends Folder {
 	 */
 	@Override
 	public String getName() {
-		return "";
+		return (label == null ? "" : label);
 	}
 
 	/*
@@ -112,7 +128,7 @@ public class MboxFolder extends Folder {
 	 */
 	@Override
 	public String getFullName() {
-		return "";
+		return (label == null ? "" : label);
 	}
 
 	/*
@@ -141,7 +157,15 @@ public class MboxFolder extends Folder {
 	 */
 	@Override
 	public Folder[] list() throws MessagingException {
-		Folder[] result = new MboxFolder[0];
+		Folder[] result;
+
+		if (mboxstore.isTakeout() && (label == null)) {
+			List<String> labels = mboxstore.getTakeoutIndex(logger).getLabels();
+			result = new MboxFolder[labels.size()];
+			for (int i = 0; i < labels.size(); i++)
+				result[i] = new MboxFolder(mboxstore, labels.get(i));
+		} else
+			result = new MboxFolder[0];
 
 		return result;
 	}
@@ -153,6 +177,8 @@ public class MboxFolder extends Folder {
 	 */
 	@Override
 	public Folder getParent() throws MessagingException {
+		if (label != null)
+			return new MboxFolder(mboxstore);
 		return this;
 	}
 
@@ -173,6 +199,8 @@ public class MboxFolder extends Folder {
 	 */
 	@Override
 	public int getType() {
+		if (mboxstore.isTakeout() && (label == null))
+			return HOLDS_MESSAGES | HOLDS_FOLDERS;
 		return HOLDS_MESSAGES;
 	}
 
@@ -206,6 +234,8 @@ public class MboxFolder extends Folder {
 	public Folder getFolder(String name) throws MessagingException {
 		if ((name == null) || (name.isEmpty()))
 			return new MboxFolder(mboxstore);
+		else if (mboxstore.isTakeout() && (label == null) && mboxstore.getTakeoutIndex(logger).hasLabel(name))
+			return new MboxFolder(mboxstore, name);
 		else
 			throw new MethodNotSupportedException("mbox: no folder supported");
 	}
@@ -263,8 +293,7 @@ public class MboxFolder extends Folder {
 			break;
 		}
 
-		messages = new ArrayList<MessageFork>();
-		MessageFork mf;
+		messages = new MboxOffsetIndex();
 
 		try {
 			if (mboxstore.getObjectContent() != null)
@@ -274,14 +303,39 @@ public class MboxFolder extends Folder {
 			opened = true; // now really opened
 			long beg, end;
 
+			// messages positions are known from the labels index scan
+			if (mboxstore.isTakeout()) {
+				takeoutIndex = mboxstore.getTakeoutIndex(logger);
+				takeoutMessages = takeoutIndex.getMessages(label);
+				for (int i : takeoutMessages) {
+					long takeoutEnd = takeoutIndex.getEnd(i);
+					messages.add(takeoutIndex.getBeg(i),
+							(takeoutEnd == -1 ? mboxfilereader.getLength() : takeoutEnd));
+				}
+				total = messages.size();
+				return;
+			}
+
+			// messages positions are reused from the index cache when valid
+			MboxIndexCache indexCache = (mboxstore.getObjectContent() == null ? mboxstore.getIndexCache() : null);
+			File mboxFile = (indexCache == null ? null : new File(mboxstore.getContainer()));
+			long[] offsets = (indexCache == null ? null : indexCache.load(mboxFile));
+			if (offsets != null) {
+				messages = new MboxOffsetIndex(offsets);
+				total = messages.size();
+				return;
+			}
+
 			mboxfilereader.getNextFromLineBeg();
 			beg = mboxfilereader.getLastFromLineEnd();
 			while (beg != -1) {
 				end = mboxfilereader.getNextFromLineBeg();
-				mf = new MessageFork(beg, end);
-				messages.add(mf);
+				// the last message ends at the end of file
+				messages.add(beg, (end == -1 ? mboxfilereader.getLength() : end));
 				beg = mboxfilereader.getLastFromLineEnd();
 			}
+			if (indexCache != null)
+				saveIndex(indexCache, mboxFile);
 		} catch (IOException e) {
 			throw new MessagingException("mbox: open failure, can't read: " + mboxstore.getContainer() + " file");
 		}
@@ -289,6 +343,19 @@ public class MboxFolder extends Folder {
 		total = messages.size();
 	}
 
+	// save the scanned messages positions, a failure only costs a new scan
+	private void saveIndex(MboxIndexCache indexCache, File mboxFile) {
+		try {
+			indexCache.save(mboxFile, messages.getOffsets(), messages.size());
+		} catch (IOException e) {
+			if (logger != null) {
+				logger.progressLogWithoutInterruption(WARNING,
+						"mbox: can't save index cache of " + mboxFile.getPath() + " file");
+				logger.logException(e);
+			}
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -299,6 +366,8 @@ public class MboxFolder extends Folder {
 		if (!opened)
 			throw new IllegalStateException("mbox: file " + mboxstore.getContainer() + " is not open");
 		messages = null;
+		takeoutIndex = null;
+		takeoutMessages = null;
 		opened = false;
 		try {
 			mboxfilereader.close();
@@ -335,12 +404,35 @@ public class MboxFolder extends Folder {
 		// each get regenerate a message with no strong link so that it can be
 		// GC
 		// optimal for the extraction usage with only one get by message
-		m = new JMMimeMessage(this, mboxfilereader.newStream(messages.get(msgno - 1).beg, messages.get(msgno - 1).end),
-				msgno);
+		long beg = messages.getBeg(msgno - 1);
+		long end = messages.getEnd(msgno - 1);
+		m = new JMMimeMessage(this, mboxfilereader.newStream(beg, end), msgno, end - beg);
+		if (mboxstore.isTakeout()) {
+			((JMMimeMessage) m).setLabels(takeoutIndex.getMessageLabels(takeoutMessages[msgno - 1]));
+			((JMMimeMessage) m).setDeduplicationKey("takeout:" + beg);
+		}
 
 		return m;
 	}
 
+	/**
+	 * Gets the raw value of a message header, read at the message position in
+	 * file without building the message.
+	 * <p>
+	 * This is used to pre-filter messages, for example on the Date header.
+	 *
+	 * @param msgno
+	 *            the message number
+	 * @param headerName
+	 *            the header name
+	 * @return the header raw value, or null if not found
+	 */
+	public String getMessageHeaderValue(int msgno, String headerName) {
+		if ((msgno < 1) || (msgno > total))
+			return null;
+		return mboxfilereader.getHeaderValue(messages.getBeg(msgno - 1), messages.getEnd(msgno - 1), headerName);
+	}
+
 	/*
 	 * Not implemented, cause of no use in mail extract
 	 */
@@ -0,0 +1,229 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of mbox files messages offsets.
+ * <p>
+ * The [beg,end) offsets of the messages found by scanning an mbox file are
+ * written in a binary sidecar file in the cache directory, never beside the
+ * mbox file so that source media stay read-only. The sidecar is named from a
+ * digest of the mbox file canonical path, and is valid only for an mbox file
+ * with the same size, modification time and head and tail checksum.
+ * <p>
+ * Offsets are stored as variable length deltas, about 3 bytes by message.
+ */
+public class MboxIndexCache {
+
+	/** Session property name for the index cache directory, no cache if not set. */
+	public static final String CACHE_DIRECTORY_PROPERTY = "mail.mbox.indexcache";
+
+	/** Sidecar files magic number ("MXI" and format version 2, with resolved ends). */
+	private static final int MAGIC = 0x4D584902;
+
+	/** Size of the file head and tail used in checksum. */
+	private static final int CHECKSUM_BLOCK_SIZE = 65536;
+
+	/** The cache directory. */
+	private File directory;
+
+	/**
+	 * Instantiates a new mbox index cache.
+	 *
+	 * @param directory
+	 *            the cache directory, created if needed at first save
+	 */
+	public MboxIndexCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Gets the cache defined by the session property value, if any.
+	 *
+	 * @param directoryName
+	 *            the {@link #CACHE_DIRECTORY_PROPERTY} property value
+	 * @return the mbox index cache, or null if no cache directory is defined
+	 */
+	public static MboxIndexCache fromProperty(String directoryName) {
+		if ((directoryName == null) || directoryName.isEmpty())
+			return null;
+		return new MboxIndexCache(new File(directoryName));
+	}
+
+	// sidecar file of an mbox file
+	private File getSidecarFile(File mboxFile) throws IOException {
+		String path = mboxFile.getCanonicalPath();
+		StringBuilder sb = new StringBuilder();
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			for (byte b : md.digest(path.getBytes(StandardCharsets.UTF_8)))
+				sb.append(String.format("%02x", b));
+		} catch (NoSuchAlgorithmException e) {
+			// not possible, SHA-1 is always available
+		}
+		return new File(directory, sb.toString() + ".mboxidx");
+	}
+
+	// checksum of the head and the tail of the file
+	private static long getChecksum(File file, long size) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[(int) Math.min(size, CHECKSUM_BLOCK_SIZE)];
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			raf.readFully(buffer);
+			crc.update(buffer);
+			if (size > CHECKSUM_BLOCK_SIZE) {
+				raf.seek(size - buffer.length);
+				raf.readFully(buffer);
+				crc.update(buffer);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Load the messages offsets of an mbox file, if a valid sidecar file
+	 * exists.
+	 *
+	 * @param mboxFile
+	 *            the mbox file
+	 * @return the offsets, beg and end of each message in sequence, or null if
+	 *         no valid sidecar file exists
+	 */
+	public long[] load(File mboxFile) {
+		try {
+			File sidecar = getSidecarFile(mboxFile);
+			if (!sidecar.isFile())
+				return null;
+			long size = mboxFile.length();
+			try (DataInputStream dis = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(sidecar)))) {
+				if ((dis.readInt() != MAGIC) || (dis.readLong() != size)
+						|| (dis.readLong() != mboxFile.lastModified()) || (dis.readLong() != getChecksum(mboxFile, size)))
+					return null;
+				int count = dis.readInt();
+				if ((count < 0) || (count > size))
+					return null;
+				long[] result = new long[2 * count];
+				long pos = 0;
+				for (int i = 0; i < result.length; i++) {
+					pos += readVarLong(dis);
+					if ((pos < 0) || (pos > size))
+						return null;
+					result[i] = pos;
+				}
+				return result;
+			}
+		} catch (IOException e) {
+			// unreadable or truncated sidecar, the mbox file is then scanned
+			return null;
+		}
+	}
+
+	/**
+	 * Save the messages offsets of an mbox file in its sidecar file.
+	 * <p>
+	 * The sidecar is written in a temporary file and then renamed, so that a
+	 * concurrent or interrupted save never leaves a partial sidecar.
+	 *
+	 * @param mboxFile
+	 *            the mbox file
+	 * @param offsets
+	 *            the offsets, beg and end of each message in sequence, never
+	 *            decreasing, the last end being the file length
+	 * @param count
+	 *            the messages count
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred, or offsets are
+	 *             not in sequence.
+	 */
+	public void save(File mboxFile, long[] offsets, int count) throws IOException {
+		Files.createDirectories(directory.toPath());
+		File sidecar = getSidecarFile(mboxFile);
+		File tmpSidecar = File.createTempFile(sidecar.getName(), ".tmp", directory);
+		long size = mboxFile.length();
+
+		try {
+			try (DataOutputStream dos = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpSidecar)))) {
+				dos.writeInt(MAGIC);
+				dos.writeLong(size);
+				dos.writeLong(mboxFile.lastModified());
+				dos.writeLong(getChecksum(mboxFile, size));
+				dos.writeInt(count);
+				long pos = 0;
+				for (int i = 0; i < 2 * count; i++) {
+					if (offsets[i] < pos)
+						throw new IOException("mbox: index cache offsets not in sequence");
+					writeVarLong(dos, offsets[i] - pos);
+					pos = offsets[i];
+				}
+			}
+			Files.move(tmpSidecar.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmpSidecar.toPath());
+		}
+	}
+
+	// unsigned LEB128 encoding of the offsets deltas, never negative
+	private static void writeVarLong(DataOutputStream dos, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			dos.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		dos.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream dis) throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = dis.readUnsignedByte();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return result;
+		}
+		throw new EOFException("mbox: malformed index cache value");
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox;
+
+import java.util.Arrays;
+
+/**
+ * Messages positions index of an mbox file.
+ * <p>
+ * The beginning and end positions of each message are stored in sequence in
+ * one growable primitive array, that is 16 bytes by message without any object
+ * by message, so that very large mbox files can be indexed in memory and the
+ * positions iterated without pointer chasing.
+ * <p>
+ * This is shared by mbox and Thunderbird folders for messages access by
+ * number, counting and sampling.
+ */
+public class MboxOffsetIndex {
+
+	/** Initial capacity in messages. */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// beg and end of each message in sequence
+	private long[] offsets;
+	private int count;
+
+	/**
+	 * Instantiates a new empty index.
+	 */
+	public MboxOffsetIndex() {
+		this.offsets = new long[2 * INITIAL_CAPACITY];
+		this.count = 0;
+	}
+
+	/**
+	 * Instantiates a new index on existing offsets, which are not copied.
+	 *
+	 * @param offsets
+	 *            the offsets, beg and end of each message in sequence
+	 */
+	public MboxOffsetIndex(long[] offsets) {
+		this.offsets = offsets;
+		this.count = offsets.length / 2;
+	}
+
+	/**
+	 * Adds a message at the end of the index.
+	 *
+	 * @param beg
+	 *            the message beginning position
+	 * @param end
+	 *            the message end position
+	 */
+	public void add(long beg, long end) {
+		if (2 * count == offsets.length)
+			// grows by half, to limit the unused part of the array
+			offsets = Arrays.copyOf(offsets, 2 * Math.max(INITIAL_CAPACITY, count + (count >> 1)));
+		offsets[2 * count] = beg;
+		offsets[2 * count + 1] = end;
+		count++;
+	}
+
+	/**
+	 * Gets the messages count.
+	 *
+	 * @return the count
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the message beginning position.
+	 *
+	 * @param index
+	 *            the message index, from 0
+	 * @return the position
+	 */
+	public long getBeg(int index) {
+		return offsets[2 * index];
+	}
+
+	/**
+	 * Gets the message end position.
+	 *
+	 * @param index
+	 *            the message index, from 0
+	 * @return the position
+	 */
+	public long getEnd(int index) {
+		return offsets[2 * index + 1];
+	}
+
+	/**
+	 * Gets the backing offsets array, beg and end of each message in sequence
+	 * and only significant for the {@link #size()} first messages.
+	 *
+	 * @return the offsets array
+	 */
+	public long[] getOffsets() {
+		return offsets;
+	}
+}
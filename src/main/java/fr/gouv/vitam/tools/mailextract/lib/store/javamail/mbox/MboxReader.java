@@ -30,10 +30,13 @@ package fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox;
 import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
 
 import javax.mail.internet.SharedInputStream;
 import javax.mail.util.SharedByteArrayInputStream;
@@ -58,6 +61,18 @@ public class MboxReader {
 
 	private SharedInputStream sifs;
 
+	// data length
+	private long length;
+
+	// max length of a line considered as a possible "From " delimiter line
+	private static final int FROM_LINE_MAX_LENGTH = 256;
+
+	// standard mbox delimiter line, "From sender asctime-date" with optional
+	// time zone before the year, as in Google Takeout exports
+	private static final Pattern FROM_LINE_PATTERN = Pattern
+			.compile("From \\S+ +(Mon|Tue|Wed|Thu|Fri|Sat|Sun) +(Jan|Feb|Mar|Apr|May|Jun|Jul|Aug|Sep|Oct|Nov|Dec)"
+					+ " +\\d{1,2} +\\d{1,2}:\\d{2}(:\\d{2})?( +([A-Z]{3,5}|[+-]\\d{4}))? +\\d{4}( .*)?");
+
 	// for buffered access to RandomAccessFile
 	private static int BUFFER_SIZE = 4096;
 	private byte[] buffer = new byte[BUFFER_SIZE];
@@ -67,6 +82,10 @@ public class MboxReader {
 	private int lineNum = 0;
 	private long fromLineEnd = 0;
 
+	// "From " line met while reading headers, to be returned by next search
+	private long pendingFromLineBeg = -1;
+	private long pendingFromLineEnd = -1;
+
 	/**
 	 * Instantiates a new thunder mbox file reader.
 	 *
@@ -82,6 +101,7 @@ public class MboxReader {
 		this.filePath = file.getPath();
 		sifs = new SharedFileInputStream(file);
 		raf = new RandomAccessFile(file, "r");
+		length = raf.length();
 	}
 
 	/**
@@ -97,6 +117,17 @@ public class MboxReader {
 	public MboxReader(MailExtractProgressLogger logger, byte[] source) {
 		this.logger = logger;
 		sifs = new SharedByteArrayInputStream(source);
+		length = source.length;
+	}
+
+	/**
+	 * Gets the mbox data length, which is the end position of the last
+	 * message.
+	 *
+	 * @return the length
+	 */
+	public long getLength() {
+		return length;
 	}
 
 	/**
@@ -142,6 +173,61 @@ public class MboxReader {
 		return sifs.newStream(start, end);
 	}
 
+	// max size of the headers block read for a header value
+	private static final int MAX_HEADERS_SIZE = 65536;
+
+	/**
+	 * Gets the unfolded raw value of the header with the given name, in the
+	 * message from start position to end-1 position, without building the
+	 * message.
+	 * <p>
+	 * Only the beginning of the headers block is read, till the header is
+	 * found.
+	 *
+	 * @param start
+	 *            Start
+	 * @param end
+	 *            End, or -1 for the end of file
+	 * @param headerName
+	 *            the header name, case insensitive
+	 * @return the header value, or null if not found
+	 */
+	public String getHeaderValue(long start, long end, String headerName) {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		String prefix = headerName.toLowerCase() + ":";
+		String result = null;
+		int b, count = 0;
+
+		try (InputStream is = newStream(start, end)) {
+			while (count < MAX_HEADERS_SIZE) {
+				line.reset();
+				while (((b = is.read()) != -1) && (b != '\n')) {
+					count++;
+					if (b != '\r')
+						line.write(b);
+				}
+				byte[] bytes = line.toByteArray();
+				if (bytes.length == 0)
+					break;
+				if ((bytes[0] == ' ') || (bytes[0] == '\t')) {
+					if (result != null)
+						result += " " + new String(bytes, StandardCharsets.ISO_8859_1).trim();
+				} else if (result != null)
+					break;
+				else {
+					String s = new String(bytes, StandardCharsets.ISO_8859_1);
+					if (s.toLowerCase().startsWith(prefix))
+						result = s.substring(prefix.length()).trim();
+				}
+				if (b == -1)
+					break;
+			}
+		} catch (IOException e) {
+			// let the message parsing decide
+		}
+		return result;
+	}
+
 	// buffered read
 	private final int read() throws IOException {
 		if (raf != null) {
@@ -170,7 +256,7 @@ public class MboxReader {
 		return bufferPos + curPos;
 	}
 
-	// read a complete line but return only first 64 bytes
+	// read a complete line but return only first buffer length bytes
 	private final int readFirstBytesLine(byte[] buffer) throws IOException {
 		int i = 0;
 		int b;
@@ -182,7 +268,7 @@ public class MboxReader {
 				return -1;
 			if (b == '\n')
 				return i;
-			if (i < 64) {
+			if (i < buffer.length) {
 				buffer[i++] = (byte) b;
 			}
 		}
@@ -199,23 +285,22 @@ public class MboxReader {
 		return stringBuilder.toString();
 	}
 
-	// verify line compliance to the delimiter pattern
-	// TODO get information on the Thunderbird mbox file delimiter
-	// pattern and verify the date if present
+	// verify line compliance to the delimiter pattern, short Thunderbird
+	// "From - date" line or standard "From sender date" line with a verified
+	// date
 	private boolean isCompliantFromLine(byte[] buffer, int len) {
 		// too long to be a delimiter line
-		if (len > 34) {
+		if (len >= FROM_LINE_MAX_LENGTH)
 			return false;
-		} else {
-			String line = constructLine(buffer, len);
-			if (line.length() == 5)
-				return true;
-			else if (line.startsWith("From - "))
-				return true;
+		String line = constructLine(buffer, len);
+		if ((len <= 34) && ((line.length() == 5) || line.startsWith("From - ")))
+			return true;
+		if (FROM_LINE_PATTERN.matcher(line).matches())
+			return true;
+		if ((len <= 34) && (getProgressLogger() != null))
 			getProgressLogger().progressLogWithoutInterruption(MESSAGE_DETAILS,"mailextract.mbox|thunderbird: Misleading '" + line + "' line in file " + filePath
 					+ " at line " + Integer.toString(lineNum) + " is not considered as a message delimiter");
-			return false;
-		}
+		return false;
 	}
 
 	/**
@@ -228,8 +313,14 @@ public class MboxReader {
 	public long getNextFromLineBeg() throws IOException {
 		long beg;
 		int len;
-		byte[] buffer = new byte[64];
+		byte[] buffer = new byte[FROM_LINE_MAX_LENGTH];
 
+		if (pendingFromLineBeg != -1) {
+			beg = pendingFromLineBeg;
+			fromLineEnd = pendingFromLineEnd;
+			pendingFromLineBeg = -1;
+			return beg;
+		}
 		while (true) {
 			beg = getPointer();
 			len = readFirstBytesLine(buffer);
@@ -248,6 +339,66 @@ public class MboxReader {
 		}
 	}
 
+	/**
+	 * Reads the header lines of the message beginning at the current position,
+	 * that is just after a "From " line, and gets the unfolded raw value of the
+	 * header with the given name.
+	 * <p>
+	 * This is used to collect header information during the sequential scan of
+	 * the mbox, without building any message. The reading stops at the end of
+	 * the header block, or at a "From " delimiter line if the message has no
+	 * body, which is then returned by the next {@link #getNextFromLineBeg
+	 * getNextFromLineBeg} call.
+	 *
+	 * @param headerName
+	 *            the header name, case insensitive
+	 * @return the UTF-8 decoded header value, or null if not found
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public String readHeaderValue(String headerName) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		String result = null;
+		boolean inHeader = false;
+		String prefix = headerName.toLowerCase() + ":";
+		long beg;
+		int b;
+
+		while (true) {
+			beg = getPointer();
+			line.reset();
+			lineNum++;
+			while (((b = read()) != -1) && (b != '\n'))
+				if (b != '\r')
+					line.write(b);
+			byte[] bytes = line.toByteArray();
+			// end of header block
+			if (bytes.length == 0)
+				break;
+			// message without body
+			if ((bytes.length >= 5) && (bytes[0] == 'F') && (bytes[1] == 'r') && (bytes[2] == 'o') && (bytes[3] == 'm')
+					&& (bytes[4] == ' ') && isCompliantFromLine(bytes, Math.min(bytes.length, FROM_LINE_MAX_LENGTH))) {
+				pendingFromLineBeg = beg;
+				pendingFromLineEnd = getPointer();
+				break;
+			}
+			if ((bytes[0] == ' ') || (bytes[0] == '\t')) {
+				// folded line
+				if (inHeader)
+					result += " " + new String(bytes, StandardCharsets.UTF_8).trim();
+			} else if (result == null) {
+				String s = new String(bytes, StandardCharsets.UTF_8);
+				inHeader = s.toLowerCase().startsWith(prefix);
+				if (inHeader)
+					result = s.substring(prefix.length()).trim();
+			} else
+				inHeader = false;
+			if (b == -1)
+				break;
+		}
+		return result;
+	}
+
 	/**
 	 * Gets the end position of the last "From " line identified.
 	 *
@@ -33,18 +33,35 @@ import java.net.URLDecoder;
 import javax.mail.*;
 
 import fr.gouv.vitam.tools.mailextract.lib.store.javamail.JMEmbeddedStore;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
 
 /**
  * JavaMail Store for mbox messages file.
  * <p>
+ * If the {@link #TAKEOUT_PROPERTY} session property is true, the mbox file is
+ * considered as a Google Takeout export, and one sub folder is exposed by Gmail
+ * label found in X-Gmail-Labels headers.
+ * <p>
  * <b>Warning:</b>Only for reading and without file locking or new messages
  * management.
  */
 public class MboxStore extends Store implements JMEmbeddedStore {
 
+	/** Session property name for Google Takeout labels folders. */
+	public static final String TAKEOUT_PROPERTY = "mail.mbox.takeout";
+
 	/** Path to the target mbox file */
 	private String container;
 
+	/** Google Takeout labels folders flag */
+	private boolean takeout;
+
+	/** Messages offsets index cache, null if not used */
+	private MboxIndexCache indexCache;
+
+	/** Google Takeout labels index, built at first use */
+	private MboxTakeoutIndex takeoutIndex;
+
 	/** String eml content if embedded **/
 	private byte[] objectContent;
 
@@ -110,10 +127,62 @@ public class MboxStore extends Store implements JMEmbeddedStore {
 			if (!test.isFile()) {
 				throw new MessagingException("mbox: " + container + " is not an existing file");
 			}
+			takeout = Boolean.parseBoolean(session.getProperty(TAKEOUT_PROPERTY));
+			indexCache = MboxIndexCache.fromProperty(session.getProperty(MboxIndexCache.CACHE_DIRECTORY_PROPERTY));
 		}
 		return true;
 	}
 
+	/**
+	 * Gets the messages offsets index cache.
+	 *
+	 * @return the index cache, or null if not used
+	 */
+	public MboxIndexCache getIndexCache() {
+		return indexCache;
+	}
+
+	/**
+	 * Checks if the mbox is treated as a Google Takeout export with labels
+	 * folders.
+	 *
+	 * @return true, if is takeout
+	 */
+	public boolean isTakeout() {
+		return takeout;
+	}
+
+	/**
+	 * Gets the Google Takeout labels index, built by one sequential scan of
+	 * the mbox file at first call.
+	 *
+	 * @param logger
+	 *            the logger used during the scan, can be null
+	 * @return the takeout index
+	 * @throws MessagingException
+	 *             Messaging exception if the file can't be read
+	 */
+	synchronized MboxTakeoutIndex getTakeoutIndex(MailExtractProgressLogger logger) throws MessagingException {
+		if (takeoutIndex == null) {
+			MboxReader reader = null;
+			try {
+				reader = new MboxReader(logger, new File(container));
+				takeoutIndex = new MboxTakeoutIndex(reader);
+			} catch (IOException e) {
+				throw new MessagingException("mbox: can't read " + container + " file for labels");
+			} finally {
+				if (reader != null) {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						// forget it
+					}
+				}
+			}
+		}
+		return takeoutIndex;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -133,6 +202,8 @@ public class MboxStore extends Store implements JMEmbeddedStore {
 	public Folder getFolder(String name) throws MessagingException {
 		if ((name == null) || (name.isEmpty()))
 			return new MboxFolder(this);
+		else if (takeout && getTakeoutIndex(null).hasLabel(name))
+			return new MboxFolder(this, name);
 		else
 			throw new MessagingException("mbox: only one root simulated folder, no " + name + " folder");
 	}
@@ -146,6 +217,8 @@ public class MboxStore extends Store implements JMEmbeddedStore {
 	public Folder getFolder(URLName url) throws MessagingException {
 		if ((url.getFile() == null) || (url.getFile().isEmpty()))
 			return new MboxFolder(this);
+		else if (takeout && getTakeoutIndex(null).hasLabel(url.getFile()))
+			return new MboxFolder(this, url.getFile());
 		else
 			throw new MessagingException("mbox: only one root simulated folder, no " + url.getFile() + " folder");
 	}
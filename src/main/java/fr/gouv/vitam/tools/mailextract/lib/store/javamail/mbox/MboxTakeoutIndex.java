@@ -0,0 +1,236 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.internet.MimeUtility;
+
+/**
+ * Labels index of a Google Takeout mbox file.
+ * <p>
+ * Google Takeout exports a Gmail account as one mbox file, with the labels of
+ * each message in a X-Gmail-Labels header. This index is built in one
+ * sequential scan of the file, reading only the headers block of each message,
+ * and gives for each label the messages positions, so that virtual label
+ * folders can be exposed without reading the file again.
+ * <p>
+ * Messages without label are in the root folder.
+ */
+class MboxTakeoutIndex {
+
+	/** The Gmail labels header name. */
+	static final String LABELS_HEADER = "X-Gmail-Labels";
+
+	// messages positions in file, in scan order
+	private MboxOffsetIndex positions = new MboxOffsetIndex();
+	private List<List<String>> messagesLabels = new ArrayList<List<String>>();
+
+	// messages indexes by label, in first appearance order, and without label
+	private Map<String, int[]> labelsMessages = new LinkedHashMap<String, int[]>();
+	private int[] unlabelledMessages;
+
+	// growable messages indexes array, used during the scan
+	private static final class IndexesBuilder {
+		private int[] indexes = new int[16];
+		private int count;
+
+		void add(int index) {
+			if (count == indexes.length)
+				indexes = Arrays.copyOf(indexes, count + (count >> 1));
+			indexes[count++] = index;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(indexes, count);
+		}
+	}
+
+	private Map<String, IndexesBuilder> labelsBuilders = new LinkedHashMap<String, IndexesBuilder>();
+	private IndexesBuilder unlabelledBuilder = new IndexesBuilder();
+
+	// shared labels strings
+	private Map<String, String> labelsPool = new HashMap<String, String>();
+
+	/**
+	 * Build the index by a sequential scan of the mbox file.
+	 *
+	 * @param reader
+	 *            the mbox reader, at the file beginning
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	MboxTakeoutIndex(MboxReader reader) throws IOException {
+		long beg, end;
+		String labelsValue;
+
+		reader.getNextFromLineBeg();
+		beg = reader.getLastFromLineEnd();
+		while (beg != -1) {
+			labelsValue = reader.readHeaderValue(LABELS_HEADER);
+			end = reader.getNextFromLineBeg();
+			addMessage(beg, end, parseLabels(labelsValue));
+			beg = reader.getLastFromLineEnd();
+		}
+
+		// trimmed arrays, the builders being no more needed
+		for (Map.Entry<String, IndexesBuilder> e : labelsBuilders.entrySet())
+			labelsMessages.put(e.getKey(), e.getValue().toArray());
+		unlabelledMessages = unlabelledBuilder.toArray();
+		labelsBuilders = null;
+		unlabelledBuilder = null;
+	}
+
+	private void addMessage(long beg, long end, List<String> labels) {
+		int index = messagesLabels.size();
+
+		positions.add(beg, end);
+		messagesLabels.add(labels);
+		if (labels.isEmpty())
+			unlabelledBuilder.add(index);
+		else
+			for (String label : labels) {
+				IndexesBuilder messages = labelsBuilders.get(label);
+				if (messages == null) {
+					messages = new IndexesBuilder();
+					labelsBuilders.put(label, messages);
+				}
+				messages.add(index);
+			}
+	}
+
+	// labels are comma separated, and double quoted when containing a comma
+	private List<String> parseLabels(String value) {
+		List<String> result = new ArrayList<String>();
+		StringBuilder label = new StringBuilder();
+		boolean quoted = false;
+
+		if ((value == null) || value.isEmpty())
+			return Collections.emptyList();
+		try {
+			value = MimeUtility.decodeText(value);
+		} catch (UnsupportedEncodingException e) {
+			// use raw value
+		}
+		for (int i = 0; i <= value.length(); i++) {
+			char c = (i < value.length() ? value.charAt(i) : ',');
+			if (c == '"')
+				quoted = !quoted;
+			else if ((c == ',') && !quoted) {
+				String s = label.toString().trim();
+				if (!s.isEmpty()) {
+					String pooled = labelsPool.get(s);
+					if (pooled == null) {
+						labelsPool.put(s, s);
+						pooled = s;
+					}
+					if (!result.contains(pooled))
+						result.add(pooled);
+				}
+				label.setLength(0);
+			} else
+				label.append(c);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the labels, in first appearance order.
+	 *
+	 * @return the labels list
+	 */
+	List<String> getLabels() {
+		return new ArrayList<String>(labelsMessages.keySet());
+	}
+
+	/**
+	 * Checks for a label.
+	 *
+	 * @param label
+	 *            the label
+	 * @return true, if the label is used by at least one message
+	 */
+	boolean hasLabel(String label) {
+		return labelsMessages.containsKey(label);
+	}
+
+	/**
+	 * Gets the messages indexes of a label, or of messages without label if
+	 * label is null.
+	 *
+	 * @param label
+	 *            the label, or null
+	 * @return the messages indexes array, in file order, not to be modified
+	 */
+	int[] getMessages(String label) {
+		if (label == null)
+			return unlabelledMessages;
+		int[] result = labelsMessages.get(label);
+		return (result == null ? new int[0] : result);
+	}
+
+	/**
+	 * Gets the message beginning position in file.
+	 *
+	 * @param index
+	 *            the message index
+	 * @return the position
+	 */
+	long getBeg(int index) {
+		return positions.getBeg(index);
+	}
+
+	/**
+	 * Gets the message end position in file.
+	 *
+	 * @param index
+	 *            the message index
+	 * @return the position, -1 if end of file
+	 */
+	long getEnd(int index) {
+		return positions.getEnd(index);
+	}
+
+	/**
+	 * Gets the message labels.
+	 *
+	 * @param index
+	 *            the message index
+	 * @return the labels list
+	 */
+	List<String> getMessageLabels(int index) {
+		return messagesLabels.get(index);
+	}
+}
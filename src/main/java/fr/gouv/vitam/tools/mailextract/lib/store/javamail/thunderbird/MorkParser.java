@@ -0,0 +1,331 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail.thunderbird;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal Mork 1.x parser, the database format of Thunderbird .msf index
+ * files.
+ * <p>
+ * Only what is needed to read rows content is interpreted: the columns and
+ * values dictionaries, the tables and the rows with their cells, the rows cuts
+ * and the transaction groups which are applied in file order. Tables and rows
+ * metadata are skipped.
+ * <p>
+ * Rows are collected by scope name and row id, each as a map of column name
+ * to value.
+ */
+class MorkParser {
+
+	/** Mork 1.x files first line beginning. */
+	private static final String MORK_HEADER = "// <!-- <mdb:mork:z";
+
+	private String text;
+	private int pos;
+	private Map<String, String> columns;
+	private Map<String, String> values;
+	private Map<String, Map<String, Map<String, String>>> rowsByScope;
+
+	private MorkParser(String text) {
+		this.text = text;
+		this.pos = 0;
+		this.columns = new HashMap<String, String>();
+		this.values = new HashMap<String, String>();
+		this.rowsByScope = new HashMap<String, Map<String, Map<String, String>>>();
+	}
+
+	/**
+	 * Parse a Mork file.
+	 *
+	 * @param file
+	 *            the Mork file
+	 * @return the parser holding the rows
+	 * @throws IOException
+	 *             Signals that the file can't be read or is not a Mork 1.x file
+	 */
+	static MorkParser parse(File file) throws IOException {
+		// bytes are kept one by one in chars, literals being decoded later
+		MorkParser parser = new MorkParser(
+				new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1));
+		if (!parser.text.startsWith(MORK_HEADER))
+			throw new IOException("mork: " + file.getPath() + " is not a Mork 1.x file");
+		try {
+			parser.parseContent();
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("mork: " + file.getPath() + " is truncated");
+		}
+		parser.text = null;
+		return parser;
+	}
+
+	/**
+	 * Gets the rows of a scope.
+	 *
+	 * @param scope
+	 *            the scope name
+	 * @return the rows by row id, empty if none
+	 */
+	Map<String, Map<String, String>> getRows(String scope) {
+		Map<String, Map<String, String>> result = rowsByScope.get(scope);
+		if (result == null)
+			result = new HashMap<String, Map<String, String>>();
+		return result;
+	}
+
+	private void parseContent() {
+		while (pos < text.length()) {
+			switch (text.charAt(pos)) {
+			case '<':
+				parseDict();
+				break;
+			case '{':
+				parseTable();
+				break;
+			case '[':
+				parseRow(null);
+				break;
+			case '@':
+				skipGroupMarker();
+				break;
+			case '/':
+				skipComment();
+				break;
+			default:
+				pos++;
+			}
+		}
+	}
+
+	// "//" comment to the end of line
+	private void skipComment() {
+		if (text.startsWith("//", pos)) {
+			while ((pos < text.length()) && (text.charAt(pos) != '\n') && (text.charAt(pos) != '\r'))
+				pos++;
+		} else
+			pos++;
+	}
+
+	// group markers "@$${id{@", "@$$}id}@" and "@$$}~abort~id}@" are
+	// transparent, groups content being applied as it's read
+	private void skipGroupMarker() {
+		if (text.startsWith("@$$", pos)) {
+			int end = text.indexOf('@', pos + 3);
+			pos = (end < 0 ? text.length() : end + 1);
+		} else
+			pos++;
+	}
+
+	// skip a balanced block, used for metadata
+	private void skipBlock(char open, char close) {
+		int depth = 0;
+		do {
+			char c = text.charAt(pos++);
+			if (c == open)
+				depth++;
+			else if (c == close)
+				depth--;
+			else if (c == '(')
+				readLiteral();
+		} while (depth > 0);
+	}
+
+	// dictionary "< <(a=c)> (80=name)... >", values dictionary if no
+	// columns scope metadata
+	private void parseDict() {
+		boolean isColumns = false;
+
+		pos++;
+		while (true) {
+			char c = text.charAt(pos);
+			if (c == '>') {
+				pos++;
+				return;
+			} else if (c == '<') {
+				int end = text.indexOf('>', pos);
+				isColumns = text.substring(pos, end).replace(" ", "").contains("(a=c)");
+				pos = end + 1;
+			} else if (c == '(') {
+				pos++;
+				String id = readToken("=");
+				pos++;
+				String value = readLiteral();
+				(isColumns ? columns : values).put(id.toUpperCase(), value);
+			} else if (c == '/')
+				skipComment();
+			else
+				pos++;
+		}
+	}
+
+	// table "{id:scope {meta} [row]... rowref... }"
+	private void parseTable() {
+		pos++;
+		String scope = getScope(readToken("{[}( \t\r\n"));
+		while (true) {
+			char c = text.charAt(pos);
+			if (c == '}') {
+				pos++;
+				return;
+			} else if (c == '{')
+				skipBlock('{', '}');
+			else if (c == '[')
+				parseRow(scope);
+			else if (c == '@')
+				skipGroupMarker();
+			else if (c == '/')
+				skipComment();
+			else
+				// row references and cuts, no content
+				pos++;
+		}
+	}
+
+	// row "[-id:scope (^col^val)(^col=literal)(col=literal)...]"
+	private void parseRow(String tableScope) {
+		pos++;
+		String token = readToken("([] \t\r\n");
+		boolean cut = token.startsWith("-");
+		if (cut)
+			token = token.substring(1);
+		String scope = tableScope;
+		int colon = token.indexOf(':');
+		if (colon >= 0) {
+			scope = getScope(token);
+			token = token.substring(0, colon);
+		}
+		if (scope == null)
+			scope = "";
+
+		Map<String, Map<String, String>> rows = rowsByScope.get(scope);
+		if (rows == null) {
+			rows = new HashMap<String, Map<String, String>>();
+			rowsByScope.put(scope, rows);
+		}
+		String id = token.toUpperCase();
+		Map<String, String> cells = rows.get(id);
+		if ((cells == null) || cut) {
+			cells = new HashMap<String, String>();
+			rows.put(id, cells);
+		}
+
+		while (true) {
+			char c = text.charAt(pos);
+			if (c == ']') {
+				pos++;
+				return;
+			} else if (c == '(')
+				parseCell(cells);
+			else if (c == '[')
+				skipBlock('[', ']');
+			else if (c == '/')
+				skipComment();
+			else
+				pos++;
+		}
+	}
+
+	// cell "(^col^val)", "(^col=literal)" or "(col=literal)"
+	private void parseCell(Map<String, String> cells) {
+		String column;
+
+		pos++;
+		if (text.charAt(pos) == '^') {
+			pos++;
+			String id = readToken("^=)").toUpperCase();
+			column = columns.get(id);
+			if (column == null)
+				column = id;
+		} else
+			column = readToken("^=)");
+		char c = text.charAt(pos++);
+		if (c == '=')
+			cells.put(column, readLiteral());
+		else if (c == '^') {
+			String value = values.get(readToken(")").toUpperCase());
+			pos++;
+			cells.put(column, (value == null ? "" : value));
+		}
+	}
+
+	// scope part of an "id:scope" token, a column reference or a literal
+	private String getScope(String token) {
+		int colon = token.indexOf(':');
+		if (colon < 0)
+			return null;
+		String scope = token.substring(colon + 1);
+		if (scope.startsWith("^")) {
+			String name = columns.get(scope.substring(1).toUpperCase());
+			return (name == null ? scope.substring(1) : name);
+		}
+		return scope;
+	}
+
+	private String readToken(String delimiters) {
+		while (Character.isWhitespace(text.charAt(pos)))
+			pos++;
+		int beg = pos;
+		while ((pos < text.length()) && (delimiters.indexOf(text.charAt(pos)) < 0))
+			pos++;
+		return text.substring(beg, pos).trim();
+	}
+
+	// literal up to the closing parenthesis, with "\" escapes and line
+	// continuations and "$xx" hexadecimal bytes, then decoded as UTF-8
+	private String readLiteral() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+		while (true) {
+			char c = text.charAt(pos++);
+			if (c == ')')
+				break;
+			else if (c == '\\') {
+				c = text.charAt(pos++);
+				if (c == '\r') {
+					if (text.charAt(pos) == '\n')
+						pos++;
+				} else if (c != '\n')
+					baos.write(c);
+			} else if (c == '$') {
+				try {
+					baos.write(Integer.parseInt(text.substring(pos, pos + 2), 16));
+					pos += 2;
+				} catch (NumberFormatException e) {
+					baos.write(c);
+				}
+			} else
+				baos.write(c);
+		}
+		return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -33,8 +33,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map.Entry;
 
 import javax.mail.Flags;
@@ -48,6 +48,8 @@ import javax.mail.URLName;
 import com.sun.mail.imap.protocol.BASE64MailboxDecoder;
 
 import fr.gouv.vitam.tools.mailextract.lib.store.javamail.JMMimeMessage;
+import fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox.MboxIndexCache;
+import fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox.MboxOffsetIndex;
 import fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox.MboxReader;
 import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
 
@@ -67,21 +69,13 @@ public class ThunderbirdFolder extends Folder {
 	private int total; // total number of messages in mailbox
 	private volatile boolean opened = false;
 	private int holdsFlags;
-	private List<MessageFork> messages;
+	private MboxOffsetIndex messages;
 	private ThunderbirdStore mstore;
 	private File folderFile;
 	private MboxReader mboxfilereader;
+	private ThunderbirdMsfIndex msfIndex;
 	private MailExtractProgressLogger logger;
 
-	private class MessageFork {
-		long beg, end;
-
-		MessageFork(long beg, long end) {
-			this.beg = beg;
-			this.end = end;
-		}
-	}
-
 	/**
 	 * Sets the logger
 	 * <p>
@@ -500,22 +494,41 @@ public class ThunderbirdFolder extends Folder {
 			break;
 		}
 
-		messages = new ArrayList<MessageFork>();
-		MessageFork mf;
+		messages = new MboxOffsetIndex();
 
 		try {
 			mboxfilereader = new MboxReader(logger, folderFile);
 			opened = true; // now really opened
 			long beg, end;
 
+			// messages positions are read from the Thunderbird index when it's
+			// consistent with the mbox file, expunged messages being dropped
+			msfIndex = loadMsfIndex();
+			if (msfIndex != null) {
+				messages = msfIndex.getPositions();
+				total = messages.size();
+				return;
+			}
+
+			// messages positions are reused from the index cache when valid
+			MboxIndexCache indexCache = mstore.getIndexCache();
+			long[] offsets = (indexCache == null ? null : indexCache.load(folderFile));
+			if (offsets != null) {
+				messages = new MboxOffsetIndex(offsets);
+				total = messages.size();
+				return;
+			}
+
 			mboxfilereader.getNextFromLineBeg();
 			beg = mboxfilereader.getLastFromLineEnd();
 			while (beg != -1) {
 				end = mboxfilereader.getNextFromLineBeg();
-				mf = new MessageFork(beg, end);
-				messages.add(mf);
+				// the last message ends at the end of file
+				messages.add(beg, (end == -1 ? mboxfilereader.getLength() : end));
 				beg = mboxfilereader.getLastFromLineEnd();
 			}
+			if (indexCache != null)
+				saveIndex(indexCache);
 		} catch (IOException e) {
 			throw new MessagingException("ThunderMBox: open failure, can't read: " + folderFile.getPath());
 		}
@@ -523,6 +536,31 @@ public class ThunderbirdFolder extends Folder {
 		total = messages.size();
 	}
 
+	// Thunderbird index of the mbox file, or null if absent or stale
+	private ThunderbirdMsfIndex loadMsfIndex() {
+		File msfFile = new File(folderFile.getPath() + ".msf");
+		if (!msfFile.isFile())
+			return null;
+		try {
+			return ThunderbirdMsfIndex.load(folderFile, msfFile);
+		} catch (IOException e) {
+			logger.progressLogWithoutInterruption(WARNING, "ThunderMBox: index file " + msfFile.getPath()
+					+ " is stale or unreadable (" + e.getMessage() + "), mailbox file is scanned");
+			return null;
+		}
+	}
+
+	// save the scanned messages positions, a failure only costs a new scan
+	private void saveIndex(MboxIndexCache indexCache) {
+		try {
+			indexCache.save(folderFile, messages.getOffsets(), messages.size());
+		} catch (IOException e) {
+			logger.progressLogWithoutInterruption(WARNING,
+					"ThunderMBox: can't save index cache of " + folderFile.getPath() + " file");
+			logger.logException(e);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -533,6 +571,7 @@ public class ThunderbirdFolder extends Folder {
 		if (!opened)
 			throw new IllegalStateException("ThunderMBox: Folder " + folderFullName + " is not Open");
 		messages = null;
+		msfIndex = null;
 		opened = false;
 		try {
 			mboxfilereader.close();
@@ -569,12 +608,94 @@ public class ThunderbirdFolder extends Folder {
 		// each get regenerate a message with no strong link so that it can be
 		// GC
 		// optimal for the extraction usage with only one get by message
-		m = new JMMimeMessage(this, mboxfilereader.newStream(messages.get(msgno - 1).beg, messages.get(msgno - 1).end),
-				msgno);
+		long beg = messages.getBeg(msgno - 1);
+		long end = messages.getEnd(msgno - 1);
+		m = new JMMimeMessage(this, mboxfilereader.newStream(beg, end), msgno, end - beg);
 
 		return m;
 	}
 
+	/**
+	 * Gets the raw value of a message header, read at the message position in
+	 * file without building the message.
+	 * <p>
+	 * This is used to pre-filter messages, for example on the Date header.
+	 *
+	 * @param msgno
+	 *            the message number
+	 * @param headerName
+	 *            the header name
+	 * @return the header raw value, or null if not found
+	 */
+	public String getMessageHeaderValue(int msgno, String headerName) {
+		if ((msgno < 1) || (msgno > total))
+			return null;
+		return mboxfilereader.getHeaderValue(messages.getBeg(msgno - 1), messages.getEnd(msgno - 1), headerName);
+	}
+
+	/**
+	 * Checks if the opened folder messages have been read from the Thunderbird
+	 * .msf index, and not by scanning the mbox file.
+	 *
+	 * @return true, if indexed
+	 */
+	public boolean isIndexed() {
+		return opened && (msfIndex != null);
+	}
+
+	/**
+	 * Gets the message date from the Thunderbird .msf index.
+	 *
+	 * @param msgno
+	 *            the message number
+	 * @return the date, or null if not indexed or unknown
+	 */
+	public Date getIndexedMessageDate(int msgno) {
+		if (!isIndexed() || (msgno < 1) || (msgno > total))
+			return null;
+		return msfIndex.getDate(msgno - 1);
+	}
+
+	/**
+	 * Gets the message subject from the Thunderbird .msf index.
+	 *
+	 * @param msgno
+	 *            the message number
+	 * @return the subject, or null if not indexed or unknown
+	 */
+	public String getIndexedMessageSubject(int msgno) {
+		if (!isIndexed() || (msgno < 1) || (msgno > total))
+			return null;
+		return msfIndex.getSubject(msgno - 1);
+	}
+
+	/**
+	 * Gets the message Message-ID from the Thunderbird .msf index.
+	 *
+	 * @param msgno
+	 *            the message number
+	 * @return the Message-ID, or null if not indexed or unknown
+	 */
+	public String getIndexedMessageID(int msgno) {
+		if (!isIndexed() || (msgno < 1) || (msgno > total))
+			return null;
+		return msfIndex.getMessageID(msgno - 1);
+	}
+
+	/**
+	 * Gets the message raw size, from its position in file without building
+	 * the message.
+	 *
+	 * @param msgno
+	 *            the message number
+	 * @return the size, or -1 if not found
+	 */
+	public long getMessageRawSize(int msgno) {
+		if ((msgno < 1) || (msgno > total))
+			return -1;
+		return messages.getEnd(msgno - 1) - messages.getBeg(msgno - 1);
+	}
+
 	/*
 	 * Not implemented, cause of no use in mail extract
 	 */
@@ -0,0 +1,340 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail.thunderbird;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox.MboxOffsetIndex;
+
+/**
+ * Messages index of a Thunderbird mbox file, read from its .msf Mork file.
+ * <p>
+ * Offsets, sizes, dates, flags and subjects are read from the messages rows.
+ * Messages expunged but not yet compacted, or marked deleted on an IMAP
+ * server, are dropped so that they are never parsed.
+ * <p>
+ * The index is used only if it's consistent with the mbox file: same folder
+ * size, each message offset on a "From " line and no message after the last
+ * indexed one. If not, the index is stale and the mbox file has to be
+ * scanned.
+ * <p>
+ * A message deleted locally loses its row but stays in the mbox file until
+ * compaction, so a message ends at the "From " line following its indexed
+ * size, or else at the first "From " line found before the next indexed
+ * message.
+ */
+class ThunderbirdMsfIndex {
+
+	/** Mork scope of the messages rows. */
+	private static final String MESSAGES_SCOPE = "ns:msg:db:row:scope:msgs:all";
+
+	/** Mork scope of the folder information row. */
+	private static final String FOLDER_INFO_SCOPE = "ns:msg:db:row:scope:dbfolderinfo:all";
+
+	/** Thunderbird message flag, the subject had a "Re:" prefix. */
+	private static final int MSG_FLAG_HAS_RE = 0x10;
+
+	/** Thunderbird message flag, expunged but still in the mbox file. */
+	private static final int MSG_FLAG_EXPUNGED = 0x8;
+
+	/** Thunderbird message flag, deleted on the IMAP server. */
+	private static final int MSG_FLAG_IMAP_DELETED = 0x200000;
+
+	/** Max size of a "From " line. */
+	private static final int FROM_LINE_MAX_SIZE = 4096;
+
+	private MboxOffsetIndex positions;
+	private long[] dates;
+	private int[] flags;
+	private String[] subjects;
+	private String[] messageIDs;
+	private int count;
+	private int droppedCount;
+
+	private ThunderbirdMsfIndex(int capacity) {
+		positions = new MboxOffsetIndex();
+		dates = new long[capacity];
+		flags = new int[capacity];
+		subjects = new String[capacity];
+		messageIDs = new String[capacity];
+		count = 0;
+		droppedCount = 0;
+	}
+
+	// one message row content
+	private static class MsfRow implements Comparable<MsfRow> {
+		long offset;
+		long size;
+		long date;
+		int flags;
+		String subject;
+		String messageID;
+
+		@Override
+		public int compareTo(MsfRow other) {
+			return Long.compare(offset, other.offset);
+		}
+	}
+
+	/**
+	 * Load the index of a Thunderbird mbox file from its .msf file.
+	 *
+	 * @param mboxFile
+	 *            the mbox file
+	 * @param msfFile
+	 *            the .msf index file
+	 * @return the messages index
+	 * @throws IOException
+	 *             Signals that the index can't be read or is stale
+	 */
+	static ThunderbirdMsfIndex load(File mboxFile, File msfFile) throws IOException {
+		MorkParser parser = MorkParser.parse(msfFile);
+		long mboxSize = mboxFile.length();
+
+		// folder size is known by Thunderbird, if it differs the mbox has been
+		// modified since last index commit, and if it's missing nothing can
+		// tell that the index is up to date
+		long folderSize = -1;
+		for (Map<String, String> info : parser.getRows(FOLDER_INFO_SCOPE).values())
+			folderSize = Math.max(folderSize, parseHex(info.get("folderSize"), -1));
+		if (folderSize < 0)
+			throw new IOException("msf: no folder size");
+		if (folderSize != mboxSize)
+			throw new IOException("msf: folder size " + folderSize + " differs from mbox file size " + mboxSize);
+
+		Map<String, Map<String, String>> rows = parser.getRows(MESSAGES_SCOPE);
+		List<MsfRow> msfRows = new ArrayList<MsfRow>(rows.size());
+		for (Map<String, String> cells : rows.values()) {
+			MsfRow msfRow = new MsfRow();
+			String storeToken = cells.get("storeToken");
+			if ((storeToken != null) && !storeToken.isEmpty()) {
+				try {
+					msfRow.offset = Long.parseLong(storeToken);
+				} catch (NumberFormatException e) {
+					msfRow.offset = -1;
+				}
+			} else
+				msfRow.offset = parseHex(cells.get("msgOffset"), -1);
+			if ((msfRow.offset < 0) || (msfRow.offset >= mboxSize))
+				throw new IOException("msf: wrong message offset in mbox file");
+			msfRow.size = parseHex(cells.get("size"), -1);
+			msfRow.date = parseHex(cells.get("date"), 0) * 1000L;
+			msfRow.flags = (int) parseHex(cells.get("flags"), 0);
+			msfRow.subject = cells.get("subject");
+			msfRow.messageID = cells.get("message-id");
+			msfRows.add(msfRow);
+		}
+		MsfRow[] sortedRows = msfRows.toArray(new MsfRow[msfRows.size()]);
+		Arrays.sort(sortedRows);
+
+		ThunderbirdMsfIndex result = new ThunderbirdMsfIndex(sortedRows.length);
+		byte[] buffer = new byte[FROM_LINE_MAX_SIZE];
+		try (RandomAccessFile raf = new RandomAccessFile(mboxFile, "r")) {
+			for (int i = 0; i < sortedRows.length; i++) {
+				MsfRow msfRow = sortedRows[i];
+				if ((i > 0) && (sortedRows[i - 1].offset == msfRow.offset))
+					throw new IOException("msf: duplicate message offset in mbox file");
+				// next indexed message "From " line, expunged or not
+				long nextOffset = (i + 1 < sortedRows.length ? sortedRows[i + 1].offset : mboxSize);
+				if ((msfRow.flags & (MSG_FLAG_EXPUNGED | MSG_FLAG_IMAP_DELETED)) != 0) {
+					result.droppedCount++;
+					continue;
+				}
+				long beg = getFromLineEnd(raf, msfRow.offset, nextOffset, buffer);
+				long end = getMessageEnd(raf, msfRow, beg, nextOffset, buffer);
+				if ((i + 1 == sortedRows.length) && (end != mboxSize))
+					throw new IOException("msf: message not indexed at mbox offset " + end);
+				result.add(beg, end, msfRow);
+			}
+		}
+		return result;
+	}
+
+	// verify that a "From " line begins at offset and return its end
+	private static long getFromLineEnd(RandomAccessFile raf, long offset, long end, byte[] buffer)
+			throws IOException {
+		raf.seek(offset);
+		int len = raf.read(buffer, 0, (int) Math.min(buffer.length, end - offset));
+		if ((len < 5) || !isFromLine(buffer, 0))
+			throw new IOException("msf: no \"From \" line at message offset " + offset);
+		for (int i = 5; i < len; i++) {
+			if (buffer[i] == '\n')
+				return offset + i + 1;
+		}
+		throw new IOException("msf: no \"From \" line end at message offset " + offset);
+	}
+
+	// message end, excluded, is the "From " line just after the message size
+	// when known, else the first "From " line before the next indexed message
+	private static long getMessageEnd(RandomAccessFile raf, MsfRow msfRow, long beg, long nextOffset,
+			byte[] buffer) throws IOException {
+		if (msfRow.size > 0) {
+			long end = msfRow.offset + msfRow.size;
+			if (end == nextOffset)
+				return end;
+			if ((end >= beg) && (end < nextOffset)) {
+				long from = getFromLineAt(raf, end, buffer);
+				if ((from >= 0) && (from <= nextOffset))
+					return from;
+			}
+		}
+		return findFromLine(raf, beg, nextOffset, buffer);
+	}
+
+	// position of a "From " line beginning at pos, after an optional line end,
+	// or -1 if there's none
+	private static long getFromLineAt(RandomAccessFile raf, long pos, byte[] buffer) throws IOException {
+		raf.seek(pos);
+		int len = raf.read(buffer, 0, 7);
+		int i = 0;
+		if ((i < len) && (buffer[i] == '\r'))
+			i++;
+		if ((i < len) && (buffer[i] == '\n'))
+			i++;
+		if ((len - i >= 5) && isFromLine(buffer, i))
+			return pos + i;
+		return -1;
+	}
+
+	// position of the first "From " line between beg, just after a line end,
+	// and limit, or limit if there's none
+	private static long findFromLine(RandomAccessFile raf, long beg, long limit, byte[] buffer)
+			throws IOException {
+		long pos = beg - 1;
+		while (pos < limit) {
+			raf.seek(pos);
+			int len = raf.read(buffer, 0, (int) Math.min(buffer.length, limit + 5 - pos));
+			if (len < 6)
+				break;
+			for (int i = 0; i + 6 <= len; i++) {
+				if ((buffer[i] == '\n') && isFromLine(buffer, i + 1))
+					return pos + i + 1;
+			}
+			pos += len - 5;
+		}
+		return limit;
+	}
+
+	private static boolean isFromLine(byte[] buffer, int i) {
+		return (buffer[i] == 'F') && (buffer[i + 1] == 'r') && (buffer[i + 2] == 'o') && (buffer[i + 3] == 'm')
+				&& (buffer[i + 4] == ' ');
+	}
+
+	private void add(long beg, long end, MsfRow msfRow) {
+		positions.add(beg, end);
+		dates[count] = msfRow.date;
+		flags[count] = msfRow.flags;
+		if ((msfRow.subject != null) && ((msfRow.flags & MSG_FLAG_HAS_RE) != 0))
+			subjects[count] = "Re: " + msfRow.subject;
+		else
+			subjects[count] = msfRow.subject;
+		if ((msfRow.messageID != null) && !msfRow.messageID.isEmpty())
+			messageIDs[count] = "<" + msfRow.messageID + ">";
+		count++;
+	}
+
+	// Mork integer values are hexadecimal strings
+	private static long parseHex(String value, long defaultValue) {
+		if ((value == null) || value.isEmpty())
+			return defaultValue;
+		try {
+			return Long.parseLong(value, 16);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Gets the count of expunged or deleted messages dropped from the index.
+	 *
+	 * @return the count
+	 */
+	int getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * Gets the messages positions in mbox file, beginning after the "From "
+	 * line and end excluded.
+	 *
+	 * @return the positions index
+	 */
+	MboxOffsetIndex getPositions() {
+		return positions;
+	}
+
+	/**
+	 * Gets the message date.
+	 *
+	 * @param i
+	 *            the message index, from 0
+	 * @return the date, or null if unknown
+	 */
+	Date getDate(int i) {
+		return (dates[i] == 0 ? null : new Date(dates[i]));
+	}
+
+	/**
+	 * Gets the message Thunderbird flags.
+	 *
+	 * @param i
+	 *            the message index, from 0
+	 * @return the flags
+	 */
+	int getFlags(int i) {
+		return flags[i];
+	}
+
+	/**
+	 * Gets the message subject.
+	 *
+	 * @param i
+	 *            the message index, from 0
+	 * @return the subject, or null if unknown
+	 */
+	String getSubject(int i) {
+		return subjects[i];
+	}
+
+	/**
+	 * Gets the message Message-ID.
+	 *
+	 * @param i
+	 *            the message index, from 0
+	 * @return the Message-ID, or null if unknown
+	 */
+	String getMessageID(int i) {
+		return messageIDs[i];
+	}
+}
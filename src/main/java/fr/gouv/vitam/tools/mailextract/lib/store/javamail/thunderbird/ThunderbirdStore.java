@@ -33,6 +33,8 @@ import java.net.URLDecoder;
 import javax.mail.*;
 import javax.mail.Folder;
 
+import fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox.MboxIndexCache;
+
 /**
  * JavaMail Store for Thunderbird mbox directory/file structure.
  * <p>
@@ -44,6 +46,9 @@ public class ThunderbirdStore extends Store {
 	/** Path to the target Thunderbird mbox directory/file structure **/
 	private String container;
 
+	/** Messages offsets index cache, null if not used */
+	private MboxIndexCache indexCache;
+
 	/**
 	 * Gets the container.
 	 *
@@ -112,9 +117,19 @@ public class ThunderbirdStore extends Store {
 		if (!test.isDirectory()) {
 			throw new MessagingException("ThunderMBox: " + container + " is not an existing directory");
 		}
+		indexCache = MboxIndexCache.fromProperty(session.getProperty(MboxIndexCache.CACHE_DIRECTORY_PROPERTY));
 		return true;
 	}
 
+	/**
+	 * Gets the messages offsets index cache.
+	 *
+	 * @return the index cache, or null if not used
+	 */
+	public MboxIndexCache getIndexCache() {
+		return indexCache;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -111,8 +111,9 @@ public abstract class MicrosoftStoreMessage extends StoreMessage {
 
 	abstract protected long getNativeMessageSize();
 
-	// Native message ConversationIndex access functions
-	abstract protected boolean hasNativeConversationIndex();
+	// Native message ConversationIndex access functions, the others being
+	// called only if there's one
+	abstract protected boolean hasNativeConversationIndex() throws InterruptedException;
 
 	abstract protected Date getNativeCIDeliveryTime();
 
@@ -261,6 +262,9 @@ public abstract class MicrosoftStoreMessage extends StoreMessage {
 					}
 				}
 			}
+			catch (InterruptedException e) {
+				throw e;
+			}
 			// FIXME AN pst to test
 			catch (Exception e) {
 				result = null;
@@ -527,25 +531,24 @@ public abstract class MicrosoftStoreMessage extends StoreMessage {
 	 * fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage#analyzeBodies()
 	 */
 	protected void analyzeBodies() {
-		String result;
-
 		// text
-		result = getNativeBodyText();
-		if (result.isEmpty())
-			result = null;
-		bodyContent[TEXT_BODY] = result;
+		bodyContent[TEXT_BODY] = nullIfEmpty(getNativeBodyText());
 
 		// html
-		result = getNativeBodyHTML();
-		if (result.isEmpty())
-			result = null;
-		bodyContent[HTML_BODY] = result;
+		bodyContent[HTML_BODY] = nullIfEmpty(getNativeBodyHTML());
+
+		// rtf, which is decompressed when read, only if needed
+		if (getStoreExtractor().getOptions().skipRedundantRTF
+				&& ((bodyContent[TEXT_BODY] != null) || (bodyContent[HTML_BODY] != null)))
+			bodyContent[RTF_BODY] = null;
+		else
+			bodyContent[RTF_BODY] = nullIfEmpty(getNativeRTFBody());
+	}
 
-		// rtf
-		result = getNativeRTFBody();
-		if (result.isEmpty())
-			result = null;
-		bodyContent[RTF_BODY] = result;
+	private static String nullIfEmpty(String body) {
+		if ((body == null) || body.isEmpty())
+			return null;
+		return body;
 	}
 
 	public static final int ATTACHMENT_METHOD_NONE = 0;
@@ -598,7 +601,10 @@ public abstract class MicrosoftStoreMessage extends StoreMessage {
 					logMessageWarning("mailextract.microsoft: Can't extract OLE attachment");
 					break;
 				case ATTACHMENT_METHOD_BY_VALUE:
-					attachment = new StoreMessageAttachment(nativeAttachments[i].byteArray, "file",
+					attachment = new StoreMessageAttachment(
+							(nativeAttachments[i].byteArray != null ? nativeAttachments[i].byteArray
+									: nativeAttachments[i].lazyContent),
+							"file",
 							getAttachementFilename(i), nativeAttachments[i].creationTime,
 							nativeAttachments[i].modificationTime, nativeAttachments[i].mimeTag,
 							nativeAttachments[i].contentId, StoreMessageAttachment.INLINE_ATTACHMENT);
@@ -29,6 +29,8 @@ package fr.gouv.vitam.tools.mailextract.lib.store.microsoft;
 
 import java.util.Date;
 
+import fr.gouv.vitam.tools.mailextract.lib.core.LazyAttachmentContent;
+
 /**
  * Class for attachment in Microsoft formats.
  */
@@ -57,6 +59,9 @@ public class MicrosoftStoreMessageAttachment {
 
 	/** The byte array. */
 	public byte[] byteArray;
+
+	/** The content read from the store when used, if no byte array. */
+	public LazyAttachmentContent lazyContent;
 	
 	/** The filename. */
 	public String filename = "";
@@ -0,0 +1,190 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.microsoft.msg;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorFactory;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorOptions;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreMessageAttachment;
+import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
+
+/**
+ * StoreExtractor sub-class for directories of message files extracted through
+ * POI HSMF library.
+ * <p>
+ * Each sub directory is a folder and each .msg file in a directory is a
+ * message of this folder. The message files of a folder are parsed and
+ * extracted in parallel by a bounded pool of workers, all contributing to the
+ * same ArchiveUnit tree and mails list.
+ */
+public class MsgDirStoreExtractor extends StoreExtractor {
+
+	/** The store extractor factory, calling directly the constructor. */
+	static final StoreExtractorFactory FACTORY = new StoreExtractorFactory() {
+		@Override
+		public StoreExtractor createStoreExtractor(String urlString, String folder, String destPathString,
+				StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger)
+				throws ExtractionException, InterruptedException {
+			return new MsgDirStoreExtractor(urlString, folder, destPathString, options, rootStoreExtractor, logger);
+		}
+
+		@Override
+		public StoreExtractor createEmbeddedStoreExtractor(StoreMessageAttachment attachment, ArchiveUnit rootNode,
+				StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger) {
+			// a msg directory can't be an attachment
+			return null;
+		}
+	};
+
+	/**
+	 * Provider of this store extractor, declared for the ServiceLoader in this library
+	 * META-INF/services/fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider file.
+	 */
+	public static class Provider implements StoreExtractorProvider {
+		@Override
+		public void subscribeStoreExtractors() {
+			subscribeStoreExtractor();
+		}
+	}
+
+	/**
+	 * Subscribes at StoreExtractor level all schemes treated by this specific store extractor.
+	 * <p>
+	 * This is in default list.
+	 */
+	static public void subscribeStoreExtractor()
+	{
+		addExtractionRelation(null,"msgdir", true, FACTORY);
+	}
+
+	/** The workers parsing and extracting message files, created on first use. */
+	private ExecutorService workers;
+
+	/**
+	 * Instantiates a new msg directory store extractor.
+	 *
+	 * @param urlString
+	 *            the url string
+	 * @param folder
+	 *            Path of the extracted folder in the directory tree, can be
+	 *            null if root directory
+	 * @param destPathString
+	 *            the dest path string
+	 * @param options
+	 *            the options
+	 * @param rootStoreExtractor
+	 *            the root store extractor
+	 * @param logger
+	 *            the logger
+	 * @throws ExtractionException
+	 *             the extraction exception
+	 */
+	public MsgDirStoreExtractor(String urlString, String folder, String destPathString, StoreExtractorOptions options,
+			StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger) throws ExtractionException {
+		super(urlString, folder, destPathString, options, rootStoreExtractor, logger);
+
+		File rootDirectory = new File(path);
+		if ((storeFolder != null) && !storeFolder.isEmpty())
+			rootDirectory = new File(rootDirectory, storeFolder);
+		if (!rootDirectory.isDirectory())
+			throw new ExtractionException(
+					"mailExtract.msgdir: can't open " + rootDirectory.getPath() + ", doesn't exist or is not a directory");
+
+		ArchiveUnit rootNode = new ArchiveUnit(this, destRootPath, destName);
+		setRootFolder(MsgDirStoreFolder.createRootFolder(this, rootDirectory, rootNode));
+	}
+
+	/**
+	 * Gets the workers count, all the available processors if not defined in
+	 * options.
+	 *
+	 * @return the workers count
+	 */
+	public int getWorkersCount() {
+		if (options.msgThreads > 0)
+			return options.msgThreads;
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Submit a message file extraction task to the workers.
+	 *
+	 * @param <T>  the task result type
+	 * @param task the task
+	 * @return the future of the task result
+	 */
+	public <T> Future<T> submitToWorkers(Callable<T> task) {
+		if (workers == null)
+			workers = Executors.newFixedThreadPool(getWorkersCount(), new ThreadFactory() {
+				private int rank;
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "mailextract-msg-" + (++rank));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		return workers.submit(task);
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor#endStoreExtractor()
+	 */
+	@Override
+	public void endStoreExtractor() throws ExtractionException {
+		super.endStoreExtractor();
+		if (workers != null)
+			workers.shutdownNow();
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor#getAttachment()
+	 */
+	@Override
+	public StoreMessageAttachment getAttachment() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor#canExtractObjectsLists()
+	 */
+	@Override
+	public boolean canExtractObjectsLists(){
+		return true;
+	}
+}
@@ -0,0 +1,354 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.store.microsoft.msg;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.poi.hsmf.MAPIMessage;
+
+import fr.gouv.vitam.tools.mailextract.lib.core.ExtractionEstimator;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder;
+import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionFilter;
+
+import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger.MESSAGE_DETAILS;
+import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger.WARNING;
+
+/**
+ * StoreFolder sub-class for directories of message files extracted through
+ * POI HSMF library.
+ */
+public class MsgDirStoreFolder extends StoreFolder {
+
+	/** Maximum count of message files submitted and not yet extracted, by worker. */
+	private static final int PENDING_BY_WORKER = 4;
+
+	/** The folder directory. */
+	private File directory;
+
+	// name and fullName computed from constructors
+	private String fullName;
+	private String name;
+
+	// directory content, listed once when needed
+	private File[] messageFiles;
+	private File[] subDirectories;
+
+	// for the root folder
+	private MsgDirStoreFolder(StoreExtractor storeExtractor, File directory) {
+		super(storeExtractor);
+		this.directory = directory;
+		this.fullName = "";
+		this.name = "";
+	}
+
+	// for a folder with a father
+	private MsgDirStoreFolder(StoreExtractor storeExtractor, File directory, MsgDirStoreFolder father) {
+		super(storeExtractor);
+		this.directory = directory;
+		this.name = directory.getName();
+		if (father.getFullName().isEmpty())
+			this.fullName = this.name;
+		else
+			this.fullName = father.fullName + File.separator + this.name;
+		finalizeStoreFolder(father);
+	}
+
+	/**
+	 * Creates the root folder.
+	 *
+	 * @param storeExtractor
+	 *            Operation store extractor
+	 * @param directory
+	 *            Root directory
+	 * @param rootArchiveUnit
+	 *            Root ArchiveUnit
+	 * @return the msg directory store folder
+	 */
+	public static MsgDirStoreFolder createRootFolder(MsgDirStoreExtractor storeExtractor, File directory,
+			ArchiveUnit rootArchiveUnit) {
+		MsgDirStoreFolder result = new MsgDirStoreFolder(storeExtractor, directory);
+		result.folderArchiveUnit = rootArchiveUnit;
+
+		return result;
+	}
+
+	// list the directory files accepted by the filter, in name order
+	private File[] listFiles(FileFilter fileFilter) {
+		File[] result = directory.listFiles(fileFilter);
+		if (result == null)
+			return new File[0];
+		Arrays.sort(result);
+		return result;
+	}
+
+	private File[] getMessageFiles() {
+		if (messageFiles == null)
+			messageFiles = listFiles(new FileFilter() {
+				@Override
+				public boolean accept(File file) {
+					return file.isFile() && file.getName().toLowerCase().endsWith(".msg");
+				}
+			});
+		return messageFiles;
+	}
+
+	private File[] getSubDirectories() {
+		if (subDirectories == null)
+			subDirectories = listFiles(new FileFilter() {
+				@Override
+				public boolean accept(File file) {
+					return file.isDirectory();
+				}
+			});
+		return subDirectories;
+	}
+
+	private void logMessageWarning(String msg) throws InterruptedException {
+		if (getStoreExtractor().getOptions().warningMsgProblem)
+			getProgressLogger().progressLog(WARNING, msg);
+		else
+			getProgressLogger().progressLog(MESSAGE_DETAILS, msg);
+	}
+
+	// parse a message file, or null with a warning if it's not a readable msg file,
+	// the message is fully loaded from a stream so that no file stays open
+	private MsgStoreMessage loadMessage(File file) throws InterruptedException {
+		try (FileInputStream fis = new FileInputStream(file)) {
+			MAPIMessage message = new MAPIMessage(fis);
+			return new MsgStoreMessage(this, message, file.length());
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			logMessageWarning("mailextract.msg: Can't read msg file " + file.getName() + " in folder " + getName());
+			getProgressLogger().logException(e);
+			return null;
+		}
+	}
+
+	// parse and extract a message file, and return its sent date
+	private Date extractMessageFile(File file, boolean writeFlag) throws ExtractionException, InterruptedException {
+		MsgStoreMessage msgStoreMessage = loadMessage(file);
+		if (msgStoreMessage == null)
+			return null;
+		msgStoreMessage.analyzeMessage();
+		ExtractionFilter filter = storeExtractor.getFilter();
+		if (filter.hasDateRange() && !filter.acceptDate(msgStoreMessage.getSentDate()))
+			return null;
+		msgStoreMessage.extractMessage(writeFlag);
+		msgStoreMessage.countMessage();
+		return msgStoreMessage.getSentDate();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#hasMessages()
+	 */
+	@Override
+	public boolean hasElements() throws ExtractionException {
+		return getMessageFiles().length > 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#hasSubfolders()
+	 */
+	@Override
+	public boolean hasSubfolders() throws ExtractionException {
+		return getSubDirectories().length > 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#
+	 * doExtractFolderElements(boolean)
+	 */
+	@Override
+	protected void doExtractFolderElements(final boolean writeFlag) throws ExtractionException, InterruptedException {
+		MsgDirStoreExtractor msgDirStoreExtractor = (MsgDirStoreExtractor) storeExtractor;
+		int maxPending = msgDirStoreExtractor.getWorkersCount() * PENDING_BY_WORKER;
+		Deque<Future<Date>> pending = new ArrayDeque<Future<Date>>();
+
+		// message files are submitted to the workers in name order, and the
+		// submission waits for the oldest one when too many are pending
+		try {
+			for (final File file : getMessageFiles()) {
+				if (pending.size() >= maxPending)
+					dateRange.extendRange(pending.removeFirst().get());
+				pending.addLast(msgDirStoreExtractor.submitToWorkers(new Callable<Date>() {
+					@Override
+					public Date call() throws ExtractionException, InterruptedException {
+						return extractMessageFile(file, writeFlag);
+					}
+				}));
+			}
+			while (!pending.isEmpty())
+				dateRange.extendRange(pending.removeFirst().get());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ExtractionException)
+				throw (ExtractionException) e.getCause();
+			else if (e.getCause() instanceof InterruptedException)
+				throw (InterruptedException) e.getCause();
+			throw new ExtractionException("mailextract.msg: Can't extract messages from folder " + getFullName()
+					+ " (" + e.getCause() + ")");
+		} finally {
+			// stop the remaining message files on failure, no-op when all are done
+			for (Future<Date> future : pending)
+				future.cancel(true);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#doExtractSubFolders(
+	 * int, boolean)
+	 */
+	@Override
+	protected void doExtractSubFolders(int level, boolean writeFlag) throws ExtractionException, InterruptedException {
+		MsgDirStoreFolder msgDirSubFolder;
+
+		for (File subDirectory : getSubDirectories()) {
+			msgDirSubFolder = new MsgDirStoreFolder(storeExtractor, subDirectory, this);
+			if (msgDirSubFolder.extractFolder(level + 1, writeFlag))
+				incFolderSubFoldersCount();
+			dateRange.extendRange(msgDirSubFolder.getDateRange());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#
+	 * doEstimateFolderElements(ExtractionEstimator)
+	 */
+	@Override
+	protected void doEstimateFolderElements(ExtractionEstimator estimator)
+			throws ExtractionException, InterruptedException {
+		File[] files = getMessageFiles();
+		ExtractionFilter filter = storeExtractor.getFilter();
+
+		for (int index : estimator.beginFolder(files.length)) {
+			long start = System.nanoTime();
+			MsgStoreMessage msgStoreMessage = loadMessage(files[index]);
+			if (msgStoreMessage == null) {
+				estimator.addEmptySample();
+				continue;
+			}
+			msgStoreMessage.analyzeMessage();
+			if (filter.hasDateRange() && !filter.acceptDate(msgStoreMessage.getSentDate())) {
+				estimator.addEmptySample();
+				continue;
+			}
+			msgStoreMessage.extractMessage(false);
+			estimator.addSample(msgStoreMessage, System.nanoTime() - start);
+		}
+		estimator.endFolder();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#
+	 * doEstimateSubFolders(ExtractionEstimator)
+	 */
+	@Override
+	protected void doEstimateSubFolders(ExtractionEstimator estimator)
+			throws ExtractionException, InterruptedException {
+		for (File subDirectory : getSubDirectories())
+			new MsgDirStoreFolder(storeExtractor, subDirectory, this).estimateFolder(estimator);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#getFullName()
+	 */
+	@Override
+	public String getFullName() {
+		return fullName;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#getName()
+	 */
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#doListFolderMessages
+	 * (boolean)
+	 */
+	@Override
+	protected void doListFolderElements(boolean stats) throws ExtractionException, InterruptedException {
+		for (File file : getMessageFiles()) {
+			MsgStoreMessage msgStoreMessage = loadMessage(file);
+			if (msgStoreMessage != null)
+				msgStoreMessage.listMessage();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#doListSubFolders(
+	 * boolean)
+	 */
+	@Override
+	protected void doListSubFolders(boolean stats) throws ExtractionException, InterruptedException {
+		MsgDirStoreFolder msgDirSubFolder;
+
+		for (File subDirectory : getSubDirectories()) {
+			msgDirSubFolder = new MsgDirStoreFolder(storeExtractor, subDirectory, this);
+			msgDirSubFolder.listFolder(stats);
+			incFolderSubFoldersCount();
+		}
+	}
+}
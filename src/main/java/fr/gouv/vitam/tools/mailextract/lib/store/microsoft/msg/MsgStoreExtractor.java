@@ -37,7 +37,9 @@ import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
 import org.apache.poi.hsmf.MAPIMessage;
 
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorFactory;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorOptions;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreMessageAttachment;
 import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
@@ -47,6 +49,34 @@ import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
  */
 public class MsgStoreExtractor extends StoreExtractor {
 
+	/** The store extractor factory, calling directly the constructors. */
+	static final StoreExtractorFactory FACTORY = new StoreExtractorFactory() {
+		@Override
+		public StoreExtractor createStoreExtractor(String urlString, String folder, String destPathString,
+				StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger)
+				throws ExtractionException, InterruptedException {
+			return new MsgStoreExtractor(urlString, folder, destPathString, options, rootStoreExtractor, logger);
+		}
+
+		@Override
+		public StoreExtractor createEmbeddedStoreExtractor(StoreMessageAttachment attachment, ArchiveUnit rootNode,
+				StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger)
+				throws ExtractionException, InterruptedException {
+			return new MsgStoreExtractor(attachment, rootNode, options, rootStoreExtractor, logger);
+		}
+	};
+
+	/**
+	 * Provider of this store extractor, declared for the ServiceLoader in this library
+	 * META-INF/services/fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider file.
+	 */
+	public static class Provider implements StoreExtractorProvider {
+		@Override
+		public void subscribeStoreExtractors() {
+			subscribeStoreExtractor();
+		}
+	}
+
 	/**
 	 * Subscribes at StoreExtractor level all schemes treated by this specific store extractor.
 	 * <p>
@@ -54,8 +84,9 @@ public class MsgStoreExtractor extends StoreExtractor {
 	 */
 	static public void subscribeStoreExtractor()
 	{
-		addExtractionRelation("application/vnd.ms-outlook","msg", false, MsgStoreExtractor.class);
-		addExtractionRelation(null,"msg.embeddedmsg", false, MsgStoreExtractor.class);
+		addExtractionRelation("application/vnd.ms-outlook","msg", false, FACTORY);
+		addExtractionRelation(null,"msg.embeddedmsg", false, FACTORY);
+		addMagicNumber(MSG_MN, "msg", true);
 	}
 
 	// Attachment to complete with decoded form
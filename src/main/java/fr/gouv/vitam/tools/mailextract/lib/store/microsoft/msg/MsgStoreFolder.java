@@ -29,6 +29,7 @@ package fr.gouv.vitam.tools.mailextract.lib.store.microsoft.msg;
 
 import org.apache.poi.hsmf.MAPIMessage;
 
+import fr.gouv.vitam.tools.mailextract.lib.core.ExtractionEstimator;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreMessageAttachment;
 import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
@@ -120,6 +121,24 @@ public class MsgStoreFolder extends StoreFolder {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#
+	 * doEstimateFolderElements(ExtractionEstimator)
+	 */
+	@Override
+	protected void doEstimateFolderElements(ExtractionEstimator estimator)
+			throws ExtractionException, InterruptedException {
+		// the only message is always sampled
+		estimator.beginFolder(1);
+		long start = System.nanoTime();
+		msgStoreMessage.analyzeMessage();
+		msgStoreMessage.extractMessage(false);
+		estimator.addSample(msgStoreMessage, System.nanoTime() - start);
+		estimator.endFolder();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -160,10 +179,7 @@ public class MsgStoreFolder extends StoreFolder {
 	 */
 	@Override
 	protected void doListFolderElements(boolean stats) throws ExtractionException, InterruptedException {
-		msgStoreMessage.analyzeMessage();
-		dateRange.extendRange(msgStoreMessage.getSentDate());
-		msgStoreMessage.extractMessage(false);
-		msgStoreMessage.countMessage();
+		msgStoreMessage.listMessage();
 	}
 
 	/*
@@ -59,6 +59,9 @@ public class MsgStoreMessage extends MicrosoftStoreMessage {
 	/** The msg conversation index. */
 	MsgConversationIndex msgConversationIndex;
 
+	/** The conversation index decoded flag. */
+	private boolean conversationIndexDecoded;
+
 	/** The Constant EMBEDDED_MESSAGE. */
 	static final String EMBEDDED_MESSAGE = "msg.embeddedmsg";
 
@@ -121,9 +124,9 @@ public class MsgStoreMessage extends MicrosoftStoreMessage {
 		super(mBFolder);
 		this.message = message;
 		this.size = size;
-		getConversationIndex();
 	}
 
+	// decode the conversation index, only when needed
 	private void getConversationIndex() throws InterruptedException {
 		byte[] byteConversationIndex = getByteItem(CONVERSATION_INDEX);
 		if (byteConversationIndex != null) {
@@ -131,6 +134,7 @@ public class MsgStoreMessage extends MicrosoftStoreMessage {
 			if (msgConversationIndex.getGuid() == null)
 				msgConversationIndex = null;
 		}
+		conversationIndexDecoded = true;
 	}
 
 	/* (non-Javadoc)
@@ -298,7 +302,9 @@ public class MsgStoreMessage extends MicrosoftStoreMessage {
 	 * @see fr.gouv.vitam.tools.mailextract.lib.store.microsoft.MicrosoftStoreMessage#hasNativeConversationIndex()
 	 */
 	@Override
-	protected boolean hasNativeConversationIndex() {
+	protected boolean hasNativeConversationIndex() throws InterruptedException {
+		if (!conversationIndexDecoded)
+			getConversationIndex();
 		return msgConversationIndex != null;
 	}
 
@@ -246,43 +246,45 @@ public class PstStoreContact {
             ((PstStoreExtractor)pstStoreFolder.getStoreExtractor()).initContactsListIfNeeded();
             PrintStream ps = pstStoreFolder.getStoreExtractor().getGlobalListPS(EXTRACTED_CONTACTS_LIST);
 
-            ps.format("\"%s\"|", filterHyphen(getFullName()));
-            ps.format("\"%s\"|", filterHyphen(contact.getGivenName()));
-            ps.format("\"%s\"|", filterHyphen(contact.getSurname()));
-            ps.format("\"%s\"|", filterHyphen(contact.getBody()));
-            ps.format("\"%s\"|", filterHyphen(contact.getCompanyName()));
-            ps.format("\"%s\"|", filterHyphen(contact.getDepartmentName()));
-            ps.format("\"%s\"|", filterHyphen(getTitle()));
-            ps.format("\"%s\"|", filterHyphen(contact.getPostalAddress()));
-            ps.format("\"%s\"|", filterHyphen(getSMTPAddresses()));
-            ps.format("\"%s\"|", filterHyphen(contact.getPrimaryTelephoneNumber()));
-            ps.format("\"%s\"|", filterHyphen(getMobileTelephoneNumbers()));
-            ps.format("\"%s\"|", filterHyphen(contact.getBusinessHomePage()));
-            ps.format("\"%s\"|", filterHyphen(contact.getOfficeLocation()));
-            ps.format("\"%s\"|", filterHyphen(getBusinessTelephoneNumbers()));
-            ps.format("\"%s\"|", filterHyphen(getBusinessAddress()));
-            ps.format("\"%s\"|", filterHyphen(contact.getCustomerId()));
-            ps.format("\"%s\"|", filterHyphen(getOtherMailAddresses()));
-            ps.format("\"%s\"|", filterHyphen(getOtherTelephoneNumbers()));
-            ps.format("\"%s\"|", filterHyphen(contact.getAssistant()));
-            ps.format("\"%s\"|", filterHyphen(contact.getAssistantTelephoneNumber()));
-            ps.format("\"%s\"|", filterHyphen(contact.getPersonalHomePage()));
-            ps.format("\"%s\"|", filterHyphen(contact.getLocation()));
-            ps.format("\"%s\"|", filterHyphen(getHomeTelephoneNumbers()));
-            ps.format("\"%s\"|", filterHyphen(getHomeAddress()));
-            ps.format("\"%s\"|", filterHyphen(contact.getNickname()));
+            synchronized (ps) {
+                ps.format("\"%s\"|", filterHyphen(getFullName()));
+                ps.format("\"%s\"|", filterHyphen(contact.getGivenName()));
+                ps.format("\"%s\"|", filterHyphen(contact.getSurname()));
+                ps.format("\"%s\"|", filterHyphen(contact.getBody()));
+                ps.format("\"%s\"|", filterHyphen(contact.getCompanyName()));
+                ps.format("\"%s\"|", filterHyphen(contact.getDepartmentName()));
+                ps.format("\"%s\"|", filterHyphen(getTitle()));
+                ps.format("\"%s\"|", filterHyphen(contact.getPostalAddress()));
+                ps.format("\"%s\"|", filterHyphen(getSMTPAddresses()));
+                ps.format("\"%s\"|", filterHyphen(contact.getPrimaryTelephoneNumber()));
+                ps.format("\"%s\"|", filterHyphen(getMobileTelephoneNumbers()));
+                ps.format("\"%s\"|", filterHyphen(contact.getBusinessHomePage()));
+                ps.format("\"%s\"|", filterHyphen(contact.getOfficeLocation()));
+                ps.format("\"%s\"|", filterHyphen(getBusinessTelephoneNumbers()));
+                ps.format("\"%s\"|", filterHyphen(getBusinessAddress()));
+                ps.format("\"%s\"|", filterHyphen(contact.getCustomerId()));
+                ps.format("\"%s\"|", filterHyphen(getOtherMailAddresses()));
+                ps.format("\"%s\"|", filterHyphen(getOtherTelephoneNumbers()));
+                ps.format("\"%s\"|", filterHyphen(contact.getAssistant()));
+                ps.format("\"%s\"|", filterHyphen(contact.getAssistantTelephoneNumber()));
+                ps.format("\"%s\"|", filterHyphen(contact.getPersonalHomePage()));
+                ps.format("\"%s\"|", filterHyphen(contact.getLocation()));
+                ps.format("\"%s\"|", filterHyphen(getHomeTelephoneNumbers()));
+                ps.format("\"%s\"|", filterHyphen(getHomeAddress()));
+                ps.format("\"%s\"|", filterHyphen(contact.getNickname()));
 
-            // are not extracted the following values from java-libpst
-            // getCallbackTelephoneNumber, getInitials, getKeyword, getLanguage, getMhsCommonName,
-            // getOrganizationalIdNumber, getMiddleName, getDisplayNamePrefix, getPreferredByName,
-            // getSpouseName, getComputerNetworkName, getTtytddPhoneNumber, getChildrensNames,
-            // getTransmittableDisplayName, getTelexNumber, getHobbies, getOriginalDisplayName,
-            // getOtherAddressCity, getOtherAddressCountry, getOtherAddressStateOrProvince,
-            // getOtherAddressStreet, getOtherAddressPostOfficeBox, getOriginalDisplayName,
-            // getFtpSite, getManagerName
+                // are not extracted the following values from java-libpst
+                // getCallbackTelephoneNumber, getInitials, getKeyword, getLanguage, getMhsCommonName,
+                // getOrganizationalIdNumber, getMiddleName, getDisplayNamePrefix, getPreferredByName,
+                // getSpouseName, getComputerNetworkName, getTtytddPhoneNumber, getChildrensNames,
+                // getTransmittableDisplayName, getTelexNumber, getHobbies, getOriginalDisplayName,
+                // getOtherAddressCity, getOtherAddressCountry, getOtherAddressStateOrProvince,
+                // getOtherAddressStreet, getOtherAddressPostOfficeBox, getOriginalDisplayName,
+                // getFtpSite, getManagerName
 
-            ps.println("");
-            ps.flush();
+                ps.println("");
+                ps.flush();
+            }
         }
     }
 
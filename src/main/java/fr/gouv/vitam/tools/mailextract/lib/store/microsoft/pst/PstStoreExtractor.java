@@ -37,15 +37,26 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import com.pff.PSTFile;
 import com.pff.PSTFolder;
 import com.pff.PSTException;
 
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorFactory;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorOptions;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreMessageAttachment;
 import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
@@ -60,13 +71,42 @@ import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogge
  */
 public class PstStoreExtractor extends StoreExtractor {
 
+    /** The store extractor factory, calling directly the constructors. */
+    static final StoreExtractorFactory FACTORY = new StoreExtractorFactory() {
+        @Override
+        public StoreExtractor createStoreExtractor(String urlString, String folder, String destPathString,
+                StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger)
+                throws ExtractionException, InterruptedException {
+            return new PstStoreExtractor(urlString, folder, destPathString, options, rootStoreExtractor, logger);
+        }
+
+        @Override
+        public StoreExtractor createEmbeddedStoreExtractor(StoreMessageAttachment attachment, ArchiveUnit rootNode,
+                StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger)
+                throws ExtractionException, InterruptedException {
+            return new PstStoreExtractor(attachment, rootNode, options, rootStoreExtractor, logger);
+        }
+    };
+
+    /**
+     * Provider of this store extractor, declared for the ServiceLoader in this library
+     * META-INF/services/fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider file.
+     */
+    public static class Provider implements StoreExtractorProvider {
+        @Override
+        public void subscribeStoreExtractors() {
+            subscribeStoreExtractor();
+        }
+    }
+
     /**
      * Subscribes at StoreExtractor level all schemes treated by this specific store extractor.
      * <p>
      * This is in default list.
      */
     static public void subscribeStoreExtractor() {
-        addExtractionRelation("application/vnd.ms-outlook-pst", "pst", true, PstStoreExtractor.class);
+        addExtractionRelation("application/vnd.ms-outlook-pst", "pst", true, FACTORY);
+        addMagicNumber(PST_MN, "pst");
     }
 
     // Attachment to complete with decoded form
@@ -81,6 +121,18 @@ public class PstStoreExtractor extends StoreExtractor {
     /** The "contacts list initialised" flag. */
     private boolean contactsListInitialisedFlag;
 
+    /** Lock serializing the PST files opening, libpst using static tables. */
+    private static final Object PST_OPEN_LOCK = new Object();
+
+    /** The workers extracting folders elements in parallel, created on first use. */
+    private ExecutorService workers;
+
+    /** The PST File objects free for a worker task. */
+    private BlockingQueue<PSTFile> freeWorkerPstFiles;
+
+    /** All the PST File objects opened for the workers, one by worker thread. */
+    private List<PSTFile> workerPstFiles;
+
     /**
      * Instantiates a new LP store extractor.
      *
@@ -106,12 +158,7 @@ public class PstStoreExtractor extends StoreExtractor {
                              StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger) throws ExtractionException {
         super(urlString, storeFolder, destPathString, options, rootStoreExtractor, logger);
 
-        try {
-            pstFile = new PSTFile(path);
-        } catch (Exception e) {
-            throw new ExtractionException(
-                    "mailExtract.pst: can't open " + path + ", doesn't exist or is not a pst file");
-        }
+        pstFile = openPstFile(path);
 
         pstFile.setGlobalCodepage(options.defaultCharsetName);
 
@@ -135,6 +182,18 @@ public class PstStoreExtractor extends StoreExtractor {
         }
     }
 
+    // open a PST File object, never concurrently with another opening
+    private static PSTFile openPstFile(String path) throws ExtractionException {
+        try {
+            synchronized (PST_OPEN_LOCK) {
+                return new PSTFile(path);
+            }
+        } catch (Exception e) {
+            throw new ExtractionException(
+                    "mailExtract.pst: can't open " + path + ", doesn't exist or is not a pst file");
+        }
+    }
+
     // create a store temporary file
     private static File writeStoreFile(String dirPath, byte[] byteContent) throws ExtractionException {
         File storeFile;
@@ -211,12 +270,7 @@ public class PstStoreExtractor extends StoreExtractor {
         this.attachment = attachment;
         this.storeFile = new File(path);
 
-        try {
-            pstFile = new PSTFile(path);
-        } catch (Exception e) {
-            throw new ExtractionException(
-                    "mailExtract.pst: can't open " + path + ", doesn't exist or is not a pst file");
-        }
+        pstFile = openPstFile(path);
 
         PstStoreFolder lPRootMailBoxFolder;
 
@@ -273,12 +327,103 @@ public class PstStoreExtractor extends StoreExtractor {
         }
     }
 
+    /**
+     * Checks if the folders elements are extracted in parallel, which is the
+     * case for a root pst file extraction with more than one pst thread.
+     *
+     * @return true, if parallel
+     */
+    public boolean isParallel() {
+        return isRoot() && (options.pstThreads > 1);
+    }
+
+    /**
+     * Gets the workers count.
+     *
+     * @return the workers count
+     */
+    public int getWorkersCount() {
+        return options.pstThreads;
+    }
+
+    // create the workers and open their PST File objects, from the extraction thread
+    private void startWorkers() throws ExtractionException {
+        int count = options.pstThreads;
+
+        freeWorkerPstFiles = new ArrayBlockingQueue<PSTFile>(count);
+        workerPstFiles = new ArrayList<PSTFile>(count);
+        for (int i = 0; i < count; i++) {
+            PSTFile file = openPstFile(path);
+            file.setGlobalCodepage(options.defaultCharsetName);
+            workerPstFiles.add(file);
+            freeWorkerPstFiles.add(file);
+        }
+        workers = Executors.newFixedThreadPool(count, new ThreadFactory() {
+            private int rank;
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mailextract-pst-" + (++rank));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submit a folder elements extraction task to the workers.
+     * <p>
+     * The task has to take a PST File object with {@link #takeWorkerPstFile()}
+     * and to release it at the end, libpst objects being not shareable between
+     * threads.
+     *
+     * @param <T>  the task result type
+     * @param task the task
+     * @return the future of the task result
+     * @throws ExtractionException Any unrecoverable extraction exception (access trouble, major
+     *                             format problems...)
+     */
+    public <T> Future<T> submitToWorkers(Callable<T> task) throws ExtractionException {
+        if (workers == null)
+            startWorkers();
+        return workers.submit(task);
+    }
+
+    /**
+     * Take a PST File object for the exclusive use of the current worker
+     * task.
+     *
+     * @return the PST File object
+     * @throws InterruptedException the interrupted exception
+     */
+    public PSTFile takeWorkerPstFile() throws InterruptedException {
+        return freeWorkerPstFiles.take();
+    }
+
+    /**
+     * Release a PST File object taken by a worker task.
+     *
+     * @param file the PST File object
+     */
+    public void releaseWorkerPstFile(PSTFile file) {
+        freeWorkerPstFiles.add(file);
+    }
+
     /* (non-Javadoc)
      * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor#endStoreExtractor()
      */
     @Override
     public void endStoreExtractor() throws ExtractionException {
         super.endStoreExtractor();
+        if (workers != null) {
+            workers.shutdownNow();
+            for (PSTFile file : workerPstFiles)
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    throw new ExtractionException("mailextract.pst: Can't close pst file " + path);
+                }
+        }
         try {
             pstFile.close();
         } catch (IOException e) {
@@ -297,7 +442,7 @@ public class PstStoreExtractor extends StoreExtractor {
         return attachment;
     }
 
-    public void initContactsListIfNeeded() {
+    public synchronized void initContactsListIfNeeded() {
         if (contactsListInitialisedFlag)
             return;
         contactsListInitialisedFlag = true;
@@ -29,14 +29,23 @@ package fr.gouv.vitam.tools.mailextract.lib.store.microsoft.pst;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.pff.*;
 
+import fr.gouv.vitam.tools.mailextract.lib.core.ExtractionEstimator;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
 import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
+import fr.gouv.vitam.tools.mailextract.lib.utils.DateRange;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionFilter;
 
 import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger.MESSAGE_DETAILS;
 import static fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger.WARNING;
@@ -49,6 +58,15 @@ public class PstStoreFolder extends StoreFolder {
 	/** Native libpst folder **/
 	protected PSTFolder pstFolder;
 
+	/** Minimum elements count of a folder extracted in parallel. */
+	private static final int PARALLEL_MIN_ELEMENTS = 32;
+
+	/** Minimum elements count of a chunk extracted by a worker. */
+	private static final int CHUNK_MIN_ELEMENTS = 16;
+
+	/** Chunks count by worker, for a balanced load between workers. */
+	private static final int CHUNKS_BY_WORKER = 4;
+
 	// name and fullName computed from constructors
 	private String fullName;
 	private String name;
@@ -109,7 +127,15 @@ public class PstStoreFolder extends StoreFolder {
 	 */
 	@Override
 	protected void doExtractFolderElements(boolean writeFlag) throws ExtractionException, InterruptedException {
-		PSTMessage message;
+		PstStoreExtractor pstStoreExtractor = (PstStoreExtractor) storeExtractor;
+		if (pstStoreExtractor.isParallel()) {
+			int count = pstFolder.getContentCount();
+			if (count >= PARALLEL_MIN_ELEMENTS) {
+				doExtractFolderElementsInParallel(pstStoreExtractor, count, writeFlag);
+				return;
+			}
+		}
+
 		PSTObject po = null;
 		int mes = 0;
 		while (true) {
@@ -132,20 +158,116 @@ public class PstStoreFolder extends StoreFolder {
 			while (error);
 			if (po == null)
 				break;
-			message = (PSTMessage) po;
-			if (message instanceof PSTContact){
-				PstStoreContact lPStoreContact= new PstStoreContact(this,(PSTContact)message);
-				lPStoreContact.writeToContactsList(writeFlag);
+			extractElement(po, writeFlag, dateRange);
+		}
+	}
+
+	// extract a contact or a message, extending the given date range
+	private void extractElement(PSTObject po, boolean writeFlag, DateRange elementsDateRange)
+			throws ExtractionException, InterruptedException {
+		PSTMessage message = (PSTMessage) po;
+		if (message instanceof PSTContact){
+			PstStoreContact lPStoreContact= new PstStoreContact(this,(PSTContact)message);
+			lPStoreContact.writeToContactsList(writeFlag);
+		}
+		else {
+			// date selection on properties, before bodies and attachments loading
+			ExtractionFilter filter = storeExtractor.getFilter();
+			if (filter.hasDateRange() && !filter.acceptDate(getSelectionDate(message)))
+				return;
+			PstStoreMessage lPStoreMessage = new PstStoreMessage(this, message);
+			lPStoreMessage.analyzeMessage();
+			elementsDateRange.extendRange(lPStoreMessage.getSentDate());
+			lPStoreMessage.extractMessage(writeFlag);
+			lPStoreMessage.countMessage();
+		}
+	}
+
+	// extract the folder elements by chunks of children indexes, each chunk
+	// being extracted by a worker with its own PST File object, and wait for
+	// all the chunks before going on with the sub folders
+	private void doExtractFolderElementsInParallel(PstStoreExtractor pstStoreExtractor, int count,
+			final boolean writeFlag) throws ExtractionException, InterruptedException {
+		final long folderId = pstFolder.getDescriptorNodeId();
+		int chunkSize = Math.max(CHUNK_MIN_ELEMENTS,
+				(count + CHUNKS_BY_WORKER * pstStoreExtractor.getWorkersCount() - 1)
+						/ (CHUNKS_BY_WORKER * pstStoreExtractor.getWorkersCount()));
+		List<Future<DateRange>> chunks = new ArrayList<Future<DateRange>>();
+
+		try {
+			for (int start = 0; start < count; start += chunkSize) {
+				final int first = start;
+				final int last = Math.min(count, start + chunkSize);
+				chunks.add(pstStoreExtractor.submitToWorkers(new Callable<DateRange>() {
+					@Override
+					public DateRange call() throws ExtractionException, InterruptedException {
+						return extractChunk(folderId, first, last, writeFlag);
+					}
+				}));
 			}
-			else {
+			for (Future<DateRange> chunk : chunks)
+				dateRange.extendRange(chunk.get());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ExtractionException)
+				throw (ExtractionException) e.getCause();
+			else if (e.getCause() instanceof InterruptedException)
+				throw (InterruptedException) e.getCause();
+			throw new ExtractionException("mailextract.pst: Can't extract messages from folder " + getFullName()
+					+ " (" + e.getCause() + ")");
+		} finally {
+			// stop the remaining chunks on failure, no-op when all are done
+			for (Future<DateRange> chunk : chunks)
+				chunk.cancel(true);
+		}
+	}
 
-				PstStoreMessage lPStoreMessage = new PstStoreMessage(this, message);
-				lPStoreMessage.analyzeMessage();
-				dateRange.extendRange(lPStoreMessage.getSentDate());
-				lPStoreMessage.extractMessage(writeFlag);
-				lPStoreMessage.countMessage();
+	// extract the elements from first to last (excluded) index in a worker,
+	// the folder being reloaded from the worker PST File object
+	private DateRange extractChunk(long folderId, int first, int last, boolean writeFlag)
+			throws ExtractionException, InterruptedException {
+		PstStoreExtractor pstStoreExtractor = (PstStoreExtractor) storeExtractor;
+		DateRange chunkDateRange = new DateRange();
+		PSTFile pstFile = pstStoreExtractor.takeWorkerPstFile();
+		try {
+			PSTFolder chunkFolder;
+			try {
+				chunkFolder = (PSTFolder) PSTObject.detectAndLoadPSTObject(pstFile, folderId);
+				chunkFolder.moveChildCursorTo(first);
+			} catch (IOException e) {
+				throw new ExtractionException("MailExtract: Can't use pst file");
+			} catch (PSTException e) {
+				throw new ExtractionException("MailExtract: Can't get messages from folder " + getFullName());
+			}
+			for (int index = first; index < last; index++) {
+				PSTObject po;
+				try {
+					po = chunkFolder.getNextChild();
+				} catch (IOException e) {
+					throw new ExtractionException("MailExtract: Can't use pst file");
+				} catch (PSTException e) {
+					throw new ExtractionException("MailExtract: Can't get messages from folder " + getFullName());
+				} catch (Exception e) {
+					logMessageWarning("mailextract.pst: Wrongly formatted message " + (index + 1) + " in folder "
+							+ this.getName());
+					getProgressLogger().logException(e);
+					continue;
+				}
+				if (po == null)
+					break;
+				extractElement(po, writeFlag, chunkDateRange);
 			}
+		} finally {
+			pstStoreExtractor.releaseWorkerPstFile(pstFile);
 		}
+		return chunkDateRange;
+	}
+
+	// sent date as in PstStoreMessage, or delivery time if never sent
+	private static Date getSelectionDate(PSTMessage message) {
+		Date result = message.getClientSubmitTime();
+		if (result == null)
+			result = message.getMessageDeliveryTime();
+		return result;
 	}
 
 	/*
@@ -234,7 +356,7 @@ public class PstStoreFolder extends StoreFolder {
 			message = (PSTMessage) pstFolder.getNextChild();
 			while (message != null) {
 				PstStoreMessage lPStoreMessage = new PstStoreMessage(this, message);
-				lPStoreMessage.countMessage();
+				lPStoreMessage.listMessage();
 				message = (PSTMessage) pstFolder.getNextChild();
 			}
 		} catch (IOException e) {
@@ -267,4 +389,63 @@ public class PstStoreFolder extends StoreFolder {
 			throw new ExtractionException("mailextract.libpst: Can't get sub folders from folder " + getFullName());
 		}
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#
+	 * doEstimateFolderElements(ExtractionEstimator)
+	 */
+	@Override
+	protected void doEstimateFolderElements(ExtractionEstimator estimator)
+			throws ExtractionException, InterruptedException {
+		ExtractionFilter filter = storeExtractor.getFilter();
+		PSTObject po;
+
+		// sampled messages are directly accessed by child index
+		for (int index : estimator.beginFolder(pstFolder.getContentCount())) {
+			long start = System.nanoTime();
+			try {
+				pstFolder.moveChildCursorTo(index);
+				po = pstFolder.getNextChild();
+			} catch (IOException e) {
+				throw new ExtractionException("MailExtract: Can't use pst file");
+			} catch (PSTException e) {
+				throw new ExtractionException("MailExtract: Can't get messages from folder " + getFullName());
+			} catch (Exception e) {
+				logMessageWarning("mailextract.pst: Wrongly formatted message " + index + " in folder " + getName());
+				po = null;
+			}
+			if (!(po instanceof PSTMessage) || (po instanceof PSTContact)
+					|| (filter.hasDateRange() && !filter.acceptDate(getSelectionDate((PSTMessage) po)))) {
+				estimator.addEmptySample();
+				continue;
+			}
+			PstStoreMessage lPStoreMessage = new PstStoreMessage(this, (PSTMessage) po);
+			lPStoreMessage.analyzeMessage();
+			lPStoreMessage.extractMessage(false);
+			estimator.addSample(lPStoreMessage, System.nanoTime() - start);
+		}
+		estimator.endFolder();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.gouv.vitam.tools.mailextract.lib.core.StoreFolder#
+	 * doEstimateSubFolders(ExtractionEstimator)
+	 */
+	@Override
+	protected void doEstimateSubFolders(ExtractionEstimator estimator)
+			throws ExtractionException, InterruptedException {
+		try {
+			final Vector<PSTFolder> subfolders = pstFolder.getSubFolders();
+			for (final PSTFolder subfolder : subfolders)
+				new PstStoreFolder(storeExtractor, subfolder, this).estimateFolder(estimator);
+		} catch (IOException e) {
+			throw new ExtractionException("mailextract.libpst: Can't use pst file");
+		} catch (PSTException e) {
+			throw new ExtractionException("mailextract.libpst: Can't get sub folders from folder " + getFullName());
+		}
+	}
 }
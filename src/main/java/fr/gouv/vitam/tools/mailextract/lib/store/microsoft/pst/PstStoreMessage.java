@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.UUID;
 
 import com.pff.PSTAppointment;
+import com.pff.PSTConversationIndex;
 import com.pff.PSTConversationIndex.ResponseLevel;
 import com.pff.PSTException;
 import com.pff.PSTMessage;
@@ -55,6 +56,9 @@ public class PstStoreMessage extends MicrosoftStoreMessage {
 	/** The Constant EMBEDDED_MESSAGE. */
 	static final String EMBEDDED_MESSAGE = "pst.embeddedmsg";
 
+	/** The conversation index, decoded once when needed. */
+	private PSTConversationIndex conversationIndex;
+
 	/**
 	 * Instantiates a new pst store message.
 	 *
@@ -185,7 +189,14 @@ public class PstStoreMessage extends MicrosoftStoreMessage {
 	 */
 	@Override
 	protected boolean hasNativeConversationIndex() {
-		return ((message.getConversationIndex() != null) && (message.getConversationIndex().getGuid() != null));
+		return ((getConversationIndex() != null) && (getConversationIndex().getGuid() != null));
+	}
+
+	// libpst decodes the conversation index at each call
+	private PSTConversationIndex getConversationIndex() {
+		if (conversationIndex == null)
+			conversationIndex = message.getConversationIndex();
+		return conversationIndex;
 	}
 
 	/* (non-Javadoc)
@@ -193,7 +204,7 @@ public class PstStoreMessage extends MicrosoftStoreMessage {
 	 */
 	@Override
 	protected Date getNativeCIDeliveryTime() {
-		return message.getConversationIndex().getDeliveryTime();
+		return getConversationIndex().getDeliveryTime();
 	}
 
 	/* (non-Javadoc)
@@ -201,7 +212,7 @@ public class PstStoreMessage extends MicrosoftStoreMessage {
 	 */
 	@Override
 	protected UUID getNativeCIGuid() {
-		return message.getConversationIndex().getGuid();
+		return getConversationIndex().getGuid();
 	}
 
 	/* (non-Javadoc)
@@ -209,7 +220,7 @@ public class PstStoreMessage extends MicrosoftStoreMessage {
 	 */
 	@Override
 	protected int getNativeCINumberOfResponseLevels() {
-		List<ResponseLevel> lResponseLevel = message.getConversationIndex().getResponseLevels();
+		List<ResponseLevel> lResponseLevel = getConversationIndex().getResponseLevels();
 
 		if (lResponseLevel == null)
 			return 0;
@@ -222,7 +233,7 @@ public class PstStoreMessage extends MicrosoftStoreMessage {
 	 */
 	@Override
 	protected short getNativeCIResponseLevelDeltaCode(int responseLevelNumber) {
-		List<ResponseLevel> lResponseLevel = message.getConversationIndex().getResponseLevels();
+		List<ResponseLevel> lResponseLevel = getConversationIndex().getResponseLevels();
 
 		if (lResponseLevel == null)
 			return 0;
@@ -235,7 +246,7 @@ public class PstStoreMessage extends MicrosoftStoreMessage {
 	 */
 	@Override
 	protected long getNativeCIResponseLevelTimeDelta(int responseLevelNumber) {
-		List<ResponseLevel> lResponseLevel = message.getConversationIndex().getResponseLevels();
+		List<ResponseLevel> lResponseLevel = getConversationIndex().getResponseLevels();
 
 		if (lResponseLevel == null)
 			return 0;
@@ -248,7 +259,7 @@ public class PstStoreMessage extends MicrosoftStoreMessage {
 	 */
 	@Override
 	protected short getNativeCIResponseLevelRandom(int responseLevelNumber) {
-		List<ResponseLevel> lResponseLevel = message.getConversationIndex().getResponseLevels();
+		List<ResponseLevel> lResponseLevel = getConversationIndex().getResponseLevels();
 
 		if (lResponseLevel == null)
 			return 0;
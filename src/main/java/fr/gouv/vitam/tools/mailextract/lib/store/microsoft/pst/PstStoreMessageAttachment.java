@@ -27,21 +27,59 @@
 
 package fr.gouv.vitam.tools.mailextract.lib.store.microsoft.pst;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import com.pff.PSTMessage;
 import com.pff.PSTAttachment;
 import com.pff.PSTException;
 
+import fr.gouv.vitam.tools.mailextract.lib.core.LazyAttachmentContent;
 import fr.gouv.vitam.tools.mailextract.lib.store.microsoft.MicrosoftStoreMessageAttachment;
 
 /**
  * Class for attachment information (MicrosoftStoreMessageAttachment)
  * implementation in pst format.
+ * <p>
+ * The attachment content is not read at construction but only when used, and
+ * for an embedded message the PSTAttachment is kept and resolved by the
+ * embedded message store extractor.
  */
 public class PstStoreMessageAttachment extends MicrosoftStoreMessageAttachment {
 
+	// Attachment content read from the pst file at each use
+	private static class PstAttachmentContent implements LazyAttachmentContent {
+		private PSTAttachment attachment;
+		private int attachSize;
+		private long size = -1;
+
+		PstAttachmentContent(PSTAttachment attachment, int attachSize) {
+			this.attachment = attachment;
+			this.attachSize = attachSize;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			try {
+				return attachment.getFileInputStream();
+			} catch (PSTException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+
+		@Override
+		public long getSize() {
+			if (size < 0) {
+				try {
+					size = attachment.getFilesize();
+				} catch (Exception e) {
+					// attachment object size, including some overhead
+					size = attachSize;
+				}
+			}
+			return size;
+		}
+	}
+
 	public PstStoreMessageAttachment(PSTMessage message, int i) {
 		PSTAttachment attachment;
 
@@ -52,25 +90,12 @@ public class PstStoreMessageAttachment extends MicrosoftStoreMessageAttachment {
 			creationTime = attachment.getCreationTime();
 			modificationTime = attachment.getModificationTime();
 			displayName = attachment.getDisplayName();
-			try {
-				InputStream is = attachment.getFileInputStream();
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				byte[] buf = new byte[4096];
-				int bytesRead;
-				while ((bytesRead = is.read(buf)) != -1) {
-					baos.write(buf, 0, bytesRead);
-				}
-				byteArray = baos.toByteArray();
-			} catch (PSTException | IOException e) {
-				byteArray = null;
-			}
+			if (attachMethod == ATTACHMENT_METHOD_EMBEDDED)
+				embeddedMessage = attachment;
+			else
+				lazyContent = new PstAttachmentContent(attachment, size);
 			filename = attachment.getFilename();
 			longFilename = attachment.getLongFilename();
-			try {
-				embeddedMessage = attachment.getEmbeddedPSTMessage();
-			} catch (PSTException | IOException e) {
-				embeddedMessage = null;
-			}
 
 			mimeTag = attachment.getMimeTag();
 			contentId = attachment.getContentId();
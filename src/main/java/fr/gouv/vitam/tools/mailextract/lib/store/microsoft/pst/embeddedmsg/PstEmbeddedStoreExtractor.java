@@ -27,12 +27,17 @@
 
 package fr.gouv.vitam.tools.mailextract.lib.store.microsoft.pst.embeddedmsg;
 
+import java.io.IOException;
 import java.io.PrintStream;
 
+import com.pff.PSTAttachment;
+import com.pff.PSTException;
 import com.pff.PSTMessage;
 
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorFactory;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorOptions;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider;
 import fr.gouv.vitam.tools.mailextract.lib.core.StoreMessageAttachment;
 import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
 import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
@@ -44,6 +49,33 @@ import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
  */
 public class PstEmbeddedStoreExtractor extends StoreExtractor {
 
+	/** The store extractor factory, calling directly the constructors. */
+	static final StoreExtractorFactory FACTORY = new StoreExtractorFactory() {
+		@Override
+		public StoreExtractor createStoreExtractor(String urlString, String folder, String destPathString,
+				StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger) {
+			return null;
+		}
+
+		@Override
+		public StoreExtractor createEmbeddedStoreExtractor(StoreMessageAttachment attachment, ArchiveUnit rootNode,
+				StoreExtractorOptions options, StoreExtractor rootStoreExtractor, MailExtractProgressLogger logger)
+				throws ExtractionException, InterruptedException {
+			return new PstEmbeddedStoreExtractor(attachment, rootNode, options, rootStoreExtractor, logger);
+		}
+	};
+
+	/**
+	 * Provider of this store extractor, declared for the ServiceLoader in this library
+	 * META-INF/services/fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorProvider file.
+	 */
+	public static class Provider implements StoreExtractorProvider {
+		@Override
+		public void subscribeStoreExtractors() {
+			subscribeStoreExtractor();
+		}
+	}
+
 	/**
 	 * Subscribes at StoreExtractor level all schemes treated by this specific store extractor.
 	 * <p>
@@ -51,7 +83,7 @@ public class PstEmbeddedStoreExtractor extends StoreExtractor {
 	 */
 	static public void subscribeStoreExtractor()
 	{
-		addExtractionRelation(null,"pst.embeddedmsg", false, PstEmbeddedStoreExtractor.class);
+		addExtractionRelation(null,"pst.embeddedmsg", false, FACTORY);
 	}
 	
 	// Attachment to complete with decoded form
@@ -81,7 +113,19 @@ public class PstEmbeddedStoreExtractor extends StoreExtractor {
 		super("pst.embeddedmsg://localhost/", "", rootNode.getFullName(), options, rootStoreExtractor, logger);
 
 		this.attachment=attachment;
-		setRootFolder(PstEmbeddedStoreFolder.createRootFolder((PSTMessage)attachment.getStoreContent(),this,rootNode));
+		setRootFolder(PstEmbeddedStoreFolder.createRootFolder(getEmbeddedMessage(attachment),this,rootNode));
+	}
+
+	// the embedded message is only read from the pst file now
+	private static PSTMessage getEmbeddedMessage(StoreMessageAttachment attachment) throws ExtractionException {
+		if (attachment.getStoreContent() instanceof PSTAttachment) {
+			try {
+				return ((PSTAttachment) attachment.getStoreContent()).getEmbeddedPSTMessage();
+			} catch (PSTException | IOException e) {
+				throw new ExtractionException("mailextract.pst: Can't read embedded message");
+			}
+		}
+		return (PSTMessage) attachment.getStoreContent();
 	}
 
 	/* (non-Javadoc)
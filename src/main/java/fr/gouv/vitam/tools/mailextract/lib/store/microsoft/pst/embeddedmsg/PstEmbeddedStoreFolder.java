@@ -157,7 +157,7 @@ public class PstEmbeddedStoreFolder extends StoreFolder {
 	 */
 	@Override
 	protected void doListFolderElements(boolean stats) throws ExtractionException, InterruptedException {
-		lpStoreMessage.countMessage();
+		lpStoreMessage.listMessage();
 	}
 
 	/*
@@ -0,0 +1,271 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ *
+ * contact.vitam@culture.gouv.fr
+ * 
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ *
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+package fr.gouv.vitam.tools.mailextract.lib.utils;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.mail.internet.MailDateFormat;
+
+/**
+ * Class for folders and messages selection during extraction.
+ * <p>
+ * Folders are selected by include and exclude patterns on their full name,
+ * with '/' as separator, where '*' matches any characters in one folder name,
+ * '**' any characters in any number of folder names, and '?' one character.
+ * Patterns are case insensitive. A folder is extracted if it matches one of
+ * the include patterns, or if there is none, and none of the exclude patterns.
+ * An excluded folder is skipped with all its subfolders, and a folder is
+ * traversed if one of its subfolders may be included.
+ * <p>
+ * Messages are selected by a sent date range, start inclusive and end
+ * exclusive. When a date range is defined, messages without sent date are not
+ * extracted.
+ * <p>
+ * The filter is designed to be checked as early as possible: folders before
+ * being opened, and messages dates on the cheapest information available in
+ * each store (raw Date header, PST properties...) before building the message.
+ */
+public class ExtractionFilter {
+
+	/** The filter that accepts everything. */
+	public static final ExtractionFilter NONE = new ExtractionFilter(null, null, null, null);
+
+	private List<String[]> includePatterns;
+	private List<Pattern[]> includeRegexes;
+	private List<Pattern> excludeRegexes;
+	private Date startDate, endDate;
+
+	/**
+	 * Instantiates a new extraction filter.
+	 *
+	 * @param includeFolders
+	 *            the folders include patterns, or null
+	 * @param excludeFolders
+	 *            the folders exclude patterns, or null
+	 * @param startDate
+	 *            the sent date range start inclusive, or null
+	 * @param endDate
+	 *            the sent date range end exclusive, or null
+	 */
+	public ExtractionFilter(List<String> includeFolders, List<String> excludeFolders, Date startDate, Date endDate) {
+		includePatterns = new ArrayList<String[]>();
+		includeRegexes = new ArrayList<Pattern[]>();
+		excludeRegexes = new ArrayList<Pattern>();
+		if (includeFolders != null)
+			for (String p : includeFolders) {
+				String[] segments = normalizeName(p).split("/", -1);
+				Pattern[] regexes = new Pattern[segments.length];
+				for (int i = 0; i < segments.length; i++)
+					regexes[i] = globToRegex(segments[i]);
+				includePatterns.add(segments);
+				includeRegexes.add(regexes);
+			}
+		if (excludeFolders != null)
+			for (String p : excludeFolders)
+				excludeRegexes.add(globToRegex(normalizeName(p)));
+		this.startDate = startDate;
+		this.endDate = endDate;
+	}
+
+	// folder names are compared '/' separated without leading or ending '/'
+	private static String normalizeName(String name) {
+		String result = (name == null ? "" : name.replace('\\', '/'));
+		while (result.startsWith("/"))
+			result = result.substring(1);
+		while (result.endsWith("/"))
+			result = result.substring(0, result.length() - 1);
+		return result;
+	}
+
+	// '**' any chars, '*' any chars except '/', '?' one char except '/'
+	private static Pattern globToRegex(String glob) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*') {
+				if ((i + 1 < glob.length()) && (glob.charAt(i + 1) == '*')) {
+					sb.append(".*");
+					i++;
+				} else
+					sb.append("[^/]*");
+			} else if (c == '?')
+				sb.append("[^/]");
+			else
+				sb.append(Pattern.quote(Character.toString(c)));
+		}
+		return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+	}
+
+	/**
+	 * Checks if there's any folder selection.
+	 *
+	 * @return true, if folders are filtered
+	 */
+	public boolean hasFolderFilter() {
+		return !includePatterns.isEmpty() || !excludeRegexes.isEmpty();
+	}
+
+	/**
+	 * Checks if there's a sent date range selection.
+	 *
+	 * @return true, if messages are filtered by date
+	 */
+	public boolean hasDateRange() {
+		return (startDate != null) || (endDate != null);
+	}
+
+	private boolean isExcluded(String name) {
+		for (Pattern p : excludeRegexes)
+			if (p.matcher(name).matches())
+				return true;
+		return false;
+	}
+
+	/**
+	 * Checks if the folder, or one of its subfolders, may be extracted. If
+	 * not, the folder doesn't have to be opened.
+	 *
+	 * @param folderFullName
+	 *            the folder full name
+	 * @return true, if the folder has to be traversed
+	 */
+	public boolean acceptFolderTree(String folderFullName) {
+		String name = normalizeName(folderFullName);
+
+		if (isExcluded(name))
+			return false;
+		if (includePatterns.isEmpty() || name.isEmpty())
+			return true;
+		String[] segments = name.split("/", -1);
+		for (int p = 0; p < includePatterns.size(); p++)
+			if (mayMatchSubfolder(includePatterns.get(p), includeRegexes.get(p), segments))
+				return true;
+		return false;
+	}
+
+	// the folder itself or one of its subfolders may match the pattern
+	private static boolean mayMatchSubfolder(String[] patternSegments, Pattern[] regexes, String[] segments) {
+		for (int i = 0; i < segments.length; i++) {
+			if (i >= patternSegments.length)
+				return false;
+			if (patternSegments[i].contains("**"))
+				return true;
+			if (!regexes[i].matcher(segments[i]).matches())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the folder elements have to be extracted.
+	 *
+	 * @param folderFullName
+	 *            the folder full name
+	 * @return true, if the folder elements are selected
+	 */
+	public boolean acceptFolderElements(String folderFullName) {
+		String name = normalizeName(folderFullName);
+
+		if (isExcluded(name))
+			return false;
+		if (includePatterns.isEmpty())
+			return true;
+		String[] segments = name.split("/", -1);
+		for (int p = 0; p < includePatterns.size(); p++)
+			if (matches(includePatterns.get(p), includeRegexes.get(p), 0, segments, 0))
+				return true;
+		return false;
+	}
+
+	// segment by segment matching, a '**' segment matching any number of
+	// folder names
+	private static boolean matches(String[] patternSegments, Pattern[] regexes, int p, String[] segments, int s) {
+		if (p == patternSegments.length)
+			return s == segments.length;
+		if (patternSegments[p].equals("**")) {
+			for (int k = s; k <= segments.length; k++)
+				if (matches(patternSegments, regexes, p + 1, segments, k))
+					return true;
+			return false;
+		}
+		if (s == segments.length)
+			return false;
+		if (patternSegments[p].contains("**")) {
+			// '**' inside a name, match the remaining path at once
+			StringBuilder rest = new StringBuilder(segments[s]);
+			for (int k = s + 1; k < segments.length; k++)
+				rest.append('/').append(segments[k]);
+			return (p == patternSegments.length - 1) && regexes[p].matcher(rest).matches();
+		}
+		return regexes[p].matcher(segments[s]).matches()
+				&& matches(patternSegments, regexes, p + 1, segments, s + 1);
+	}
+
+	/**
+	 * Checks if the message sent date is in the date range.
+	 *
+	 * @param sentDate
+	 *            the sent date, or null if unknown
+	 * @return true, if the message is selected
+	 */
+	public boolean acceptDate(Date sentDate) {
+		if (!hasDateRange())
+			return true;
+		if (sentDate == null)
+			return false;
+		if ((startDate != null) && sentDate.before(startDate))
+			return false;
+		if ((endDate != null) && !sentDate.before(endDate))
+			return false;
+		return true;
+	}
+
+	/**
+	 * Checks if the message raw Date header value is in the date range.
+	 * <p>
+	 * This is a pre-filter on raw content, an absent or unparsable value is
+	 * accepted so that the decision is done on the fully analyzed message.
+	 *
+	 * @param rawDateValue
+	 *            the raw Date header value
+	 * @return true, if the message may be selected
+	 */
+	public boolean acceptRawDate(String rawDateValue) {
+		if (!hasDateRange() || (rawDateValue == null))
+			return true;
+		try {
+			Date date = new MailDateFormat().parse(rawDateValue.trim());
+			return (date == null) || acceptDate(date);
+		} catch (ParseException | RuntimeException e) {
+			return true;
+		}
+	}
+}
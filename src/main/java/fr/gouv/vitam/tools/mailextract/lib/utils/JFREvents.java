@@ -0,0 +1,194 @@
+/**
+* Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+*
+* contact.vitam@culture.gouv.fr
+* 
+* This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+* high volumetry securely and efficiently.
+*
+* This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+* software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+* circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+*
+* As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+* users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+* successive licensors have only limited liability.
+*
+* In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+* developing or reproducing the software by the user in light of its specific status of free software, that may mean
+* that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+* experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+* software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+* to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+*
+* The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+* accept its terms.
+*/
+package fr.gouv.vitam.tools.mailextract.lib.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder custom events definitions.
+ * <p>
+ * Only used through {@link MailExtractEvents}, when JFR is available in the
+ * running JVM. Durations are the JFR events ones, from begin() to end(), so
+ * that recording thresholds apply.
+ */
+final class JFREvents {
+
+    private JFREvents() {
+    }
+
+    /**
+     * Folder extraction event.
+     */
+    @Name("fr.gouv.vitam.mailextract.Folder")
+    @Label("Folder extraction")
+    @Category("Mailextract")
+    @StackTrace(false)
+    static class FolderEvent extends Event {
+        @Label("Folder path")
+        String folderPath;
+
+        @Label("Elements count")
+        int elementsCount;
+
+        @Label("Elements raw size")
+        @DataAmount
+        long rawSize;
+    }
+
+    /**
+     * Message analysis or extraction event.
+     */
+    @Name("fr.gouv.vitam.mailextract.Message")
+    @Label("Message processing")
+    @Category("Mailextract")
+    @StackTrace(false)
+    static class MessageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Folder path")
+        String folderPath;
+
+        @Label("Message ID")
+        String messageID;
+
+        @Label("Message size")
+        @DataAmount
+        long messageSize;
+    }
+
+    /**
+     * Tika call event.
+     */
+    @Name("fr.gouv.vitam.mailextract.Tika")
+    @Label("Tika call")
+    @Category("Mailextract")
+    @StackTrace(false)
+    static class TikaEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Mime type")
+        String mimeType;
+
+        @Label("Content size")
+        @DataAmount
+        long contentSize;
+    }
+
+    /**
+     * Nested store extraction event.
+     */
+    @Name("fr.gouv.vitam.mailextract.NestedStore")
+    @Label("Nested store extraction")
+    @Category("Mailextract")
+    @StackTrace(false)
+    static class NestedStoreEvent extends Event {
+        @Label("Scheme")
+        String scheme;
+
+        @Label("Attachment name")
+        String attachmentName;
+
+        @Label("Folder path")
+        String folderPath;
+
+        @Label("Attachment size")
+        @DataAmount
+        long contentSize;
+    }
+
+    // the event begun, or null if not enabled in running recordings
+    private static Event begin(Event event) {
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    static Object beginFolder() {
+        return begin(new FolderEvent());
+    }
+
+    static Object beginMessage() {
+        return begin(new MessageEvent());
+    }
+
+    static Object beginTika() {
+        return begin(new TikaEvent());
+    }
+
+    static Object beginNestedStore() {
+        return begin(new NestedStoreEvent());
+    }
+
+    static boolean end(Object event) {
+        Event e = (Event) event;
+        e.end();
+        return e.shouldCommit();
+    }
+
+    static void commitFolder(Object event, String folderPath, int elementsCount, long rawSize) {
+        FolderEvent e = (FolderEvent) event;
+        e.folderPath = folderPath;
+        e.elementsCount = elementsCount;
+        e.rawSize = rawSize;
+        e.commit();
+    }
+
+    static void commitMessage(Object event, String stage, String folderPath, String messageID, long messageSize) {
+        MessageEvent e = (MessageEvent) event;
+        e.stage = stage;
+        e.folderPath = folderPath;
+        e.messageID = messageID;
+        e.messageSize = messageSize;
+        e.commit();
+    }
+
+    static void commitTika(Object event, String operation, String mimeType, long contentSize) {
+        TikaEvent e = (TikaEvent) event;
+        e.operation = operation;
+        e.mimeType = mimeType;
+        e.contentSize = contentSize;
+        e.commit();
+    }
+
+    static void commitNestedStore(Object event, String scheme, String attachmentName, String folderPath,
+                                  long contentSize) {
+        NestedStoreEvent e = (NestedStoreEvent) event;
+        e.scheme = scheme;
+        e.attachmentName = attachmentName;
+        e.folderPath = folderPath;
+        e.contentSize = contentSize;
+        e.commit();
+    }
+}
@@ -0,0 +1,171 @@
+/**
+* Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+*
+* contact.vitam@culture.gouv.fr
+* 
+* This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+* high volumetry securely and efficiently.
+*
+* This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+* software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+* circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+*
+* As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+* users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+* successive licensors have only limited liability.
+*
+* In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+* developing or reproducing the software by the user in light of its specific status of free software, that may mean
+* that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+* experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+* software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+* to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+*
+* The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+* accept its terms.
+*/
+package fr.gouv.vitam.tools.mailextract.lib.utils;
+
+/**
+ * The Class MailExtractEvents.
+ * <p>
+ * Entry point for the Java Flight Recorder custom events emitted during an
+ * extraction, on folders, messages, Tika calls and nested stores. A continuous
+ * recording (for example -XX:StartFlightRecording) can then tell which
+ * message or attachment type costs the time, with no code change.
+ * <p>
+ * The JFR API is only available on Java 8u272+ and 11+ runtimes, so the event
+ * classes are kept in {@link JFREvents} which is loaded only if the running
+ * JVM has JFR. Otherwise, or if the system property "mailextract.jfr" is set to
+ * false, all methods are no-op.
+ * <p>
+ * An event is begun by a begin method, which returns null if the event is not
+ * enabled in the running recordings, and then ended with {@link #end end}.
+ * Only if the event passes the recording settings (duration threshold...) its
+ * payload has to be computed and given to the commit method:
+ * <pre>
+ * Object event = MailExtractEvents.beginMessage();
+ * ...
+ * if (MailExtractEvents.end(event))
+ *     MailExtractEvents.commitMessage(event, "analyze", folderPath, messageID, getMessageSize());
+ * </pre>
+ */
+public final class MailExtractEvents {
+
+    /** The events activation flag. */
+    public static final boolean ENABLED = isJFRAvailable();
+
+    private MailExtractEvents() {
+    }
+
+    // test if the running JVM supports JFR events
+    private static boolean isJFRAvailable() {
+        if ("false".equalsIgnoreCase(System.getProperty("mailextract.jfr")))
+            return false;
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * Begin a folder extraction event.
+     *
+     * @return the event, or null if not enabled
+     */
+    public static Object beginFolder() {
+        return (ENABLED ? JFREvents.beginFolder() : null);
+    }
+
+    /**
+     * Begin a message analysis or extraction event.
+     *
+     * @return the event, or null if not enabled
+     */
+    public static Object beginMessage() {
+        return (ENABLED ? JFREvents.beginMessage() : null);
+    }
+
+    /**
+     * Begin a Tika call event.
+     *
+     * @return the event, or null if not enabled
+     */
+    public static Object beginTika() {
+        return (ENABLED ? JFREvents.beginTika() : null);
+    }
+
+    /**
+     * Begin a nested store extraction event.
+     *
+     * @return the event, or null if not enabled
+     */
+    public static Object beginNestedStore() {
+        return (ENABLED ? JFREvents.beginNestedStore() : null);
+    }
+
+    /**
+     * End an event, and tell if it has to be committed.
+     *
+     * @param event the event returned by a begin method, may be null
+     * @return true, if the event passes the recording settings and its payload
+     * has to be committed
+     */
+    public static boolean end(Object event) {
+        return (event != null) && JFREvents.end(event);
+    }
+
+    /**
+     * Commit a folder extraction event.
+     *
+     * @param event         the ended event
+     * @param folderPath    the folder full name
+     * @param elementsCount the folder elements count
+     * @param rawSize       the folder elements raw size
+     */
+    public static void commitFolder(Object event, String folderPath, int elementsCount, long rawSize) {
+        JFREvents.commitFolder(event, folderPath, elementsCount, rawSize);
+    }
+
+    /**
+     * Commit a message analysis or extraction event.
+     *
+     * @param event       the ended event
+     * @param stage       the stage (analyze, extract...)
+     * @param folderPath  the folder full name
+     * @param messageID   the message ID
+     * @param messageSize the message size
+     */
+    public static void commitMessage(Object event, String stage, String folderPath, String messageID,
+                                     long messageSize) {
+        JFREvents.commitMessage(event, stage, folderPath, messageID, messageSize);
+    }
+
+    /**
+     * Commit a Tika call event.
+     *
+     * @param event       the ended event
+     * @param operation   the operation (detect, extract)
+     * @param mimeType    the detected mime type, if known, or null
+     * @param contentSize the content size
+     */
+    public static void commitTika(Object event, String operation, String mimeType, long contentSize) {
+        JFREvents.commitTika(event, operation, mimeType, contentSize);
+    }
+
+    /**
+     * Commit a nested store extraction event.
+     *
+     * @param event          the ended event
+     * @param scheme         the nested store scheme
+     * @param attachmentName the attachment name
+     * @param folderPath     the containing message folder full name
+     * @param contentSize    the attachment size
+     */
+    public static void commitNestedStore(Object event, String scheme, String attachmentName, String folderPath,
+                                         long contentSize) {
+        JFREvents.commitNestedStore(event, scheme, attachmentName, folderPath, contentSize);
+    }
+}
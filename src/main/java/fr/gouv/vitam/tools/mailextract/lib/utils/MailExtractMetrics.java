@@ -0,0 +1,352 @@
+/**
+* Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+*
+* contact.vitam@culture.gouv.fr
+* 
+* This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+* high volumetry securely and efficiently.
+*
+* This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+* software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+* circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+*
+* As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+* users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+* successive licensors have only limited liability.
+*
+* In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+* developing or reproducing the software by the user in light of its specific status of free software, that may mean
+* that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+* experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+* software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+* to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+*
+* The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+* accept its terms.
+*/
+package fr.gouv.vitam.tools.mailextract.lib.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Class MailExtractMetrics.
+ * <p>
+ * Registry of counters and latency histograms collected during an extraction
+ * or a listing. There's one registry by root store extractor, shared by all
+ * nested store extractors.
+ * <p>
+ * The registry can be exported, periodically and at the end of the process,
+ * in the destination directory as:
+ * <ul>
+ * <li>a Prometheus text-format file (mailextract_metrics.prom), convenient for
+ * a node exporter textfile collector,</li>
+ * <li>a JSON file (mailextract_metrics.json).</li>
+ * </ul>
+ * Files are written in a temporary file then moved, so that a reader never sees
+ * a partial export.
+ * <p>
+ * When metrics are not exported, the {@link #NONE} registry is used, which
+ * records nothing.
+ */
+public class MailExtractMetrics {
+
+    /** Counter of extracted messages. */
+    public static final String MESSAGES = "messages";
+    /** Counter of extracted attachments (not stores). */
+    public static final String ATTACHMENTS = "attachments";
+    /** Counter of messages raw bytes read from stores. */
+    public static final String BYTES_READ = "bytes_read";
+    /** Counter of bytes written on disk. */
+    public static final String BYTES_WRITTEN = "bytes_written";
+    /** Counter of nested stores (attached messages, pst, mbox...). */
+    public static final String NESTED_STORES = "nested_stores";
+    /** Counter of messages referenced instead of extracted again (Gmail labels...). */
+    public static final String MESSAGE_REFERENCES = "message_references";
+
+    /** Timer of StoreMessage.analyzeMessage. */
+    public static final String ANALYZE_MESSAGE = "analyze_message";
+    /** Timer of bodies optimisation (rtf de-encapsulation...). */
+    public static final String OPTIMIZE_BODIES = "optimize_bodies";
+    /** Timer of Tika mime type detection. */
+    public static final String TIKA_DETECT = "tika_detect";
+    /** Timer of Tika text extraction. */
+    public static final String TIKA_EXTRACT = "tika_extract";
+    /** Timer of mime fake generation. */
+    public static final String MIME_FAKE = "mime_fake";
+    /** Timer of ArchiveUnit.write. */
+    public static final String ARCHIVE_UNIT_WRITE = "archive_unit_write";
+
+    /** The prometheus export file name. */
+    public static final String PROMETHEUS_FILENAME = "mailextract_metrics.prom";
+    /** The json export file name. */
+    public static final String JSON_FILENAME = "mailextract_metrics.json";
+
+    // histograms upper bounds in seconds (Prometheus le buckets)
+    private static final double[] BUCKETS = {0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1.0, 5.0, 10.0, 60.0};
+
+    /**
+     * Latency histogram with fixed buckets.
+     */
+    private static class Histogram {
+        long[] bucketCounts = new long[BUCKETS.length];
+        long count;
+        long sumNanos;
+        long maxNanos;
+
+        void observe(long nanos) {
+            double seconds = nanos / 1e9;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (seconds <= BUCKETS[i]) {
+                    bucketCounts[i]++;
+                    break;
+                }
+            }
+            count++;
+            sumNanos += nanos;
+            if (nanos > maxNanos)
+                maxNanos = nanos;
+        }
+    }
+
+    /** The registry recording nothing, used when metrics are not exported. */
+    public static final MailExtractMetrics NONE = new MailExtractMetrics(false);
+
+    private boolean enabled;
+    private Map<String, Long> counters;
+    private Map<String, Histogram> histograms;
+
+    private long startNanos;
+    private long lastExportNanos;
+
+    /**
+     * Instantiates a new metrics registry.
+     */
+    public MailExtractMetrics() {
+        this(true);
+    }
+
+    private MailExtractMetrics(boolean enabled) {
+        this.enabled = enabled;
+        counters = new TreeMap<String, Long>();
+        histograms = new TreeMap<String, Histogram>();
+        for (String name : new String[]{MESSAGES, ATTACHMENTS, BYTES_READ, BYTES_WRITTEN, NESTED_STORES,
+                MESSAGE_REFERENCES})
+            counters.put(name, 0L);
+        for (String name : new String[]{ANALYZE_MESSAGE, OPTIMIZE_BODIES, TIKA_DETECT, TIKA_EXTRACT, MIME_FAKE,
+                ARCHIVE_UNIT_WRITE})
+            histograms.put(name, new Histogram());
+        startNanos = System.nanoTime();
+        lastExportNanos = startNanos;
+    }
+
+    /**
+     * Checks if this registry records anything, so that values only needed by
+     * metrics are not computed for nothing.
+     *
+     * @return true, if not the {@link #NONE} registry
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Increment a counter.
+     *
+     * @param name the counter name
+     */
+    public void incCounter(String name) {
+        addCounter(name, 1);
+    }
+
+    /**
+     * Add to a counter.
+     *
+     * @param name the counter name
+     * @param inc  the increment
+     */
+    public void addCounter(String name, long inc) {
+        if (!enabled)
+            return;
+        synchronized (this) {
+            Long value = counters.get(name);
+            counters.put(name, (value == null ? 0L : value) + inc);
+        }
+    }
+
+    /**
+     * Gets a counter value.
+     *
+     * @param name the counter name
+     * @return the counter value, 0 if never incremented
+     */
+    public synchronized long getCounter(String name) {
+        Long value = counters.get(name);
+        return (value == null ? 0L : value);
+    }
+
+    /**
+     * Record a stage duration.
+     *
+     * @param name  the timer name
+     * @param nanos the duration in nanoseconds
+     */
+    public void observe(String name, long nanos) {
+        if (!enabled)
+            return;
+        synchronized (this) {
+            Histogram h = histograms.get(name);
+            if (h == null) {
+                h = new Histogram();
+                histograms.put(name, h);
+            }
+            h.observe(nanos);
+        }
+    }
+
+    /**
+     * Record a stage duration from a start time, and return the new time.
+     * <p>
+     * This is the usual way to time a stage: {@code long t = System.nanoTime();
+     * ...; metrics.observeSince(TIMER, t);}
+     *
+     * @param name       the timer name
+     * @param startNanos the start System.nanoTime() value
+     * @return the current System.nanoTime() value
+     */
+    public long observeSince(String name, long startNanos) {
+        long now = System.nanoTime();
+        observe(name, now - startNanos);
+        return now;
+    }
+
+    /**
+     * Export the registry in the directory if the period is elapsed since the
+     * last export.
+     *
+     * @param dirPath       the export directory path
+     * @param periodSeconds the export period in seconds, export is never done
+     *                      if 0 or negative
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void exportIfDue(String dirPath, int periodSeconds) throws IOException {
+        if (periodSeconds <= 0)
+            return;
+        synchronized (this) {
+            if (System.nanoTime() - lastExportNanos < periodSeconds * 1000000000L)
+                return;
+            lastExportNanos = System.nanoTime();
+        }
+        export(dirPath);
+    }
+
+    /**
+     * Export the registry in the directory, in Prometheus text format and
+     * JSON.
+     *
+     * @param dirPath the export directory path
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void export(String dirPath) throws IOException {
+        String prometheus, json;
+
+        synchronized (this) {
+            prometheus = toPrometheusText();
+            json = toJSON();
+        }
+        Files.createDirectories(Paths.get(dirPath));
+        writeAtomically(Paths.get(dirPath, PROMETHEUS_FILENAME), prometheus);
+        writeAtomically(Paths.get(dirPath, JSON_FILENAME), json);
+    }
+
+    // write in a temporary file and then move to target
+    private static void writeAtomically(Path target, String content) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+
+    /**
+     * Gets the registry in Prometheus text exposition format.
+     *
+     * @return the string
+     */
+    public synchronized String toPrometheusText() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            String name = "mailextract_" + e.getKey() + "_total";
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            sb.append(name).append(' ').append(e.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            String name = "mailextract_" + e.getKey() + "_seconds";
+            Histogram h = e.getValue();
+            long cumulative = 0;
+            sb.append("# TYPE ").append(name).append(" histogram\n");
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += h.bucketCounts[i];
+                sb.append(name).append("_bucket{le=\"").append(BUCKETS[i]).append("\"} ").append(cumulative)
+                        .append('\n');
+            }
+            sb.append(name).append("_bucket{le=\"+Inf\"} ").append(h.count).append('\n');
+            sb.append(name).append("_sum ").append(seconds(h.sumNanos)).append('\n');
+            sb.append(name).append("_count ").append(h.count).append('\n');
+        }
+        sb.append("# TYPE mailextract_elapsed_seconds gauge\n");
+        sb.append("mailextract_elapsed_seconds ").append(seconds(System.nanoTime() - startNanos)).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Gets the registry in JSON format.
+     *
+     * @return the string
+     */
+    public synchronized String toJSON() {
+        StringBuilder sb = new StringBuilder();
+        boolean first;
+
+        sb.append("{\n  \"elapsedSeconds\": ").append(seconds(System.nanoTime() - startNanos)).append(",\n");
+        sb.append("  \"counters\": {");
+        first = true;
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            sb.append(first ? "\n" : ",\n").append("    \"").append(e.getKey()).append("\": ").append(e.getValue());
+            first = false;
+        }
+        sb.append("\n  },\n  \"timers\": {");
+        first = true;
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            Histogram h = e.getValue();
+            sb.append(first ? "\n" : ",\n").append("    \"").append(e.getKey()).append("\": {");
+            sb.append("\"count\": ").append(h.count);
+            sb.append(", \"sumSeconds\": ").append(seconds(h.sumNanos));
+            sb.append(", \"maxSeconds\": ").append(seconds(h.maxNanos));
+            sb.append(", \"buckets\": {");
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append('"').append(BUCKETS[i]).append("\": ").append(h.bucketCounts[i]);
+            }
+            sb.append("}}");
+            first = false;
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,211 @@
+/**
+* Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+*
+* contact.vitam@culture.gouv.fr
+* 
+* This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+* high volumetry securely and efficiently.
+*
+* This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+* software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+* circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+*
+* As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+* users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+* successive licensors have only limited liability.
+*
+* In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+* developing or reproducing the software by the user in light of its specific status of free software, that may mean
+* that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+* experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+* software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+* to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+*
+* The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+* accept its terms.
+*/
+package fr.gouv.vitam.tools.mailextract.lib.utils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The Class TopItemsReport.
+ * <p>
+ * Keeps bounded top-N lists of the slowest and of the largest messages and
+ * attachments met during an extraction or a listing, with their folder path,
+ * messageID, size and per stage durations. There's one report by root store
+ * extractor, shared by all nested store extractors.
+ * <p>
+ * The report is written at the end of the process as a csv file (with "|"
+ * separator, as the mails list), so that problematic mailboxes can be
+ * identified without hunting through logs.
+ */
+public class TopItemsReport {
+
+    /** The report file name. */
+    public static final String REPORT_FILENAME = "topItemsReport.csv";
+
+    /**
+     * One reported item, message or attachment.
+     */
+    public static class Item {
+        String folderPath;
+        String messageID;
+        String name;
+        long size;
+        long durationNanos;
+        Map<String, Long> stagesNanos;
+
+        /**
+         * Instantiates a new item.
+         *
+         * @param folderPath    the folder full name
+         * @param messageID     the message ID (containing message for attachments)
+         * @param name          the message subject or the attachment name
+         * @param size          the size
+         * @param durationNanos the whole processing duration in nanoseconds
+         * @param stagesNanos   the stages durations in nanoseconds, by stage
+         *                      name
+         */
+        public Item(String folderPath, String messageID, String name, long size, long durationNanos,
+                    Map<String, Long> stagesNanos) {
+            this.folderPath = folderPath;
+            this.messageID = messageID;
+            this.name = name;
+            this.size = size;
+            this.durationNanos = durationNanos;
+            this.stagesNanos = stagesNanos;
+        }
+    }
+
+    private static final Comparator<Item> BY_DURATION = new Comparator<Item>() {
+        public int compare(Item i1, Item i2) {
+            return Long.compare(i1.durationNanos, i2.durationNanos);
+        }
+    };
+
+    private static final Comparator<Item> BY_SIZE = new Comparator<Item>() {
+        public int compare(Item i1, Item i2) {
+            return Long.compare(i1.size, i2.size);
+        }
+    };
+
+    private int maxItems;
+
+    // min-heaps, the head is the first item to be evicted
+    private PriorityQueue<Item> slowestMessages;
+    private PriorityQueue<Item> largestMessages;
+    private PriorityQueue<Item> slowestAttachments;
+    private PriorityQueue<Item> largestAttachments;
+
+    /**
+     * Instantiates a new top items report.
+     *
+     * @param maxItems the number of items kept in each list, 0 if no report
+     */
+    public TopItemsReport(int maxItems) {
+        this.maxItems = maxItems;
+        int capacity = Math.max(1, maxItems + 1);
+        slowestMessages = new PriorityQueue<Item>(capacity, BY_DURATION);
+        largestMessages = new PriorityQueue<Item>(capacity, BY_SIZE);
+        slowestAttachments = new PriorityQueue<Item>(capacity, BY_DURATION);
+        largestAttachments = new PriorityQueue<Item>(capacity, BY_SIZE);
+    }
+
+    /**
+     * Checks if the report is active.
+     *
+     * @return true, if items are kept
+     */
+    public boolean isActive() {
+        return maxItems > 0;
+    }
+
+    /**
+     * Offer a message to the slowest and largest messages lists.
+     *
+     * @param item the message item
+     */
+    public synchronized void addMessage(Item item) {
+        offer(slowestMessages, item, BY_DURATION);
+        offer(largestMessages, item, BY_SIZE);
+    }
+
+    /**
+     * Offer an attachment to the slowest and largest attachments lists.
+     *
+     * @param item the attachment item
+     */
+    public synchronized void addAttachment(Item item) {
+        offer(slowestAttachments, item, BY_DURATION);
+        offer(largestAttachments, item, BY_SIZE);
+    }
+
+    // keep the item if the list is not full or if it's above the list head
+    private void offer(PriorityQueue<Item> queue, Item item, Comparator<Item> comparator) {
+        if (maxItems <= 0)
+            return;
+        if (queue.size() < maxItems)
+            queue.add(item);
+        else if (comparator.compare(item, queue.peek()) > 0) {
+            queue.poll();
+            queue.add(item);
+        }
+    }
+
+    private static String filterHyphen(String s) {
+        return (s == null ? "" : s.replace("\"", " "));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    // print one list, in decreasing order
+    private static void printList(PrintStream ps, String category, PriorityQueue<Item> queue,
+                                  Comparator<Item> comparator) {
+        List<Item> items = new ArrayList<Item>(queue);
+        Collections.sort(items, Collections.reverseOrder(comparator));
+        int rank = 1;
+        for (Item item : items) {
+            StringBuilder stages = new StringBuilder();
+            if (item.stagesNanos != null) {
+                for (Map.Entry<String, Long> e : item.stagesNanos.entrySet()) {
+                    if (stages.length() > 0)
+                        stages.append(", ");
+                    stages.append(e.getKey()).append('=').append(millis(e.getValue()));
+                }
+            }
+            ps.format("\"%s\"|\"%d\"|\"%s\"|\"%s\"|\"%s\"|\"%d\"|\"%s\"|\"%s\"%n", category, rank++,
+                    filterHyphen(item.folderPath), filterHyphen(item.messageID), filterHyphen(item.name), item.size,
+                    millis(item.durationNanos), stages);
+        }
+    }
+
+    /**
+     * Write the report in the directory.
+     *
+     * @param dirPath the directory path
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void write(String dirPath) throws IOException {
+        Files.createDirectories(Paths.get(dirPath));
+        try (PrintStream ps = new PrintStream(Paths.get(dirPath, REPORT_FILENAME).toFile(), "UTF-8")) {
+            ps.println("Category|Rank|Folder|MessageID|Name|Size|DurationMs|StagesMs");
+            printList(ps, "SlowestMessages", slowestMessages, BY_DURATION);
+            printList(ps, "LargestMessages", largestMessages, BY_SIZE);
+            printList(ps, "SlowestAttachments", slowestAttachments, BY_DURATION);
+            printList(ps, "LargestAttachments", largestAttachments, BY_SIZE);
+        }
+    }
+}
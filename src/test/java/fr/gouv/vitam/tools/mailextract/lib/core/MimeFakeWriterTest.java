@@ -0,0 +1,571 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import javax.activation.DataHandler;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.internet.MimeUtility;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import fr.gouv.vitam.tools.mailextract.lib.nodes.ArchiveUnit;
+import fr.gouv.vitam.tools.mailextract.lib.utils.ExtractionException;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
+import fr.gouv.vitam.tools.mailextract.lib.utils.RawDataSource;
+
+import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.HTML_BODY;
+import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.OUT_OF_BODY;
+import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.RTF_BODY;
+import static fr.gouv.vitam.tools.mailextract.lib.core.StoreMessage.TEXT_BODY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Golden comparison of the streamed mime fake with the JavaMail MimeMessage
+ * one it replaces, the generated boundaries apart.
+ * <p>
+ * The MimeMessage is built as StoreMessage did before the streamed mime fake.
+ * Text attachments of other types than plain, html and xml are not compared,
+ * as they were written by JavaMail in the platform charset.
+ */
+public class MimeFakeWriterTest {
+
+    private static final Pattern BOUNDARY = Pattern.compile("----=_Part_\\d+_-?\\d+\\.\\d+");
+
+    private static File rootDir;
+    private static TestStoreFolder folder;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        rootDir = Files.createTempDirectory("mimefake").toFile();
+        folder = new TestStoreFolder(new TestStoreExtractor(rootDir));
+    }
+
+    @Test
+    public void textBody() throws Exception {
+        TestStoreMessage message = newMessage();
+        message.bodyContent[TEXT_BODY] = "Bonjour,\r\n\r\nun texte accentué, à lire.\r\n";
+        assertSameMimeFake(message);
+    }
+
+    @Test
+    public void emptyBodies() throws Exception {
+        TestStoreMessage message = newMessage();
+        message.subject = null;
+        message.sentDate = null;
+        assertSameMimeFake(message);
+    }
+
+    @Test
+    public void allBodiesWithInlinesAndAttachments() throws Exception {
+        TestStoreMessage message = newMessage();
+        message.bodyContent[TEXT_BODY] = "Voir l'image.\r\n";
+        message.bodyContent[HTML_BODY] = "<html><body><p>Voir l'image <img src=\"cid:image1@local\"></p></body></html>";
+        message.attachments.add(new StoreMessageAttachment(binaryContent(3000), "file", "image.png", null, null,
+                "image/png", "image1@local", StoreMessageAttachment.INLINE_ATTACHMENT));
+        message.attachments.add(new StoreMessageAttachment("Une ligne\r\nDeux lignes été\r\n".getBytes(
+                StandardCharsets.UTF_8), "file", "notes.txt", null, null, "text/plain", null,
+                StoreMessageAttachment.FILE_ATTACHMENT));
+        message.attachments.add(new StoreMessageAttachment(asciiContent(5000), "file", "données \"brutes\".bin",
+                null, null, "application/octet-stream", null, StoreMessageAttachment.FILE_ATTACHMENT));
+        message.attachments.add(new StoreMessageAttachment(("Subject: attached\r\nFrom: a@b.c\r\n\r\nbody\r\n")
+                .getBytes(StandardCharsets.US_ASCII), "eml", "attached", null, null, "message/rfc822", null,
+                StoreMessageAttachment.FILE_ATTACHMENT));
+        message.attachments.add(new StoreMessageAttachment(binaryContent(100), "file", null, null, null, null,
+                null, StoreMessageAttachment.FILE_ATTACHMENT));
+        assertSameMimeFake(message);
+    }
+
+    @Test
+    public void rtfBodyWithInline() throws Exception {
+        TestStoreMessage message = newMessage();
+        message.bodyContent[RTF_BODY] = "{\\rtf1\\ansi\\deff0 {\\fonttbl {\\f0 Arial;}}\\f0 Bonjour\\par}";
+        message.attachments.add(new StoreMessageAttachment(binaryContent(500), "file", "logo.gif", null, null,
+                "image/gif", "logo", StoreMessageAttachment.INLINE_ATTACHMENT));
+        assertSameMimeFake(message);
+    }
+
+    @Test
+    public void lazyAttachment() throws Exception {
+        TestStoreMessage message = newMessage();
+        message.bodyContent[TEXT_BODY] = "Pièce jointe lue à l'écriture.";
+        final byte[] content = asciiContent(20000);
+        message.attachments.add(new StoreMessageAttachment(new LazyAttachmentContent() {
+            @Override
+            public InputStream getInputStream() {
+                return new java.io.ByteArrayInputStream(content);
+            }
+
+            @Override
+            public long getSize() {
+                return content.length;
+            }
+        }, "file", "long.log", null, null, "application/x-log", null, StoreMessageAttachment.FILE_ATTACHMENT));
+        assertSameMimeFake(message);
+    }
+
+    @Test
+    public void otherTextAttachmentInDefaultCharset() throws Exception {
+        TestStoreMessage message = newMessage();
+        message.bodyContent[TEXT_BODY] = "Agenda.";
+        message.attachments.add(new StoreMessageAttachment("Réunion;Salle été\r\n".getBytes(StandardCharsets.UTF_8),
+                "file", "agenda.csv", null, null, "text/csv", null, StoreMessageAttachment.FILE_ATTACHMENT));
+        String eml = write(new MimeFakeWriter(message));
+        assertTrue(eml.contains("Content-Type: text/csv; name=agenda.csv; charset=windows-1252"));
+        assertTrue(eml.contains("R=E9union;Salle =E9t=E9"));
+    }
+
+    @Test
+    public void unreadableAttachmentWritesEmptyFile() throws Exception {
+        TestStoreMessage message = newMessage();
+        message.bodyContent[TEXT_BODY] = "Pièce jointe illisible.";
+        message.attachments.add(new StoreMessageAttachment(new LazyAttachmentContent() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                throw new IOException("broken store");
+            }
+
+            @Override
+            public long getSize() {
+                return 10;
+            }
+        }, "file", "broken.bin", null, null, "application/pdf", null, StoreMessageAttachment.FILE_ATTACHMENT));
+        MimeFakeWriter writer = new MimeFakeWriter(message);
+        try {
+            writer.write(new ByteArrayOutputStream());
+            fail("attachment read problem not thrown");
+        } catch (ArchiveUnit.ContentReadException e) {
+            // expected
+        }
+
+        ArchiveUnit unit = new ArchiveUnit(folder.getStoreExtractor(), rootDir.getPath(), "unreadable");
+        unit.addObject(writer, "message.eml", "BinaryMaster", 1);
+        unit.write();
+        File eml = new File(unit.getFullName(), "__BinaryMaster_1__message.eml");
+        assertTrue(eml.isFile());
+        assertEquals(0, eml.length());
+    }
+
+    // Utility functions
+
+    private static TestStoreMessage newMessage() {
+        TestStoreMessage message = new TestStoreMessage(folder);
+        message.attachments = new ArrayList<StoreMessageAttachment>();
+        message.subject = "Réunion du lundi, ordre du jour et documents préparatoires à relire avant";
+        message.from = "Émile Dupont <emile.dupont@example.org>";
+        message.returnPath = "<emile.dupont@example.org>";
+        message.recipientTo = Arrays.asList("Zoé Martin <zoe.martin@example.org>",
+                "Jean-Baptiste Lefèvre de la Grande Maison <jean-baptiste.lefevre@example.org>",
+                "contact@example.org");
+        message.recipientCc = Arrays.asList("Anne <anne@example.org>");
+        message.replyTo = Arrays.asList("secretariat@example.org");
+        message.sentDate = new Date(1546300800000L);
+        message.messageID = "<1234.5678@example.org>";
+        message.inReplyToUID = "<1111.2222@example.org>";
+        message.mailHeader = Arrays.asList("X-Mailer: test mailer", "Subject: replaced", "no header line");
+        return message;
+    }
+
+    private static byte[] binaryContent(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+            content[i] = (byte) (i * 31 + 7);
+        return content;
+    }
+
+    // mostly ascii content with a line too long for 7bit
+    private static byte[] asciiContent(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+            content[i] = (byte) (i % 1500 == 1499 ? '\n' : 'a' + (i % 26));
+        content[length / 2] = (byte) 0xE9;
+        return content;
+    }
+
+    private static String write(MimeFakeWriter writer) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.write(baos);
+        return new String(baos.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String normalize(String eml) {
+        return BOUNDARY.matcher(eml).replaceAll("BOUNDARY");
+    }
+
+    private static void assertSameMimeFake(TestStoreMessage message) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        getMimeMessageFake(message).writeTo(baos);
+        String expected = normalize(new String(baos.toByteArray(), StandardCharsets.ISO_8859_1));
+
+        MimeFakeWriter writer = new MimeFakeWriter(message);
+        assertEquals(expected, normalize(write(writer)));
+        // a second write gives the same result
+        assertEquals(expected, normalize(write(writer)));
+    }
+
+    // The mime fake as built with a JavaMail MimeMessage
+
+    private static MimeMessage getMimeMessageFake(TestStoreMessage message) throws Exception {
+        MimeMessage mime = new NoUpdateMimeMessage(Session.getDefaultInstance(new Properties()));
+        buildMimeHeader(message, mime);
+        buildMimePart(message, mime);
+        mime.saveChanges();
+        return mime;
+    }
+
+    private static void setAddressList(MimeMessage mime, String tag, List<String> addressList)
+            throws MessagingException, UnsupportedEncodingException {
+        if ((addressList != null) && (!addressList.isEmpty())) {
+            String value = "";
+            int countline = 0;
+            for (String tmp : addressList) {
+                tmp = MimeUtility.encodeText(tmp, "UTF-8", "Q");
+                if (countline + tmp.length() > 80) {
+                    value += "\n\t";
+                    countline = 1;
+                } else
+                    countline += tmp.length();
+                value += MimeUtility.encodeText(tmp, "UTF-8", "Q") + ",";
+            }
+            value = value.substring(0, value.length() - 1);
+            mime.setHeader(tag, value);
+        }
+    }
+
+    private static void buildMimeHeader(TestStoreMessage m, MimeMessage mime) throws Exception {
+        if ((m.mailHeader != null) && (m.mailHeader.size() > 0)) {
+            for (String tmp : m.mailHeader) {
+                if (tmp.indexOf(':') < 0)
+                    continue;
+                mime.setHeader(tmp.substring(0, tmp.indexOf(':')), tmp.substring(tmp.indexOf(':') + 1));
+            }
+        }
+        if (m.returnPath != null)
+            mime.setHeader("Return-Path", MimeUtility.encodeText(m.returnPath, "UTF-8", "Q"));
+        if (m.from != null)
+            mime.setHeader("From", MimeUtility.encodeText(m.from, "UTF-8", "Q"));
+        setAddressList(mime, "To", m.recipientTo);
+        setAddressList(mime, "cc", m.recipientCc);
+        setAddressList(mime, "bcc", m.recipientBcc);
+        setAddressList(mime, "Reply-To", m.replyTo);
+        mime.setSentDate(m.sentDate);
+        if (m.subject != null)
+            mime.setSubject(MimeUtility.encodeText(m.subject, "UTF-8", "Q"));
+        if (m.messageID != null)
+            mime.setHeader("Message-ID", MimeUtility.encodeText(m.messageID, "UTF-8", "Q"));
+        if ((m.inReplyToUID != null) && (!m.inReplyToUID.isEmpty()))
+            mime.setHeader("In-Reply-To", MimeUtility.encodeText(m.inReplyToUID, "UTF-8", "Q"));
+    }
+
+    private static void addAttachmentPart(TestStoreMessage m, MimeMultipart root, boolean isInline)
+            throws Exception {
+        for (StoreMessageAttachment a : m.attachments) {
+            boolean thisIsInline = (a.attachmentType == StoreMessageAttachment.INLINE_ATTACHMENT);
+            if (thisIsInline != isInline)
+                continue;
+            MimeBodyPart attachPart = new MimeBodyPart();
+            String cidName;
+            if ((a.contentID != null) && !a.contentID.trim().isEmpty()) {
+                attachPart.setContentID("<" + a.contentID.trim() + ">");
+                if (a.contentID.indexOf('@') < 0)
+                    cidName = a.contentID;
+                else
+                    cidName = a.contentID.substring(0, a.contentID.indexOf('@'));
+            } else
+                cidName = "unknown";
+
+            String attachmentFilename = encodedFilename(a.name, a.mimeType, cidName);
+            if ((a.mimeType == null) || (a.mimeType.isEmpty()))
+                attachPart.setContent(a.getRawAttachmentContent(),
+                        "application/octet-stream; name=\"" + attachmentFilename + "\"");
+            else if (a.mimeType.startsWith("text"))
+                attachPart.setContent(new String(a.getRawAttachmentContent(), "UTF-8"),
+                        a.mimeType + "; name=\"" + attachmentFilename + "\"");
+            else if (a.mimeType.startsWith("message"))
+                attachPart.setDataHandler(new DataHandler(
+                        new RawDataSource(a.getRawAttachmentContent(), a.mimeType, attachmentFilename)));
+            else if (a.mimeType.startsWith("multipart"))
+                attachPart.setContent(a.getRawAttachmentContent(),
+                        "application/octet-stream; name=\"" + attachmentFilename + "\"");
+            else
+                attachPart.setContent(a.getRawAttachmentContent(), a.mimeType + "; name=\"" + attachmentFilename
+                        + "\"");
+            if (thisIsInline)
+                attachPart.setDisposition("inline; filename=\"" + attachmentFilename + "\"");
+            else
+                attachPart.setDisposition("attachment; filename=\"" + attachmentFilename + "\"");
+            root.addBodyPart(attachPart);
+        }
+    }
+
+    private static MimeMultipart newChild(MimeMultipart parent, String type) throws MessagingException {
+        MimeMultipart child = new MimeMultipart(type);
+        MimeBodyPart mbp = new MimeBodyPart();
+        parent.addBodyPart(mbp);
+        mbp.setContent(child);
+        return child;
+    }
+
+    private static boolean isEmpty(String body) {
+        return (body == null) || body.isEmpty();
+    }
+
+    private static void buildMimePart(TestStoreMessage m, MimeMessage mime) throws Exception {
+        String[] bodyContent = m.bodyContent;
+        boolean hasInline = false;
+        int relatedPart = OUT_OF_BODY;
+        MimeMultipart rootMp = new MimeMultipart("mixed");
+
+        for (StoreMessageAttachment a : m.attachments)
+            if (a.attachmentType == StoreMessageAttachment.INLINE_ATTACHMENT)
+                hasInline = true;
+        if (!isEmpty(bodyContent[HTML_BODY]))
+            relatedPart = HTML_BODY;
+        else if (!isEmpty(bodyContent[RTF_BODY]))
+            relatedPart = RTF_BODY;
+
+        MimeMultipart msgMp = newChild(rootMp, "alternative");
+        if (!isEmpty(bodyContent[TEXT_BODY])) {
+            MimeBodyPart part = new MimeBodyPart();
+            part.setContent(bodyContent[TEXT_BODY], "text/plain; charset=utf-8");
+            msgMp.addBodyPart(part);
+        }
+        if (isEmpty(bodyContent[TEXT_BODY]) && isEmpty(bodyContent[HTML_BODY]) && isEmpty(bodyContent[RTF_BODY])) {
+            MimeBodyPart part = new MimeBodyPart();
+            part.setContent(" ", "text/plain; charset=utf-8");
+            msgMp.addBodyPart(part);
+        }
+        if (!isEmpty(bodyContent[HTML_BODY])) {
+            MimeMultipart upperpart = (hasInline && (relatedPart == HTML_BODY) ? newChild(msgMp, "related") : msgMp);
+            MimeBodyPart part = new MimeBodyPart();
+            part.setContent(bodyContent[HTML_BODY], "text/html; charset=utf-8");
+            upperpart.addBodyPart(part);
+            if (hasInline && (relatedPart == HTML_BODY))
+                addAttachmentPart(m, upperpart, true);
+        }
+        if (!isEmpty(bodyContent[RTF_BODY])) {
+            MimeMultipart upperpart = (hasInline && (relatedPart == RTF_BODY) ? newChild(msgMp, "related") : msgMp);
+            MimeBodyPart part = new MimeBodyPart();
+            // the rtf text is ascii, so the same in any platform charset
+            part.setContent(bodyContent[RTF_BODY], "text/rtf; charset=US-ASCII");
+            upperpart.addBodyPart(part);
+            if (hasInline && (relatedPart == RTF_BODY))
+                addAttachmentPart(m, upperpart, true);
+        }
+        if (relatedPart == OUT_OF_BODY)
+            addAttachmentPart(m, rootMp, true);
+        addAttachmentPart(m, rootMp, false);
+        mime.setContent(rootMp);
+    }
+
+    private static String encodedFilename(String filename, String mimetype, String ifnone) throws Exception {
+        String tmp = ((filename != null) && !filename.trim().isEmpty() ? filename : ifnone);
+        if ("message/rfc822".equals(mimetype) && (!tmp.endsWith(".eml")))
+            tmp += ".eml";
+        if (StandardCharsets.US_ASCII.newEncoder().canEncode(tmp) && tmp.contains("\""))
+            tmp = tmp.replaceAll("\"", "'");
+        return MimeUtility.encodeWord(tmp, "UTF-8", "Q");
+    }
+
+    // Prevent update of Message-ID and of Date header with now date
+    private static class NoUpdateMimeMessage extends MimeMessage {
+
+        NoUpdateMimeMessage(Session session) {
+            super(session);
+        }
+
+        @Override
+        protected void updateMessageID() throws MessagingException {
+            String[] ids = getHeader("Message-ID");
+            if (ids == null || ids.length == 0 || ids[0] == null || ids[0].isEmpty())
+                super.updateMessageID();
+        }
+
+        @Override
+        protected synchronized void updateHeaders() throws MessagingException {
+            String[] date = getHeader("Date");
+            super.updateHeaders();
+            if (date == null)
+                removeHeader("Date");
+        }
+    }
+
+    // Minimal store classes
+
+    private static class TestStoreExtractor extends StoreExtractor {
+
+        TestStoreExtractor(File rootDir) throws ExtractionException {
+            super("mbox://localhost/test", "", new File(rootDir, "extraction").getPath(), null, null,
+                    new MailExtractProgressLogger(LoggerFactory.getLogger(MimeFakeWriterTest.class),
+                            MailExtractProgressLogger.GLOBAL));
+        }
+
+        @Override
+        public StoreMessageAttachment getAttachment() {
+            return null;
+        }
+
+        @Override
+        public boolean canExtractObjectsLists() {
+            return false;
+        }
+    }
+
+    private static class TestStoreFolder extends StoreFolder {
+
+        TestStoreFolder(StoreExtractor storeExtractor) {
+            super(storeExtractor);
+        }
+
+        @Override
+        public String getFullName() {
+            return "test";
+        }
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public boolean hasElements() {
+            return true;
+        }
+
+        @Override
+        public boolean hasSubfolders() {
+            return false;
+        }
+
+        @Override
+        protected void doExtractFolderElements(boolean writeFlag) {
+        }
+
+        @Override
+        protected void doExtractSubFolders(int level, boolean writeFlag) {
+        }
+
+        @Override
+        protected void doListFolderElements(boolean stats) {
+        }
+
+        @Override
+        protected void doListSubFolders(boolean stats) {
+        }
+    }
+
+    private static class TestStoreMessage extends StoreMessage {
+
+        TestStoreMessage(StoreFolder storeFolder) {
+            super(storeFolder);
+        }
+
+        @Override
+        public long getMessageSize() {
+            return 0;
+        }
+
+        @Override
+        protected void prepareAnalyze() {
+        }
+
+        @Override
+        protected void analyzeSubject() {
+        }
+
+        @Override
+        protected void analyzeMessageID() {
+        }
+
+        @Override
+        protected void analyzeFrom() {
+        }
+
+        @Override
+        protected void analyzeRecipients() {
+        }
+
+        @Override
+        protected void analyzeReplyTo() {
+        }
+
+        @Override
+        protected void analyzeReturnPath() {
+        }
+
+        @Override
+        protected void analyzeDates() {
+        }
+
+        @Override
+        protected void analyzeInReplyToId() {
+        }
+
+        @Override
+        protected void analyzeReferences() {
+        }
+
+        @Override
+        protected void analyzeBodies() {
+        }
+
+        @Override
+        protected void analyzeAttachments() {
+        }
+
+        @Override
+        protected byte[] getNativeMimeContent() {
+            return null;
+        }
+
+        @Override
+        protected void analyzeAppointmentInformation() {
+        }
+    }
+}
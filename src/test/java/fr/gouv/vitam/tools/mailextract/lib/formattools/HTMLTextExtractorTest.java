@@ -0,0 +1,94 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.formattools;
+
+import java.util.Random;
+
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Html entities decoding, which must give the same text as looping on the
+ * jsoup unescapeEntities until no change.
+ */
+public class HTMLTextExtractorTest {
+
+    private static final String[] FRAGMENTS = { "&", "&amp;", "amp;", "&#", "#", "x", "X", "1", "08", "26", ";",
+            "lt", "gt", "not", "notin", "it", "copy", "=", "-", "_", " ", "<", "a", "\u00e9", "\u00a0", "&#x", "&#38;",
+            "&#x26", "&#150;", "&#x9F;", "&#55296;", "&#x110000;", "&#99999999999;", "&lang;", "&NotEqualTilde;",
+            "&nbsp", "&#108;" };
+
+    private static String loopUnescape(String in) {
+        String result = in, previous;
+
+        do {
+            previous = result;
+            result = Parser.unescapeEntities(previous, true);
+        } while (!result.equals(previous));
+        return result;
+    }
+
+    @Test
+    public void multipleEscapes() {
+        HTMLTextExtractor extractor = HTMLTextExtractor.getInstance();
+
+        assertEquals("<", extractor.htmlStringtoString("&amp;amp;lt;"));
+        // an '&' followed by an entity whose decoding completes a new entity
+        assertEquals("<", extractor.htmlStringtoString("&&#108;t;"));
+        assertEquals("a & b", extractor.htmlStringtoString("a & b"));
+        assertEquals("\u00acx &notit; x=&copy=1", extractor.htmlStringtoString("&not;x &notit; x=&copy=1"));
+        assertEquals("", extractor.htmlStringtoString(null));
+    }
+
+    @Test
+    public void numericEntities() {
+        HTMLTextExtractor extractor = HTMLTextExtractor.getInstance();
+
+        // the C1 controls range is not mapped to Windows-1252 by jsoup 1.11.3
+        assertEquals("\u0096\u009f", extractor.htmlStringtoString("&#150;&#x9F;"));
+        assertEquals("\ufffd\ufffd\ufffd", extractor.htmlStringtoString("&#xD800;&#x110000;&#99999999999;"));
+        assertEquals("&#x;&#;", extractor.htmlStringtoString("&#x;&#;"));
+    }
+
+    @Test
+    public void sameAsUnescapeLoop() {
+        HTMLTextExtractor extractor = HTMLTextExtractor.getInstance();
+        Random random = new Random(0);
+
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int count = random.nextInt(12);
+            for (int j = 0; j < count; j++)
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            String in = sb.toString();
+            assertEquals(in, loopUnescape(in), extractor.htmlStringtoString(in));
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Properties;
+import java.util.TimeZone;
+
+import javax.activation.DataHandler;
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractor;
+import fr.gouv.vitam.tools.mailextract.lib.core.StoreExtractorOptions;
+import fr.gouv.vitam.tools.mailextract.lib.utils.DateRange;
+import fr.gouv.vitam.tools.mailextract.lib.utils.MailExtractProgressLogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Validation of the IMAP listing statistics, obtained by STATUS and one bulk
+ * FETCH, against a full listing which reads each message, on a GreenMail
+ * local IMAP server.
+ */
+public class JMStoreFolderImapTest {
+
+    private static final String USER = "user";
+    private static final String PASSWORD = "password";
+
+    private static GreenMail greenMail;
+    private static File destDir;
+    private static MailExtractProgressLogger logger;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        StoreExtractor.initDefaultExtractors();
+        destDir = Files.createTempDirectory("imaplisting").toFile();
+        logger = new MailExtractProgressLogger(LoggerFactory.getLogger(JMStoreFolderImapTest.class),
+                MailExtractProgressLogger.GLOBAL);
+
+        greenMail = new GreenMail(ServerSetupTest.IMAP);
+        greenMail.start();
+        greenMail.setUser(USER + "@localhost", USER, PASSWORD);
+
+        Session session = Session.getInstance(new Properties());
+        Store store = session.getStore("imap");
+        store.connect("localhost", greenMail.getImap().getPort(), USER, PASSWORD);
+        try {
+            Folder inbox = store.getFolder("INBOX");
+            MimeMessage deleted = newMessage("Deleted", "2019-05-01", 300);
+            deleted.setFlag(Flags.Flag.DELETED, true);
+            inbox.appendMessages(new Message[]{newMessage("First", "2019-01-07", 100),
+                    newMessageWithAttachment("Second", "2019-03-15", 2000, 5000),
+                    newMessage("Third", "2020-06-01", 800), deleted});
+            Folder archive = inbox.getFolder("Archive");
+            archive.create(Folder.HOLDS_MESSAGES);
+            archive.appendMessages(new Message[]{newMessage("Old", "2018-12-31", 50),
+                    newMessage("Archived", "2019-02-01", 1200)});
+        } finally {
+            store.close();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (greenMail != null)
+            greenMail.stop();
+    }
+
+    @Test
+    public void statisticsAsFullListing() throws Exception {
+        StoreExtractor fast = listStore(new StoreExtractorOptions());
+        StoreExtractor full = listStore(deepOptions());
+
+        assertEquals(5, full.getTotalElementsCount());
+        assertSameStatistics(full, fast);
+        assertEquals(date("2019-01-07"), fast.getRootFolder().getDateRange().getStart());
+        assertEquals(date("2020-06-01"), fast.getRootFolder().getDateRange().getEnd());
+    }
+
+    @Test
+    public void statisticsWithDateRangeAsFullListing() throws Exception {
+        StoreExtractorOptions fastOptions = new StoreExtractorOptions();
+        fastOptions.startDate = date("2019-01-01");
+        fastOptions.endDate = date("2020-01-01");
+        StoreExtractorOptions fullOptions = deepOptions();
+        fullOptions.startDate = fastOptions.startDate;
+        fullOptions.endDate = fastOptions.endDate;
+
+        StoreExtractor fast = listStore(fastOptions);
+        StoreExtractor full = listStore(fullOptions);
+
+        assertEquals(3, full.getTotalElementsCount());
+        assertSameStatistics(full, fast);
+        assertEquals(date("2019-03-15"), fast.getRootFolder().getDateRange().getEnd());
+    }
+
+    @Test
+    public void noBodyFetchInListing() throws Exception {
+        String fastLog = listStoreCommands(new StoreExtractorOptions());
+        String fullLog = listStoreCommands(deepOptions());
+
+        assertTrue(fastLog.contains("RFC822.SIZE"));
+        assertFalse(fastLog, hasBodyFetch(fastLog));
+        // the check does see body fetches
+        assertTrue(hasBodyFetch(fullLog));
+    }
+
+    // full listing, each message being read and analyzed
+    private static StoreExtractorOptions deepOptions() {
+        StoreExtractorOptions options = new StoreExtractorOptions();
+        options.deepStatistics = true;
+        return options;
+    }
+
+    private static void assertSameStatistics(StoreExtractor expected, StoreExtractor actual) {
+        assertEquals(expected.getFolderTotalCount(), actual.getFolderTotalCount());
+        assertEquals(expected.getTotalElementsCount(), actual.getTotalElementsCount());
+        assertEquals(expected.getTotalRawSize(), actual.getTotalRawSize());
+        DateRange expectedRange = expected.getRootFolder().getDateRange();
+        DateRange actualRange = actual.getRootFolder().getDateRange();
+        assertEquals(expectedRange.getStart(), actualRange.getStart());
+        assertEquals(expectedRange.getEnd(), actualRange.getEnd());
+    }
+
+    private static StoreExtractor listStore(StoreExtractorOptions options) throws Exception {
+        StoreExtractor storeExtractor = StoreExtractor.createStoreExtractor(
+                StoreExtractor.composeStoreURL("imap", "localhost:" + greenMail.getImap().getPort(), USER,
+                        PASSWORD, null), "INBOX", destDir.getPath(), options, logger);
+        try {
+            storeExtractor.listAllFolders(true);
+        } finally {
+            storeExtractor.endStoreExtractor();
+        }
+        return storeExtractor;
+    }
+
+    // list the store and get the IMAP protocol trace, the store extractor
+    // using the default session
+    private static String listStoreCommands(StoreExtractorOptions options) throws Exception {
+        Session session = Session.getDefaultInstance(System.getProperties(), null);
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        session.setDebugOut(new PrintStream(trace, true, "UTF-8"));
+        session.setDebug(true);
+        try {
+            listStore(options);
+        } finally {
+            session.setDebug(false);
+            session.setDebugOut(null);
+        }
+        return new String(trace.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // check if a client FETCH command asks for a message body or full content
+    private static boolean hasBodyFetch(String trace) {
+        for (String line : trace.split("\r?\n")) {
+            if (line.matches("A\\d+ (UID )?FETCH .*")
+                    && (line.contains("BODY") || line.matches(".*RFC822(\\.TEXT)?[ )].*")))
+                return true;
+        }
+        return false;
+    }
+
+    private static Date date(String day) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.parse(day);
+    }
+
+    private static String text(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length)
+            sb.append("Une ligne de texte.\r\n");
+        sb.setLength(length);
+        return sb.toString();
+    }
+
+    private static MimeMessage newMessage(String subject, String day, int bodyLength) throws Exception {
+        MimeMessage message = new MimeMessage((Session) null);
+        message.setFrom("sender@example.org");
+        message.setRecipients(Message.RecipientType.TO, USER + "@localhost");
+        message.setSubject(subject);
+        message.setSentDate(date(day));
+        message.setText(text(bodyLength), "UTF-8");
+        message.saveChanges();
+        return message;
+    }
+
+    private static MimeMessage newMessageWithAttachment(String subject, String day, int bodyLength,
+                                                        int attachmentLength) throws Exception {
+        MimeMessage message = newMessage(subject, day, 0);
+        MimeMultipart multipart = new MimeMultipart();
+        MimeBodyPart body = new MimeBodyPart();
+        body.setText(text(bodyLength), "UTF-8");
+        multipart.addBodyPart(body);
+        MimeBodyPart attachment = new MimeBodyPart();
+        attachment.setDataHandler(new DataHandler(new ByteArrayDataSource(
+                text(attachmentLength).getBytes(StandardCharsets.US_ASCII), "application/octet-stream")));
+        attachment.setFileName("data.bin");
+        multipart.addBodyPart(attachment);
+        message.setContent(multipart);
+        message.saveChanges();
+        return message;
+    }
+}
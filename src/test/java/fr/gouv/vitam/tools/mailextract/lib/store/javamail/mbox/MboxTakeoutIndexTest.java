@@ -0,0 +1,105 @@
+/**
+ * Copyright French Prime minister Office/SGMAP/DINSIC/Vitam Program (2015-2019)
+ * <p>
+ * contact.vitam@culture.gouv.fr
+ * <p>
+ * This software is a computer program whose purpose is to implement a digital archiving back-office system managing
+ * high volumetry securely and efficiently.
+ * <p>
+ * This software is governed by the CeCILL 2.1 license under French law and abiding by the rules of distribution of free
+ * software. You can use, modify and/ or redistribute the software under the terms of the CeCILL 2.1 license as
+ * circulated by CEA, CNRS and INRIA at the following URL "http://www.cecill.info".
+ * <p>
+ * As a counterpart to the access to the source code and rights to copy, modify and redistribute granted by the license,
+ * users are provided only with a limited warranty and the software's author, the holder of the economic rights, and the
+ * successive licensors have only limited liability.
+ * <p>
+ * In this respect, the user's attention is drawn to the risks associated with loading, using, modifying and/or
+ * developing or reproducing the software by the user in light of its specific status of free software, that may mean
+ * that it is complicated to manipulate, and that also therefore means that it is reserved for developers and
+ * experienced professionals having in-depth computer knowledge. Users are therefore encouraged to load and test the
+ * software's suitability as regards their requirements in conditions enabling the security of their systems and/or data
+ * to be ensured and, more generally, to use and operate it in the same conditions as regards security.
+ * <p>
+ * The fact that you are presently reading this means that you have had knowledge of the CeCILL 2.1 license and that you
+ * accept its terms.
+ */
+
+package fr.gouv.vitam.tools.mailextract.lib.store.javamail.mbox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Google Takeout mbox scan, on a sample shaped as a Takeout export, with
+ * "From id@xxx asctime-date" delimiter lines and CRLF line ends.
+ */
+public class MboxTakeoutIndexTest {
+
+    private static final String SAMPLE = ""
+            + "From 1623456789012345678@xxx Mon Jan 07 10:00:00 +0000 2019\r\n"
+            + "X-GM-THRID: 1623456789012345678\r\n"
+            + "X-Gmail-Labels: Inbox,Important,\"Work, 2019\"\r\n"
+            + "From: sender@example.org\r\n"
+            + "Subject: first\r\n"
+            + "\r\n"
+            + "A body line.\r\n"
+            + ">From the escaped line\r\n"
+            + "From here a body line which is not a delimiter\r\n"
+            + "\r\n"
+            + "From 1623456789012345679@xxx Tue Jan 08 11:30:00 +0000 2019\r\n"
+            + "X-GM-THRID: 1623456789012345679\r\n"
+            + "X-Gmail-Labels: Sent\r\n"
+            + "Subject: second\r\n"
+            + "\r\n"
+            + "Second body.\r\n"
+            + "\r\n"
+            + "From 1623456789012345680@xxx Wed Jan 09 12:00:00 +0000 2019\r\n"
+            + "X-GM-THRID: 1623456789012345680\r\n"
+            + "X-Gmail-Labels: Inbox,\r\n"
+            + " =?UTF-8?Q?=C3=A9t=C3=A9?=\r\n"
+            + "Subject: third\r\n"
+            + "\r\n"
+            + "Third body.\r\n"
+            + "\r\n"
+            + "From 1623456789012345681@xxx Thu Jan 10 08:05:09 +0000 2019\r\n"
+            + "X-GM-THRID: 1623456789012345681\r\n"
+            + "Subject: fourth, without label\r\n"
+            + "\r\n"
+            + "Fourth body.\r\n";
+
+    @Test
+    public void labelsAndMessagesCounts() throws Exception {
+        byte[] content = SAMPLE.getBytes(StandardCharsets.US_ASCII);
+        MboxTakeoutIndex index = new MboxTakeoutIndex(new MboxReader(null, content));
+
+        assertEquals(Arrays.asList("Inbox", "Important", "Work, 2019", "Sent", "été"), index.getLabels());
+        assertArrayEquals(new int[] { 0, 2 }, index.getMessages("Inbox"));
+        assertArrayEquals(new int[] { 0 }, index.getMessages("Important"));
+        assertArrayEquals(new int[] { 0 }, index.getMessages("Work, 2019"));
+        assertArrayEquals(new int[] { 1 }, index.getMessages("Sent"));
+        assertArrayEquals(new int[] { 2 }, index.getMessages("été"));
+        assertArrayEquals(new int[] { 3 }, index.getMessages(null));
+        assertArrayEquals(new int[0], index.getMessages("Unknown"));
+        assertEquals(Arrays.asList("Inbox", "été"), index.getMessageLabels(2));
+    }
+
+    @Test
+    public void messagesBoundaries() throws Exception {
+        byte[] content = SAMPLE.getBytes(StandardCharsets.US_ASCII);
+        MboxTakeoutIndex index = new MboxTakeoutIndex(new MboxReader(null, content));
+
+        // first message keeps its body "From " line, and ends on next delimiter
+        String first = SAMPLE.substring((int) index.getBeg(0), (int) index.getEnd(0));
+        assertTrue(first.startsWith("X-GM-THRID: 1623456789012345678\r\n"));
+        assertTrue(first.contains("From here a body line which is not a delimiter"));
+        assertEquals(SAMPLE.indexOf("From 1623456789012345679@xxx"), index.getEnd(0));
+        assertTrue(SAMPLE.substring((int) index.getBeg(3)).startsWith("X-GM-THRID: 1623456789012345681\r\n"));
+    }
+}